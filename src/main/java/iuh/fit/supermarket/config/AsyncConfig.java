@@ -0,0 +1,162 @@
+package iuh.fit.supermarket.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.scheduling.annotation.EnableAsync;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+/**
+ * Cấu hình xử lý bất đồng bộ cho các tác vụ nền của ứng dụng
+ */
+@Configuration
+@EnableAsync
+@Slf4j
+public class AsyncConfig {
+
+    @Value("${job.threads:2}")
+    private int jobThreads;
+
+    @Value("${invoice.pdf.render-threads:2}")
+    private int invoicePdfRenderThreads;
+
+    @Value("${invoice.pdf.render-queue-capacity:500}")
+    private int invoicePdfRenderQueueCapacity;
+
+    @Value("${security.password.hash-threads:2}")
+    private int passwordHashThreads;
+
+    @Value("${security.password.hash-queue-capacity:50}")
+    private int passwordHashQueueCapacity;
+
+    @Value("${recommendation.index-queue-capacity:1000}")
+    private int recommendationIndexQueueCapacity;
+
+    @Value("${product.image.variants.threads:2}")
+    private int imageProcessingThreads;
+
+    @Value("${product.image.variants.queue-capacity:100}")
+    private int imageProcessingQueueCapacity;
+
+    @Value("${order.stream.send-threads:2}")
+    private int orderStreamSendThreads;
+
+    @Value("${order.stream.send-queue-capacity:10000}")
+    private int orderStreamSendQueueCapacity;
+
+    /**
+     * Executor render trước PDF hóa đơn
+     * Hàng đợi có giới hạn; khi đầy thì bỏ qua tác vụ vì PDF vẫn được render khi tải xuống
+     *
+     * @return TaskExecutor dành cho render PDF
+     */
+    @Bean(name = "invoicePdfExecutor")
+    public TaskExecutor invoicePdfExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(invoicePdfRenderThreads);
+        executor.setMaxPoolSize(invoicePdfRenderThreads);
+        executor.setQueueCapacity(invoicePdfRenderQueueCapacity);
+        executor.setThreadNamePrefix("invoice-pdf-");
+        executor.setRejectedExecutionHandler((task, pool) ->
+                log.warn("Hàng đợi render PDF hóa đơn đã đầy, bỏ qua render trước"));
+        executor.setWaitForTasksToCompleteOnShutdown(false);
+        executor.initialize();
+        return executor;
+    }
+
+    /**
+     * Executor cho các tác vụ nền dài (export/import dữ liệu lớn)
+     * Số luồng nhỏ để tác vụ nền không chiếm hết kết nối DB của request thường
+     *
+     * @return TaskExecutor dành cho tác vụ nền
+     */
+    @Bean(name = "backgroundJobExecutor")
+    public TaskExecutor backgroundJobExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(jobThreads);
+        executor.setMaxPoolSize(jobThreads);
+        executor.setQueueCapacity(20);
+        executor.setThreadNamePrefix("background-job-");
+        executor.initialize();
+        return executor;
+    }
+
+    /**
+     * Executor chạy BCrypt khi đăng nhập và đổi mật khẩu
+     * Giới hạn số luồng để đợt đăng nhập dồn dập không chiếm hết CPU của các request bán hàng;
+     * hàng đợi đầy thì từ chối ngay (TaskRejectedException) thay vì giữ luồng Tomcat chờ
+     *
+     * @return ThreadPoolTaskExecutor dành cho băm mật khẩu
+     */
+    @Bean(name = "passwordHashingExecutor")
+    public ThreadPoolTaskExecutor passwordHashingExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(passwordHashThreads);
+        executor.setMaxPoolSize(passwordHashThreads);
+        executor.setQueueCapacity(passwordHashQueueCapacity);
+        executor.setThreadNamePrefix("password-hash-");
+        executor.initialize();
+        return executor;
+    }
+
+    /**
+     * Executor một luồng cập nhật chỉ mục gợi ý sản phẩm
+     * Một luồng để mọi thao tác ghi chỉ mục chạy tuần tự; hàng đợi đầy thì bỏ qua cập nhật
+     * vì lần dựng lại định kỳ sẽ bổ sung các hóa đơn còn thiếu
+     *
+     * @return TaskExecutor dành cho chỉ mục gợi ý
+     */
+    @Bean(name = "recommendationExecutor")
+    public TaskExecutor recommendationExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(1);
+        executor.setMaxPoolSize(1);
+        executor.setQueueCapacity(recommendationIndexQueueCapacity);
+        executor.setThreadNamePrefix("recommendation-");
+        executor.setRejectedExecutionHandler((task, pool) ->
+                log.warn("Hàng đợi cập nhật chỉ mục gợi ý đã đầy, bỏ qua cập nhật"));
+        executor.setWaitForTasksToCompleteOnShutdown(false);
+        executor.initialize();
+        return executor;
+    }
+
+    /**
+     * Executor tạo biến thể ảnh sản phẩm (resize, nén lại, upload)
+     * Số luồng cố định giới hạn bộ nhớ dùng cho ảnh giải mã; hàng đợi đầy thì từ chối
+     * (TaskRejectedException) để nơi gọi dọn file tạm, tác vụ định kỳ sẽ tạo lại sau
+     *
+     * @return TaskExecutor dành cho xử lý ảnh
+     */
+    @Bean(name = "imageProcessingExecutor")
+    public TaskExecutor imageProcessingExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(imageProcessingThreads);
+        executor.setMaxPoolSize(imageProcessingThreads);
+        executor.setQueueCapacity(imageProcessingQueueCapacity);
+        executor.setThreadNamePrefix("image-variant-");
+        executor.setWaitForTasksToCompleteOnShutdown(false);
+        executor.initialize();
+        return executor;
+    }
+
+    /**
+     * Executor gửi sự kiện SSE trạng thái đơn hàng
+     * Mỗi kết nối có nhiều nhất một tác vụ gửi trong hàng đợi; hàng đợi đầy thì từ chối (TaskRejectedException),
+     * sự kiện vẫn nằm trong bộ đệm của kết nối và được gửi ở lần publish hoặc heartbeat tiếp theo
+     *
+     * @return TaskExecutor dành cho gửi sự kiện SSE
+     */
+    @Bean(name = "orderStreamExecutor")
+    public TaskExecutor orderStreamExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(orderStreamSendThreads);
+        executor.setMaxPoolSize(orderStreamSendThreads);
+        executor.setQueueCapacity(orderStreamSendQueueCapacity);
+        executor.setThreadNamePrefix("order-stream-");
+        executor.setWaitForTasksToCompleteOnShutdown(false);
+        executor.initialize();
+        return executor;
+    }
+}
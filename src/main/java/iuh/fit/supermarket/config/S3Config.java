@@ -2,20 +2,26 @@ package iuh.fit.supermarket.config;
 
 import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
 import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.http.nio.netty.NettyNioAsyncHttpClient;
 import software.amazon.awssdk.regions.Region;
-import software.amazon.awssdk.services.s3.S3Client;
-import software.amazon.awssdk.services.s3.S3Configuration;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.multipart.MultipartConfiguration;
 
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.util.unit.DataSize;
 
 import java.net.URI;
+import java.time.Duration;
 
 /**
  * Cấu hình Cloudflare R2 Storage (tương thích S3 API) cho ứng dụng siêu thị
+ * Chỉ được nạp khi storage.type = s3 (mặc định), môi trường test dùng thư mục cục bộ
  */
 @Configuration
+@ConditionalOnProperty(name = "storage.type", havingValue = "s3", matchIfMissing = true)
 public class S3Config {
 
     @Value("${aws.accessKeyId}")
@@ -30,25 +36,61 @@ public class S3Config {
     @Value("${aws.apiEndpoint}")
     private String apiEndpoint;
 
+    // Số kết nối HTTP tối đa tới R2, dùng chung cho mọi request và mọi part
+    @Value("${storage.s3.max-connections:64}")
+    private int maxConnections;
+
+    // Số request được xếp hàng chờ kết nối, vượt quá thì request lỗi ngay
+    @Value("${storage.s3.max-pending-connection-acquires:1000}")
+    private int maxPendingConnectionAcquires;
+
+    @Value("${storage.s3.connection-acquisition-timeout:10s}")
+    private Duration connectionAcquisitionTimeout;
+
+    @Value("${storage.s3.connection-max-idle-time:60s}")
+    private Duration connectionMaxIdleTime;
+
+    // Object lớn hơn ngưỡng này được upload nhiều phần song song
+    @Value("${storage.s3.multipart-threshold:8MB}")
+    private DataSize multipartThreshold;
+
+    @Value("${storage.s3.multipart-part-size:8MB}")
+    private DataSize multipartPartSize;
+
+    // Bộ đệm tối đa cho các part đang gửi của một upload, giới hạn bộ nhớ khi đọc file nhanh hơn mạng
+    @Value("${storage.s3.multipart-buffer-size:32MB}")
+    private DataSize multipartBufferSize;
+
     /**
-     * Tạo S3Client bean để tương tác với Cloudflare R2
-     * 
-     * @return S3Client đã được cấu hình để kết nối với R2
+     * Tạo S3AsyncClient bean để tương tác với Cloudflare R2
+     * Dùng HTTP client Netty với connection pool giữ kết nối lâu, upload nhiều phần cho file lớn
+     *
+     * @return S3AsyncClient đã được cấu hình để kết nối với R2
      */
-    @Bean
-    public S3Client amazonS3Client() {
+    @Bean(destroyMethod = "close")
+    public S3AsyncClient s3AsyncClient() {
         AwsBasicCredentials awsCredentials = AwsBasicCredentials.create(accessKey, secretKey);
 
-        // Cấu hình S3 để sử dụng path-style access (bắt buộc cho R2)
-        S3Configuration s3Config = S3Configuration.builder()
-                .pathStyleAccessEnabled(true)
+        MultipartConfiguration multipartConfiguration = MultipartConfiguration.builder()
+                .thresholdInBytes(multipartThreshold.toBytes())
+                .minimumPartSizeInBytes(multipartPartSize.toBytes())
+                .apiCallBufferSizeInBytes(multipartBufferSize.toBytes())
                 .build();
 
-        return S3Client.builder()
+        return S3AsyncClient.builder()
                 .region(Region.of(region))
                 .credentialsProvider(StaticCredentialsProvider.create(awsCredentials))
                 .endpointOverride(URI.create(apiEndpoint))
-                .serviceConfiguration(s3Config)
+                // Path-style access (bắt buộc cho R2)
+                .forcePathStyle(true)
+                .multipartEnabled(true)
+                .multipartConfiguration(multipartConfiguration)
+                .httpClientBuilder(NettyNioAsyncHttpClient.builder()
+                        .maxConcurrency(maxConnections)
+                        .maxPendingConnectionAcquires(maxPendingConnectionAcquires)
+                        .connectionAcquisitionTimeout(connectionAcquisitionTimeout)
+                        .connectionMaxIdleTime(connectionMaxIdleTime)
+                        .tcpKeepAlive(true))
                 .build();
     }
 }
@@ -2,7 +2,9 @@ package iuh.fit.supermarket.config;
 
 import iuh.fit.supermarket.security.CustomUserDetailsService;
 import iuh.fit.supermarket.security.JwtAuthenticationFilter;
+import jakarta.servlet.DispatcherType;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.authentication.AuthenticationManager;
@@ -36,6 +38,12 @@ public class SecurityConfig {
     private final CustomUserDetailsService userDetailsService;
     private final JwtAuthenticationFilter jwtAuthenticationFilter;
 
+    /**
+     * Cost mục tiêu của BCrypt; hash cũ có cost thấp hơn được băm lại khi đăng nhập thành công
+     */
+    @Value("${security.password.bcrypt-strength:10}")
+    private int bcryptStrength;
+
     /**
      * Cấu hình SecurityFilterChain
      */
@@ -53,10 +61,16 @@ public class SecurityConfig {
 
                 // Cấu hình authorization
                 .authorizeHttpRequests(authz -> authz
+                        // Lượt ASYNC dispatch (SSE đóng/hết thời gian chờ) và ERROR dispatch thuộc về request
+                        // đã được phân quyền; JwtAuthenticationFilter không chạy lại ở các lượt này
+                        .dispatcherTypeMatchers(DispatcherType.ASYNC, DispatcherType.ERROR).permitAll()
+
                         // Public endpoints
-                        .requestMatchers("/api/auth/login", "/api/auth/validate").permitAll()
+                        .requestMatchers("/api/auth/login", "/api/auth/validate", "/api/auth/refresh").permitAll()
                         .requestMatchers("/api/customers/register", "/api/auth/customer/login").permitAll()
-                        .requestMatchers("/actuator/**").permitAll()
+                        // Chỉ health công khai cho probe; metrics/prometheus/info chỉ dành cho ADMIN
+                        .requestMatchers("/actuator/health", "/actuator/health/**").permitAll()
+                        .requestMatchers("/actuator/**").hasRole("ADMIN")
 
                         // Swagger endpoints - cho phép truy cập công khai
                         .requestMatchers("/swagger-ui/**").permitAll()
@@ -121,7 +135,7 @@ public class SecurityConfig {
      */
     @Bean
     public PasswordEncoder passwordEncoder() {
-        return new BCryptPasswordEncoder();
+        return new BCryptPasswordEncoder(bcryptStrength);
     }
 
     /**
@@ -0,0 +1,51 @@
+package iuh.fit.supermarket.config;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.turbo.TurboFilter;
+import ch.qos.logback.core.spi.FilterReply;
+import org.slf4j.Marker;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * TurboFilter của Logback chỉ giữ 1 trên mỗi N dòng log của một logger (mặc định org.hibernate.SQL_SLOW)
+ * Hibernate ghi mọi câu truy vấn vượt ngưỡng hibernate.log_slow_query; khi DB chậm hàng loạt,
+ * lấy mẫu giúp log vẫn cho thấy câu truy vấn chậm mà không tự nó làm nghẽn ứng dụng
+ * Được khai báo trong logback-spring.xml, không phải Spring bean
+ */
+public class SlowQueryLogSampler extends TurboFilter {
+
+    private final AtomicLong counter = new AtomicLong();
+    private String loggerName = "org.hibernate.SQL_SLOW";
+    private long sampleEvery = 1;
+    private Logger target;
+
+    public void setLoggerName(String loggerName) {
+        this.loggerName = loggerName;
+    }
+
+    public void setSampleEvery(long sampleEvery) {
+        this.sampleEvery = Math.max(sampleEvery, 1);
+    }
+
+    @Override
+    public void start() {
+        target = ((LoggerContext) getContext()).getLogger(loggerName);
+        super.start();
+    }
+
+    @Override
+    public FilterReply decide(Marker marker, Logger logger, Level level, String format, Object[] params, Throwable t) {
+        // So sánh tham chiếu vì filter được gọi cho mọi lệnh log của ứng dụng
+        if (logger != target || sampleEvery == 1) {
+            return FilterReply.NEUTRAL;
+        }
+        // format null là lần kiểm tra isXxxEnabled() trước khi ghi, không tính vào mẫu
+        if (format == null) {
+            return FilterReply.NEUTRAL;
+        }
+        return counter.getAndIncrement() % sampleEvery == 0 ? FilterReply.NEUTRAL : FilterReply.DENY;
+    }
+}
@@ -6,6 +6,7 @@ import iuh.fit.supermarket.dto.common.ApiResponse;
 import iuh.fit.supermarket.enums.OrderStatus;
 import iuh.fit.supermarket.enums.DeliveryType;
 import iuh.fit.supermarket.service.CheckoutService;
+import iuh.fit.supermarket.service.OrderStatusStreamService;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -14,9 +15,11 @@ import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 /**
  * Controller xử lý các API quản lý đơn hàng dành cho Admin
@@ -30,6 +33,7 @@ import org.springframework.web.bind.annotation.*;
 public class AdminOrderController {
 
         private final CheckoutService checkoutService;
+        private final OrderStatusStreamService orderStatusStreamService;
 
         /**
          * API lấy danh sách tất cả đơn hàng với khả năng lọc theo trạng thái và loại hình nhận hàng
@@ -77,6 +81,22 @@ public class AdminOrderController {
                                 "Lấy danh sách đơn hàng thành công", orders));
         }
 
+        /**
+         * API theo dõi trạng thái đơn hàng theo thời gian thực (Server-Sent Events)
+         * - Nhận sự kiện "order-status" khi đơn hàng được tạo hoặc đổi trạng thái
+         * - Truyền storeId để chỉ theo dõi đơn nhận tại một cửa hàng, bỏ trống để theo dõi tất cả
+         *
+         * @param storeId ID cửa hàng nhận hàng (optional)
+         * @return luồng sự kiện trạng thái đơn hàng
+         */
+        @GetMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+        public SseEmitter streamOrderStatus(@RequestParam(required = false) Long storeId) {
+
+                log.info("Admin mở kết nối theo dõi trạng thái đơn hàng, storeId: {}", storeId);
+
+                return orderStatusStreamService.subscribeStaff(storeId);
+        }
+
         /**
          * API lấy thông tin chi tiết đơn hàng
          * - Admin có thể xem chi tiết bất kỳ đơn hàng nào
@@ -11,12 +11,19 @@ import iuh.fit.supermarket.dto.auth.CustomerLoginRequest;
 import iuh.fit.supermarket.dto.auth.CustomerLoginResponse;
 import iuh.fit.supermarket.dto.auth.LoginRequest;
 import iuh.fit.supermarket.dto.auth.LoginResponse;
+import iuh.fit.supermarket.dto.auth.LogoutRequest;
+import iuh.fit.supermarket.dto.auth.RefreshTokenRequest;
+import iuh.fit.supermarket.dto.auth.TokenRefreshResponse;
 import iuh.fit.supermarket.dto.auth.UserInfoResponse;
 import iuh.fit.supermarket.dto.common.ApiResponse;
+import iuh.fit.supermarket.exception.TooManyRequestsException;
+import iuh.fit.supermarket.security.LoginRateLimiter;
 import iuh.fit.supermarket.service.AuthService;
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.authentication.BadCredentialsException;
@@ -36,6 +43,7 @@ import org.springframework.web.bind.annotation.*;
 public class AuthController {
 
     private final AuthService authService;
+    private final LoginRateLimiter loginRateLimiter;
 
     /**
      * API đăng nhập nhân viên
@@ -47,13 +55,16 @@ public class AuthController {
     @ApiResponses(value = {
             @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "200", description = "Đăng nhập thành công", content = @Content(schema = @Schema(implementation = LoginResponse.class))),
             @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "401", description = "Thông tin đăng nhập không chính xác"),
-            @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "403", description = "Tài khoản bị khóa")
+            @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "403", description = "Tài khoản bị khóa"),
+            @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "429", description = "Vượt giới hạn số lần đăng nhập hoặc hệ thống đang bận")
     })
     @PostMapping("/login")
-    public ResponseEntity<ApiResponse<LoginResponse>> login(@Valid @RequestBody LoginRequest loginRequest) {
+    public ResponseEntity<ApiResponse<LoginResponse>> login(@Valid @RequestBody LoginRequest loginRequest,
+                                                            HttpServletRequest httpRequest) {
         log.info("Nhận yêu cầu đăng nhập từ email: {}", loginRequest.getEmail());
 
         try {
+            loginRateLimiter.checkLoginAttempt(httpRequest.getRemoteAddr(), loginRequest.getEmail());
             LoginResponse loginResponse = authService.login(loginRequest);
 
             log.info("Đăng nhập thành công cho email: {}", loginRequest.getEmail());
@@ -80,6 +91,11 @@ public class AuthController {
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
                     .body(ApiResponse.error("Xác thực thất bại"));
 
+        } catch (TooManyRequestsException e) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+                    .body(ApiResponse.error(e.getMessage()));
+
         } catch (Exception e) {
             log.error("Lỗi không xác định khi đăng nhập cho email: {}", loginRequest.getEmail(), e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
@@ -116,23 +132,62 @@ public class AuthController {
     }
 
     /**
-     * API logout (client side sẽ xóa token)
+     * API làm mới access token bằng refresh token
+     *
+     * @param request refresh token hiện tại
+     * @return access token và refresh token mới
+     */
+    @Operation(summary = "Làm mới access token", description = "Đổi refresh token lấy access token mới. Refresh token được xoay vòng: token cũ không dùng lại được, dùng lại sẽ thu hồi toàn bộ phiên")
+    @ApiResponses(value = {
+            @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "200", description = "Làm mới thành công", content = @Content(schema = @Schema(implementation = TokenRefreshResponse.class))),
+            @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "401", description = "Refresh token không hợp lệ, hết hạn hoặc đã bị thu hồi")
+    })
+    @PostMapping("/refresh")
+    public ResponseEntity<ApiResponse<TokenRefreshResponse>> refresh(@Valid @RequestBody RefreshTokenRequest request) {
+        log.debug("Nhận yêu cầu làm mới access token");
+
+        try {
+            TokenRefreshResponse response = authService.refresh(request.getRefreshToken());
+            return ResponseEntity.ok(
+                    ApiResponse.success("Làm mới token thành công", response));
+
+        } catch (BadCredentialsException e) {
+            log.warn("Làm mới token thất bại: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
+                    .body(ApiResponse.error(e.getMessage()));
+
+        } catch (Exception e) {
+            log.error("Lỗi không xác định khi làm mới token", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(ApiResponse.error("Có lỗi xảy ra khi làm mới token"));
+        }
+    }
+
+    /**
+     * API logout: thu hồi access token hiện tại và phiên của refresh token
      *
+     * @param authorization header Authorization chứa access token
+     * @param request       refresh token của phiên (không bắt buộc)
      * @return thông báo logout thành công
      */
-    @Operation(summary = "Đăng xuất", description = "Đăng xuất khỏi hệ thống (client cần xóa token)")
+    @Operation(summary = "Đăng xuất", description = "Thu hồi access token hiện tại và refresh token của phiên (nếu gửi kèm); token bị từ chối ngay ở request tiếp theo")
     @ApiResponses(value = {
             @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "200", description = "Đăng xuất thành công")
     })
+    @SecurityRequirement(name = "Bearer Authentication")
     @PostMapping("/logout")
-    public ResponseEntity<ApiResponse<String>> logout() {
+    public ResponseEntity<ApiResponse<String>> logout(
+            @Parameter(hidden = true) @RequestHeader(value = "Authorization", required = false) String authorization,
+            @RequestBody(required = false) LogoutRequest request) {
         log.info("Nhận yêu cầu logout");
 
-        // Với JWT, logout chủ yếu được xử lý ở client side bằng cách xóa token
-        // Server có thể implement blacklist token nếu cần
+        String accessToken = authorization != null && authorization.startsWith("Bearer ")
+                ? authorization.substring(7)
+                : null;
+        authService.logout(accessToken, request != null ? request.getRefreshToken() : null);
 
         return ResponseEntity.ok(
-                ApiResponse.success("Đăng xuất thành công", "Vui lòng xóa token ở client side"));
+                ApiResponse.success("Đăng xuất thành công", "Token đã bị thu hồi"));
     }
 
     /**
@@ -212,13 +267,16 @@ public class AuthController {
     @ApiResponses(value = {
             @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "200", description = "Đăng nhập thành công", content = @Content(schema = @Schema(implementation = CustomerLoginResponse.class))),
             @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "401", description = "Thông tin đăng nhập không chính xác"),
-            @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "403", description = "Tài khoản bị khóa")
+            @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "403", description = "Tài khoản bị khóa"),
+            @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "429", description = "Vượt giới hạn số lần đăng nhập hoặc hệ thống đang bận")
     })
     @PostMapping("/customer/login")
-    public ResponseEntity<ApiResponse<CustomerLoginResponse>> customerLogin(@Valid @RequestBody CustomerLoginRequest loginRequest) {
+    public ResponseEntity<ApiResponse<CustomerLoginResponse>> customerLogin(@Valid @RequestBody CustomerLoginRequest loginRequest,
+                                                                            HttpServletRequest httpRequest) {
         log.info("Nhận yêu cầu đăng nhập từ khách hàng: {}", loginRequest.getEmailOrPhone());
 
         try {
+            loginRateLimiter.checkLoginAttempt(httpRequest.getRemoteAddr(), loginRequest.getEmailOrPhone());
             CustomerLoginResponse loginResponse = authService.customerLogin(loginRequest);
 
             log.info("Đăng nhập thành công cho khách hàng: {}", loginRequest.getEmailOrPhone());
@@ -245,6 +303,11 @@ public class AuthController {
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
                     .body(ApiResponse.error("Xác thực thất bại"));
 
+        } catch (TooManyRequestsException e) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+                    .body(ApiResponse.error(e.getMessage()));
+
         } catch (Exception e) {
             log.error("Lỗi không xác định khi đăng nhập cho khách hàng: {}", loginRequest.getEmailOrPhone(), e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
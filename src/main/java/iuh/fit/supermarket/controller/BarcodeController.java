@@ -0,0 +1,98 @@
+package iuh.fit.supermarket.controller;
+
+import com.google.zxing.BarcodeFormat;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import io.swagger.v3.oas.annotations.security.SecurityRequirement;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import iuh.fit.supermarket.dto.barcode.BarcodeImage;
+import iuh.fit.supermarket.dto.barcode.BarcodeLabelSheetRequest;
+import iuh.fit.supermarket.service.BarcodeLabelService;
+import iuh.fit.supermarket.service.BarcodeService;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.validation.Valid;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+
+import java.io.IOException;
+import java.time.Duration;
+
+/**
+ * Controller render ảnh mã vạch và in tem mã vạch
+ */
+@RestController
+@RequestMapping("/api/barcodes")
+@RequiredArgsConstructor
+@Slf4j
+@Tag(name = "Barcode", description = "APIs render ảnh mã vạch và in tem")
+@SecurityRequirement(name = "Bearer Authentication")
+public class BarcodeController {
+
+    private final BarcodeService barcodeService;
+    private final BarcodeLabelService barcodeLabelService;
+
+    /**
+     * API lấy ảnh PNG của mã vạch
+     * Ảnh chỉ phụ thuộc vào tham số trên URL nên được đánh dấu immutable, client gửi If-None-Match nhận 304
+     */
+    @GetMapping("/{code}")
+    @Operation(summary = "Lấy ảnh mã vạch", description = "Render ảnh PNG của mã vạch theo định dạng và kích thước, có ETag và cache dài hạn")
+    @ApiResponses(value = {
+            @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "200", description = "Ảnh PNG của mã vạch"),
+            @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "304", description = "Ảnh không thay đổi so với ETag của client"),
+            @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "400", description = "Mã hoặc kích thước không hợp lệ")
+    })
+    public ResponseEntity<byte[]> getBarcodeImage(
+            @Parameter(description = "Mã cần render", example = "8934588012345") @PathVariable String code,
+            @Parameter(description = "Định dạng mã vạch") @RequestParam(defaultValue = "CODE_128") BarcodeFormat format,
+            @Parameter(description = "Chiều rộng ảnh (pixel)") @RequestParam(defaultValue = "300") int width,
+            @Parameter(description = "Chiều cao ảnh (pixel)") @RequestParam(defaultValue = "150") int height,
+            WebRequest webRequest) {
+        BarcodeImage image;
+        try {
+            image = barcodeService.renderBarcode(code, format, width, height);
+        } catch (IllegalArgumentException e) {
+            log.warn("Không thể render mã vạch {}: {}", code, e.getMessage());
+            return ResponseEntity.badRequest().build();
+        }
+
+        if (webRequest.checkNotModified(image.etag())) {
+            // Spring đã đặt status 304 và header ETag
+            return null;
+        }
+
+        return ResponseEntity.ok()
+                .contentType(MediaType.IMAGE_PNG)
+                .eTag(image.etag())
+                .cacheControl(CacheControl.maxAge(Duration.ofDays(365)).cachePublic().immutable())
+                .body(image.png());
+    }
+
+    /**
+     * API in tờ tem mã vạch (PDF A4) cho nhiều đơn vị sản phẩm trong một lần render
+     */
+    @PostMapping("/labels")
+    @PreAuthorize("hasAnyRole('ADMIN', 'MANAGER')")
+    @Operation(summary = "In tem mã vạch", description = "Render tờ tem mã vạch PDF gồm tên, đơn vị, mã vạch và giá đang áp dụng của các đơn vị sản phẩm")
+    @ApiResponses(value = {
+            @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "200", description = "File PDF tờ tem"),
+            @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "400", description = "Dữ liệu không hợp lệ")
+    })
+    public void printLabelSheet(@Valid @RequestBody BarcodeLabelSheetRequest request, HttpServletResponse response)
+            throws IOException {
+        log.info("API in tem mã vạch cho {} đơn vị sản phẩm", request.getProductUnitIds().size());
+
+        response.setContentType(MediaType.APPLICATION_PDF_VALUE);
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "inline; filename=\"barcode_labels.pdf\"");
+        int copies = request.getCopies() != null ? request.getCopies() : 1;
+        barcodeLabelService.writeLabelSheet(request.getProductUnitIds(), copies, response.getOutputStream());
+    }
+}
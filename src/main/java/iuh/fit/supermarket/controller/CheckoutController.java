@@ -5,6 +5,7 @@ import iuh.fit.supermarket.dto.checkout.CheckoutResponseDTO;
 import iuh.fit.supermarket.dto.common.ApiResponse;
 import iuh.fit.supermarket.enums.OrderStatus;
 import iuh.fit.supermarket.service.CheckoutService;
+import iuh.fit.supermarket.service.OrderStatusStreamService;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
@@ -14,8 +15,10 @@ import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 /**
  * Controller xử lý các API liên quan đến checkout và đơn hàng
@@ -27,6 +30,7 @@ import org.springframework.web.bind.annotation.*;
 public class CheckoutController {
 
     private final CheckoutService checkoutService;
+    private final OrderStatusStreamService orderStatusStreamService;
 
     /**
      * API checkout giỏ hàng cho khách hàng
@@ -91,6 +95,22 @@ public class CheckoutController {
                 "Lấy danh sách đơn hàng thành công", orders));
     }
 
+    /**
+     * API theo dõi trạng thái đơn hàng của khách hàng theo thời gian thực (Server-Sent Events)
+     * - Mỗi lần đơn hàng được tạo hoặc đổi trạng thái sẽ nhận một sự kiện "order-status"
+     * - Client chậm chỉ nhận các sự kiện mới nhất, sự kiện cũ bị bỏ khi bộ đệm đầy
+     *
+     * @param authentication thông tin xác thực của khách hàng
+     * @return luồng sự kiện trạng thái đơn hàng
+     */
+    @GetMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamOrderStatus(Authentication authentication) {
+        String username = authentication.getName();
+        log.info("Khách hàng {} mở kết nối theo dõi trạng thái đơn hàng", username);
+
+        return orderStatusStreamService.subscribeCustomer(username);
+    }
+
     /**
      * API lấy thông tin chi tiết đơn hàng của khách hàng
      * - Chỉ cho phép xem đơn hàng của chính mình
@@ -9,6 +9,7 @@ import io.swagger.v3.oas.annotations.security.SecurityRequirement;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import iuh.fit.supermarket.dto.common.ApiResponse;
 import iuh.fit.supermarket.dto.customer.*;
+import iuh.fit.supermarket.dto.job.JobStatusResponse;
 import iuh.fit.supermarket.dto.sale.SaleInvoiceFullDTO;
 import iuh.fit.supermarket.enums.CustomerType;
 import iuh.fit.supermarket.service.CustomerService;
@@ -22,6 +23,10 @@ import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 import iuh.fit.supermarket.service.CustomerExcelService;
+import iuh.fit.supermarket.service.CustomerImportService;
+import iuh.fit.supermarket.service.JobProgressService;
+import iuh.fit.supermarket.service.LoyaltyService;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import java.io.IOException;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
@@ -43,6 +48,9 @@ public class CustomerController {
 
         private final CustomerService customerService;
         private final CustomerExcelService customerExcelService;
+        private final CustomerImportService customerImportService;
+        private final JobProgressService jobProgressService;
+        private final LoyaltyService loyaltyService;
 
         /**
          * Lấy danh sách khách hàng với phân trang
@@ -302,42 +310,30 @@ public class CustomerController {
 
         /**
          * API export danh sách khách hàng ra file Excel
+         * File được ghi dần vào response trong khi đọc dữ liệu
          */
         @GetMapping("/export")
         @PreAuthorize("hasRole('ADMIN') or hasRole('MANAGER')")
         @Operation(summary = "Export khách hàng ra Excel", description = "Export danh sách khách hàng ra file Excel")
-        public ResponseEntity<byte[]> exportCustomersToExcel() {
+        public ResponseEntity<StreamingResponseBody> exportCustomersToExcel() {
                 log.info("API export danh sách khách hàng ra Excel");
 
-                try {
-                        // Lấy tất cả khách hàng
-                        List<CustomerDto> customers = customerService.getAllCustomers();
-
-                        // Export ra Excel
-                        byte[] excelData = customerExcelService.exportCustomersToExcel(customers);
+                // Tạo tên file với timestamp
+                String fileName = "danh_sach_khach_hang_" +
+                                LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss"))
+                                + ".xlsx";
 
-                        // Tạo tên file với timestamp
-                        String fileName = "danh_sach_khach_hang_" +
-                                        LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss"))
-                                        + ".xlsx";
+                StreamingResponseBody body = outputStream -> customerExcelService.exportCustomers(outputStream,
+                                count -> {
+                                });
 
-                        HttpHeaders headers = new HttpHeaders();
-                        headers.setContentType(MediaType.APPLICATION_OCTET_STREAM);
-                        headers.setContentDispositionFormData("attachment", fileName);
-                        headers.setContentLength(excelData.length);
+                HttpHeaders headers = new HttpHeaders();
+                headers.setContentType(MediaType.APPLICATION_OCTET_STREAM);
+                headers.setContentDispositionFormData("attachment", fileName);
 
-                        log.info("Export Excel thành công với {} khách hàng", customers.size());
-                        return ResponseEntity.ok()
-                                        .headers(headers)
-                                        .body(excelData);
-
-                } catch (IOException e) {
-                        log.error("Lỗi khi export Excel: ", e);
-                        return ResponseEntity.internalServerError().build();
-                } catch (Exception e) {
-                        log.error("Lỗi khi export khách hàng: ", e);
-                        return ResponseEntity.internalServerError().build();
-                }
+                return ResponseEntity.ok()
+                                .headers(headers)
+                                .body(body);
         }
 
         /**
@@ -350,53 +346,26 @@ public class CustomerController {
                         @Parameter(description = "File Excel chứa danh sách khách hàng") @RequestParam("file") MultipartFile file) {
                 log.info("API import khách hàng từ file Excel: {}", file.getOriginalFilename());
 
-                try {
-                        // Validate file
-                        if (file.isEmpty()) {
-                                return ResponseEntity.badRequest()
-                                                .body(ApiResponse.error("File không được để trống"));
-                        }
-
-                        String fileName = file.getOriginalFilename();
-                        if (fileName == null || (!fileName.endsWith(".xlsx") && !fileName.endsWith(".xls"))) {
-                                return ResponseEntity.badRequest()
-                                                .body(ApiResponse.error(
-                                                                "File phải có định dạng Excel (.xlsx hoặc .xls)"));
-                        }
+                String validationError = validateExcelFile(file);
+                if (validationError != null) {
+                        return ResponseEntity.badRequest().body(ApiResponse.error(validationError));
+                }
 
-                        // Parse Excel file
-                        List<CreateCustomerRequest> requests = customerExcelService.importCustomersFromExcel(file);
+                try {
+                        CustomerImportResult result = customerImportService.importCustomers(file);
 
-                        if (requests.isEmpty()) {
+                        if (result.totalRows() == 0 && result.errorCount() == 0) {
                                 return ResponseEntity.badRequest()
                                                 .body(ApiResponse.error(
                                                                 "File Excel không chứa dữ liệu khách hàng hợp lệ"));
                         }
 
-                        // Import customers
-                        int successCount = 0;
-                        int errorCount = 0;
-                        StringBuilder errorMessages = new StringBuilder();
-
-                        for (int i = 0; i < requests.size(); i++) {
-                                try {
-                                        customerService.createCustomerByAdmin(requests.get(i));
-                                        successCount++;
-                                } catch (Exception e) {
-                                        errorCount++;
-                                        errorMessages.append("Dòng ").append(i + 2).append(": ").append(e.getMessage())
-                                                        .append("; ");
-                                        log.warn("Lỗi khi import khách hàng dòng {}: {}", i + 2, e.getMessage());
-                                }
+                        String message = String.format("Import hoàn tất: %d thành công, %d lỗi",
+                                        result.successCount(), result.errorCount());
+                        if (result.errorCount() > 0) {
+                                message += ". Chi tiết lỗi: " + String.join("; ", result.errors()) + "; ";
                         }
 
-                        String message = String.format("Import hoàn tất: %d thành công, %d lỗi", successCount,
-                                        errorCount);
-                        if (errorCount > 0) {
-                                message += ". Chi tiết lỗi: " + errorMessages.toString();
-                        }
-
-                        log.info("Import Excel hoàn tất: {} thành công, {} lỗi", successCount, errorCount);
                         return ResponseEntity.ok(ApiResponse.success(message));
 
                 } catch (IOException e) {
@@ -410,6 +379,65 @@ public class CustomerController {
                 }
         }
 
+        /**
+         * API tạo tác vụ import khách hàng chạy nền
+         * Theo dõi tiến độ và lỗi theo từng dòng qua /api/customers/import/jobs/{jobId}
+         */
+        @PostMapping("/import/jobs")
+        @PreAuthorize("hasRole('ADMIN') or hasRole('MANAGER')")
+        @Operation(summary = "Import khách hàng chạy nền", description = "Tạo tác vụ import khách hàng từ Excel chạy nền và trả về mã tác vụ để theo dõi tiến độ")
+        @ApiResponses(value = {
+                        @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "202", description = "Đã tạo tác vụ import"),
+                        @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "400", description = "File không hợp lệ")
+        })
+        public ResponseEntity<ApiResponse<JobStatusResponse>> startImportJob(
+                        @Parameter(description = "File Excel chứa danh sách khách hàng") @RequestParam("file") MultipartFile file) {
+                log.info("API tạo tác vụ import khách hàng chạy nền: {}", file.getOriginalFilename());
+
+                String validationError = validateExcelFile(file);
+                if (validationError != null) {
+                        return ResponseEntity.badRequest().body(ApiResponse.error(validationError));
+                }
+
+                try {
+                        JobStatusResponse job = customerImportService.startImportJob(file);
+                        return ResponseEntity.status(HttpStatus.ACCEPTED)
+                                        .body(ApiResponse.success("Đã tạo tác vụ import", job));
+                } catch (IOException e) {
+                        log.error("Lỗi khi lưu file import: ", e);
+                        return ResponseEntity.badRequest()
+                                        .body(ApiResponse.error("Lỗi khi đọc file Excel: " + e.getMessage()));
+                }
+        }
+
+        /**
+         * API lấy tiến độ tác vụ import khách hàng
+         */
+        @GetMapping("/import/jobs/{jobId}")
+        @PreAuthorize("hasRole('ADMIN') or hasRole('MANAGER')")
+        @Operation(summary = "Tiến độ import khách hàng", description = "Lấy trạng thái, số dòng đã xử lý và lỗi theo từng dòng của tác vụ import")
+        public ResponseEntity<ApiResponse<JobStatusResponse>> getImportJobStatus(@PathVariable String jobId) {
+                return ResponseEntity.ok(ApiResponse.success("Lấy trạng thái tác vụ thành công",
+                                jobProgressService.getStatus(jobId)));
+        }
+
+        /**
+         * Kiểm tra file upload là file Excel
+         *
+         * @return thông báo lỗi, hoặc null nếu hợp lệ
+         */
+        private String validateExcelFile(MultipartFile file) {
+                if (file.isEmpty()) {
+                        return "File không được để trống";
+                }
+
+                String fileName = file.getOriginalFilename();
+                if (fileName == null || (!fileName.endsWith(".xlsx") && !fileName.endsWith(".xls"))) {
+                        return "File phải có định dạng Excel (.xlsx hoặc .xls)";
+                }
+                return null;
+        }
+
         /**
          * API tải template Excel để import khách hàng
          */
@@ -506,6 +534,34 @@ public class CustomerController {
                 return ResponseEntity.ok(ApiResponse.success("Lấy chi tiết hóa đơn thành công", invoice));
         }
 
+        /**
+         * Khách hàng xem số dư và lịch sử điểm tích lũy của chính mình
+         */
+        @Operation(summary = "Lấy điểm tích lũy của tôi", description = "API dành cho khách hàng xem số dư điểm tích lũy hiện tại và lịch sử tích/dùng điểm (mới nhất trước). Thông tin khách hàng được lấy từ token đăng nhập.")
+        @ApiResponses(value = {
+                        @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "200", description = "Lấy điểm tích lũy thành công", content = @Content(schema = @Schema(implementation = LoyaltySummaryDto.class))),
+                        @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "401", description = "Chưa đăng nhập hoặc token không hợp lệ"),
+                        @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "404", description = "Không tìm thấy thông tin khách hàng")
+        })
+        @GetMapping("/my-loyalty")
+        @PreAuthorize("hasRole('CUSTOMER')")
+        public ResponseEntity<ApiResponse<LoyaltySummaryDto>> getMyLoyalty(
+                        @Parameter(description = "Số trang lịch sử (bắt đầu từ 0)") @RequestParam(defaultValue = "0") int page,
+                        @Parameter(description = "Kích thước trang lịch sử") @RequestParam(defaultValue = "10") int size) {
+
+                // Lấy username từ SecurityContext
+                String username = org.springframework.security.core.context.SecurityContextHolder
+                                .getContext()
+                                .getAuthentication()
+                                .getName();
+
+                log.info("Khách hàng {} yêu cầu xem điểm tích lũy, page: {}, size: {}", username, page, size);
+
+                LoyaltySummaryDto loyalty = loyaltyService.getMyLoyalty(username, page, size);
+
+                return ResponseEntity.ok(ApiResponse.success("Lấy điểm tích lũy thành công", loyalty));
+        }
+
         /**
          * Khách hàng tự cập nhật thông tin cá nhân
          */
@@ -0,0 +1,39 @@
+package iuh.fit.supermarket.controller;
+
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.security.SecurityRequirement;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import iuh.fit.supermarket.dto.common.ApiResponse;
+import iuh.fit.supermarket.dto.job.JobStatusResponse;
+import iuh.fit.supermarket.service.JobProgressService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * Controller theo dõi tiến độ các tác vụ chạy nền (export/import dữ liệu)
+ */
+@RestController
+@RequestMapping("/api/jobs")
+@Tag(name = "Background Jobs", description = "APIs theo dõi tác vụ chạy nền")
+@SecurityRequirement(name = "Bearer Authentication")
+@RequiredArgsConstructor
+public class JobController {
+
+    private final JobProgressService jobProgressService;
+
+    /**
+     * API lấy trạng thái và tiến độ của tác vụ chạy nền
+     */
+    @GetMapping("/{jobId}")
+    @PreAuthorize("hasAnyRole('ADMIN', 'MANAGER')")
+    @Operation(summary = "Trạng thái tác vụ nền", description = "Lấy trạng thái, tiến độ và link kết quả của tác vụ chạy nền")
+    public ResponseEntity<ApiResponse<JobStatusResponse>> getJobStatus(@PathVariable String jobId) {
+        return ResponseEntity.ok(ApiResponse.success("Lấy trạng thái tác vụ thành công",
+                jobProgressService.getStatus(jobId)));
+    }
+}
@@ -6,7 +6,9 @@ import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.security.SecurityRequirement;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import iuh.fit.supermarket.dto.common.ApiResponse;
+import iuh.fit.supermarket.dto.job.JobStatusResponse;
 import iuh.fit.supermarket.dto.product.ProductCreateRequest;
+import iuh.fit.supermarket.dto.product.ProductImportResult;
 import iuh.fit.supermarket.dto.product.ProductListResponse;
 import iuh.fit.supermarket.dto.product.ProductPageableRequest;
 import iuh.fit.supermarket.dto.product.ProductResponse;
@@ -15,9 +17,12 @@ import iuh.fit.supermarket.dto.product.ProductUnitDetailResponse;
 import iuh.fit.supermarket.dto.product.ProductUnitRequest;
 import iuh.fit.supermarket.dto.product.ProductUnitUpdateRequest;
 import iuh.fit.supermarket.dto.product.ProductUnitResponse;
+import iuh.fit.supermarket.dto.product.RecommendedProductResponse;
 import iuh.fit.supermarket.service.ProductService;
 import iuh.fit.supermarket.service.ProductExcelService;
-import iuh.fit.supermarket.service.S3FileUploadService;
+import iuh.fit.supermarket.service.ProductExportService;
+import iuh.fit.supermarket.service.ProductImportService;
+import iuh.fit.supermarket.service.ProductRecommendationService;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -32,6 +37,7 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.io.IOException;
 import java.time.LocalDateTime;
@@ -51,7 +57,9 @@ public class ProductController {
 
     private final ProductService productService;
     private final ProductExcelService productExcelService;
-    private final S3FileUploadService s3FileUploadService;
+    private final ProductExportService productExportService;
+    private final ProductImportService productImportService;
+    private final ProductRecommendationService productRecommendationService;
     private final iuh.fit.supermarket.repository.UserRepository userRepository;
     private final iuh.fit.supermarket.repository.CustomerRepository customerRepository;
 
@@ -593,6 +601,53 @@ public class ProductController {
         }
     }
 
+    /**
+     * API lấy sản phẩm thường được mua cùng một ProductUnit
+     */
+    @GetMapping("/units/{productUnitId}/recommendations")
+    @Operation(summary = "Lấy sản phẩm thường mua cùng", description = "Lấy các đơn vị sản phẩm thường xuất hiện cùng ProductUnit trong các hóa đơn đã thanh toán, xếp theo mức độ liên quan")
+    @ApiResponses(value = {
+            @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "200", description = "Lấy danh sách gợi ý thành công")
+    })
+    public ResponseEntity<ApiResponse<List<RecommendedProductResponse>>> getFrequentlyBoughtTogether(
+            @Parameter(description = "ID của ProductUnit") @PathVariable Long productUnitId,
+            @Parameter(description = "Số lượng kết quả tối đa") @RequestParam(defaultValue = "10") int limit) {
+        log.info("API lấy sản phẩm thường mua cùng ProductUnit ID: {}", productUnitId);
+
+        try {
+            List<RecommendedProductResponse> recommendations =
+                    productRecommendationService.getFrequentlyBoughtTogether(productUnitId, limit);
+            return ResponseEntity.ok(ApiResponse.success("Lấy danh sách gợi ý thành công", recommendations));
+        } catch (Exception e) {
+            log.error("Lỗi khi lấy sản phẩm thường mua cùng: ", e);
+            return ResponseEntity.badRequest().body(ApiResponse.error(e.getMessage()));
+        }
+    }
+
+    /**
+     * API lấy sản phẩm gợi ý cho khách hàng đang đăng nhập
+     * Chưa đăng nhập hoặc không phải khách hàng thì trả về danh sách bán chạy
+     */
+    @GetMapping("/recommendations")
+    @Operation(summary = "Lấy sản phẩm gợi ý", description = "Gợi ý sản phẩm dựa trên lịch sử mua và sản phẩm yêu thích của khách hàng đang đăng nhập; khách chưa có lịch sử nhận danh sách bán chạy")
+    @ApiResponses(value = {
+            @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "200", description = "Lấy danh sách gợi ý thành công")
+    })
+    public ResponseEntity<ApiResponse<List<RecommendedProductResponse>>> getRecommendations(
+            @Parameter(description = "Số lượng kết quả tối đa") @RequestParam(defaultValue = "10") int limit) {
+        Integer customerId = getCustomerIdIfAuthenticated();
+        log.info("API lấy sản phẩm gợi ý cho khách hàng ID: {}", customerId);
+
+        try {
+            List<RecommendedProductResponse> recommendations =
+                    productRecommendationService.getRecommendationsForCustomer(customerId, limit);
+            return ResponseEntity.ok(ApiResponse.success("Lấy danh sách gợi ý thành công", recommendations));
+        } catch (Exception e) {
+            log.error("Lỗi khi lấy sản phẩm gợi ý: ", e);
+            return ResponseEntity.badRequest().body(ApiResponse.error(e.getMessage()));
+        }
+    }
+
     // ==================== EXCEL IMPORT/EXPORT ====================
 
     /**
@@ -611,25 +666,7 @@ public class ProductController {
         log.info("API export danh sách sản phẩm ra Excel");
 
         try {
-            // Lấy tất cả sản phẩm đang hoạt động
-            List<ProductResponse> products = productService.getAllActiveProducts();
-
-            // Export ra Excel
-            byte[] excelData = productExcelService.exportProductsToExcel(products);
-
-            // Tạo tên file với timestamp
-            String fileName = "danh_sach_san_pham_" +
-                    LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss")) + ".xlsx";
-
-            // Upload file lên R2 storage và lấy URL download
-            String downloadUrl = s3FileUploadService.uploadFile(
-                    excelData,
-                    fileName,
-                    "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet",
-                    "exports"
-            );
-
-            log.info("Export Excel thành công với {} sản phẩm, URL: {}", products.size(), downloadUrl);
+            String downloadUrl = productExportService.exportToStorage();
             return ResponseEntity.ok(ApiResponse.success("Export thành công", downloadUrl));
 
         } catch (IOException e) {
@@ -643,6 +680,47 @@ public class ProductController {
         }
     }
 
+    /**
+     * API tạo tác vụ export sản phẩm chạy nền
+     * Theo dõi tiến độ và lấy link download qua /api/jobs/{jobId}
+     */
+    @PostMapping("/export/jobs")
+    @PreAuthorize("hasAnyRole('ADMIN', 'MANAGER')")
+    @Operation(summary = "Export sản phẩm chạy nền", description = "Tạo tác vụ export sản phẩm ra Excel chạy nền và trả về mã tác vụ để theo dõi tiến độ")
+    @ApiResponses(value = {
+            @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "202", description = "Đã tạo tác vụ export"),
+            @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "403", description = "Không có quyền thực hiện")
+    })
+    public ResponseEntity<ApiResponse<JobStatusResponse>> startExportJob() {
+        log.info("API tạo tác vụ export sản phẩm chạy nền");
+
+        JobStatusResponse job = productExportService.startExportJob();
+        return ResponseEntity.status(HttpStatus.ACCEPTED)
+                .body(ApiResponse.success("Đã tạo tác vụ export", job));
+    }
+
+    /**
+     * API tải trực tiếp file Excel sản phẩm
+     * File được ghi dần vào response trong khi đọc dữ liệu
+     */
+    @GetMapping("/export/download")
+    @PreAuthorize("hasAnyRole('ADMIN', 'MANAGER')")
+    @Operation(summary = "Tải file Excel sản phẩm", description = "Export danh sách sản phẩm và ghi thẳng file Excel vào response")
+    public ResponseEntity<StreamingResponseBody> downloadProductsExcel() {
+        log.info("API tải trực tiếp file Excel sản phẩm");
+
+        String fileName = "danh_sach_san_pham_" +
+                LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss")) + ".xlsx";
+
+        StreamingResponseBody body = productExportService::exportTo;
+
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=" + fileName)
+                .contentType(MediaType.parseMediaType(
+                        "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet"))
+                .body(body);
+    }
+
     /**
      * API import sản phẩm từ file Excel
      */
@@ -658,50 +736,25 @@ public class ProductController {
             @Parameter(description = "File Excel chứa danh sách sản phẩm") @RequestParam("file") MultipartFile file) {
         log.info("API import sản phẩm từ file Excel: {}", file.getOriginalFilename());
 
-        try {
-            // Validate file
-            if (file.isEmpty()) {
-                return ResponseEntity.badRequest()
-                        .body(ApiResponse.error("File không được để trống"));
-            }
-
-            String fileName = file.getOriginalFilename();
-            if (fileName == null || (!fileName.endsWith(".xlsx") && !fileName.endsWith(".xls"))) {
-                return ResponseEntity.badRequest()
-                        .body(ApiResponse.error("File phải có định dạng Excel (.xlsx hoặc .xls)"));
-            }
+        String validationError = validateExcelFile(file);
+        if (validationError != null) {
+            return ResponseEntity.badRequest().body(ApiResponse.error(validationError));
+        }
 
-            // Parse Excel file
-            List<ProductCreateRequest> products = productExcelService.importProductsFromExcel(file);
+        try {
+            ProductImportResult result = productImportService.importProducts(file);
 
-            if (products.isEmpty()) {
+            if (result.totalProducts() == 0 && result.errorCount() == 0) {
                 return ResponseEntity.badRequest()
                         .body(ApiResponse.error("File Excel không chứa dữ liệu sản phẩm hợp lệ"));
             }
 
-            // Import products
-            int successCount = 0;
-            int errorCount = 0;
-            StringBuilder errorMessages = new StringBuilder();
-
-            for (int i = 0; i < products.size(); i++) {
-                try {
-                    ProductCreateRequest product = products.get(i);
-                    productService.createProduct(product);
-                    successCount++;
-                } catch (Exception e) {
-                    errorCount++;
-                    errorMessages.append("Dòng ").append(i + 2).append(": ").append(e.getMessage()).append("; ");
-                    log.warn("Lỗi khi import sản phẩm dòng {}: {}", i + 2, e.getMessage());
-                }
+            String message = String.format("Import hoàn tất: %d thành công, %d lỗi",
+                    result.successCount(), result.errorCount());
+            if (result.errorCount() > 0) {
+                message += ". Chi tiết lỗi: " + String.join("; ", result.errors());
             }
 
-            String message = String.format("Import hoàn tất: %d thành công, %d lỗi", successCount, errorCount);
-            if (errorCount > 0) {
-                message += ". Chi tiết lỗi: " + errorMessages.toString();
-            }
-
-            log.info("Import Excel hoàn tất: {} thành công, {} lỗi", successCount, errorCount);
             return ResponseEntity.ok(ApiResponse.success(message));
 
         } catch (IOException e) {
@@ -715,6 +768,55 @@ public class ProductController {
         }
     }
 
+    /**
+     * API tạo tác vụ import sản phẩm chạy nền
+     * Theo dõi tiến độ và lỗi theo từng dòng qua /api/jobs/{jobId}
+     */
+    @PostMapping("/import/jobs")
+    @PreAuthorize("hasAnyRole('ADMIN', 'MANAGER')")
+    @Operation(summary = "Import sản phẩm chạy nền", description = "Tạo tác vụ import sản phẩm từ Excel chạy nền và trả về mã tác vụ để theo dõi tiến độ, lỗi theo từng dòng")
+    @ApiResponses(value = {
+            @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "202", description = "Đã tạo tác vụ import"),
+            @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "400", description = "File không hợp lệ"),
+            @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "403", description = "Không có quyền thực hiện")
+    })
+    public ResponseEntity<ApiResponse<JobStatusResponse>> startImportJob(
+            @Parameter(description = "File Excel chứa danh sách sản phẩm") @RequestParam("file") MultipartFile file) {
+        log.info("API tạo tác vụ import sản phẩm chạy nền: {}", file.getOriginalFilename());
+
+        String validationError = validateExcelFile(file);
+        if (validationError != null) {
+            return ResponseEntity.badRequest().body(ApiResponse.error(validationError));
+        }
+
+        try {
+            JobStatusResponse job = productImportService.startImportJob(file);
+            return ResponseEntity.status(HttpStatus.ACCEPTED)
+                    .body(ApiResponse.success("Đã tạo tác vụ import", job));
+        } catch (IOException e) {
+            log.error("Lỗi khi lưu file import: ", e);
+            return ResponseEntity.badRequest()
+                    .body(ApiResponse.error("Lỗi khi đọc file Excel: " + e.getMessage()));
+        }
+    }
+
+    /**
+     * Kiểm tra file upload là file Excel
+     *
+     * @return thông báo lỗi, hoặc null nếu hợp lệ
+     */
+    private String validateExcelFile(MultipartFile file) {
+        if (file.isEmpty()) {
+            return "File không được để trống";
+        }
+
+        String fileName = file.getOriginalFilename();
+        if (fileName == null || (!fileName.endsWith(".xlsx") && !fileName.endsWith(".xls"))) {
+            return "File phải có định dạng Excel (.xlsx hoặc .xls)";
+        }
+        return null;
+    }
+
     /**
      * API tải template Excel để import sản phẩm
      */
@@ -2,7 +2,9 @@ package iuh.fit.supermarket.controller;
 
 import iuh.fit.supermarket.dto.common.ApiResponse;
 import iuh.fit.supermarket.dto.sale.*;
+import iuh.fit.supermarket.service.SaleBatchService;
 import iuh.fit.supermarket.service.SaleService;
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -11,6 +13,8 @@ import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
 
+import java.io.IOException;
+
 /**
  * Controller xử lý các API liên quan đến bán hàng
  */
@@ -21,6 +25,7 @@ import org.springframework.web.bind.annotation.*;
 public class SaleController {
 
     private final SaleService saleService;
+    private final SaleBatchService saleBatchService;
 
     /**
      * API tạo bán hàng mới
@@ -46,6 +51,27 @@ public class SaleController {
         return ResponseEntity.ok(ApiResponse.success("Tạo bán hàng thành công", response));
     }
 
+    /**
+     * API đồng bộ bán hàng theo lô từ máy POS
+     * - Máy POS gửi nhiều hóa đơn tiền mặt đã hoàn tất trong một lần gọi (tối đa 500)
+     * - Mỗi hóa đơn có clientSaleId do máy POS sinh, gửi lại không tạo hóa đơn trùng
+     * - Trừ kho, lưu khuyến mãi và cập nhật lượt sử dụng khuyến mãi theo nhóm
+     * - Trả kết quả cho từng hóa đơn: CREATED, DUPLICATE hoặc FAILED
+     *
+     * @param request lô hóa đơn cần đồng bộ
+     * @return kết quả xử lý từng hóa đơn
+     */
+    @PostMapping("/batch")
+    public ResponseEntity<ApiResponse<BatchSaleResponseDTO>> createSalesBatch(
+            @Valid @RequestBody BatchSaleRequestDTO request) {
+
+        log.info("Nhận lô {} hóa đơn từ máy POS: {}", request.sales().size(), request.terminalId());
+
+        BatchSaleResponseDTO response = saleBatchService.createSalesBatch(request);
+
+        return ResponseEntity.ok(ApiResponse.success("Đồng bộ lô hóa đơn thành công", response));
+    }
+
     /**
      * API lấy trạng thái hóa đơn
      * - Dùng để polling kiểm tra invoice đã PAID chưa
@@ -239,19 +265,17 @@ public class SaleController {
     /**
      * API tạo HTML hóa đơn để in trực tiếp từ trình duyệt
      * 
+     * HTML được ghi thẳng vào response, không tạo chuỗi trung gian
+     * 
      * @param invoiceId ID của hoá đơn
-     * @return HTML content có thể in trực tiếp (Ctrl+P hoặc nút In)
+     * @param response  HTTP response nhận HTML có thể in trực tiếp (Ctrl+P hoặc nút In)
      */
     @GetMapping("/{invoiceId}/print")
-    public ResponseEntity<String> printInvoiceHtml(@PathVariable Integer invoiceId) {
+    public void printInvoiceHtml(@PathVariable Integer invoiceId, HttpServletResponse response)
+            throws IOException {
         log.info("Tạo HTML để in cho hóa đơn ID: {}", invoiceId);
 
-        String htmlContent = saleService.generateInvoiceHtml(invoiceId);
-
-        org.springframework.http.HttpHeaders headers = new org.springframework.http.HttpHeaders();
-        headers.setContentType(org.springframework.http.MediaType.TEXT_HTML);
-        headers.add("Content-Type", "text/html; charset=UTF-8");
-
-        return new ResponseEntity<>(htmlContent, headers, org.springframework.http.HttpStatus.OK);
+        response.setContentType("text/html; charset=UTF-8");
+        saleService.writeInvoiceHtml(invoiceId, response.getWriter());
     }
 }
@@ -5,8 +5,10 @@ import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.security.SecurityRequirement;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import iuh.fit.supermarket.dto.common.ApiResponse;
+import iuh.fit.supermarket.dto.job.JobStatusResponse;
 import iuh.fit.supermarket.dto.stocktake.*;
 import iuh.fit.supermarket.enums.StocktakeStatus;
+import iuh.fit.supermarket.service.StocktakeCountingService;
 import iuh.fit.supermarket.service.StocktakeService;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
@@ -35,6 +37,7 @@ import java.util.List;
 public class StocktakeController {
 
     private final StocktakeService stocktakeService;
+    private final StocktakeCountingService stocktakeCountingService;
 
     /**
      * Tạo phiếu kiểm kê mới
@@ -140,6 +143,23 @@ public class StocktakeController {
         }
     }
 
+    /**
+     * Hoàn thành phiếu kiểm kê dưới dạng tác vụ nền
+     * Theo dõi tiến độ qua /api/jobs/{jobId}
+     */
+    @PostMapping("/{stocktakeId}/complete/jobs")
+    @Operation(summary = "Hoàn thành phiếu kiểm kê chạy nền", description = "Tạo tác vụ nền hoàn thành phiếu kiểm kê và cập nhật tồn kho theo từng lô, "
+            + "trả về mã tác vụ để theo dõi tiến độ qua /api/jobs/{jobId}")
+    public ResponseEntity<ApiResponse<JobStatusResponse>> startCompleteStocktakeJob(
+            @Parameter(description = "ID phiếu kiểm kê", required = true) @PathVariable Integer stocktakeId) {
+
+        log.info("API tạo tác vụ hoàn thành phiếu kiểm kê ID: {}", stocktakeId);
+
+        JobStatusResponse job = stocktakeService.startCompleteStocktakeJob(stocktakeId);
+        return ResponseEntity.status(HttpStatus.ACCEPTED)
+                .body(ApiResponse.success("Đã tạo tác vụ hoàn thành phiếu kiểm kê", job));
+    }
+
     /**
      * Cập nhật số lượng tồn kho mới nhất cho phiếu kiểm kê
      */
@@ -332,6 +352,31 @@ public class StocktakeController {
         }
     }
 
+    /**
+     * Gửi một lô lượt quét kiểm kê từ máy quét
+     * Nhiều máy quét có thể gửi đồng thời cho cùng một phiếu; số lượng được cộng dồn và ghi định kỳ
+     */
+    @PostMapping("/{stocktakeId}/scans")
+    @Operation(summary = "Gửi lượt quét kiểm kê", description = "Gửi một lô lượt quét (đơn vị sản phẩm, số lượng đếm thêm) cho phiếu kiểm kê. "
+            + "Số lượng được cộng dồn với các máy quét khác và ghi vào chi tiết kiểm kê sau vài giây")
+    public ResponseEntity<ApiResponse<StocktakeScanResponse>> submitScans(
+            @Parameter(description = "ID phiếu kiểm kê", required = true) @PathVariable Integer stocktakeId,
+            @Valid @RequestBody StocktakeScanRequest request) {
+
+        log.debug("API nhận {} lượt quét cho phiếu kiểm kê ID: {} từ thiết bị {}",
+                request.getScans().size(), stocktakeId, request.getDeviceId());
+
+        try {
+            StocktakeScanResponse response = stocktakeCountingService.submitScans(stocktakeId, request.getScans());
+            return ResponseEntity.status(HttpStatus.ACCEPTED)
+                    .body(ApiResponse.success("Đã ghi nhận lượt quét", response));
+
+        } catch (Exception e) {
+            log.error("Lỗi khi ghi nhận lượt quét kiểm kê: ", e);
+            return ResponseEntity.badRequest().body(ApiResponse.error(e.getMessage()));
+        }
+    }
+
     /**
      * Xóa chi tiết kiểm kê
      */
@@ -33,6 +33,16 @@ public class CustomerLoginResponse {
      */
     private CustomerInfo customer;
 
+    /**
+     * Refresh token dùng để lấy access token mới khi access token hết hạn
+     */
+    private String refreshToken;
+
+    /**
+     * Thời gian hết hạn refresh token (milliseconds)
+     */
+    private Long refreshExpiresIn;
+
     /**
      * Constructor với token và customer info
      */
@@ -34,6 +34,16 @@ public class LoginResponse {
      */
     private EmployeeInfo employee;
 
+    /**
+     * Refresh token dùng để lấy access token mới khi access token hết hạn
+     */
+    private String refreshToken;
+
+    /**
+     * Thời gian hết hạn refresh token (milliseconds)
+     */
+    private Long refreshExpiresIn;
+
     /**
      * Constructor với token và employee info
      */
@@ -0,0 +1,19 @@
+package iuh.fit.supermarket.dto.auth;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * DTO cho yêu cầu đăng xuất
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class LogoutRequest {
+
+    /**
+     * Refresh token của phiên cần thu hồi (không bắt buộc)
+     */
+    private String refreshToken;
+}
@@ -0,0 +1,21 @@
+package iuh.fit.supermarket.dto.auth;
+
+import jakarta.validation.constraints.NotBlank;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * DTO cho yêu cầu làm mới access token
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class RefreshTokenRequest {
+
+    /**
+     * Refresh token nhận được khi đăng nhập hoặc lần refresh trước
+     */
+    @NotBlank(message = "Refresh token không được để trống")
+    private String refreshToken;
+}
@@ -0,0 +1,49 @@
+package iuh.fit.supermarket.dto.auth;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * DTO cho phản hồi làm mới access token
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class TokenRefreshResponse {
+
+    /**
+     * JWT access token mới
+     */
+    private String accessToken;
+
+    /**
+     * Loại token (Bearer)
+     */
+    private String tokenType = "Bearer";
+
+    /**
+     * Thời gian hết hạn access token (milliseconds)
+     */
+    private Long expiresIn;
+
+    /**
+     * Refresh token mới (refresh token cũ không dùng được nữa)
+     */
+    private String refreshToken;
+
+    /**
+     * Thời gian hết hạn refresh token (milliseconds)
+     */
+    private Long refreshExpiresIn;
+
+    /**
+     * Constructor với token và thời hạn
+     */
+    public TokenRefreshResponse(String accessToken, Long expiresIn, String refreshToken, Long refreshExpiresIn) {
+        this.accessToken = accessToken;
+        this.expiresIn = expiresIn;
+        this.refreshToken = refreshToken;
+        this.refreshExpiresIn = refreshExpiresIn;
+    }
+}
@@ -0,0 +1,10 @@
+package iuh.fit.supermarket.dto.barcode;
+
+/**
+ * Ảnh barcode đã render (PNG) kèm ETag tính từ nội dung ảnh
+ *
+ * @param png  nội dung ảnh PNG (không được sửa, dùng chung từ cache)
+ * @param etag ETag dạng chuỗi có dấu ngoặc kép, dùng cho HTTP caching
+ */
+public record BarcodeImage(byte[] png, String etag) {
+}
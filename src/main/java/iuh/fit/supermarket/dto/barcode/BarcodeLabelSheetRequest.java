@@ -0,0 +1,38 @@
+package iuh.fit.supermarket.dto.barcode;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.Size;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * DTO cho yêu cầu in tem mã vạch của nhiều đơn vị sản phẩm
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Schema(description = "Yêu cầu in tem mã vạch")
+public class BarcodeLabelSheetRequest {
+
+    /**
+     * Danh sách ID đơn vị sản phẩm cần in tem
+     */
+    @NotEmpty(message = "Danh sách đơn vị sản phẩm không được rỗng")
+    @Size(max = 1000, message = "Chỉ được in tối đa 1000 đơn vị sản phẩm mỗi lần")
+    @Schema(description = "Danh sách ID đơn vị sản phẩm", example = "[1, 2, 3]")
+    private List<Long> productUnitIds;
+
+    /**
+     * Số tem cho mỗi đơn vị sản phẩm
+     */
+    @Min(value = 1, message = "Số tem mỗi sản phẩm phải lớn hơn 0")
+    @Max(value = 100, message = "Số tem mỗi sản phẩm tối đa là 100")
+    @Schema(description = "Số tem cho mỗi đơn vị sản phẩm", example = "1")
+    private Integer copies = 1;
+}
@@ -36,7 +36,13 @@ public record CheckoutRequestDTO(
         /**
          * Ghi chú đơn hàng
          */
-        String orderNote
+        String orderNote,
+
+        /**
+         * Số điểm tích lũy muốn dùng để giảm giá (không bắt buộc)
+         */
+        @PositiveOrZero(message = "Số điểm sử dụng không được âm")
+        Integer loyaltyPointsToUse
 ) {
     /**
      * Constructor với validation
@@ -0,0 +1,49 @@
+package iuh.fit.supermarket.dto.checkout;
+
+import java.math.BigDecimal;
+
+/**
+ * Một dòng chi tiết đơn hàng đọc trực tiếp bằng constructor projection (kèm tên sản phẩm, đơn vị tính)
+ * Dùng cho danh sách đơn hàng để nạp chi tiết của cả trang trong một truy vấn, không nạp entity
+ *
+ * @param orderId           ID đơn hàng
+ * @param productUnitId     ID đơn vị sản phẩm
+ * @param productName       tên sản phẩm
+ * @param unitName          tên đơn vị tính
+ * @param barcode           mã vạch
+ * @param quantity          số lượng
+ * @param priceAtPurchase   giá tại thời điểm mua
+ * @param discount          số tiền giảm của dòng
+ * @param promotionName     tên khuyến mãi
+ * @param promotionSummary  tóm tắt khuyến mãi
+ * @param promotionLineId   ID dòng khuyến mãi
+ * @param promotionDetailId ID chi tiết khuyến mãi
+ * @param discountType      loại giảm giá
+ * @param discountValue     giá trị giảm
+ * @param sourceLineItemId  ID dòng hàng nguồn (khuyến mãi mua X tặng Y)
+ */
+public record OrderLineProjection(
+        Long orderId,
+        Long productUnitId,
+        String productName,
+        String unitName,
+        String barcode,
+        Integer quantity,
+        BigDecimal priceAtPurchase,
+        BigDecimal discount,
+        String promotionName,
+        String promotionSummary,
+        Long promotionLineId,
+        Long promotionDetailId,
+        String discountType,
+        BigDecimal discountValue,
+        Long sourceLineItemId
+) {
+
+    /**
+     * Thành tiền của dòng (giống OrderDetail.getLineTotal)
+     */
+    public BigDecimal lineTotal() {
+        return priceAtPurchase.multiply(BigDecimal.valueOf(quantity)).subtract(discount);
+    }
+}
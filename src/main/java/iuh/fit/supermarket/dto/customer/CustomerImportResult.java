@@ -0,0 +1,19 @@
+package iuh.fit.supermarket.dto.customer;
+
+import java.util.List;
+
+/**
+ * Kết quả import khách hàng từ file Excel
+ *
+ * @param totalRows    tổng số dòng khách hàng đọc được từ file
+ * @param successCount số khách hàng được tạo
+ * @param errorCount   số dòng bị lỗi
+ * @param errors       chi tiết lỗi theo dòng ("Dòng N: ...")
+ */
+public record CustomerImportResult(
+        int totalRows,
+        int successCount,
+        int errorCount,
+        List<String> errors
+) {
+}
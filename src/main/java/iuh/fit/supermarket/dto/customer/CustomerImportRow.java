@@ -0,0 +1,10 @@
+package iuh.fit.supermarket.dto.customer;
+
+/**
+ * Một dòng khách hàng đọc được từ file Excel import
+ *
+ * @param rowNum  số dòng trong file (dùng để báo lỗi)
+ * @param request dữ liệu khách hàng
+ */
+public record CustomerImportRow(int rowNum, CreateCustomerRequest request) {
+}
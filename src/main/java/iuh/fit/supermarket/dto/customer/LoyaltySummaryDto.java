@@ -0,0 +1,17 @@
+package iuh.fit.supermarket.dto.customer;
+
+import org.springframework.data.domain.Page;
+
+/**
+ * Số dư và lịch sử điểm tích lũy của khách hàng
+ *
+ * @param customerId ID khách hàng
+ * @param balance    số dư điểm hiện tại
+ * @param history    lịch sử giao dịch điểm, mới nhất trước
+ */
+public record LoyaltySummaryDto(
+        Integer customerId,
+        Integer balance,
+        Page<LoyaltyTransactionDto> history
+) {
+}
@@ -0,0 +1,27 @@
+package iuh.fit.supermarket.dto.customer;
+
+import iuh.fit.supermarket.enums.LoyaltyTransactionType;
+
+import java.time.LocalDateTime;
+
+/**
+ * Một giao dịch trong sổ điểm tích lũy của khách hàng
+ *
+ * @param pointId     ID giao dịch điểm
+ * @param type        loại giao dịch (null với giao dịch cũ chưa phân loại)
+ * @param points      số điểm thay đổi (âm nếu trừ điểm)
+ * @param description mô tả giao dịch
+ * @param orderId     ID đơn hàng liên quan (nếu có)
+ * @param invoiceId   ID hóa đơn liên quan (nếu có)
+ * @param createdAt   thời điểm ghi nhận
+ */
+public record LoyaltyTransactionDto(
+        Integer pointId,
+        LoyaltyTransactionType type,
+        Integer points,
+        String description,
+        Long orderId,
+        Integer invoiceId,
+        LocalDateTime createdAt
+) {
+}
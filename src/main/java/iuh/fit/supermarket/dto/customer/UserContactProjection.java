@@ -0,0 +1,13 @@
+package iuh.fit.supermarket.dto.customer;
+
+/**
+ * Email và số điện thoại của một user, dùng để kiểm tra trùng hàng loạt khi import khách hàng
+ *
+ * @param email email
+ * @param phone số điện thoại
+ */
+public record UserContactProjection(
+        String email,
+        String phone
+) {
+}
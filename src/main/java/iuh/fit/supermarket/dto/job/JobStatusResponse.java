@@ -0,0 +1,36 @@
+package iuh.fit.supermarket.dto.job;
+
+import iuh.fit.supermarket.enums.JobStatus;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * DTO trạng thái và tiến độ của tác vụ chạy nền
+ *
+ * @param jobId      mã tác vụ
+ * @param type       loại tác vụ (ví dụ PRODUCT_EXPORT)
+ * @param status     trạng thái hiện tại
+ * @param processed  số bản ghi đã xử lý
+ * @param total      tổng số bản ghi dự kiến (null nếu chưa biết)
+ * @param resultUrl  link tải kết quả khi hoàn thành (nếu có)
+ * @param message    thông báo kết quả hoặc lỗi
+ * @param errorCount tổng số lỗi theo bản ghi đã ghi nhận
+ * @param errors     chi tiết lỗi theo bản ghi (tối đa một số lượng giới hạn)
+ * @param createdAt  thời điểm tạo tác vụ
+ * @param finishedAt thời điểm kết thúc (null nếu chưa kết thúc)
+ */
+public record JobStatusResponse(
+        String jobId,
+        String type,
+        JobStatus status,
+        long processed,
+        Long total,
+        String resultUrl,
+        String message,
+        long errorCount,
+        List<String> errors,
+        LocalDateTime createdAt,
+        LocalDateTime finishedAt
+) {
+}
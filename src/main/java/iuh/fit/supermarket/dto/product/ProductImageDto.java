@@ -24,6 +24,21 @@ public class ProductImageDto {
      */
     private String imageUrl;
     
+    /**
+     * URL ảnh thu nhỏ (null khi chưa tạo xong)
+     */
+    private String thumbnailUrl;
+    
+    /**
+     * URL ảnh cỡ thẻ sản phẩm (null khi chưa tạo xong)
+     */
+    private String cardUrl;
+    
+    /**
+     * URL ảnh cỡ lớn đã nén lại (null khi chưa tạo xong)
+     */
+    private String fullUrl;
+    
     /**
      * Văn bản thay thế cho hình ảnh
      */
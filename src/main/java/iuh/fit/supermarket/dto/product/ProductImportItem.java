@@ -0,0 +1,30 @@
+package iuh.fit.supermarket.dto.product;
+
+import java.util.List;
+
+/**
+ * Một sản phẩm đọc được từ file Excel import, thương hiệu và danh mục vẫn ở dạng tên
+ * Các dòng có cùng mã (hoặc tên) sản phẩm được gom lại thành nhiều đơn vị
+ *
+ * @param rowNum        số dòng đầu tiên của sản phẩm trong file (dùng để báo lỗi)
+ * @param code          mã sản phẩm (null nếu để hệ thống tự sinh)
+ * @param name          tên sản phẩm
+ * @param description   mô tả
+ * @param brandName     tên thương hiệu (null nếu không có)
+ * @param categoryPath  đường dẫn danh mục dạng "Cha>Con"
+ * @param isActive      trạng thái hoạt động
+ * @param isRewardPoint có tích điểm không
+ * @param units         danh sách đơn vị của sản phẩm
+ */
+public record ProductImportItem(
+        int rowNum,
+        String code,
+        String name,
+        String description,
+        String brandName,
+        String categoryPath,
+        boolean isActive,
+        boolean isRewardPoint,
+        List<ProductUnitRequest> units
+) {
+}
@@ -0,0 +1,19 @@
+package iuh.fit.supermarket.dto.product;
+
+import java.util.List;
+
+/**
+ * Kết quả import sản phẩm từ file Excel
+ *
+ * @param totalProducts tổng số sản phẩm đọc được từ file
+ * @param successCount  số sản phẩm đã tạo thành công
+ * @param errorCount    số sản phẩm hoặc dòng bị lỗi
+ * @param errors        chi tiết lỗi theo dòng ("Dòng N: ...")
+ */
+public record ProductImportResult(
+        int totalProducts,
+        int successCount,
+        int errorCount,
+        List<String> errors
+) {
+}
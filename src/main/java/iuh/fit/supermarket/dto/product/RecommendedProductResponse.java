@@ -0,0 +1,69 @@
+package iuh.fit.supermarket.dto.product;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+
+/**
+ * DTO cho một đơn vị sản phẩm được gợi ý
+ * Gọn hơn ProductUnitDetailResponse để hiển thị danh sách gợi ý trên trang sản phẩm và trong chat
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@Schema(description = "Đơn vị sản phẩm được gợi ý")
+public class RecommendedProductResponse {
+
+    /**
+     * ID đơn vị sản phẩm
+     */
+    @Schema(description = "ID đơn vị sản phẩm", example = "1")
+    private Long productUnitId;
+
+    /**
+     * ID sản phẩm
+     */
+    @Schema(description = "ID sản phẩm", example = "1")
+    private Long productId;
+
+    /**
+     * Tên sản phẩm
+     */
+    @Schema(description = "Tên sản phẩm", example = "Coca Cola")
+    private String productName;
+
+    /**
+     * Mã sản phẩm
+     */
+    @Schema(description = "Mã sản phẩm", example = "COCA001")
+    private String productCode;
+
+    /**
+     * Tên đơn vị tính
+     */
+    @Schema(description = "Tên đơn vị tính", example = "Chai")
+    private String unitName;
+
+    /**
+     * Giá hiện tại (từ bảng giá đang áp dụng)
+     */
+    @Schema(description = "Giá hiện tại", example = "15000")
+    private BigDecimal currentPrice;
+
+    /**
+     * URL hình ảnh chính
+     */
+    @Schema(description = "URL hình ảnh chính")
+    private String imageUrl;
+
+    /**
+     * Số lượng tồn kho
+     */
+    @Schema(description = "Số lượng tồn kho hiện tại", example = "100")
+    private Integer quantityOnHand;
+}
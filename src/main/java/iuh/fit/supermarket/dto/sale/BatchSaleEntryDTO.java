@@ -0,0 +1,24 @@
+package iuh.fit.supermarket.dto.sale;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Size;
+
+import java.time.LocalDateTime;
+
+/**
+ * DTO cho một hóa đơn đã hoàn tất tại máy POS trong lô đồng bộ
+ */
+public record BatchSaleEntryDTO(
+        @NotBlank(message = "Khóa idempotency không được rỗng")
+        @Size(max = 64, message = "Khóa idempotency tối đa 64 ký tự")
+        String clientSaleId,
+
+        LocalDateTime soldAt,
+
+        @NotNull(message = "Thông tin bán hàng không được null")
+        @Valid
+        CreateSaleRequestDTO sale
+) {
+}
@@ -0,0 +1,20 @@
+package iuh.fit.supermarket.dto.sale;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.Size;
+
+import java.util.List;
+
+/**
+ * DTO yêu cầu đồng bộ nhiều hóa đơn bán hàng từ máy POS trong một lần gọi
+ */
+public record BatchSaleRequestDTO(
+        String terminalId,
+
+        @NotEmpty(message = "Danh sách hóa đơn không được rỗng")
+        @Size(max = 500, message = "Mỗi lô tối đa 500 hóa đơn")
+        @Valid
+        List<BatchSaleEntryDTO> sales
+) {
+}
@@ -0,0 +1,15 @@
+package iuh.fit.supermarket.dto.sale;
+
+import java.util.List;
+
+/**
+ * DTO phản hồi sau khi đồng bộ lô hóa đơn, kết quả theo đúng thứ tự gửi lên
+ */
+public record BatchSaleResponseDTO(
+        int total,
+        int created,
+        int duplicated,
+        int failed,
+        List<BatchSaleResultDTO> results
+) {
+}
@@ -0,0 +1,18 @@
+package iuh.fit.supermarket.dto.sale;
+
+import iuh.fit.supermarket.enums.BatchSaleResultStatus;
+
+import java.math.BigDecimal;
+
+/**
+ * DTO kết quả xử lý một hóa đơn trong lô đồng bộ
+ */
+public record BatchSaleResultDTO(
+        String clientSaleId,
+        BatchSaleResultStatus status,
+        Integer invoiceId,
+        String invoiceNumber,
+        BigDecimal totalAmount,
+        String message
+) {
+}
@@ -0,0 +1,61 @@
+package iuh.fit.supermarket.dto.stocktake;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Size;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * DTO cho một lô lượt quét kiểm kê gửi từ máy quét cầm tay
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Schema(description = "Lô lượt quét kiểm kê từ máy quét")
+public class StocktakeScanRequest {
+
+    /**
+     * Mã thiết bị quét (dùng để ghi log)
+     */
+    @Schema(description = "Mã thiết bị quét", example = "HANDHELD-03")
+    private String deviceId;
+
+    /**
+     * Danh sách lượt quét
+     */
+    @Valid
+    @NotEmpty(message = "Danh sách lượt quét không được để trống")
+    @Size(max = 5000, message = "Mỗi lô tối đa 5000 lượt quét")
+    @Schema(description = "Danh sách lượt quét", required = true)
+    private List<ScanEvent> scans;
+
+    /**
+     * Một lượt quét: số lượng đếm thêm (hoặc bớt khi sửa sai) cho một đơn vị sản phẩm
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    @Schema(description = "Lượt quét kiểm kê")
+    public static class ScanEvent {
+
+        /**
+         * ID đơn vị sản phẩm
+         */
+        @NotNull(message = "ID đơn vị sản phẩm không được để trống")
+        @Schema(description = "ID đơn vị sản phẩm", example = "1", required = true)
+        private Long productUnitId;
+
+        /**
+         * Số lượng đếm thêm, âm khi sửa lượt quét sai
+         */
+        @NotNull(message = "Số lượng đếm không được để trống")
+        @Schema(description = "Số lượng đếm thêm (âm khi sửa lượt quét sai)", example = "1", required = true)
+        private Integer countedDelta;
+    }
+}
@@ -0,0 +1,30 @@
+package iuh.fit.supermarket.dto.stocktake;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * DTO cho kết quả ghi nhận một lô lượt quét kiểm kê
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Schema(description = "Kết quả ghi nhận lô lượt quét kiểm kê")
+public class StocktakeScanResponse {
+
+    /**
+     * Số lượt quét đã được ghi nhận
+     */
+    @Schema(description = "Số lượt quét đã được ghi nhận", example = "120")
+    private Integer acceptedScans;
+
+    /**
+     * ID các đơn vị sản phẩm không tồn tại (lượt quét bị bỏ qua)
+     */
+    @Schema(description = "ID các đơn vị sản phẩm không tồn tại")
+    private List<Long> rejectedProductUnitIds;
+}
@@ -14,7 +14,9 @@ import java.util.List;
  * Entity đại diện cho danh mục sản phẩm trong hệ thống
  */
 @Entity
-@Table(name = "categories")
+@Table(name = "categories", indexes = {
+        @Index(name = "idx_categories_tree_left", columnList = "tree_left")
+})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -66,6 +68,19 @@ public class Category {
     // @Column(name = "level", nullable = false)
     // private Integer level = 0;
 
+    /**
+     * Số thứ tự khi vào nút trong cây (nested set), do CategoryTreeService đánh lại mỗi khi cây thay đổi
+     * Danh mục con cháu có treeLeft nằm trong khoảng [treeLeft, treeRight] của danh mục tổ tiên
+     */
+    @Column(name = "tree_left")
+    private Integer treeLeft;
+
+    /**
+     * Số thứ tự khi rời nút trong cây (nested set)
+     */
+    @Column(name = "tree_right")
+    private Integer treeRight;
+
     /**
      * Danh mục cha (tự tham chiếu)
      */
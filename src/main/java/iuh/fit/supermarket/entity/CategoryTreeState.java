@@ -0,0 +1,45 @@
+package iuh.fit.supermarket.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Entity một dòng duy nhất giữ phiên bản của cây danh mục
+ * Lần dựng lại cây khóa dòng này (SELECT ... FOR UPDATE) nên các lần đánh số nested set được tuần tự hóa
+ * giữa mọi instance; instance khác so phiên bản để biết cần tải lại ảnh chụp
+ */
+@Entity
+@Table(name = "category_tree_state")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CategoryTreeState {
+
+    /**
+     * ID của dòng trạng thái duy nhất
+     */
+    public static final Integer SINGLETON_ID = 1;
+
+    /**
+     * ID dòng trạng thái (luôn bằng SINGLETON_ID)
+     */
+    @Id
+    @Column(name = "id")
+    private Integer id;
+
+    /**
+     * Phiên bản cây, tăng sau mỗi lần đánh số lại
+     */
+    @Column(name = "version", nullable = false)
+    private Long version = 0L;
+
+    /**
+     * Thời gian đánh số lại gần nhất
+     */
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+}
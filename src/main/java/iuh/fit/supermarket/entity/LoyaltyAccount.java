@@ -0,0 +1,41 @@
+package iuh.fit.supermarket.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Entity lưu số dư điểm tích lũy hiện tại của khách hàng
+ * Là giá trị tổng hợp từ sổ điểm (loyalty_points), được cập nhật trong cùng transaction với mỗi bản ghi điểm
+ * Tách khỏi bảng customers để việc cập nhật hồ sơ khách hàng không ghi đè số dư
+ */
+@Entity
+@Table(name = "loyalty_accounts")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class LoyaltyAccount {
+
+    /**
+     * ID khách hàng sở hữu tài khoản điểm
+     */
+    @Id
+    @Column(name = "customer_id")
+    private Integer customerId;
+
+    /**
+     * Số dư điểm hiện tại, luôn bằng tổng điểm trong sổ điểm của khách hàng
+     * Có thể âm nếu điểm đã dùng rồi mới bị thu hồi do trả hàng
+     */
+    @Column(name = "balance", nullable = false)
+    private Integer balance = 0;
+
+    /**
+     * Thời gian cập nhật số dư gần nhất
+     */
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+}
@@ -1,5 +1,6 @@
 package iuh.fit.supermarket.entity;
 
+import iuh.fit.supermarket.enums.LoyaltyTransactionType;
 import jakarta.persistence.*;
 import lombok.AllArgsConstructor;
 import lombok.Data;
@@ -10,6 +11,7 @@ import java.time.LocalDateTime;
 
 /**
  * Entity đại diện cho điểm tích lũy của khách hàng
+ * "Sổ điểm" ghi lại toàn bộ thay đổi điểm, số dư hiện tại được lưu sẵn ở LoyaltyAccount
  */
 @Entity
 @Table(name = "loyalty_points")
@@ -45,6 +47,20 @@ public class LoyaltyPoint {
     @Column(name = "description")
     private String description;
 
+    /**
+     * Loại giao dịch điểm
+     */
+    @Enumerated(EnumType.STRING)
+    @Column(name = "transaction_type", length = 20)
+    private LoyaltyTransactionType type;
+
+    /**
+     * Khóa nghiệp vụ của giao dịch (ví dụ EARN:INVOICE:15), mỗi khóa chỉ được ghi một lần
+     * Giúp việc tích/thu hồi điểm không bị lặp khi sự kiện được xử lý lại
+     */
+    @Column(name = "reference_key", length = 64, unique = true)
+    private String referenceKey;
+
     /**
      * Khách hàng sở hữu điểm
      */
@@ -58,4 +74,11 @@ public class LoyaltyPoint {
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "order_id")
     private Order order;
+
+    /**
+     * Hóa đơn liên quan (nếu có)
+     */
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "invoice_id")
+    private SaleInvoiceHeader invoice;
 }
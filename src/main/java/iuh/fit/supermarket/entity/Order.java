@@ -137,6 +137,18 @@ public class Order {
     @Column(name = "line_item_discount", precision = 12, scale = 2)
     private BigDecimal lineItemDiscount = BigDecimal.ZERO;
 
+    /**
+     * Số điểm tích lũy đã dùng cho đơn hàng
+     */
+    @Column(name = "loyalty_points_used")
+    private Integer loyaltyPointsUsed = 0;
+
+    /**
+     * Số tiền được giảm từ điểm tích lũy
+     */
+    @Column(name = "loyalty_points_discount", precision = 12, scale = 2)
+    private BigDecimal loyaltyPointsDiscount = BigDecimal.ZERO;
+
     /**
      * JSON string lưu danh sách khuyến mãi toàn đơn đã áp dụng
      * Format: List<OrderPromotionDTO>
@@ -33,6 +33,24 @@ public class ProductImage {
     @Column(name = "image_url", length = 500, nullable = false)
     private String imageUrl;
 
+    /**
+     * URL ảnh thu nhỏ (danh sách, giỏ hàng), null khi chưa tạo xong
+     */
+    @Column(name = "thumbnail_url", length = 500)
+    private String thumbnailUrl;
+
+    /**
+     * URL ảnh cỡ thẻ sản phẩm, null khi chưa tạo xong
+     */
+    @Column(name = "card_url", length = 500)
+    private String cardUrl;
+
+    /**
+     * URL ảnh cỡ lớn đã nén lại (trang chi tiết), null khi chưa tạo xong
+     */
+    @Column(name = "full_url", length = 500)
+    private String fullUrl;
+
     /**
      * Văn bản thay thế cho hình ảnh
      */
@@ -64,4 +82,18 @@ public class ProductImage {
      */
     @OneToMany(mappedBy = "productImage", cascade = CascadeType.ALL, fetch = FetchType.LAZY)
     private List<ProductUnitImage> productUnitImages;
+
+    /**
+     * URL ảnh thu nhỏ, dùng ảnh gốc khi chưa có biến thể
+     */
+    public String thumbnailOrOriginalUrl() {
+        return thumbnailUrl != null ? thumbnailUrl : imageUrl;
+    }
+
+    /**
+     * URL ảnh cỡ thẻ sản phẩm, dùng ảnh gốc khi chưa có biến thể
+     */
+    public String cardOrOriginalUrl() {
+        return cardUrl != null ? cardUrl : imageUrl;
+    }
 }
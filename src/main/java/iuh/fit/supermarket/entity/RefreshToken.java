@@ -0,0 +1,70 @@
+package iuh.fit.supermarket.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.CreationTimestamp;
+
+import java.time.LocalDateTime;
+
+/**
+ * Entity đại diện cho refresh token của một phiên đăng nhập
+ * Chỉ lưu SHA-256 của token; mỗi lần refresh token cũ bị thu hồi và token mới cùng familyId được phát hành
+ */
+@Entity
+@Table(name = "refresh_tokens", indexes = {
+        @Index(name = "idx_refresh_token_family", columnList = "family_id"),
+        @Index(name = "idx_refresh_token_user", columnList = "user_id")
+})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class RefreshToken {
+
+    /**
+     * ID duy nhất của refresh token
+     */
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "refresh_token_id")
+    private Long id;
+
+    /**
+     * SHA-256 (hex) của refresh token
+     */
+    @Column(name = "token_hash", nullable = false, unique = true, length = 64)
+    private String tokenHash;
+
+    /**
+     * ID chuỗi token của cùng một phiên đăng nhập (giữ nguyên qua các lần xoay vòng)
+     */
+    @Column(name = "family_id", nullable = false, length = 36)
+    private String familyId;
+
+    /**
+     * Thời điểm hết hạn
+     */
+    @Column(name = "expires_at", nullable = false)
+    private LocalDateTime expiresAt;
+
+    /**
+     * Thời điểm bị thu hồi (đã dùng để refresh, đăng xuất hoặc bị vô hiệu hóa), null nếu còn hiệu lực
+     */
+    @Column(name = "revoked_at")
+    private LocalDateTime revokedAt;
+
+    /**
+     * Ngày tạo
+     */
+    @CreationTimestamp
+    @Column(name = "created_at")
+    private LocalDateTime createdAt;
+
+    /**
+     * User sở hữu token
+     */
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "user_id", nullable = false)
+    private User user;
+}
@@ -0,0 +1,49 @@
+package iuh.fit.supermarket.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.CreationTimestamp;
+
+import java.time.LocalDateTime;
+
+/**
+ * Entity đại diện cho access token đã bị thu hồi trước hạn (đăng xuất)
+ * Bản ghi chỉ cần giữ đến khi token hết hạn tự nhiên, sau đó được dọn đi
+ */
+@Entity
+@Table(name = "revoked_tokens", indexes = {
+        @Index(name = "idx_revoked_token_expires", columnList = "expires_at")
+})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class RevokedToken {
+
+    /**
+     * ID của access token (claim jti)
+     */
+    @Id
+    @Column(name = "token_id", length = 36)
+    private String tokenId;
+
+    /**
+     * ID user sở hữu token
+     */
+    @Column(name = "user_id")
+    private Long userId;
+
+    /**
+     * Thời điểm token hết hạn tự nhiên
+     */
+    @Column(name = "expires_at", nullable = false)
+    private LocalDateTime expiresAt;
+
+    /**
+     * Thời điểm thu hồi
+     */
+    @CreationTimestamp
+    @Column(name = "revoked_at")
+    private LocalDateTime revokedAt;
+}
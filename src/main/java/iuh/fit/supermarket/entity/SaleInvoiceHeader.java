@@ -87,6 +87,12 @@ public class SaleInvoiceHeader {
     @Column(name = "paid_amount", precision = 12, scale = 2)
     private BigDecimal paidAmount = BigDecimal.ZERO;
 
+    /**
+     * Khóa idempotency do máy POS sinh ra (dùng cho đồng bộ bán hàng theo lô)
+     */
+    @Column(name = "client_sale_id", length = 64, unique = true)
+    private String clientSaleId;
+
     /**
      * Thời gian tạo
      */
@@ -39,6 +39,13 @@ public class StocktakeDetail {
     @Column(name = "quantity_counted", nullable = false)
     private Integer quantityCounted;
 
+    /**
+     * Số lượng đếm đang là giá trị mặc định chép từ tồn kho khi tạo phiếu (chưa được đếm thực tế)
+     * Lượt quét đầu tiên ghi đè giá trị này thay vì cộng dồn
+     */
+    @Column(name = "is_seeded_count")
+    private Boolean isSeededCount = false;
+
     /**
      * Chênh lệch (counted - expected)
      */
@@ -0,0 +1,39 @@
+package iuh.fit.supermarket.enums;
+
+/**
+ * Enum định nghĩa kết quả xử lý từng hóa đơn trong lô bán hàng đồng bộ từ máy POS
+ */
+public enum BatchSaleResultStatus {
+    /**
+     * Hóa đơn được tạo mới thành công
+     */
+    CREATED("Created"),
+
+    /**
+     * Hóa đơn đã được đồng bộ trước đó (trùng khóa idempotency), không tạo lại
+     */
+    DUPLICATE("Duplicate"),
+
+    /**
+     * Hóa đơn không được ghi nhận do dữ liệu không hợp lệ hoặc lỗi nghiệp vụ
+     */
+    FAILED("Failed");
+
+    private final String value;
+
+    /**
+     * Constructor cho BatchSaleResultStatus
+     * @param value giá trị string tương ứng
+     */
+    BatchSaleResultStatus(String value) {
+        this.value = value;
+    }
+
+    /**
+     * Lấy giá trị string của enum
+     * @return giá trị string
+     */
+    public String getValue() {
+        return value;
+    }
+}
@@ -0,0 +1,44 @@
+package iuh.fit.supermarket.enums;
+
+/**
+ * Enum định nghĩa trạng thái của tác vụ chạy nền (export/import dữ liệu lớn)
+ */
+public enum JobStatus {
+    /**
+     * Tác vụ đã được tạo, đang chờ luồng xử lý
+     */
+    PENDING("Pending"),
+
+    /**
+     * Tác vụ đang được xử lý
+     */
+    RUNNING("Running"),
+
+    /**
+     * Tác vụ hoàn thành thành công
+     */
+    COMPLETED("Completed"),
+
+    /**
+     * Tác vụ thất bại
+     */
+    FAILED("Failed");
+
+    private final String value;
+
+    /**
+     * Constructor cho JobStatus
+     * @param value giá trị string tương ứng
+     */
+    JobStatus(String value) {
+        this.value = value;
+    }
+
+    /**
+     * Lấy giá trị string của enum
+     * @return giá trị string
+     */
+    public String getValue() {
+        return value;
+    }
+}
@@ -0,0 +1,59 @@
+package iuh.fit.supermarket.enums;
+
+/**
+ * Enum định nghĩa loại giao dịch điểm tích lũy
+ * Tương ứng với cột transaction_type trong bảng loyalty_points
+ */
+public enum LoyaltyTransactionType {
+    /**
+     * Tích điểm khi hóa đơn được thanh toán
+     */
+    EARN("Earn"),
+
+    /**
+     * Thu hồi điểm đã tích khi hóa đơn bị trả hàng
+     */
+    EARN_REVERSAL("Earn reversal"),
+
+    /**
+     * Dùng điểm để giảm giá khi đặt hàng
+     */
+    REDEEM("Redeem"),
+
+    /**
+     * Hoàn lại điểm đã dùng khi đơn hàng bị hủy
+     */
+    REDEEM_REFUND("Redeem refund");
+
+    private final String value;
+
+    /**
+     * Constructor cho LoyaltyTransactionType
+     * @param value giá trị string tương ứng trong database
+     */
+    LoyaltyTransactionType(String value) {
+        this.value = value;
+    }
+
+    /**
+     * Lấy giá trị string của enum
+     * @return giá trị string
+     */
+    public String getValue() {
+        return value;
+    }
+
+    /**
+     * Chuyển đổi từ string sang enum
+     * @param value giá trị string
+     * @return LoyaltyTransactionType tương ứng
+     */
+    public static LoyaltyTransactionType fromValue(String value) {
+        for (LoyaltyTransactionType type : LoyaltyTransactionType.values()) {
+            if (type.value.equals(value)) {
+                return type;
+            }
+        }
+        throw new IllegalArgumentException("Unknown LoyaltyTransactionType: " + value);
+    }
+}
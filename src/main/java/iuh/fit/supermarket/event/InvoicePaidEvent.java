@@ -0,0 +1,10 @@
+package iuh.fit.supermarket.event;
+
+/**
+ * Sự kiện phát ra khi hóa đơn bán hàng chuyển sang trạng thái PAID
+ * Listener nhận sự kiện sau khi transaction tạo/cập nhật hóa đơn commit
+ *
+ * @param invoiceId ID hóa đơn đã thanh toán
+ */
+public record InvoicePaidEvent(Integer invoiceId) {
+}
@@ -0,0 +1,35 @@
+package iuh.fit.supermarket.event;
+
+import iuh.fit.supermarket.service.SaleService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+/**
+ * Render trước PDF hóa đơn khi hóa đơn được thanh toán
+ * để lần tải PDF đầu tiên được phục vụ ngay từ cache
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class InvoicePdfPrerenderListener {
+
+    private final SaleService saleService;
+
+    /**
+     * Chạy trên executor riêng sau khi transaction thanh toán commit,
+     * lỗi render chỉ được ghi log vì PDF vẫn được render lại khi tải xuống
+     */
+    @Async("invoicePdfExecutor")
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT)
+    public void onInvoicePaid(InvoicePaidEvent event) {
+        try {
+            saleService.generateInvoicePdf(event.invoiceId());
+        } catch (RuntimeException e) {
+            log.warn("Không thể render trước PDF cho hóa đơn ID {}: {}", event.invoiceId(), e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package iuh.fit.supermarket.event;
+
+import iuh.fit.supermarket.service.LoyaltyService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+/**
+ * Tích điểm cho khách hàng khi hóa đơn được thanh toán
+ */
+@Component
+@RequiredArgsConstructor
+public class LoyaltyPointListener {
+
+    private final LoyaltyService loyaltyService;
+
+    /**
+     * Chạy trước khi transaction thanh toán commit (vẫn trong transaction đó)
+     * nên hóa đơn PAID và điểm tích lũy luôn cùng được lưu hoặc cùng rollback
+     */
+    @TransactionalEventListener(phase = TransactionPhase.BEFORE_COMMIT)
+    public void onInvoicePaid(InvoicePaidEvent event) {
+        loyaltyService.accrueForInvoice(event.invoiceId());
+    }
+}
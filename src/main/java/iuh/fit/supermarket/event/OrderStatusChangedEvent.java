@@ -0,0 +1,49 @@
+package iuh.fit.supermarket.event;
+
+import iuh.fit.supermarket.entity.Order;
+import iuh.fit.supermarket.enums.DeliveryType;
+import iuh.fit.supermarket.enums.OrderStatus;
+
+import java.time.LocalDateTime;
+
+/**
+ * Sự kiện phát ra khi đơn hàng được tạo hoặc đổi trạng thái
+ * Listener nhận sự kiện sau khi transaction commit và đẩy tới khách hàng, nhân viên đang theo dõi
+ *
+ * @param orderId        ID đơn hàng
+ * @param orderCode      mã đơn hàng
+ * @param customerId     ID khách hàng (null nếu đơn không gắn khách hàng)
+ * @param storeId        ID cửa hàng nhận hàng (null nếu giao tận nơi)
+ * @param deliveryType   loại hình nhận hàng
+ * @param previousStatus trạng thái trước (null nếu đơn vừa tạo)
+ * @param status         trạng thái mới
+ * @param changedAt      thời điểm đổi trạng thái
+ */
+public record OrderStatusChangedEvent(
+        Long orderId,
+        String orderCode,
+        Integer customerId,
+        Long storeId,
+        DeliveryType deliveryType,
+        OrderStatus previousStatus,
+        OrderStatus status,
+        LocalDateTime changedAt) {
+
+    /**
+     * Tạo sự kiện từ trạng thái hiện tại của đơn hàng
+     *
+     * @param order          đơn hàng đã cập nhật trạng thái
+     * @param previousStatus trạng thái trước (null nếu đơn vừa tạo)
+     */
+    public static OrderStatusChangedEvent of(Order order, OrderStatus previousStatus) {
+        return new OrderStatusChangedEvent(
+                order.getOrderId(),
+                order.getOrderCode(),
+                order.getCustomer() != null ? order.getCustomer().getCustomerId() : null,
+                order.getPickupStore() != null ? order.getPickupStore().getStoreId() : null,
+                order.getDeliveryType(),
+                previousStatus,
+                order.getStatus(),
+                LocalDateTime.now());
+    }
+}
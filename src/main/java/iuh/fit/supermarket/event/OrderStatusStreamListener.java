@@ -0,0 +1,26 @@
+package iuh.fit.supermarket.event;
+
+import iuh.fit.supermarket.service.OrderStatusStreamService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+/**
+ * Đẩy thay đổi trạng thái đơn hàng tới các kết nối SSE đang theo dõi
+ */
+@Component
+@RequiredArgsConstructor
+public class OrderStatusStreamListener {
+
+    private final OrderStatusStreamService orderStatusStreamService;
+
+    /**
+     * Nhận sự kiện sau khi transaction commit để client không thấy trạng thái bị rollback;
+     * publish chỉ đưa sự kiện vào bộ đệm của từng kết nối nên không làm chậm request đổi trạng thái
+     */
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onOrderStatusChanged(OrderStatusChangedEvent event) {
+        orderStatusStreamService.publish(event);
+    }
+}
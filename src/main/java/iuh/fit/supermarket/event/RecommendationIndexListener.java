@@ -0,0 +1,26 @@
+package iuh.fit.supermarket.event;
+
+import iuh.fit.supermarket.service.RecommendationIndexService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+/**
+ * Cập nhật chỉ mục gợi ý sản phẩm khi hóa đơn được thanh toán
+ */
+@Component
+@RequiredArgsConstructor
+public class RecommendationIndexListener {
+
+    private final RecommendationIndexService recommendationIndexService;
+
+    /**
+     * Nhận sự kiện sau khi transaction thanh toán commit;
+     * việc cập nhật chạy trên recommendationExecutor nên không làm chậm request thanh toán
+     */
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT)
+    public void onInvoicePaid(InvoicePaidEvent event) {
+        recommendationIndexService.indexPaidInvoice(event.invoiceId());
+    }
+}
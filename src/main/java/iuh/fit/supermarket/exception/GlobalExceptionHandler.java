@@ -2,6 +2,7 @@ package iuh.fit.supermarket.exception;
 
 import iuh.fit.supermarket.dto.common.ApiResponse;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.AccessDeniedException;
@@ -435,6 +436,20 @@ public class GlobalExceptionHandler {
                                 .body(ApiResponse.error("Dữ liệu không hợp lệ", errors));
         }
 
+        /**
+         * Xử lý vượt giới hạn tần suất hoặc quá tải
+         */
+        @ExceptionHandler(TooManyRequestsException.class)
+        public ResponseEntity<ApiResponse<String>> handleTooManyRequestsException(
+                        TooManyRequestsException ex) {
+
+                log.warn("Too many requests: {}", ex.getMessage());
+
+                return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                                .header(HttpHeaders.RETRY_AFTER, String.valueOf(ex.getRetryAfterSeconds()))
+                                .body(ApiResponse.error(ex.getMessage()));
+        }
+
         /**
          * Xử lý authentication exceptions
          */
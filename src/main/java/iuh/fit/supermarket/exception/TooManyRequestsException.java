@@ -0,0 +1,25 @@
+package iuh.fit.supermarket.exception;
+
+import lombok.Getter;
+
+/**
+ * Exception được ném khi vượt giới hạn tần suất hoặc hệ thống đang quá tải
+ */
+@Getter
+public class TooManyRequestsException extends RuntimeException {
+
+    /**
+     * Số giây client nên chờ trước khi thử lại
+     */
+    private final long retryAfterSeconds;
+
+    /**
+     * Constructor với message và thời gian chờ
+     * @param message thông báo lỗi
+     * @param retryAfterSeconds số giây nên chờ trước khi thử lại
+     */
+    public TooManyRequestsException(String message, long retryAfterSeconds) {
+        super(message);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+}
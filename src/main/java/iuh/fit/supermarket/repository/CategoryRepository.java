@@ -25,6 +25,11 @@ public interface CategoryRepository extends JpaRepository<Category, Integer> {
      * Kiểm tra sự tồn tại của tên danh mục
      */
     boolean existsByName(String name);
+
+    /**
+     * Kiểm tra còn danh mục chưa được đánh số nested set không
+     */
+    boolean existsByTreeLeftIsNull();
     
     /**
      * Tìm tất cả danh mục đang hoạt động
@@ -0,0 +1,49 @@
+package iuh.fit.supermarket.repository;
+
+import iuh.fit.supermarket.entity.CategoryTreeState;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Optional;
+
+/**
+ * Repository cho dòng trạng thái (phiên bản) của cây danh mục
+ */
+@Repository
+public interface CategoryTreeStateRepository extends JpaRepository<CategoryTreeState, Integer> {
+
+    /**
+     * Tạo dòng trạng thái nếu chưa có; nhiều instance cùng gọi cũng chỉ tạo một dòng
+     *
+     * @param id ID dòng trạng thái
+     * @return số dòng đã tạo (0 nếu đã tồn tại)
+     */
+    @Modifying
+    @Query(value = "INSERT IGNORE INTO category_tree_state (id, version, updated_at) VALUES (:id, 0, NOW())",
+            nativeQuery = true)
+    int createIfAbsent(@Param("id") Integer id);
+
+    /**
+     * Khóa dòng trạng thái đến hết transaction (SELECT ... FOR UPDATE)
+     *
+     * @param id ID dòng trạng thái
+     * @return dòng trạng thái đã khóa
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT s FROM CategoryTreeState s WHERE s.id = :id")
+    Optional<CategoryTreeState> lockById(@Param("id") Integer id);
+
+    /**
+     * Đọc phiên bản cây hiện tại
+     *
+     * @param id ID dòng trạng thái
+     * @return phiên bản, rỗng nếu chưa có dòng trạng thái
+     */
+    @Query("SELECT s.version FROM CategoryTreeState s WHERE s.id = :id")
+    Optional<Long> findVersionById(@Param("id") Integer id);
+}
@@ -90,4 +90,13 @@ public interface CustomerFavoriteRepository extends JpaRepository<CustomerFavori
      */
     @Query("SELECT COUNT(cf) FROM CustomerFavorite cf WHERE cf.customer.customerId = :customerId")
     Integer countByCustomerId(@Param("customerId") Integer customerId);
+
+    /**
+     * Lấy toàn bộ cặp khách hàng - đơn vị sản phẩm yêu thích, không tải entity
+     * Trả về: [customerId, productUnitId]
+     *
+     * @return danh sách cặp yêu thích
+     */
+    @Query("SELECT cf.customer.customerId, cf.productUnit.id FROM CustomerFavorite cf")
+    List<Object[]> findAllCustomerProductUnitIds();
 }
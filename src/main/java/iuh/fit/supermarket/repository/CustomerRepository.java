@@ -1,5 +1,6 @@
 package iuh.fit.supermarket.repository;
 
+import iuh.fit.supermarket.dto.customer.CustomerDto;
 import iuh.fit.supermarket.entity.Customer;
 import iuh.fit.supermarket.enums.CustomerType;
 import iuh.fit.supermarket.enums.Gender;
@@ -224,4 +225,21 @@ public interface CustomerRepository extends JpaRepository<Customer, Integer> {
         long countNewCustomersByDateRange(
                         @Param("fromDate") java.time.LocalDateTime fromDate,
                         @Param("toDate") java.time.LocalDateTime toDate);
+
+        /**
+         * Lấy một trang khách hàng chưa bị xóa có ID lớn hơn lastId (phân trang keyset cho export)
+         * Trả về DTO trực tiếp để không phải tải entity User/Customer
+         *
+         * @param lastId   ID khách hàng cuối của trang trước (0 cho trang đầu)
+         * @param pageable kích thước trang
+         * @return danh sách khách hàng theo ID tăng dần
+         */
+        @Query("SELECT new iuh.fit.supermarket.dto.customer.CustomerDto(c.customerId, u.name, u.email, u.phone, " +
+                        "c.customerCode, u.gender, c.address, u.dateOfBirth, c.customerType, u.isDeleted, " +
+                        "u.createdAt, u.updatedAt) " +
+                        "FROM Customer c JOIN c.user u " +
+                        "WHERE u.isDeleted = false AND c.customerId > :lastId ORDER BY c.customerId")
+        List<CustomerDto> findActiveCustomerDtosAfter(
+                        @Param("lastId") Integer lastId, Pageable pageable);
+
 }
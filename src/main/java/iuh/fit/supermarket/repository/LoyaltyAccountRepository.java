@@ -0,0 +1,92 @@
+package iuh.fit.supermarket.repository;
+
+import iuh.fit.supermarket.entity.LoyaltyAccount;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Repository interface cho LoyaltyAccount entity
+ */
+@Repository
+public interface LoyaltyAccountRepository extends JpaRepository<LoyaltyAccount, Integer> {
+
+    /**
+     * Lấy số dư điểm hiện tại của khách hàng
+     *
+     * @param customerId ID khách hàng
+     * @return số dư, rỗng nếu khách hàng chưa có tài khoản điểm
+     */
+    @Query("SELECT a.balance FROM LoyaltyAccount a WHERE a.customerId = :customerId")
+    Optional<Integer> findBalanceByCustomerId(@Param("customerId") Integer customerId);
+
+    /**
+     * Tạo tài khoản điểm nếu chưa có, số dư khởi tạo bằng tổng sổ điểm hiện có của khách hàng
+     * (khách hàng có lịch sử điểm từ trước khi có bảng số dư)
+     * INSERT IGNORE để hai transaction cùng tạo không bị lỗi trùng khóa
+     *
+     * @param customerId ID khách hàng
+     * @return 1 nếu vừa tạo, 0 nếu đã tồn tại
+     */
+    @Modifying
+    @Query(value = "INSERT IGNORE INTO loyalty_accounts (customer_id, balance, updated_at) " +
+            "SELECT :customerId, COALESCE(SUM(lp.points), 0), NOW() FROM loyalty_points lp " +
+            "WHERE lp.customer_id = :customerId", nativeQuery = true)
+    int createIfAbsent(@Param("customerId") Integer customerId);
+
+    /**
+     * Cộng số điểm vào số dư (delta âm để trừ)
+     * Câu lệnh UPDATE khóa dòng tài khoản đến hết transaction nên các thay đổi cùng khách hàng được tuần tự hóa
+     *
+     * @param customerId ID khách hàng
+     * @param delta      số điểm thay đổi
+     * @return số dòng được cập nhật
+     */
+    @Modifying
+    @Query("UPDATE LoyaltyAccount a SET a.balance = a.balance + :delta, a.updatedAt = CURRENT_TIMESTAMP " +
+            "WHERE a.customerId = :customerId")
+    int addToBalance(@Param("customerId") Integer customerId, @Param("delta") int delta);
+
+    /**
+     * Trừ điểm nếu số dư còn đủ, kiểm tra và cập nhật trong cùng câu lệnh
+     *
+     * @param customerId ID khách hàng
+     * @param points     số điểm cần trừ (dương)
+     * @return 1 nếu trừ thành công, 0 nếu không đủ điểm
+     */
+    @Modifying
+    @Query("UPDATE LoyaltyAccount a SET a.balance = a.balance - :points, a.updatedAt = CURRENT_TIMESTAMP " +
+            "WHERE a.customerId = :customerId AND a.balance >= :points")
+    int deductIfSufficient(@Param("customerId") Integer customerId, @Param("points") int points);
+
+    /**
+     * Sửa số dư khi đối soát, chỉ khi số dư chưa đổi kể từ lúc đọc
+     *
+     * @param customerId      ID khách hàng
+     * @param observedBalance số dư đã đọc khi đối soát
+     * @param expectedBalance số dư đúng theo sổ điểm
+     * @return 1 nếu đã sửa, 0 nếu số dư vừa bị thay đổi bởi giao dịch khác
+     */
+    @Modifying
+    @Query("UPDATE LoyaltyAccount a SET a.balance = :expectedBalance, a.updatedAt = CURRENT_TIMESTAMP " +
+            "WHERE a.customerId = :customerId AND a.balance = :observedBalance")
+    int repairBalance(@Param("customerId") Integer customerId,
+                      @Param("observedBalance") int observedBalance,
+                      @Param("expectedBalance") int expectedBalance);
+
+    /**
+     * Lấy một trang tài khoản điểm theo keyset (customerId tăng dần) để đối soát
+     *
+     * @param afterCustomerId chỉ lấy tài khoản có ID lớn hơn giá trị này
+     * @param pageable        giới hạn số tài khoản
+     * @return danh sách tài khoản
+     */
+    @Query("SELECT a FROM LoyaltyAccount a WHERE a.customerId > :afterCustomerId ORDER BY a.customerId")
+    List<LoyaltyAccount> findChunkAfter(@Param("afterCustomerId") Integer afterCustomerId, Pageable pageable);
+}
@@ -0,0 +1,71 @@
+package iuh.fit.supermarket.repository;
+
+import iuh.fit.supermarket.entity.LoyaltyPoint;
+import iuh.fit.supermarket.enums.LoyaltyTransactionType;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Repository interface cho LoyaltyPoint entity (sổ điểm tích lũy)
+ */
+@Repository
+public interface LoyaltyPointRepository extends JpaRepository<LoyaltyPoint, Integer> {
+
+    /**
+     * Kiểm tra giao dịch điểm với khóa nghiệp vụ đã được ghi chưa
+     *
+     * @param referenceKey khóa nghiệp vụ
+     * @return true nếu đã ghi
+     */
+    boolean existsByReferenceKey(String referenceKey);
+
+    /**
+     * Tổng điểm trong sổ điểm của khách hàng
+     *
+     * @param customerId ID khách hàng
+     * @return tổng điểm (0 nếu chưa có giao dịch)
+     */
+    @Query("SELECT COALESCE(SUM(lp.points), 0) FROM LoyaltyPoint lp WHERE lp.customer.customerId = :customerId")
+    long sumPointsByCustomerId(@Param("customerId") Integer customerId);
+
+    /**
+     * Tổng điểm của các loại giao dịch cho trước gắn với một hóa đơn
+     *
+     * @param invoiceId ID hóa đơn
+     * @param types     các loại giao dịch cần cộng
+     * @return tổng điểm
+     */
+    @Query("SELECT COALESCE(SUM(lp.points), 0) FROM LoyaltyPoint lp " +
+            "WHERE lp.invoice.invoiceId = :invoiceId AND lp.type IN :types")
+    long sumPointsByInvoiceIdAndTypes(@Param("invoiceId") Integer invoiceId,
+                                      @Param("types") Collection<LoyaltyTransactionType> types);
+
+    /**
+     * Tổng điểm trong sổ điểm theo từng khách hàng, dùng khi đối soát theo lô
+     * Trả về: [customerId, tổng điểm]
+     *
+     * @param customerIds danh sách ID khách hàng
+     * @return danh sách cặp khách hàng - tổng điểm (khách hàng không có giao dịch không có trong kết quả)
+     */
+    @Query("SELECT lp.customer.customerId, SUM(lp.points) FROM LoyaltyPoint lp " +
+            "WHERE lp.customer.customerId IN :customerIds GROUP BY lp.customer.customerId")
+    List<Object[]> sumPointsGroupByCustomerIds(@Param("customerIds") Collection<Integer> customerIds);
+
+    /**
+     * Lịch sử giao dịch điểm của khách hàng, mới nhất trước
+     *
+     * @param customerId ID khách hàng
+     * @param pageable   thông tin phân trang
+     * @return trang giao dịch điểm
+     */
+    @Query("SELECT lp FROM LoyaltyPoint lp WHERE lp.customer.customerId = :customerId " +
+            "ORDER BY lp.earnedDate DESC, lp.pointId DESC")
+    Page<LoyaltyPoint> findHistoryByCustomerId(@Param("customerId") Integer customerId, Pageable pageable);
+}
@@ -1,9 +1,13 @@
 package iuh.fit.supermarket.repository;
 
+import iuh.fit.supermarket.dto.checkout.OrderLineProjection;
 import iuh.fit.supermarket.entity.OrderDetail;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 
 /**
@@ -19,4 +23,19 @@ public interface OrderDetailRepository extends JpaRepository<OrderDetail, Long>
      * @return danh sách chi tiết đơn hàng
      */
     List<OrderDetail> findByOrder_OrderId(Long orderId);
+
+    /**
+     * Đọc chi tiết của nhiều đơn hàng trong một truy vấn, ánh xạ thẳng sang projection
+     *
+     * @param orderIds danh sách ID đơn hàng
+     * @return các dòng chi tiết, theo đơn hàng rồi theo thứ tự tạo
+     */
+    @Query("SELECT new iuh.fit.supermarket.dto.checkout.OrderLineProjection(" +
+            "d.order.orderId, pu.id, p.name, u.name, pu.barcode, d.quantity, d.priceAtPurchase, d.discount, " +
+            "d.promotionName, d.promotionSummary, d.promotionLineId, d.promotionDetailId, " +
+            "d.discountType, d.discountValue, d.sourceLineItemId) " +
+            "FROM OrderDetail d JOIN d.productUnit pu JOIN pu.product p JOIN pu.unit u " +
+            "WHERE d.order.orderId IN :orderIds " +
+            "ORDER BY d.order.orderId, d.orderDetailId")
+    List<OrderLineProjection> findLinesByOrderIds(@Param("orderIds") Collection<Long> orderIds);
 }
@@ -10,6 +10,9 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.List;
+
 /**
  * Repository cho quản lý đơn hàng
  */
@@ -26,6 +29,49 @@ public interface OrderRepository extends JpaRepository<Order, Long> {
     @Query("SELECT o FROM Order o WHERE o.customer.user.email = :username OR o.customer.user.phone = :username")
     Page<Order> findByCustomerUsername(@Param("username") String username, Pageable pageable);
 
+    /**
+     * Lấy một trang ID đơn hàng của khách hàng theo username (email hoặc phone), lọc trạng thái nếu có
+     * Dữ liệu đơn hàng được nạp riêng bằng findAllForListingByOrderIdIn
+     *
+     * @param username username của khách hàng
+     * @param status trạng thái đơn hàng (null = tất cả)
+     * @param pageable thông tin phân trang và sắp xếp
+     * @return trang ID đơn hàng
+     */
+    @Query("SELECT o.orderId FROM Order o JOIN o.customer c JOIN c.user u " +
+            "WHERE (u.email = :username OR u.phone = :username) AND (:status IS NULL OR o.status = :status)")
+    Page<Long> findOrderIdsByCustomerUsername(@Param("username") String username,
+                                              @Param("status") OrderStatus status,
+                                              Pageable pageable);
+
+    /**
+     * Lấy một trang ID đơn hàng cho trang quản trị
+     * Không truyền trạng thái thì bỏ qua đơn có trạng thái excludedStatus (đơn chưa thanh toán)
+     *
+     * @param status trạng thái đơn hàng (null = tất cả trừ excludedStatus)
+     * @param excludedStatus trạng thái bị bỏ qua khi không lọc theo trạng thái
+     * @param deliveryType loại hình nhận hàng (null = tất cả)
+     * @param pageable thông tin phân trang và sắp xếp
+     * @return trang ID đơn hàng
+     */
+    @Query("SELECT o.orderId FROM Order o " +
+            "WHERE ((:status IS NULL AND o.status <> :excludedStatus) OR o.status = :status) " +
+            "AND (:deliveryType IS NULL OR o.deliveryType = :deliveryType)")
+    Page<Long> findOrderIdsForAdmin(@Param("status") OrderStatus status,
+                                    @Param("excludedStatus") OrderStatus excludedStatus,
+                                    @Param("deliveryType") DeliveryType deliveryType,
+                                    Pageable pageable);
+
+    /**
+     * Nạp các đơn hàng theo ID kèm khách hàng, tài khoản và cửa hàng nhận hàng trong một truy vấn
+     *
+     * @param orderIds danh sách ID đơn hàng
+     * @return các đơn hàng (không theo thứ tự của orderIds)
+     */
+    @Query("SELECT o FROM Order o LEFT JOIN FETCH o.customer c LEFT JOIN FETCH c.user " +
+            "LEFT JOIN FETCH o.pickupStore WHERE o.orderId IN :orderIds")
+    List<Order> findAllForListingByOrderIdIn(@Param("orderIds") Collection<Long> orderIds);
+
     /**
      * Lấy danh sách đơn hàng của khách hàng theo username và trạng thái với phân trang
      *
@@ -95,15 +95,15 @@ public interface PriceDetailRepository extends JpaRepository<PriceDetail, Long>
         List<PriceDetail> findByPriceIdWithProductUnit(@Param("priceId") Long priceId);
 
         /**
-         * Tìm chi tiết giá theo danh sách ID đơn vị sản phẩm và trạng thái bảng giá
+         * Tìm chi tiết giá theo danh sách ID đơn vị sản phẩm và trạng thái bảng giá (kèm bảng giá)
          * Kiểm tra: status = status, startDate <= now, endDate > now
          */
-        @Query("SELECT pd FROM PriceDetail pd " +
+        @Query("SELECT pd FROM PriceDetail pd JOIN FETCH pd.price p " +
                         "WHERE pd.productUnit.id IN :productUnitIds " +
-                        "AND pd.price.status = :status " +
-                        "AND pd.price.startDate <= CURRENT_TIMESTAMP " +
-                        "AND pd.price.endDate > CURRENT_TIMESTAMP")
-        List<PriceDetail> findByProductUnitIdsAndPriceStatus(@Param("productUnitIds") List<Long> productUnitIds,
+                        "AND p.status = :status " +
+                        "AND p.startDate <= CURRENT_TIMESTAMP " +
+                        "AND p.endDate > CURRENT_TIMESTAMP")
+        List<PriceDetail> findByProductUnitIdsAndPriceStatus(@Param("productUnitIds") java.util.Collection<Long> productUnitIds,
                         @Param("status") PriceType status);
 
         /**
@@ -1,6 +1,7 @@
 package iuh.fit.supermarket.repository;
 
 import iuh.fit.supermarket.entity.ProductImage;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
@@ -8,6 +9,7 @@ import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
 
@@ -111,4 +113,36 @@ public interface ProductImageRepository extends JpaRepository<ProductImage, Inte
            "ORDER BY pui.displayOrder ASC, pi.sortOrder ASC")
     List<ProductImage> findSelectedImagesForProductUnit(@Param("productId") Long productId,
                                                        @Param("productUnitId") Long productUnitId);
+
+    /**
+     * Lưu URL các biến thể ảnh sau khi tạo xong
+     *
+     * @param imageId      ID hình ảnh
+     * @param thumbnailUrl URL ảnh thu nhỏ
+     * @param cardUrl      URL ảnh cỡ thẻ
+     * @param fullUrl      URL ảnh cỡ lớn
+     * @return số bản ghi được cập nhật (0 nếu ảnh đã bị xóa)
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE ProductImage pi SET pi.thumbnailUrl = :thumbnailUrl, pi.cardUrl = :cardUrl, pi.fullUrl = :fullUrl " +
+           "WHERE pi.imageId = :imageId")
+    int updateVariantUrls(@Param("imageId") Integer imageId,
+                          @Param("thumbnailUrl") String thumbnailUrl,
+                          @Param("cardUrl") String cardUrl,
+                          @Param("fullUrl") String fullUrl);
+
+    /**
+     * Tìm các ảnh chưa có biến thể theo ID tăng dần, tạo trước thời điểm chỉ định
+     *
+     * @param afterId       chỉ lấy ảnh có ID lớn hơn (con trỏ duyệt theo lô)
+     * @param createdBefore chỉ lấy ảnh tạo trước thời điểm này (bỏ qua ảnh đang được xử lý sau upload)
+     * @param pageable      giới hạn số ảnh
+     * @return danh sách ảnh theo ID tăng dần
+     */
+    @Query("SELECT pi FROM ProductImage pi WHERE pi.thumbnailUrl IS NULL AND pi.imageId > :afterId " +
+           "AND pi.createdAt < :createdBefore ORDER BY pi.imageId ASC")
+    List<ProductImage> findWithoutVariants(@Param("afterId") Integer afterId,
+                                           @Param("createdBefore") LocalDateTime createdBefore,
+                                           Pageable pageable);
 }
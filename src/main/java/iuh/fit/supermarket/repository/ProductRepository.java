@@ -21,6 +21,26 @@ public interface ProductRepository extends JpaRepository<Product, Long> {
          */
         List<Product> findByIsActiveAndIsDeleted(Boolean isActive, Boolean isDeleted);
 
+        /**
+         * Đếm số sản phẩm theo trạng thái hoạt động
+         */
+        long countByIsActiveAndIsDeleted(Boolean isActive, Boolean isDeleted);
+
+        /**
+         * Lấy một trang sản phẩm đang hoạt động có ID lớn hơn lastId (phân trang keyset),
+         * kèm thương hiệu để không phát sinh truy vấn riêng cho từng sản phẩm
+         */
+        @Query("SELECT p FROM Product p LEFT JOIN FETCH p.brand " +
+                        "WHERE p.isActive = true AND p.isDeleted = false AND p.id > :lastId ORDER BY p.id")
+        List<Product> findActiveProductsAfter(@Param("lastId") Long lastId, Pageable pageable);
+
+        /**
+         * Lấy sản phẩm đang hoạt động của một thương hiệu
+         */
+        @Query("SELECT p FROM Product p WHERE p.brand.brandId = :brandId " +
+                        "AND p.isActive = true AND p.isDeleted = false ORDER BY p.id")
+        List<Product> findActiveByBrandId(@Param("brandId") Integer brandId, Pageable pageable);
+
         /**
          * Lấy danh sách sản phẩm theo danh mục
          */
@@ -28,6 +48,16 @@ public interface ProductRepository extends JpaRepository<Product, Long> {
         List<Product> findByCategoryIdAndIsDeleted(@Param("categoryId") Long categoryId,
                         @Param("isDeleted") Boolean isDeleted);
 
+        /**
+         * Lấy danh sách sản phẩm chưa xóa thuộc một danh mục và toàn bộ danh mục con cháu
+         * Khoảng nested set của danh mục được đọc trong cùng truy vấn (self-join) nên luôn khớp với
+         * tree_left đang lưu trong DB, kể cả khi instance khác vừa đánh số lại cây
+         */
+        @Query("SELECT p FROM Product p JOIN p.category c JOIN Category anc ON anc.categoryId = :categoryId " +
+                        "WHERE (c.categoryId = anc.categoryId OR c.treeLeft BETWEEN anc.treeLeft AND anc.treeRight) " +
+                        "AND p.isDeleted = false ORDER BY p.id")
+        List<Product> findByCategorySubtree(@Param("categoryId") Integer categoryId);
+
         /**
          * Tìm sản phẩm theo tên chứa từ khóa
          */
@@ -37,11 +67,12 @@ public interface ProductRepository extends JpaRepository<Product, Long> {
         /**
          * Tìm kiếm sản phẩm nâng cao với filtering
          * Tìm kiếm theo tên sản phẩm hoặc mã sản phẩm
-         * Lọc theo danh mục, thương hiệu, trạng thái hoạt động, tích điểm thưởng, bảng giá và tồn kho
+         * Lọc theo danh mục (gồm cả danh mục con cháu qua khoảng nested set đọc trong cùng truy vấn), thương hiệu, trạng thái hoạt động, tích điểm thưởng, bảng giá và tồn kho
          */
-        @Query("SELECT DISTINCT p FROM Product p WHERE " +
+        @Query("SELECT DISTINCT p FROM Product p LEFT JOIN p.category c WHERE " +
                         "(:searchTerm = '' OR (p.name LIKE %:searchTerm% OR p.code LIKE %:searchTerm%)) AND " +
-                        "(:categoryId IS NULL OR p.category.categoryId = :categoryId) AND " +
+                        "(:categoryId IS NULL OR EXISTS (SELECT 1 FROM Category anc WHERE anc.categoryId = :categoryId " +
+                        "   AND (c.categoryId = anc.categoryId OR c.treeLeft BETWEEN anc.treeLeft AND anc.treeRight))) AND " +
                         "(:brandId IS NULL OR p.brand.brandId = :brandId) AND " +
                         "(:isActive IS NULL OR p.isActive = :isActive) AND " +
                         "(:isRewardPoint IS NULL OR p.isRewardPoint = :isRewardPoint) AND " +
@@ -80,4 +111,16 @@ public interface ProductRepository extends JpaRepository<Product, Long> {
          * Kiểm tra tồn tại tên sản phẩm (trừ bản thân)
          */
         boolean existsByNameAndIdNot(String name, Long id);
+
+        /**
+         * Lấy toàn bộ mã sản phẩm (dùng để kiểm tra trùng khi import hàng loạt)
+         */
+        @Query("SELECT p.code FROM Product p")
+        List<String> findAllCodes();
+
+        /**
+         * Lấy tên các sản phẩm chưa bị xóa (dùng để kiểm tra trùng khi import hàng loạt)
+         */
+        @Query("SELECT p.name FROM Product p WHERE p.isDeleted = false")
+        List<String> findActiveProductNames();
 }
@@ -38,6 +38,32 @@ public interface ProductUnitImageRepository extends JpaRepository<ProductUnitIma
            "AND pui.isActive = true")
     Optional<ProductUnitImage> findPrimaryImageByProductUnitId(@Param("productUnitId") Long productUnitId);
 
+    /**
+     * Tìm hình ảnh chính của nhiều ProductUnit trong một truy vấn
+     * @param productUnitIds danh sách ID của ProductUnit
+     * @return các ProductUnitImage được đánh dấu là primary, kèm ProductImage
+     */
+    @Query("SELECT pui FROM ProductUnitImage pui " +
+           "JOIN FETCH pui.productImage " +
+           "WHERE pui.productUnit.id IN :productUnitIds " +
+           "AND pui.isPrimary = true " +
+           "AND pui.isActive = true")
+    List<ProductUnitImage> findPrimaryImagesByProductUnitIds(
+            @Param("productUnitIds") java.util.Collection<Long> productUnitIds);
+
+    /**
+     * Tìm tất cả hình ảnh đang hoạt động của nhiều ProductUnit trong một truy vấn
+     * @param productUnitIds danh sách ID của ProductUnit
+     * @return các ProductUnitImage kèm ProductImage, theo ProductUnit rồi theo thứ tự hiển thị
+     */
+    @Query("SELECT pui FROM ProductUnitImage pui " +
+           "JOIN FETCH pui.productImage " +
+           "WHERE pui.productUnit.id IN :productUnitIds " +
+           "AND pui.isActive = true " +
+           "ORDER BY pui.productUnit.id, pui.displayOrder ASC")
+    List<ProductUnitImage> findActiveImagesByProductUnitIds(
+            @Param("productUnitIds") java.util.Collection<Long> productUnitIds);
+
     /**
      * Tìm tất cả ProductUnit sử dụng một hình ảnh cụ thể
      * @param productImageId ID của ProductImage
@@ -2,6 +2,7 @@ package iuh.fit.supermarket.repository;
 
 import iuh.fit.supermarket.entity.ProductUnit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
@@ -24,6 +25,16 @@ public interface ProductUnitRepository extends JpaRepository<ProductUnit, Long>
      */
     List<ProductUnit> findByProductId(Long productId);
 
+    /**
+     * Lấy các đơn vị chưa bị xóa của nhiều sản phẩm trong một truy vấn, kèm đơn vị tính
+     *
+     * @param productIds danh sách ID sản phẩm
+     * @return danh sách đơn vị sản phẩm sắp xếp theo sản phẩm
+     */
+    @Query("SELECT pu FROM ProductUnit pu JOIN FETCH pu.unit " +
+            "WHERE pu.product.id IN :productIds AND pu.isDeleted = false ORDER BY pu.product.id, pu.id")
+    List<ProductUnit> findActiveByProductIdIn(@Param("productIds") java.util.Collection<Long> productIds);
+
     /**
      * Tìm đơn vị sản phẩm theo barcode
      *
@@ -163,4 +174,42 @@ public interface ProductUnitRepository extends JpaRepository<ProductUnit, Long>
             "WHERE pu.id = :id")
     Optional<ProductUnit> findByIdWithProductAndUnit(@Param("id") Long id);
 
+    /**
+     * Tìm nhiều ProductUnit theo ID với eager loading Product và Unit trong một truy vấn
+     *
+     * @param ids danh sách ID của ProductUnit
+     * @return danh sách ProductUnit với Product và Unit được load
+     */
+    @Query("SELECT pu FROM ProductUnit pu " +
+            "LEFT JOIN FETCH pu.product p " +
+            "LEFT JOIN FETCH pu.unit u " +
+            "WHERE pu.id IN :ids")
+    List<ProductUnit> findAllByIdWithProductAndUnit(@Param("ids") java.util.Collection<Long> ids);
+
+    /**
+     * Lấy toàn bộ mã vạch đang được sử dụng (dùng để kiểm tra trùng khi import hàng loạt)
+     *
+     * @return danh sách mã vạch
+     */
+    @Query("SELECT pu.barcode FROM ProductUnit pu WHERE pu.barcode IS NOT NULL")
+    List<String> findAllBarcodes();
+
+    /**
+     * Cập nhật URL ảnh barcode mà không cần tải entity
+     *
+     * @param id              ID của ProductUnit
+     * @param barcodeImageUrl URL ảnh barcode
+     */
+    @Modifying
+    @Query("UPDATE ProductUnit pu SET pu.barcodeImageUrl = :barcodeImageUrl WHERE pu.id = :id")
+    void updateBarcodeImageUrl(@Param("id") Long id, @Param("barcodeImageUrl") String barcodeImageUrl);
+
+    /**
+     * Lọc ra các ID đơn vị sản phẩm tồn tại trong danh sách
+     *
+     * @param ids danh sách ID cần kiểm tra
+     * @return các ID tồn tại
+     */
+    @Query("SELECT pu.id FROM ProductUnit pu WHERE pu.id IN :ids")
+    List<Long> findExistingIds(@Param("ids") java.util.Collection<Long> ids);
 }
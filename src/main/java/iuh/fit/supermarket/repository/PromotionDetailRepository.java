@@ -1,7 +1,13 @@
 package iuh.fit.supermarket.repository;
 
+import iuh.fit.supermarket.entity.BuyXGetYDetail;
+import iuh.fit.supermarket.entity.OrderDiscountDetail;
+import iuh.fit.supermarket.entity.ProductDiscountDetail;
 import iuh.fit.supermarket.entity.PromotionDetail;
+import iuh.fit.supermarket.enums.PromotionStatus;
+import iuh.fit.supermarket.enums.PromotionType;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
@@ -50,6 +56,79 @@ public interface PromotionDetailRepository extends JpaRepository<PromotionDetail
      */
     List<PromotionDetail> findByPromotionLine_PromotionLineId(Long promotionLineId);
 
+    /**
+     * Tìm các chi tiết Mua X Tặng Y của những line và header đang hoạt động trong ngày
+     * Tải kèm line, header, sản phẩm mua và sản phẩm tặng (cùng product, unit) trong một truy vấn
+     *
+     * @param promotionType loại khuyến mãi của line (BUY_X_GET_Y)
+     * @param status        trạng thái hoạt động của line và header
+     * @param today         ngày hiện tại
+     * @return danh sách chi tiết Mua X Tặng Y
+     */
+    @Query("""
+            SELECT d
+            FROM BuyXGetYDetail d
+            JOIN FETCH d.promotionLine pl
+            JOIN FETCH pl.header h
+            LEFT JOIN FETCH d.buyProduct bp
+            LEFT JOIN FETCH bp.product
+            LEFT JOIN FETCH d.giftProduct gp
+            LEFT JOIN FETCH gp.product
+            LEFT JOIN FETCH gp.unit
+            WHERE pl.promotionType = :promotionType
+            AND pl.status = :status AND pl.startDate <= :today AND pl.endDate >= :today
+            AND h.status = :status AND h.startDate <= :today AND h.endDate >= :today
+            """)
+    List<BuyXGetYDetail> findActiveBuyXGetYDetails(@Param("promotionType") PromotionType promotionType,
+                                                  @Param("status") PromotionStatus status,
+                                                  @Param("today") LocalDate today);
+
+    /**
+     * Tìm các chi tiết giảm giá sản phẩm của những line và header đang hoạt động trong ngày
+     * Tải kèm line, header và sản phẩm áp dụng (cùng product) trong một truy vấn
+     *
+     * @param promotionType loại khuyến mãi của line (PRODUCT_DISCOUNT)
+     * @param status        trạng thái hoạt động của line và header
+     * @param today         ngày hiện tại
+     * @return danh sách chi tiết giảm giá sản phẩm
+     */
+    @Query("""
+            SELECT d
+            FROM ProductDiscountDetail d
+            JOIN FETCH d.promotionLine pl
+            JOIN FETCH pl.header h
+            LEFT JOIN FETCH d.applyToProduct ap
+            LEFT JOIN FETCH ap.product
+            WHERE pl.promotionType = :promotionType
+            AND pl.status = :status AND pl.startDate <= :today AND pl.endDate >= :today
+            AND h.status = :status AND h.startDate <= :today AND h.endDate >= :today
+            """)
+    List<ProductDiscountDetail> findActiveProductDiscountDetails(@Param("promotionType") PromotionType promotionType,
+                                                                @Param("status") PromotionStatus status,
+                                                                @Param("today") LocalDate today);
+
+    /**
+     * Tìm các chi tiết giảm giá đơn hàng của những line và header đang hoạt động trong ngày
+     * Tải kèm line và header trong một truy vấn
+     *
+     * @param promotionType loại khuyến mãi của line (ORDER_DISCOUNT)
+     * @param status        trạng thái hoạt động của line và header
+     * @param today         ngày hiện tại
+     * @return danh sách chi tiết giảm giá đơn hàng
+     */
+    @Query("""
+            SELECT d
+            FROM OrderDiscountDetail d
+            JOIN FETCH d.promotionLine pl
+            JOIN FETCH pl.header h
+            WHERE pl.promotionType = :promotionType
+            AND pl.status = :status AND pl.startDate <= :today AND pl.endDate >= :today
+            AND h.status = :status AND h.startDate <= :today AND h.endDate >= :today
+            """)
+    List<OrderDiscountDetail> findActiveOrderDiscountDetails(@Param("promotionType") PromotionType promotionType,
+                                                            @Param("status") PromotionStatus status,
+                                                            @Param("today") LocalDate today);
+
     /**
      * Xóa tất cả chi tiết khuyến mãi theo ID của promotion line
      * 
@@ -73,6 +152,35 @@ public interface PromotionDetailRepository extends JpaRepository<PromotionDetail
      */
     long countByPromotionLine_PromotionLineId(Long promotionLineId);
 
+    /**
+     * Tăng lượt sử dụng nguyên tử, chỉ khi còn trong giới hạn usageLimit
+     * Kiểm tra giới hạn và cập nhật trong cùng một câu lệnh để tránh lost update
+     *
+     * @param detailId ID của PromotionDetail
+     * @param delta số lượt cần tăng
+     * @return 1 nếu cập nhật thành công, 0 nếu đã hết lượt hoặc không tồn tại
+     */
+    @Modifying
+    @Query("""
+            UPDATE PromotionDetail pd
+            SET pd.usageCount = pd.usageCount + :delta
+            WHERE pd.detailId = :detailId
+            AND (pd.usageLimit IS NULL OR pd.usageCount + :delta <= pd.usageLimit)
+            """)
+    int incrementUsageCountWithinLimit(@Param("detailId") Long detailId, @Param("delta") int delta);
+
+    /**
+     * Tăng lượt sử dụng nguyên tử không kiểm tra giới hạn
+     * Dùng khi ghi dồn lượt sử dụng của khuyến mãi không giới hạn
+     *
+     * @param detailId ID của PromotionDetail
+     * @param delta số lượt cần tăng
+     * @return số dòng được cập nhật
+     */
+    @Modifying
+    @Query("UPDATE PromotionDetail pd SET pd.usageCount = pd.usageCount + :delta WHERE pd.detailId = :detailId")
+    int incrementUsageCount(@Param("detailId") Long detailId, @Param("delta") long delta);
+
     /**
      * Lấy danh sách promotion detail cho báo cáo khuyến mãi
      * Filter theo khoảng thời gian (startDate và endDate của PromotionLine)
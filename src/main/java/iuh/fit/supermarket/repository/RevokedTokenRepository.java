@@ -0,0 +1,31 @@
+package iuh.fit.supermarket.repository;
+
+import iuh.fit.supermarket.entity.RevokedToken;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Repository cho entity RevokedToken
+ */
+@Repository
+public interface RevokedTokenRepository extends JpaRepository<RevokedToken, String> {
+
+    /**
+     * Lấy ID các token bị thu hồi chưa hết hạn (dùng để dựng lại Bloom filter)
+     */
+    @Query("SELECT rt.tokenId FROM RevokedToken rt WHERE rt.expiresAt > :now")
+    List<String> findActiveTokenIds(@Param("now") LocalDateTime now);
+
+    /**
+     * Xóa các bản ghi của token đã hết hạn tự nhiên
+     */
+    @Modifying
+    @Query("DELETE FROM RevokedToken rt WHERE rt.expiresAt <= :now")
+    int deleteExpired(@Param("now") LocalDateTime now);
+}
@@ -78,4 +78,22 @@ public interface SaleInvoiceDetailRepository extends JpaRepository<SaleInvoiceDe
             @Param("fromDate") java.time.LocalDate fromDate,
             @Param("toDate") java.time.LocalDate toDate,
             org.springframework.data.domain.Pageable pageable);
+
+    /**
+     * Lấy các đơn vị sản phẩm đã mua theo hóa đơn đã thanh toán, không tải entity
+     * Trả về: [invoiceId, customerId (null nếu khách lẻ), productUnitId]
+     *
+     * @param invoiceIds danh sách ID hóa đơn
+     * @return các dòng đã mua
+     */
+    @Query("""
+            SELECT i.invoiceId, c.customerId, d.productUnit.id
+            FROM SaleInvoiceDetail d
+            JOIN d.invoice i
+            LEFT JOIN i.customer c
+            WHERE i.invoiceId IN :invoiceIds
+            AND i.status = 'PAID'
+            """)
+    List<Object[]> findPurchasedProductUnitsByInvoiceIds(
+            @Param("invoiceIds") java.util.Collection<Integer> invoiceIds);
 }
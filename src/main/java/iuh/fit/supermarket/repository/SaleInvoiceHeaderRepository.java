@@ -9,6 +9,7 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
 
@@ -28,6 +29,16 @@ public interface SaleInvoiceHeaderRepository extends JpaRepository<SaleInvoiceHe
      */
     boolean existsByInvoiceNumber(String invoiceNumber);
 
+    /**
+     * Tìm hóa đơn theo khóa idempotency của máy POS
+     */
+    Optional<SaleInvoiceHeader> findByClientSaleId(String clientSaleId);
+
+    /**
+     * Tìm các hóa đơn đã đồng bộ theo danh sách khóa idempotency (một truy vấn cho cả lô)
+     */
+    List<SaleInvoiceHeader> findByClientSaleIdIn(java.util.Collection<String> clientSaleIds);
+
     /**
      * Tìm danh sách hóa đơn theo order ID
      */
@@ -94,6 +105,12 @@ public interface SaleInvoiceHeaderRepository extends JpaRepository<SaleInvoiceHe
     @Query("SELECT i FROM SaleInvoiceHeader i WHERE i.invoiceId = :invoiceId")
     java.util.Optional<SaleInvoiceHeader> findByIdWithDetails(Integer invoiceId);
 
+    /**
+     * Lấy thời gian cập nhật của hoá đơn (không tải chi tiết), dùng làm phiên bản cho cache PDF
+     */
+    @Query("SELECT i.updatedAt FROM SaleInvoiceHeader i WHERE i.invoiceId = :invoiceId")
+    Optional<LocalDateTime> findUpdatedAtByInvoiceId(Integer invoiceId);
+
     /**
      * Lấy dữ liệu báo cáo doanh số bán hàng theo ngày
      * Nhóm theo nhân viên và ngày, chỉ lấy hóa đơn PAID
@@ -270,4 +287,15 @@ public interface SaleInvoiceHeaderRepository extends JpaRepository<SaleInvoiceHe
     List<Object[]> getRevenueByMonthOfYear(
             @Param("fromDate") java.time.LocalDate fromDate,
             @Param("toDate") java.time.LocalDate toDate);
+
+    /**
+     * Lấy một trang ID hóa đơn đã thanh toán có ID lớn hơn lastId (phân trang keyset)
+     *
+     * @param lastId   ID hóa đơn cuối của trang trước
+     * @param pageable kích thước trang
+     * @return danh sách ID hóa đơn tăng dần
+     */
+    @Query("SELECT i.invoiceId FROM SaleInvoiceHeader i " +
+           "WHERE i.status = 'PAID' AND i.invoiceId > :lastId ORDER BY i.invoiceId")
+    List<Integer> findPaidInvoiceIdsAfter(@Param("lastId") Integer lastId, Pageable pageable);
 }
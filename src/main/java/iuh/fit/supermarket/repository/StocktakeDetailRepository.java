@@ -1,11 +1,14 @@
 package iuh.fit.supermarket.repository;
 
 import iuh.fit.supermarket.entity.StocktakeDetail;
+import iuh.fit.supermarket.entity.WarehouseTransaction;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -177,4 +180,119 @@ public interface StocktakeDetailRepository extends JpaRepository<StocktakeDetail
             "LOWER(sd.productUnit.product.name) LIKE LOWER(CONCAT('%', :keyword, '%')))")
     List<StocktakeDetail> findByStocktakeIdAndKeyword(@Param("stocktakeId") Integer stocktakeId,
             @Param("keyword") String keyword);
+
+    /**
+     * Tạo chi tiết kiểm kê cho toàn bộ tồn kho bằng một câu lệnh INSERT ... SELECT
+     * Số lượng đếm mặc định bằng số lượng tồn kho hiện tại (đánh dấu là giá trị mặc định)
+     *
+     * @param stocktakeId ID phiếu kiểm kê
+     * @return số chi tiết đã tạo
+     */
+    @Modifying
+    @Query("INSERT INTO StocktakeDetail (stocktake, productUnit, quantityExpected, quantityCounted, " +
+            "isSeededCount, quantityDifference, reason, createdAt) " +
+            "SELECT s, w.productUnit, w.quantityOnHand, w.quantityOnHand, true, 0, '', CURRENT_TIMESTAMP " +
+            "FROM Warehouse w, Stocktake s WHERE s.stocktakeId = :stocktakeId")
+    int insertFromAllWarehouses(@Param("stocktakeId") Integer stocktakeId);
+
+    /**
+     * Tạo chi tiết kiểm kê cho các đơn vị sản phẩm chỉ định bằng một câu lệnh INSERT ... SELECT
+     * Đơn vị sản phẩm chưa có tồn kho được bỏ qua
+     *
+     * @param stocktakeId    ID phiếu kiểm kê
+     * @param productUnitIds danh sách ID đơn vị sản phẩm
+     * @return số chi tiết đã tạo
+     */
+    @Modifying
+    @Query("INSERT INTO StocktakeDetail (stocktake, productUnit, quantityExpected, quantityCounted, " +
+            "isSeededCount, quantityDifference, reason, createdAt) " +
+            "SELECT s, w.productUnit, w.quantityOnHand, w.quantityOnHand, true, 0, '', CURRENT_TIMESTAMP " +
+            "FROM Warehouse w, Stocktake s " +
+            "WHERE s.stocktakeId = :stocktakeId AND w.productUnit.id IN :productUnitIds")
+    int insertFromWarehousesByProductUnitIds(@Param("stocktakeId") Integer stocktakeId,
+            @Param("productUnitIds") Collection<Long> productUnitIds);
+
+    /**
+     * Lấy ID các chi tiết của phiếu kiểm kê theo thứ tự tăng dần (dùng để chia lô khi hoàn thành)
+     *
+     * @param stocktakeId ID phiếu kiểm kê
+     * @return danh sách ID chi tiết
+     */
+    @Query("SELECT sd.stocktakeDetailId FROM StocktakeDetail sd WHERE sd.stocktake.stocktakeId = :stocktakeId " +
+            "ORDER BY sd.stocktakeDetailId")
+    List<Integer> findIdsByStocktakeId(@Param("stocktakeId") Integer stocktakeId);
+
+    /**
+     * Lấy ID các đơn vị sản phẩm có số lượng đếm khác 0 nhưng chưa có bản ghi tồn kho
+     * Những chi tiết này không thể điều chỉnh tồn kho khi hoàn thành phiếu
+     *
+     * @param stocktakeId ID phiếu kiểm kê
+     * @return danh sách ID đơn vị sản phẩm
+     */
+    @Query("SELECT sd.productUnit.id FROM StocktakeDetail sd WHERE sd.stocktake.stocktakeId = :stocktakeId " +
+            "AND sd.quantityCounted <> 0 " +
+            "AND NOT EXISTS (SELECT 1 FROM Warehouse w WHERE w.productUnit.id = sd.productUnit.id)")
+    List<Long> findProductUnitIdsWithoutWarehouse(@Param("stocktakeId") Integer stocktakeId);
+
+    /**
+     * Cập nhật số lượng tồn kho hệ thống và chênh lệch cho các chi tiết trong khoảng ID
+     * Bỏ qua đơn vị sản phẩm đã được điều chỉnh bởi chính phiếu này (khi hoàn thành lại sau lỗi giữa chừng)
+     *
+     * @param stocktakeId    ID phiếu kiểm kê
+     * @param stocktakeCode  mã phiếu kiểm kê (mã tham chiếu của giao dịch điều chỉnh)
+     * @param adjustmentType loại giao dịch điều chỉnh (ADJUSTMENT)
+     * @param fromId         ID chi tiết đầu (bao gồm)
+     * @param toId           ID chi tiết cuối (bao gồm)
+     * @return số chi tiết đã cập nhật
+     */
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE StocktakeDetail sd SET " +
+            "sd.quantityExpected = COALESCE((SELECT w.quantityOnHand FROM Warehouse w " +
+            "WHERE w.productUnit.id = sd.productUnit.id), 0), " +
+            "sd.quantityDifference = sd.quantityCounted - COALESCE((SELECT w.quantityOnHand FROM Warehouse w " +
+            "WHERE w.productUnit.id = sd.productUnit.id), 0) " +
+            "WHERE sd.stocktake.stocktakeId = :stocktakeId " +
+            "AND sd.stocktakeDetailId BETWEEN :fromId AND :toId " +
+            "AND NOT EXISTS (SELECT 1 FROM WarehouseTransaction wt WHERE wt.productUnit.id = sd.productUnit.id " +
+            "AND wt.transactionType = :adjustmentType AND wt.referenceId = :stocktakeCode)")
+    int refreshExpectedQuantities(@Param("stocktakeId") Integer stocktakeId,
+            @Param("stocktakeCode") String stocktakeCode,
+            @Param("adjustmentType") WarehouseTransaction.TransactionType adjustmentType,
+            @Param("fromId") Integer fromId,
+            @Param("toId") Integer toId);
+
+    /**
+     * Lọc ra các đơn vị sản phẩm đã có chi tiết trong phiếu kiểm kê
+     *
+     * @param stocktakeId    ID phiếu kiểm kê
+     * @param productUnitIds danh sách ID đơn vị sản phẩm
+     * @return ID các đơn vị sản phẩm đã có chi tiết
+     */
+    @Query("SELECT sd.productUnit.id FROM StocktakeDetail sd WHERE sd.stocktake.stocktakeId = :stocktakeId " +
+            "AND sd.productUnit.id IN :productUnitIds")
+    List<Long> findProductUnitIdsByStocktakeIdAndProductUnitIdIn(@Param("stocktakeId") Integer stocktakeId,
+            @Param("productUnitIds") Collection<Long> productUnitIds);
+
+    /**
+     * Cộng dồn số lượng đếm (và chênh lệch) cho chi tiết kiểm kê mà không đọc lại bản ghi
+     * Chi tiết còn giữ số lượng mặc định chép từ tồn kho thì lượt quét đầu tiên ghi đè thay vì cộng vào.
+     * Chênh lệch được gán trước số lượng đếm và cờ mặc định được gán sau cùng, để biểu thức không phụ thuộc
+     * vào thứ tự đánh giá phép gán (MySQL dùng giá trị đã gán trước đó trong cùng câu UPDATE)
+     *
+     * @param stocktakeId   ID phiếu kiểm kê
+     * @param productUnitId ID đơn vị sản phẩm
+     * @param delta         số lượng cộng thêm (có thể âm)
+     * @return số chi tiết đã cập nhật
+     */
+    @Modifying
+    @Query("UPDATE StocktakeDetail sd SET " +
+            "sd.quantityDifference = CASE WHEN sd.isSeededCount = true " +
+            "THEN :delta - sd.quantityExpected ELSE sd.quantityDifference + :delta END, " +
+            "sd.quantityCounted = CASE WHEN sd.isSeededCount = true " +
+            "THEN :delta ELSE sd.quantityCounted + :delta END, " +
+            "sd.isSeededCount = false " +
+            "WHERE sd.stocktake.stocktakeId = :stocktakeId AND sd.productUnit.id = :productUnitId")
+    int addCountedDelta(@Param("stocktakeId") Integer stocktakeId,
+            @Param("productUnitId") Long productUnitId,
+            @Param("delta") int delta);
 }
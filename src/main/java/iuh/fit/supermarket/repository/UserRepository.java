@@ -1,5 +1,6 @@
 package iuh.fit.supermarket.repository;
 
+import iuh.fit.supermarket.dto.customer.UserContactProjection;
 import iuh.fit.supermarket.entity.User;
 import iuh.fit.supermarket.enums.UserRole;
 import org.springframework.data.jpa.repository.JpaRepository;
@@ -7,6 +8,7 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -150,4 +152,17 @@ public interface UserRepository extends JpaRepository<User, Long> {
      * @return List<User>
      */
     List<User> findByNameContainingAndIsDeletedFalse(String name);
+
+    /**
+     * Lấy thông tin liên hệ của các user có email hoặc số điện thoại nằm trong danh sách
+     * Dùng để kiểm tra trùng cho cả một lô import bằng một truy vấn (kể cả user đã xóa mềm vì ràng buộc unique vẫn áp dụng)
+     *
+     * @param emails danh sách email (đã chuẩn hóa)
+     * @param phones danh sách số điện thoại (đã chuẩn hóa)
+     * @return thông tin liên hệ của các user trùng
+     */
+    @Query("SELECT new iuh.fit.supermarket.dto.customer.UserContactProjection(u.email, u.phone) " +
+           "FROM User u WHERE u.email IN :emails OR u.phone IN :phones")
+    List<UserContactProjection> findContactsByEmailInOrPhoneIn(@Param("emails") Collection<String> emails,
+                                                               @Param("phones") Collection<String> phones);
 }
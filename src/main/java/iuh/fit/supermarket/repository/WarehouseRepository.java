@@ -2,9 +2,13 @@ package iuh.fit.supermarket.repository;
 
 import iuh.fit.supermarket.entity.Warehouse;
 import iuh.fit.supermarket.entity.ProductUnit;
+import iuh.fit.supermarket.entity.WarehouseTransaction;
+import jakarta.persistence.LockModeType;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
@@ -35,6 +39,34 @@ public interface WarehouseRepository extends JpaRepository<Warehouse, Integer> {
     @Query("SELECT w FROM Warehouse w WHERE w.productUnit.id = :productUnitId")
     Optional<Warehouse> findByProductUnitId(@Param("productUnitId") Long productUnitId);
 
+    /**
+     * Khóa dòng tồn kho (SELECT ... FOR UPDATE) và đọc số lượng hiện tại từ DB
+     * Trả về số lượng thay vì entity vì entity có thể đã nằm trong persistence context với giá trị cũ,
+     * khi đó Hibernate chỉ khóa mà không nạp lại trạng thái
+     *
+     * @param productUnitId ID đơn vị sản phẩm
+     * @return số lượng tồn kho đã khóa, rỗng nếu chưa có bản ghi tồn kho
+     */
+    @Query(value = "SELECT quantity_on_hand FROM warehouses WHERE product_unit_id = :productUnitId FOR UPDATE",
+            nativeQuery = true)
+    Optional<Integer> lockQuantityOnHand(@Param("productUnitId") Long productUnitId);
+
+    /**
+     * Ghi số lượng tồn kho mới bằng câu UPDATE trực tiếp (dùng sau {@link #lockQuantityOnHand})
+     * Không dựa vào dirty check của entity vì ảnh chụp trong persistence context có thể cũ:
+     * nếu số lượng mới trùng với giá trị cũ trong ảnh chụp, Hibernate sẽ không phát sinh UPDATE
+     * Flush trước để bản ghi tồn kho vừa tạo (chưa insert) có trong DB
+     *
+     * @param productUnitId  ID đơn vị sản phẩm
+     * @param quantityOnHand số lượng tồn kho mới
+     * @return số dòng được cập nhật
+     */
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE Warehouse w SET w.quantityOnHand = :quantityOnHand, w.updatedAt = CURRENT_TIMESTAMP " +
+            "WHERE w.productUnit.id = :productUnitId")
+    int updateQuantityOnHand(@Param("productUnitId") Long productUnitId,
+                             @Param("quantityOnHand") Integer quantityOnHand);
+
     /**
      * Kiểm tra tồn tại tồn kho theo đơn vị sản phẩm
      *
@@ -153,4 +185,57 @@ public interface WarehouseRepository extends JpaRepository<Warehouse, Integer> {
      */
     @Query("SELECT COALESCE(SUM(w.quantityOnHand), 0) FROM Warehouse w")
     Long sumTotalQuantityOnHand();
+
+    /**
+     * Khóa (SELECT ... FOR UPDATE) các bản ghi tồn kho thuộc các chi tiết kiểm kê trong khoảng ID
+     * Khóa theo thứ tự ID để tránh deadlock với giao dịch bán hàng; khóa chỉ giữ trong transaction của lô
+     *
+     * @param stocktakeId ID phiếu kiểm kê
+     * @param fromId      ID chi tiết đầu (bao gồm)
+     * @param toId        ID chi tiết cuối (bao gồm)
+     * @return danh sách tồn kho đã khóa
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT w FROM Warehouse w WHERE w.productUnit.id IN (" +
+            "SELECT sd.productUnit.id FROM StocktakeDetail sd WHERE sd.stocktake.stocktakeId = :stocktakeId " +
+            "AND sd.stocktakeDetailId BETWEEN :fromId AND :toId) ORDER BY w.warehouseId")
+    List<Warehouse> lockByStocktakeDetailRange(@Param("stocktakeId") Integer stocktakeId,
+            @Param("fromId") Integer fromId,
+            @Param("toId") Integer toId);
+
+    /**
+     * Ghi số lượng đếm thực tế vào tồn kho cho các chi tiết kiểm kê có chênh lệch trong khoảng ID
+     * Bỏ qua đơn vị sản phẩm đã được điều chỉnh bởi chính phiếu này
+     *
+     * @param stocktakeId    ID phiếu kiểm kê
+     * @param stocktakeCode  mã phiếu kiểm kê
+     * @param adjustmentType loại giao dịch điều chỉnh (ADJUSTMENT)
+     * @param fromId         ID chi tiết đầu (bao gồm)
+     * @param toId           ID chi tiết cuối (bao gồm)
+     * @return số bản ghi tồn kho đã cập nhật
+     */
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE Warehouse w SET " +
+            "w.quantityOnHand = (SELECT sd.quantityCounted FROM StocktakeDetail sd " +
+            "WHERE sd.stocktake.stocktakeId = :stocktakeId AND sd.productUnit.id = w.productUnit.id), " +
+            "w.updatedAt = CURRENT_TIMESTAMP " +
+            "WHERE w.productUnit.id IN (SELECT sd.productUnit.id FROM StocktakeDetail sd " +
+            "WHERE sd.stocktake.stocktakeId = :stocktakeId " +
+            "AND sd.stocktakeDetailId BETWEEN :fromId AND :toId AND sd.quantityDifference <> 0 " +
+            "AND NOT EXISTS (SELECT 1 FROM WarehouseTransaction wt WHERE wt.productUnit.id = sd.productUnit.id " +
+            "AND wt.transactionType = :adjustmentType AND wt.referenceId = :stocktakeCode))")
+    int applyStocktakeCounts(@Param("stocktakeId") Integer stocktakeId,
+            @Param("stocktakeCode") String stocktakeCode,
+            @Param("adjustmentType") WarehouseTransaction.TransactionType adjustmentType,
+            @Param("fromId") Integer fromId,
+            @Param("toId") Integer toId);
+
+    /**
+     * Lấy tồn kho của nhiều đơn vị sản phẩm trong một truy vấn
+     *
+     * @param productUnitIds danh sách ID đơn vị sản phẩm
+     * @return danh sách tồn kho
+     */
+    @Query("SELECT w FROM Warehouse w WHERE w.productUnit.id IN :productUnitIds")
+    List<Warehouse> findByProductUnitIdIn(@Param("productUnitIds") java.util.Collection<Long> productUnitIds);
 }
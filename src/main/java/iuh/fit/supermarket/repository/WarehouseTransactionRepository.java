@@ -4,6 +4,7 @@ import iuh.fit.supermarket.entity.WarehouseTransaction;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
@@ -164,4 +165,32 @@ public interface WarehouseTransactionRepository extends JpaRepository<WarehouseT
      */
     @Query("SELECT wt FROM WarehouseTransaction wt WHERE wt.productUnit.product.id = :productId ORDER BY wt.transactionDate DESC")
     List<WarehouseTransaction> findByProductId(@Param("productId") Long productId);
+
+    /**
+     * Tạo giao dịch điều chỉnh cho các chi tiết kiểm kê có chênh lệch trong khoảng ID bằng một câu lệnh
+     * INSERT ... SELECT; bỏ qua đơn vị sản phẩm đã có giao dịch điều chỉnh của chính phiếu này
+     *
+     * @param stocktakeId    ID phiếu kiểm kê
+     * @param stocktakeCode  mã phiếu kiểm kê (lưu vào referenceId)
+     * @param adjustmentType loại giao dịch điều chỉnh (ADJUSTMENT)
+     * @param notesPrefix    tiền tố ghi chú, nối với lý do chênh lệch của từng chi tiết
+     * @param fromId         ID chi tiết đầu (bao gồm)
+     * @param toId           ID chi tiết cuối (bao gồm)
+     * @return số giao dịch đã tạo
+     */
+    @Modifying
+    @Query("INSERT INTO WarehouseTransaction (productUnit, beforeQuantity, quantityChange, newQuantity, " +
+            "transactionType, referenceId, notes, transactionDate) " +
+            "SELECT sd.productUnit, sd.quantityExpected, sd.quantityDifference, sd.quantityCounted, " +
+            ":adjustmentType, :stocktakeCode, CONCAT(:notesPrefix, COALESCE(sd.reason, '')), CURRENT_TIMESTAMP " +
+            "FROM StocktakeDetail sd WHERE sd.stocktake.stocktakeId = :stocktakeId " +
+            "AND sd.stocktakeDetailId BETWEEN :fromId AND :toId AND sd.quantityDifference <> 0 " +
+            "AND NOT EXISTS (SELECT 1 FROM WarehouseTransaction wt WHERE wt.productUnit.id = sd.productUnit.id " +
+            "AND wt.transactionType = :adjustmentType AND wt.referenceId = :stocktakeCode)")
+    int insertStocktakeAdjustments(@Param("stocktakeId") Integer stocktakeId,
+            @Param("stocktakeCode") String stocktakeCode,
+            @Param("adjustmentType") WarehouseTransaction.TransactionType adjustmentType,
+            @Param("notesPrefix") String notesPrefix,
+            @Param("fromId") Integer fromId,
+            @Param("toId") Integer toId);
 }
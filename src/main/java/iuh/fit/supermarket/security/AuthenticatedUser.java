@@ -0,0 +1,26 @@
+package iuh.fit.supermarket.security;
+
+import iuh.fit.supermarket.enums.UserRole;
+import lombok.Getter;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.userdetails.User;
+
+import java.util.Collection;
+
+/**
+ * Principal của user đã xác thực, mang thêm userId và role
+ * để các tầng phía sau không phải tra lại bảng users theo email/phone
+ */
+@Getter
+public class AuthenticatedUser extends User {
+
+    private final Long userId;
+    private final UserRole role;
+
+    public AuthenticatedUser(Long userId, UserRole role, String username, String password, boolean enabled,
+                             Collection<? extends GrantedAuthority> authorities) {
+        super(username, password != null ? password : "", enabled, true, true, enabled, authorities);
+        this.userId = userId;
+        this.role = role;
+    }
+}
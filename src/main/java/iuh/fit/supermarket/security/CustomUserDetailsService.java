@@ -27,6 +27,7 @@ import java.util.List;
 public class CustomUserDetailsService implements UserDetailsService {
 
     private final UserRepository userRepository;
+    private final UserDetailsCache userDetailsCache;
 
     /**
      * Load user by username (email hoặc identifier)
@@ -76,7 +77,7 @@ public class CustomUserDetailsService implements UserDetailsService {
      * @param user User entity
      * @return UserDetails
      */
-    private UserDetails createUserDetails(User user) {
+    private AuthenticatedUser createUserDetails(User user) {
         Collection<GrantedAuthority> authorities = getAuthorities(user);
 
         // Xác định username: ưu tiên email, nếu không có thì dùng phone
@@ -87,15 +88,14 @@ public class CustomUserDetailsService implements UserDetailsService {
             username = "CUSTOMER:" + username;
         }
 
-        return org.springframework.security.core.userdetails.User.builder()
-                .username(username)
-                .password(user.getPasswordHash())
-                .authorities(authorities)
-                .accountExpired(false)
-                .accountLocked(user.getIsDeleted())
-                .credentialsExpired(false)
-                .disabled(user.getIsDeleted())
-                .build();
+        // Tài khoản đã xóa mềm bị coi là bị khóa và vô hiệu hóa
+        return new AuthenticatedUser(
+                user.getUserId(),
+                user.getUserRole(),
+                username,
+                user.getPasswordHash(),
+                !user.getIsDeleted(),
+                authorities);
     }
 
     /**
@@ -152,10 +152,21 @@ public class CustomUserDetailsService implements UserDetailsService {
      * @throws UsernameNotFoundException nếu không tìm thấy user
      */
     @Transactional(readOnly = true)
-    public UserDetails loadUserById(Long userId) throws UsernameNotFoundException {
+    public AuthenticatedUser loadUserById(Long userId) throws UsernameNotFoundException {
         User user = userRepository.findByUserIdAndIsDeletedFalse(userId)
                 .orElseThrow(() -> new UsernameNotFoundException("Không tìm thấy user với ID: " + userId));
 
         return createUserDetails(user);
     }
+
+    /**
+     * Load user by ID qua cache TTL (dùng cho JwtAuthenticationFilter ở mỗi request)
+     * Chỉ truy vấn DB khi user chưa có trong cache, đã hết hạn hoặc vừa bị evict
+     * @param userId ID của user
+     * @return AuthenticatedUser
+     * @throws UsernameNotFoundException nếu không tìm thấy user hoặc user đã bị xóa
+     */
+    public AuthenticatedUser loadCachedUserById(Long userId) throws UsernameNotFoundException {
+        return userDetailsCache.get(userId, this::loadUserById);
+    }
 }
@@ -1,5 +1,6 @@
 package iuh.fit.supermarket.security;
 
+import iuh.fit.supermarket.service.TokenRevocationService;
 import iuh.fit.supermarket.util.JwtUtil;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
@@ -10,13 +11,13 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.core.userdetails.UserDetails;
-import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.web.authentication.WebAuthenticationDetailsSource;
 import org.springframework.stereotype.Component;
 import org.springframework.util.StringUtils;
 import org.springframework.web.filter.OncePerRequestFilter;
 
 import java.io.IOException;
+import java.util.Optional;
 
 /**
  * Filter để xử lý JWT authentication cho mỗi request
@@ -27,10 +28,13 @@ import java.io.IOException;
 public class JwtAuthenticationFilter extends OncePerRequestFilter {
 
     private final JwtUtil jwtUtil;
-    private final UserDetailsService userDetailsService;
+    private final CustomUserDetailsService userDetailsService;
+    private final TokenRevocationService tokenRevocationService;
 
     /**
      * Xử lý filter cho mỗi request
+     * Token chỉ được parse và xác thực chữ ký một lần; user được lấy từ cache theo claim uid
+     * nên request bình thường không truy vấn DB
      */
     @Override
     protected void doFilterInternal(HttpServletRequest request, 
@@ -40,16 +44,20 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
         try {
             // Lấy JWT token từ request
             String jwt = getJwtFromRequest(request);
+            Optional<JwtUtil.TokenClaims> tokenClaims = StringUtils.hasText(jwt)
+                    ? jwtUtil.parseToken(jwt)
+                    : Optional.empty();
             
-            if (StringUtils.hasText(jwt) && jwtUtil.validateToken(jwt)) {
-                // Lấy username từ token
-                String username = jwtUtil.getUsernameFromToken(jwt);
+            // Token đã đăng xuất bị từ chối; Bloom filter trả lời trong bộ nhớ cho token chưa bị thu hồi
+            if (tokenClaims.isPresent() && !isRevoked(tokenClaims.get())) {
+                JwtUtil.TokenClaims claims = tokenClaims.get();
+                String username = claims.username();
+                UserDetails userDetails = loadUser(claims);
                 
-                // Load user details
-                UserDetails userDetails = userDetailsService.loadUserByUsername(username);
-                
-                // Validate token với user details
-                if (jwtUtil.validateToken(jwt, userDetails)) {
+                // Token phải khớp user hiện tại: cùng username, tài khoản còn hoạt động, role chưa bị đổi
+                if (userDetails.getUsername().equals(username)
+                        && userDetails.isEnabled()
+                        && roleMatches(claims, userDetails)) {
                     // Tạo authentication object
                     UsernamePasswordAuthenticationToken authentication = 
                         new UsernamePasswordAuthenticationToken(
@@ -75,6 +83,35 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
         filterChain.doFilter(request, response);
     }
 
+    /**
+     * Kiểm tra token đã bị thu hồi (đăng xuất) chưa; token cũ chưa có jti không thu hồi được
+     */
+    private boolean isRevoked(JwtUtil.TokenClaims claims) {
+        return claims.tokenId() != null && tokenRevocationService.isRevoked(claims.tokenId());
+    }
+
+    /**
+     * Lấy user tương ứng với token
+     * Token mới có claim uid được lấy qua cache; token cũ (chưa có uid) vẫn load theo username từ DB
+     */
+    private UserDetails loadUser(JwtUtil.TokenClaims claims) {
+        if (claims.userId() != null) {
+            return userDetailsService.loadCachedUserById(claims.userId());
+        }
+        return userDetailsService.loadUserByUsername(claims.username());
+    }
+
+    /**
+     * Role ghi trong token phải trùng role hiện tại của user
+     * (role bị đổi thì token cũ không còn dùng được, user phải đăng nhập lại)
+     */
+    private boolean roleMatches(JwtUtil.TokenClaims claims, UserDetails userDetails) {
+        if (claims.role() == null || !(userDetails instanceof AuthenticatedUser authenticatedUser)) {
+            return true;
+        }
+        return authenticatedUser.getRole() == claims.role();
+    }
+
     /**
      * Lấy JWT token từ Authorization header
      * @param request HTTP request
@@ -101,6 +138,7 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
 
         // Bỏ qua filter cho các endpoint public
         return path.startsWith("/api/auth/login") ||
+               path.startsWith("/api/auth/refresh") ||
                path.startsWith("/api/auth/register") ||
                path.startsWith("/api/auth/customer/login") ||
                path.startsWith("/api/customers/register") ||
@@ -0,0 +1,138 @@
+package iuh.fit.supermarket.security;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import iuh.fit.supermarket.exception.TooManyRequestsException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Giới hạn tần suất đăng nhập bằng token bucket theo IP và theo tài khoản
+ * Được kiểm tra trước khi chạy BCrypt nên request bị chặn gần như không tốn CPU.
+ * Giới hạn theo IP để rộng vì nhiều nhân viên cùng ca thường đăng nhập sau cùng một NAT của cửa hàng
+ */
+@Component
+@Slf4j
+public class LoginRateLimiter {
+
+    private final Map<String, TokenBucket> ipBuckets = new ConcurrentHashMap<>();
+    private final Map<String, TokenBucket> accountBuckets = new ConcurrentHashMap<>();
+
+    private final int ipCapacity;
+    private final double ipRefillPerSecond;
+    private final int accountCapacity;
+    private final double accountRefillPerSecond;
+
+    private final Counter ipLimitedCounter;
+    private final Counter accountLimitedCounter;
+
+    public LoginRateLimiter(MeterRegistry meterRegistry,
+                            @Value("${security.login-rate-limit.ip.capacity:60}") int ipCapacity,
+                            @Value("${security.login-rate-limit.ip.refill-per-minute:60}") int ipRefillPerMinute,
+                            @Value("${security.login-rate-limit.account.capacity:5}") int accountCapacity,
+                            @Value("${security.login-rate-limit.account.refill-per-minute:5}") int accountRefillPerMinute) {
+        this.ipCapacity = ipCapacity;
+        this.ipRefillPerSecond = ipRefillPerMinute / 60.0;
+        this.accountCapacity = accountCapacity;
+        this.accountRefillPerSecond = accountRefillPerMinute / 60.0;
+
+        this.ipLimitedCounter = limitedCounter(meterRegistry, "ip");
+        this.accountLimitedCounter = limitedCounter(meterRegistry, "account");
+    }
+
+    /**
+     * Lấy một lượt đăng nhập từ bucket của IP và của tài khoản
+     *
+     * @param clientIp địa chỉ IP của client
+     * @param account  email hoặc số điện thoại đăng nhập
+     * @throws TooManyRequestsException nếu một trong hai bucket đã hết lượt
+     */
+    public void checkLoginAttempt(String clientIp, String account) {
+        long now = System.nanoTime();
+
+        TokenBucket ipBucket = ipBuckets.computeIfAbsent(clientIp,
+                key -> new TokenBucket(ipCapacity, ipRefillPerSecond, now));
+        long ipWait = ipBucket.tryConsume(now);
+        if (ipWait > 0) {
+            ipLimitedCounter.increment();
+            log.warn("Chặn đăng nhập từ IP {}: vượt giới hạn tần suất", clientIp);
+            throw new TooManyRequestsException("Quá nhiều lần đăng nhập, vui lòng thử lại sau", ipWait);
+        }
+
+        String accountKey = account.trim().toLowerCase(Locale.ROOT);
+        TokenBucket accountBucket = accountBuckets.computeIfAbsent(accountKey,
+                key -> new TokenBucket(accountCapacity, accountRefillPerSecond, now));
+        long accountWait = accountBucket.tryConsume(now);
+        if (accountWait > 0) {
+            accountLimitedCounter.increment();
+            log.warn("Chặn đăng nhập tài khoản {}: vượt giới hạn tần suất", accountKey);
+            throw new TooManyRequestsException("Quá nhiều lần đăng nhập cho tài khoản này, vui lòng thử lại sau",
+                    accountWait);
+        }
+    }
+
+    /**
+     * Xóa các bucket đã đầy lại (không còn ảnh hưởng gì) để bộ nhớ không tăng theo số IP/tài khoản từng thấy
+     */
+    @Scheduled(fixedDelayString = "${security.login-rate-limit.cleanup-interval-ms:300000}")
+    public void removeIdleBuckets() {
+        long now = System.nanoTime();
+        ipBuckets.values().removeIf(bucket -> bucket.isFull(now));
+        accountBuckets.values().removeIf(bucket -> bucket.isFull(now));
+    }
+
+    private static Counter limitedCounter(MeterRegistry meterRegistry, String scope) {
+        return Counter.builder("auth.login.rate_limited")
+                .description("Số lần đăng nhập bị chặn do vượt giới hạn tần suất")
+                .tag("scope", scope)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Token bucket nạp lại liên tục theo thời gian trôi qua
+     */
+    private static final class TokenBucket {
+
+        private final int capacity;
+        private final double refillPerNano;
+        private double tokens;
+        private long lastRefill;
+
+        private TokenBucket(int capacity, double refillPerSecond, long now) {
+            this.capacity = capacity;
+            this.refillPerNano = refillPerSecond / TimeUnit.SECONDS.toNanos(1);
+            this.tokens = capacity;
+            this.lastRefill = now;
+        }
+
+        /**
+         * @return 0 nếu lấy được lượt, ngược lại số giây cần chờ đến khi có lượt tiếp theo
+         */
+        private synchronized long tryConsume(long now) {
+            refill(now);
+            if (tokens >= 1) {
+                tokens -= 1;
+                return 0;
+            }
+            double nanosToNextToken = (1 - tokens) / refillPerNano;
+            return Math.max(1, (long) Math.ceil(nanosToNextToken / TimeUnit.SECONDS.toNanos(1)));
+        }
+
+        private synchronized boolean isFull(long now) {
+            refill(now);
+            return tokens >= capacity;
+        }
+
+        private void refill(long now) {
+            tokens = Math.min(capacity, tokens + (now - lastRefill) * refillPerNano);
+            lastRefill = now;
+        }
+    }
+}
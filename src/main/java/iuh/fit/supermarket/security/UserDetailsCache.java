@@ -0,0 +1,83 @@
+package iuh.fit.supermarket.security;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Cache ngắn hạn (TTL) các AuthenticatedUser theo userId
+ * Giúp JwtAuthenticationFilter không phải truy vấn DB ở mỗi request;
+ * các service đổi mật khẩu, đổi role, cập nhật hoặc xóa user phải gọi evict() để thay đổi có hiệu lực ngay
+ */
+@Component
+@Slf4j
+public class UserDetailsCache {
+
+    private final long ttlMillis;
+    private final int maxSize;
+    private final Map<Long, CachedUser> users = new ConcurrentHashMap<>();
+
+    public UserDetailsCache(@Value("${security.user-cache.ttl-seconds:300}") long ttlSeconds,
+                            @Value("${security.user-cache.max-size:10000}") int maxSize) {
+        this.ttlMillis = ttlSeconds * 1000;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Lấy user từ cache, nạp lại bằng loader nếu chưa có hoặc đã hết hạn
+     *
+     * @param userId ID user
+     * @param loader hàm nạp user từ DB (được phép ném UsernameNotFoundException)
+     * @return AuthenticatedUser
+     */
+    public AuthenticatedUser get(Long userId, Function<Long, AuthenticatedUser> loader) {
+        long now = System.currentTimeMillis();
+        CachedUser cached = users.get(userId);
+        if (cached != null && cached.expiresAt() > now) {
+            return cached.user();
+        }
+
+        AuthenticatedUser user = loader.apply(userId);
+        if (users.size() >= maxSize) {
+            users.values().removeIf(entry -> entry.expiresAt() <= now);
+            if (users.size() >= maxSize) {
+                log.debug("Cache user đầy ({} phần tử), xóa toàn bộ", users.size());
+                users.clear();
+            }
+        }
+        users.put(userId, new CachedUser(user, now + ttlMillis));
+        return user;
+    }
+
+    /**
+     * Xóa user khỏi cache
+     * Nếu đang trong transaction thì xóa thêm một lần sau commit,
+     * tránh request đồng thời nạp lại dữ liệu cũ trước khi thay đổi được ghi
+     *
+     * @param userId ID user
+     */
+    public void evict(Long userId) {
+        if (userId == null) {
+            return;
+        }
+        users.remove(userId);
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    users.remove(userId);
+                }
+            });
+        }
+    }
+
+    private record CachedUser(AuthenticatedUser user, long expiresAt) {
+    }
+}
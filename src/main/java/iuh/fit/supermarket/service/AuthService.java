@@ -4,25 +4,24 @@ import iuh.fit.supermarket.dto.auth.CustomerLoginRequest;
 import iuh.fit.supermarket.dto.auth.CustomerLoginResponse;
 import iuh.fit.supermarket.dto.auth.LoginRequest;
 import iuh.fit.supermarket.dto.auth.LoginResponse;
+import iuh.fit.supermarket.dto.auth.TokenRefreshResponse;
 import iuh.fit.supermarket.dto.auth.UserInfoResponse;
 import iuh.fit.supermarket.entity.Customer;
 import iuh.fit.supermarket.entity.Employee;
 import iuh.fit.supermarket.entity.User;
 import iuh.fit.supermarket.enums.UserRole;
+import iuh.fit.supermarket.exception.TooManyRequestsException;
 import iuh.fit.supermarket.repository.CustomerRepository;
 import iuh.fit.supermarket.repository.EmployeeRepository;
 import iuh.fit.supermarket.repository.UserRepository;
+import iuh.fit.supermarket.security.UserDetailsCache;
 import iuh.fit.supermarket.util.JwtUtil;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.BadCredentialsException;
 import org.springframework.security.authentication.DisabledException;
-import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
-import org.springframework.security.core.Authentication;
 import org.springframework.security.core.AuthenticationException;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
-import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -35,12 +34,14 @@ import org.springframework.transaction.annotation.Transactional;
 @Slf4j
 public class AuthService {
 
-    private final AuthenticationManager authenticationManager;
     private final UserRepository userRepository;
     private final EmployeeRepository employeeRepository;
     private final CustomerRepository customerRepository;
-    private final PasswordEncoder passwordEncoder;
+    private final PasswordHashingService passwordHashingService;
+    private final UserDetailsCache userDetailsCache;
     private final JwtUtil jwtUtil;
+    private final RefreshTokenService refreshTokenService;
+    private final TokenRevocationService tokenRevocationService;
 
     /**
      * Xử lý đăng nhập nhân viên
@@ -49,25 +50,25 @@ public class AuthService {
      * @return LoginResponse chứa JWT token và thông tin nhân viên
      * @throws AuthenticationException nếu đăng nhập thất bại
      */
-    @Transactional(readOnly = true)
+    @Transactional
     public LoginResponse login(LoginRequest loginRequest) throws AuthenticationException {
         log.info("Đang xử lý đăng nhập cho email: {}", loginRequest.getEmail());
 
         try {
-            // Authenticate user
-            Authentication authentication = authenticationManager.authenticate(
-                new UsernamePasswordAuthenticationToken(
-                    loginRequest.getEmail(),
-                    loginRequest.getPassword()
-                )
-            );
-
             // Lấy thông tin user từ database (chỉ employee users)
-            User user = userRepository.findEmployeeByEmail(loginRequest.getEmail())
-                .orElseThrow(() -> {
-                    log.error("Không tìm thấy employee với email: {}", loginRequest.getEmail());
-                    return new UsernameNotFoundException("Không tìm thấy nhân viên với email: " + loginRequest.getEmail());
-                });
+            User user = userRepository.findEmployeeByEmail(loginRequest.getEmail()).orElse(null);
+            if (user == null) {
+                // Vẫn băm với hash giả để email không tồn tại mất cùng thời gian như sai mật khẩu
+                passwordHashingService.matches(loginRequest.getPassword(), null);
+                log.warn("Không tìm thấy employee với email: {}", loginRequest.getEmail());
+                throw new BadCredentialsException("Email hoặc mật khẩu không chính xác");
+            }
+
+            // Kiểm tra mật khẩu (BCrypt chạy trên executor giới hạn, luồng gọi chờ tối đa hash-timeout-ms)
+            if (!passwordHashingService.matches(loginRequest.getPassword(), user.getPasswordHash())) {
+                log.warn("Sai mật khẩu cho nhân viên: {}", loginRequest.getEmail());
+                throw new BadCredentialsException("Email hoặc mật khẩu không chính xác");
+            }
 
             // Kiểm tra tài khoản có bị khóa không
             if (user.getIsDeleted()) {
@@ -75,12 +76,14 @@ public class AuthService {
                 throw new DisabledException("Tài khoản đã bị khóa");
             }
 
+            rehashPasswordIfNeeded(user, loginRequest.getPassword());
+
             // Lấy Employee entity từ user_id
             Employee employee = employeeRepository.findByUser_UserIdAndUser_IsDeletedFalse(user.getUserId())
                 .orElseThrow(() -> new UsernameNotFoundException("Không tìm thấy employee record"));
 
             // Tạo JWT token
-            String token = jwtUtil.generateToken(user.getEmail());
+            String token = jwtUtil.generateToken(tokenSubject(user), user.getUserId(), user.getUserRole());
 
             // Tạo response với thông tin từ User và Employee
             LoginResponse.EmployeeInfo employeeInfo = new LoginResponse.EmployeeInfo(
@@ -95,6 +98,8 @@ public class AuthService {
                 jwtUtil.getExpirationTime(),
                 employeeInfo
             );
+            response.setRefreshToken(refreshTokenService.issue(user));
+            response.setRefreshExpiresIn(refreshTokenService.getRefreshExpirationTime());
 
             log.info("Đăng nhập thành công cho nhân viên: {} ({})", user.getName(), user.getEmail());
             return response;
@@ -108,12 +113,92 @@ public class AuthService {
         } catch (AuthenticationException e) {
             log.error("Lỗi xác thực cho email: {}", loginRequest.getEmail(), e);
             throw e;
+        } catch (TooManyRequestsException e) {
+            throw e;
         } catch (Exception e) {
             log.error("Lỗi không xác định khi đăng nhập cho email: {}", loginRequest.getEmail(), e);
             throw new RuntimeException("Có lỗi xảy ra trong quá trình đăng nhập");
         }
     }
 
+    /**
+     * Đổi refresh token lấy access token mới
+     * Refresh token được xoay vòng: token cũ bị thu hồi, token mới cùng phiên được trả về
+     * @param refreshToken refresh token hiện tại
+     * @return TokenRefreshResponse chứa access token và refresh token mới
+     * @throws BadCredentialsException nếu refresh token không hợp lệ, hết hạn, đã bị thu hồi hoặc tài khoản bị khóa
+     */
+    @Transactional(noRollbackFor = BadCredentialsException.class)
+    public TokenRefreshResponse refresh(String refreshToken) {
+        RefreshTokenService.Rotation rotation = refreshTokenService.rotate(refreshToken);
+        User user = rotation.user();
+
+        String token = jwtUtil.generateToken(tokenSubject(user), user.getUserId(), user.getUserRole());
+        log.debug("Đã làm mới access token cho user ID: {}", user.getUserId());
+
+        return new TokenRefreshResponse(
+            token,
+            jwtUtil.getExpirationTime(),
+            rotation.refreshToken(),
+            refreshTokenService.getRefreshExpirationTime()
+        );
+    }
+
+    /**
+     * Đăng xuất: thu hồi access token hiện tại và phiên của refresh token (nếu có)
+     * Access token bị thu hồi bị từ chối ngay ở request tiếp theo
+     * @param accessToken access token đang dùng (có thể null)
+     * @param refreshToken refresh token của phiên (có thể null)
+     */
+    @Transactional
+    public void logout(String accessToken, String refreshToken) {
+        if (accessToken != null) {
+            jwtUtil.parseToken(accessToken)
+                .filter(claims -> claims.tokenId() != null)
+                .ifPresent(claims -> tokenRevocationService.revoke(
+                    claims.tokenId(), claims.userId(), claims.expiration()));
+        }
+
+        if (refreshToken != null && !refreshToken.isBlank()) {
+            refreshTokenService.revokeSession(refreshToken);
+        }
+    }
+
+    /**
+     * Băm lại mật khẩu với cost hiện tại nếu hash đã lưu dùng cost thấp hơn
+     * Chỉ làm được lúc đăng nhập thành công vì đây là lúc duy nhất có mật khẩu gốc;
+     * nếu executor đang bận thì bỏ qua, lần đăng nhập sau sẽ thử lại
+     * @param user User vừa đăng nhập thành công
+     * @param rawPassword mật khẩu gốc
+     */
+    private void rehashPasswordIfNeeded(User user, String rawPassword) {
+        if (!passwordHashingService.needsRehash(user.getPasswordHash())) {
+            return;
+        }
+
+        try {
+            user.setPasswordHash(passwordHashingService.encode(rawPassword));
+            userRepository.save(user);
+            userDetailsCache.evict(user.getUserId());
+            log.info("Đã băm lại mật khẩu với cost mới cho user ID: {}", user.getUserId());
+        } catch (TooManyRequestsException e) {
+            log.debug("Bỏ qua băm lại mật khẩu cho user ID {} do hệ thống đang bận", user.getUserId());
+        }
+    }
+
+    /**
+     * Subject của access token: email với nhân viên, "CUSTOMER:email/phone" với khách hàng
+     * @param user User entity
+     * @return subject
+     */
+    private String tokenSubject(User user) {
+        if (user.getUserRole() == UserRole.CUSTOMER) {
+            String identifier = user.getEmail() != null ? user.getEmail() : user.getPhone();
+            return "CUSTOMER:" + identifier;
+        }
+        return user.getEmail();
+    }
+
     /**
      * Validate JWT token
      * @param token JWT token
@@ -185,17 +270,26 @@ public class AuthService {
      * @return CustomerLoginResponse chứa JWT token và thông tin khách hàng
      * @throws AuthenticationException nếu đăng nhập thất bại
      */
-    @Transactional(readOnly = true)
+    @Transactional
     public CustomerLoginResponse customerLogin(CustomerLoginRequest loginRequest) throws AuthenticationException {
         log.info("Đang xử lý đăng nhập khách hàng với: {}", loginRequest.getEmailOrPhone());
 
         try {
             // Tìm User với role CUSTOMER bằng email hoặc số điện thoại
-            User user = userRepository.findCustomerByEmailOrPhone(loginRequest.getEmailOrPhone())
-                .orElseThrow(() -> {
-                    log.warn("Không tìm thấy khách hàng: {}", loginRequest.getEmailOrPhone());
-                    return new BadCredentialsException("Email/Số điện thoại hoặc mật khẩu không chính xác");
-                });
+            User user = userRepository.findCustomerByEmailOrPhone(loginRequest.getEmailOrPhone()).orElse(null);
+            if (user == null) {
+                // Vẫn băm với hash giả để tài khoản không tồn tại mất cùng thời gian như sai mật khẩu
+                passwordHashingService.matches(loginRequest.getPassword(), null);
+                log.warn("Không tìm thấy khách hàng: {}", loginRequest.getEmailOrPhone());
+                throw new BadCredentialsException("Email/Số điện thoại hoặc mật khẩu không chính xác");
+            }
+
+            // Kiểm tra mật khẩu (BCrypt chạy trên executor giới hạn, luồng gọi chờ tối đa hash-timeout-ms)
+            // trước khi báo trạng thái tài khoản, để không lộ tài khoản đã khóa cho người không biết mật khẩu
+            if (!passwordHashingService.matches(loginRequest.getPassword(), user.getPasswordHash())) {
+                log.warn("Sai mật khẩu cho khách hàng: {}", loginRequest.getEmailOrPhone());
+                throw new BadCredentialsException("Email/Số điện thoại hoặc mật khẩu không chính xác");
+            }
 
             // Kiểm tra tài khoản có bị xóa không
             if (user.getIsDeleted()) {
@@ -203,19 +297,14 @@ public class AuthService {
                 throw new DisabledException("Tài khoản đã bị khóa");
             }
 
-            // Kiểm tra mật khẩu
-            if (!passwordEncoder.matches(loginRequest.getPassword(), user.getPasswordHash())) {
-                log.warn("Sai mật khẩu cho khách hàng: {}", loginRequest.getEmailOrPhone());
-                throw new BadCredentialsException("Email/Số điện thoại hoặc mật khẩu không chính xác");
-            }
+            rehashPasswordIfNeeded(user, loginRequest.getPassword());
 
             // Lấy Customer entity từ user_id
             Customer customer = customerRepository.findByUser_UserIdAndUser_IsDeletedFalse(user.getUserId())
                 .orElseThrow(() -> new UsernameNotFoundException("Không tìm thấy customer record"));
 
             // Tạo JWT token với identifier (email hoặc phone)
-            String identifier = user.getEmail() != null ? user.getEmail() : user.getPhone();
-            String token = jwtUtil.generateToken("CUSTOMER:" + identifier);
+            String token = jwtUtil.generateToken(tokenSubject(user), user.getUserId(), user.getUserRole());
 
             // Tạo response với thông tin từ User và Customer
             CustomerLoginResponse.CustomerInfo customerInfo = new CustomerLoginResponse.CustomerInfo(
@@ -231,6 +320,8 @@ public class AuthService {
                 jwtUtil.getExpirationTime(),
                 customerInfo
             );
+            response.setRefreshToken(refreshTokenService.issue(user));
+            response.setRefreshExpiresIn(refreshTokenService.getRefreshExpirationTime());
 
             log.info("Đăng nhập thành công cho khách hàng: {} ({})", user.getName(), loginRequest.getEmailOrPhone());
             return response;
@@ -244,6 +335,8 @@ public class AuthService {
         } catch (UsernameNotFoundException e) {
             log.warn("Không tìm thấy khách hàng: {}", loginRequest.getEmailOrPhone());
             throw new BadCredentialsException("Email/Số điện thoại hoặc mật khẩu không chính xác");
+        } catch (TooManyRequestsException e) {
+            throw e;
         } catch (Exception e) {
             log.error("Lỗi không xác định khi đăng nhập khách hàng: {}", loginRequest.getEmailOrPhone(), e);
             throw new RuntimeException("Có lỗi xảy ra trong quá trình đăng nhập");
@@ -0,0 +1,21 @@
+package iuh.fit.supermarket.service;
+
+import java.io.OutputStream;
+import java.util.List;
+
+/**
+ * Service in tem mã vạch cho đơn vị sản phẩm
+ */
+public interface BarcodeLabelService {
+
+    /**
+     * Render tờ tem mã vạch (PDF A4) cho nhiều đơn vị sản phẩm và ghi thẳng vào output stream
+     * Đơn vị sản phẩm không tồn tại hoặc chưa có mã vạch sẽ bị bỏ qua
+     *
+     * @param productUnitIds danh sách ID đơn vị sản phẩm, giữ nguyên thứ tự khi in
+     * @param copies         số tem cho mỗi đơn vị sản phẩm
+     * @param outputStream   stream nhận nội dung PDF
+     * @return số tem đã in
+     */
+    int writeLabelSheet(List<Long> productUnitIds, int copies, OutputStream outputStream);
+}
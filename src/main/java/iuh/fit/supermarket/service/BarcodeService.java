@@ -1,12 +1,28 @@
 package iuh.fit.supermarket.service;
 
 import com.google.zxing.BarcodeFormat;
+import iuh.fit.supermarket.dto.barcode.BarcodeImage;
+
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Service interface cho việc tạo barcode
+ * Ảnh đã render được cache theo (mã, định dạng, kích thước) nên cùng một mã chỉ render một lần
  */
 public interface BarcodeService {
 
+    /**
+     * Render barcode PNG theo kích thước chỉ định, lấy từ cache nếu đã render
+     *
+     * @param code   mã barcode cần tạo
+     * @param format định dạng barcode
+     * @param width  chiều rộng ảnh (pixel)
+     * @param height chiều cao ảnh (pixel)
+     * @return ảnh PNG kèm ETag
+     * @throws IllegalArgumentException nếu mã không hợp lệ với định dạng hoặc kích thước ngoài giới hạn
+     */
+    BarcodeImage renderBarcode(String code, BarcodeFormat format, int width, int height);
+
     /**
      * Tạo barcode dưới dạng byte array (PNG image)
      * 
@@ -26,6 +42,7 @@ public interface BarcodeService {
 
     /**
      * Tạo barcode và upload lên S3, trả về URL
+     * Tên file theo nội dung ảnh nên cùng một mã không bị upload lại
      * 
      * @param code mã barcode cần tạo
      * @param format định dạng barcode
@@ -34,6 +51,16 @@ public interface BarcodeService {
      */
     String generateBarcodeUrl(String code, BarcodeFormat format, String folder);
 
+    /**
+     * Tạo barcode và upload lên S3 không chờ kết quả
+     * 
+     * @param code mã barcode cần tạo
+     * @param format định dạng barcode
+     * @param folder thư mục trên S3
+     * @return future chứa URL của ảnh barcode trên S3
+     */
+    CompletableFuture<String> generateBarcodeUrlAsync(String code, BarcodeFormat format, String folder);
+
     /**
      * Tạo barcode với định dạng mặc định và upload lên S3
      * 
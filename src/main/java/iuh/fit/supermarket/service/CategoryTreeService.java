@@ -0,0 +1,80 @@
+package iuh.fit.supermarket.service;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Service giữ ảnh chụp bất biến của cây danh mục trong bộ nhớ
+ * Mỗi nút có sẵn đường dẫn từ gốc và khoảng nested set [left, right] (cũng được lưu vào bảng categories)
+ * để lọc sản phẩm theo cả nhánh con chỉ bằng một điều kiện khoảng
+ */
+public interface CategoryTreeService {
+
+    /**
+     * Nút trong cây danh mục
+     *
+     * @param id          ID danh mục
+     * @param name        tên danh mục
+     * @param description mô tả
+     * @param isActive    trạng thái hoạt động
+     * @param createdAt   thời gian tạo
+     * @param updatedAt   thời gian cập nhật
+     * @param parentId    ID danh mục cha, null nếu là gốc
+     * @param parentName  tên danh mục cha, null nếu là gốc
+     * @param level       cấp trong cây (0 = gốc)
+     * @param left        số thứ tự khi vào nút (nested set)
+     * @param right       số thứ tự khi rời nút (nested set)
+     * @param path        đường dẫn tên từ gốc, dạng "Cha>Con"
+     * @param childIds    ID các danh mục con trực tiếp
+     */
+    record CategoryNode(Integer id, String name, String description, Boolean isActive,
+                        LocalDateTime createdAt, LocalDateTime updatedAt,
+                        Integer parentId, String parentName, int level, int left, int right,
+                        String path, List<Integer> childIds) {
+    }
+
+    /**
+     * Tìm nút theo ID danh mục
+     *
+     * @param categoryId ID danh mục
+     * @return nút, rỗng nếu không tồn tại
+     */
+    Optional<CategoryNode> findNode(Integer categoryId);
+
+    /**
+     * Các danh mục gốc theo thứ tự ID
+     *
+     * @return danh sách nút gốc
+     */
+    List<CategoryNode> getRoots();
+
+    /**
+     * Các danh mục con trực tiếp theo thứ tự ID
+     *
+     * @param categoryId ID danh mục cha
+     * @return danh sách nút con (rỗng nếu không có hoặc danh mục không tồn tại)
+     */
+    List<CategoryNode> getChildren(Integer categoryId);
+
+    /**
+     * Đường dẫn "Cha>Con" của tất cả danh mục
+     *
+     * @return map ID danh mục → đường dẫn
+     */
+    Map<Integer, String> getPaths();
+
+    /**
+     * Đánh lại số nested set và thay ảnh chụp đang dùng; gọi sau mỗi thao tác thêm/sửa/xóa danh mục
+     * Nếu đang trong transaction thì chạy sau khi transaction đó commit (trong transaction riêng),
+     * các lần đánh số được tuần tự hóa bằng khóa dòng trạng thái cây
+     */
+    void rebuild();
+
+    /**
+     * Tải lại ảnh chụp khi phiên bản cây trong DB khác phiên bản đang dùng (cây được sửa ở instance khác),
+     * và đánh số lại nếu còn danh mục chưa có khoảng nested set
+     */
+    void refreshIfStale();
+}
@@ -2,24 +2,30 @@ package iuh.fit.supermarket.service;
 
 import iuh.fit.supermarket.dto.customer.CreateCustomerRequest;
 import iuh.fit.supermarket.dto.customer.CustomerDto;
+import iuh.fit.supermarket.dto.customer.CustomerImportRow;
 import iuh.fit.supermarket.enums.CustomerType;
 import iuh.fit.supermarket.enums.Gender;
+import iuh.fit.supermarket.exception.CustomerValidationException;
+import iuh.fit.supermarket.repository.CustomerRepository;
+import iuh.fit.supermarket.util.ExcelRowReader;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.poi.ss.usermodel.*;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
-import org.springframework.web.multipart.MultipartFile;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Path;
 import java.time.LocalDate;
-import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
-import java.util.Iterator;
 import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
 
 /**
  * Service xử lý import/export Excel cho khách hàng
@@ -28,6 +34,12 @@ import java.util.List;
 @Slf4j
 public class CustomerExcelService {
 
+    private final CustomerRepository customerRepository;
+
+    public CustomerExcelService(CustomerRepository customerRepository) {
+        this.customerRepository = customerRepository;
+    }
+
     // Định nghĩa các cột trong Excel cho Export
     private static final String[] EXPORT_HEADERS = {
             "Mã khách hàng", "Tên khách hàng", "Email", "Số điện thoại",
@@ -42,12 +54,35 @@ public class CustomerExcelService {
     };
 
     /**
-     * Export danh sách khách hàng ra file Excel
+     * Số khách hàng được đọc từ DB cho mỗi trang khi export
      */
-    public byte[] exportCustomersToExcel(List<CustomerDto> customers) throws IOException {
-        log.info("Bắt đầu export {} khách hàng ra Excel", customers.size());
+    private static final int EXPORT_PAGE_SIZE = 1000;
 
-        try (Workbook workbook = new XSSFWorkbook()) {
+    /**
+     * Số dòng SXSSF giữ trong bộ nhớ, các dòng cũ hơn được ghi ra file tạm
+     */
+    private static final int EXPORT_ROW_WINDOW = 200;
+
+    /**
+     * Độ rộng cột cố định (đơn vị ký tự) vì SXSSF không auto-size được các dòng đã ghi ra đĩa
+     */
+    private static final int[] EXPORT_COLUMN_WIDTHS = { 15, 30, 30, 15, 10, 12, 40, 15, 20, 20 };
+
+    /**
+     * Export toàn bộ khách hàng chưa bị xóa ra Excel và ghi thẳng vào output stream
+     * Khách hàng được đọc theo trang (keyset) dưới dạng DTO và ghi bằng SXSSF
+     * nên bộ nhớ sử dụng không phụ thuộc số lượng khách hàng
+     *
+     * @param outputStream nơi ghi file Excel
+     * @param onProgress   được gọi với số khách hàng vừa ghi sau mỗi trang
+     * @return số khách hàng đã export
+     */
+    public long exportCustomers(OutputStream outputStream, LongConsumer onProgress) throws IOException {
+        log.info("Bắt đầu export khách hàng ra Excel");
+
+        SXSSFWorkbook workbook = new SXSSFWorkbook(EXPORT_ROW_WINDOW);
+        workbook.setCompressTempFiles(true);
+        try {
             Sheet sheet = workbook.createSheet("Danh sách khách hàng");
 
             // Tạo style cho header
@@ -62,194 +97,174 @@ public class CustomerExcelService {
                 Cell cell = headerRow.createCell(i);
                 cell.setCellValue(EXPORT_HEADERS[i]);
                 cell.setCellStyle(headerStyle);
+                sheet.setColumnWidth(i, EXPORT_COLUMN_WIDTHS[i] * 256);
             }
 
             // Tạo data rows
             DateTimeFormatter dateFormatter = DateTimeFormatter.ofPattern("dd/MM/yyyy");
             DateTimeFormatter dateTimeFormatter = DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm:ss");
             int rowNum = 1;
+            int lastId = 0;
 
-            for (CustomerDto customer : customers) {
-                Row row = sheet.createRow(rowNum++);
-                int colNum = 0;
-
-                // Mã khách hàng
-                row.createCell(colNum++)
-                        .setCellValue(customer.getCustomerCode() != null ? customer.getCustomerCode() : "");
-                // Tên khách hàng
-                row.createCell(colNum++).setCellValue(customer.getName() != null ? customer.getName() : "");
-                // Email
-                row.createCell(colNum++).setCellValue(customer.getEmail() != null ? customer.getEmail() : "");
-                // Số điện thoại
-                row.createCell(colNum++).setCellValue(customer.getPhone() != null ? customer.getPhone() : "");
-
-                // Giới tính
-                row.createCell(colNum++).setCellValue(
-                        customer.getGender() != null ? (customer.getGender() == Gender.MALE ? "Nam"
-                                : customer.getGender() == Gender.FEMALE ? "Nữ" : "Khác") : "");
-
-                // Ngày sinh
-                row.createCell(colNum++).setCellValue(
-                        customer.getDateOfBirth() != null ? customer.getDateOfBirth().format(dateFormatter) : "");
-
-                // Địa chỉ
-                row.createCell(colNum++).setCellValue(customer.getAddress() != null ? customer.getAddress() : "");
-                // Loại khách hàng
-                row.createCell(colNum++)
-                        .setCellValue(customer.getCustomerType() != null ? customer.getCustomerType().name() : "");
-
-                // Ngày tạo
-                row.createCell(colNum++).setCellValue(
-                        customer.getCreatedAt() != null ? customer.getCreatedAt().format(dateTimeFormatter) : "");
-                // Ngày cập nhật
-                row.createCell(colNum++).setCellValue(
-                        customer.getUpdatedAt() != null ? customer.getUpdatedAt().format(dateTimeFormatter) : "");
-
-                // Apply data style
-                for (int i = 0; i < EXPORT_HEADERS.length; i++) {
-                    Cell cell = row.getCell(i);
-                    if (cell != null) {
-                        cell.setCellStyle(dataStyle);
-                    }
+            while (true) {
+                List<CustomerDto> customers = customerRepository.findActiveCustomerDtosAfter(lastId,
+                        PageRequest.of(0, EXPORT_PAGE_SIZE));
+                if (customers.isEmpty()) {
+                    break;
                 }
-            }
 
-            // Auto-size columns
-            for (int i = 0; i < EXPORT_HEADERS.length; i++) {
-                sheet.autoSizeColumn(i);
+                for (CustomerDto customer : customers) {
+                    writeCustomerRow(sheet.createRow(rowNum++), customer, dateFormatter, dateTimeFormatter,
+                            dataStyle);
+                }
+
+                // Trang kế tiếp bắt đầu sau khách hàng cuối của trang này (ID tăng dần)
+                lastId = customers.get(customers.size() - 1).getCustomerId();
+                onProgress.accept(customers.size());
             }
 
-            // Convert to byte array
-            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
             workbook.write(outputStream);
 
-            log.info("Export Excel thành công với {} khách hàng", customers.size());
-            return outputStream.toByteArray();
+            log.info("Export Excel thành công với {} khách hàng", rowNum - 1);
+            return rowNum - 1;
+        } finally {
+            // Xóa các file tạm của SXSSF
+            workbook.dispose();
+            workbook.close();
+        }
+    }
+
+    private void writeCustomerRow(Row row, CustomerDto customer, DateTimeFormatter dateFormatter,
+            DateTimeFormatter dateTimeFormatter, CellStyle dataStyle) {
+        int colNum = 0;
+
+        // Mã khách hàng
+        row.createCell(colNum++)
+                .setCellValue(customer.getCustomerCode() != null ? customer.getCustomerCode() : "");
+        // Tên khách hàng
+        row.createCell(colNum++).setCellValue(customer.getName() != null ? customer.getName() : "");
+        // Email
+        row.createCell(colNum++).setCellValue(customer.getEmail() != null ? customer.getEmail() : "");
+        // Số điện thoại
+        row.createCell(colNum++).setCellValue(customer.getPhone() != null ? customer.getPhone() : "");
+
+        // Giới tính
+        row.createCell(colNum++).setCellValue(
+                customer.getGender() != null ? (customer.getGender() == Gender.MALE ? "Nam"
+                        : customer.getGender() == Gender.FEMALE ? "Nữ" : "Khác") : "");
+
+        // Ngày sinh
+        row.createCell(colNum++).setCellValue(
+                customer.getDateOfBirth() != null ? customer.getDateOfBirth().format(dateFormatter) : "");
+
+        // Địa chỉ
+        row.createCell(colNum++).setCellValue(customer.getAddress() != null ? customer.getAddress() : "");
+        // Loại khách hàng
+        row.createCell(colNum++)
+                .setCellValue(customer.getCustomerType() != null ? customer.getCustomerType().name() : "");
+
+        // Ngày tạo
+        row.createCell(colNum++).setCellValue(
+                customer.getCreatedAt() != null ? customer.getCreatedAt().format(dateTimeFormatter) : "");
+        // Ngày cập nhật
+        row.createCell(colNum++).setCellValue(
+                customer.getUpdatedAt() != null ? customer.getUpdatedAt().format(dateTimeFormatter) : "");
+
+        // Apply data style
+        for (int i = 0; i < EXPORT_HEADERS.length; i++) {
+            row.getCell(i).setCellStyle(dataStyle);
         }
     }
 
     /**
-     * Import khách hàng từ file Excel
+     * Đọc file Excel import khách hàng theo luồng
+     * Dòng sai định dạng được báo qua onRowError và bỏ qua, các dòng khác vẫn được đọc
+     *
+     * @param file       file Excel đã lưu trên đĩa
+     * @param onRowError nhận thông báo lỗi của từng dòng không hợp lệ
+     * @return danh sách khách hàng theo thứ tự dòng trong file
      */
-    public List<CreateCustomerRequest> importCustomersFromExcel(MultipartFile file) throws IOException {
-        log.info("Bắt đầu import khách hàng từ file Excel: {}", file.getOriginalFilename());
-
-        List<CreateCustomerRequest> customers = new ArrayList<>();
-
-        try (InputStream inputStream = file.getInputStream();
-                Workbook workbook = WorkbookFactory.create(inputStream)) {
-
-            Sheet sheet = workbook.getSheetAt(0);
-            Iterator<Row> rowIterator = sheet.iterator();
-
-            // Skip header row
-            if (rowIterator.hasNext()) {
-                rowIterator.next();
+    public List<CustomerImportRow> readImportFile(Path file, Consumer<String> onRowError) throws IOException {
+        log.info("Bắt đầu đọc file Excel import khách hàng: {}", file.getFileName());
+
+        List<CustomerImportRow> customers = new ArrayList<>();
+        ExcelRowReader.read(file, IMPORT_HEADERS.length, (cells, rowNum) -> {
+            // Bỏ qua dòng header và dòng trống
+            if (rowNum == 1 || isRowEmpty(cells)) {
+                return;
             }
-
-            int rowNum = 1;
-            while (rowIterator.hasNext()) {
-                Row row = rowIterator.next();
-                rowNum++;
-
-                try {
-                    // Kiểm tra dòng trống
-                    if (isRowEmpty(row)) {
-                        continue;
-                    }
-
-                    CreateCustomerRequest customer = parseRowToCustomer(row, rowNum);
-                    if (customer != null) {
-                        customers.add(customer);
-                    }
-                } catch (Exception e) {
-                    log.warn("Lỗi khi parse dòng {}: {}", rowNum, e.getMessage());
-                    throw new RuntimeException("Lỗi tại dòng " + rowNum + ": " + e.getMessage());
-                }
+            try {
+                customers.add(new CustomerImportRow(rowNum, parseRowToCustomer(cells)));
+            } catch (RuntimeException e) {
+                log.debug("Lỗi khi parse dòng {}: {}", rowNum, e.getMessage());
+                onRowError.accept("Dòng " + rowNum + ": " + e.getMessage());
             }
-        }
+        });
 
-        log.info("Import thành công {} khách hàng từ Excel", customers.size());
+        log.info("Đọc được {} khách hàng từ file Excel", customers.size());
         return customers;
     }
 
     /**
      * Parse một dòng Excel thành CreateCustomerRequest
+     * Cột: 0 Tên | 1 Email | 2 Số điện thoại | 3 Giới tính | 4 Ngày sinh | 5 Địa chỉ | 6 Loại khách hàng
      */
-    private CreateCustomerRequest parseRowToCustomer(Row row, int rowNum) {
-        try {
-            // Index shifted because Customer Code is removed
-            // 0: Name, 1: Email, 2: Phone, 3: Gender, 4: DOB, 5: Address, 6: Customer Type
-
-            String name = getCellValueAsString(row.getCell(0));
-            String email = getCellValueAsString(row.getCell(1));
-            String phone = getCellValueAsString(row.getCell(2));
-            String genderStr = getCellValueAsString(row.getCell(3));
-
-            LocalDate dateOfBirth = null;
-            Cell dobCell = row.getCell(4);
-            if (dobCell != null) {
-                if (dobCell.getCellType() == CellType.NUMERIC && DateUtil.isCellDateFormatted(dobCell)) {
-                    dateOfBirth = dobCell.getDateCellValue().toInstant()
-                            .atZone(ZoneId.systemDefault())
-                            .toLocalDate();
-                } else {
-                    String dobStr = getCellValueAsString(dobCell);
-                    if (dobStr != null && !dobStr.trim().isEmpty()) {
-                        try {
-                            dateOfBirth = LocalDate.parse(dobStr, DateTimeFormatter.ofPattern("dd/MM/yyyy"));
-                        } catch (DateTimeParseException e) {
-                            // Try other format if needed or ignore
-                        }
-                    }
-                }
-            }
-
-            String address = getCellValueAsString(row.getCell(5));
-            String customerTypeStr = getCellValueAsString(row.getCell(6));
+    private CreateCustomerRequest parseRowToCustomer(String[] cells) {
+        String name = trimToNull(cells[0]);
+        String email = trimToNull(cells[1]);
+        String phone = trimToNull(cells[2]);
+        String genderStr = trimToNull(cells[3]);
+        String dobStr = trimToNull(cells[4]);
+        String address = trimToNull(cells[5]);
+        String customerTypeStr = trimToNull(cells[6]);
+
+        if (name == null) {
+            throw new CustomerValidationException("Tên khách hàng không được để trống");
+        }
+        if (email == null) {
+            throw new CustomerValidationException("Email không được để trống");
+        }
 
-            if (name == null || name.trim().isEmpty()) {
-                throw new RuntimeException("Tên khách hàng không được để trống");
-            }
-            if (email == null || email.trim().isEmpty()) {
-                throw new RuntimeException("Email không được để trống");
+        LocalDate dateOfBirth = null;
+        if (dobStr != null) {
+            try {
+                dateOfBirth = LocalDate.parse(dobStr, DateTimeFormatter.ofPattern("dd/MM/yyyy"));
+            } catch (DateTimeParseException e) {
+                // Ngày sinh sai định dạng được bỏ qua
             }
+        }
 
-            CreateCustomerRequest request = new CreateCustomerRequest();
-            request.setCustomerCode(null); // Auto-generated
-            request.setName(name.trim());
-            request.setEmail(email.trim());
-            request.setPhone(phone != null ? phone.trim() : null);
-
-            if (genderStr != null) {
-                String g = genderStr.trim().toLowerCase();
-                if (g.equals("nam") || g.equals("male") || g.equals("trai")) {
-                    request.setGender(Gender.MALE);
-                } else if (g.equals("nữ") || g.equals("nu") || g.equals("female") || g.equals("gái")) {
-                    request.setGender(Gender.FEMALE);
-                } else {
-                    request.setGender(null);
-                }
+        CreateCustomerRequest request = new CreateCustomerRequest();
+        request.setCustomerCode(null); // Auto-generated
+        request.setName(name);
+        request.setEmail(email);
+        request.setPhone(phone);
+
+        if (genderStr != null) {
+            String g = genderStr.toLowerCase();
+            if (g.equals("nam") || g.equals("male") || g.equals("trai")) {
+                request.setGender(Gender.MALE);
+            } else if (g.equals("nữ") || g.equals("nu") || g.equals("female") || g.equals("gái")) {
+                request.setGender(Gender.FEMALE);
+            } else {
+                request.setGender(null);
             }
+        }
 
-            request.setDateOfBirth(dateOfBirth);
-            request.setAddress(address != null ? address.trim() : null);
+        request.setDateOfBirth(dateOfBirth);
+        request.setAddress(address);
 
-            if (customerTypeStr != null) {
-                try {
-                    request.setCustomerType(CustomerType.valueOf(customerTypeStr.trim().toUpperCase()));
-                } catch (IllegalArgumentException e) {
-                    request.setCustomerType(CustomerType.REGULAR);
-                }
-            } else {
+        if (customerTypeStr != null) {
+            try {
+                request.setCustomerType(CustomerType.valueOf(customerTypeStr.toUpperCase()));
+            } catch (IllegalArgumentException e) {
                 request.setCustomerType(CustomerType.REGULAR);
             }
-
-            return request;
-
-        } catch (Exception e) {
-            throw new RuntimeException("Lỗi parse dữ liệu: " + e.getMessage());
+        } else {
+            request.setCustomerType(CustomerType.REGULAR);
         }
+
+        return request;
     }
 
     /**
@@ -359,40 +374,21 @@ public class CustomerExcelService {
         sheet.autoSizeColumn(0);
     }
 
-    private boolean isRowEmpty(Row row) {
-        if (row == null)
-            return true;
-        for (int i = 0; i < row.getLastCellNum(); i++) {
-            Cell cell = row.getCell(i);
-            if (cell != null && cell.getCellType() != CellType.BLANK) {
-                String value = getCellValueAsString(cell);
-                if (value != null && !value.trim().isEmpty()) {
-                    return false;
-                }
+    private boolean isRowEmpty(String[] cells) {
+        for (String cell : cells) {
+            if (trimToNull(cell) != null) {
+                return false;
             }
         }
         return true;
     }
 
-    private String getCellValueAsString(Cell cell) {
-        if (cell == null)
+    private String trimToNull(String value) {
+        if (value == null) {
             return null;
-        switch (cell.getCellType()) {
-            case STRING:
-                return cell.getStringCellValue();
-            case NUMERIC:
-                if (DateUtil.isCellDateFormatted(cell)) {
-                    return cell.getDateCellValue().toString();
-                } else {
-                    return String.valueOf((long) cell.getNumericCellValue());
-                }
-            case BOOLEAN:
-                return String.valueOf(cell.getBooleanCellValue());
-            case FORMULA:
-                return cell.getCellFormula();
-            default:
-                return null;
         }
+        String trimmed = value.trim();
+        return trimmed.isEmpty() ? null : trimmed;
     }
 
     private CellStyle createHeaderStyle(Workbook workbook) {
@@ -0,0 +1,31 @@
+package iuh.fit.supermarket.service;
+
+import iuh.fit.supermarket.dto.customer.CustomerImportResult;
+import iuh.fit.supermarket.dto.job.JobStatusResponse;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+
+/**
+ * Service import khách hàng hàng loạt từ file Excel
+ */
+public interface CustomerImportService {
+
+    /**
+     * Import khách hàng từ file Excel và chờ đến khi hoàn tất
+     * Dòng lỗi được bỏ qua và ghi vào kết quả, các khách hàng hợp lệ vẫn được tạo
+     *
+     * @param file file Excel (.xlsx hoặc .xls)
+     * @return kết quả import
+     */
+    CustomerImportResult importCustomers(MultipartFile file) throws IOException;
+
+    /**
+     * Chạy import khách hàng dưới dạng tác vụ nền
+     * Tiến độ và lỗi theo từng dòng được cập nhật dần vào trạng thái tác vụ
+     *
+     * @param file file Excel (.xlsx hoặc .xls)
+     * @return trạng thái ban đầu của tác vụ (chứa jobId để theo dõi)
+     */
+    JobStatusResponse startImportJob(MultipartFile file) throws IOException;
+}
@@ -14,6 +14,7 @@ import iuh.fit.supermarket.exception.*;
 import iuh.fit.supermarket.repository.CustomerRepository;
 import iuh.fit.supermarket.repository.SaleInvoiceHeaderRepository;
 import iuh.fit.supermarket.repository.UserRepository;
+import iuh.fit.supermarket.security.UserDetailsCache;
 import iuh.fit.supermarket.util.CustomerValidator;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -21,7 +22,6 @@ import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
-import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -42,9 +42,11 @@ public class CustomerService {
 
     private final CustomerRepository customerRepository;
     private final UserRepository userRepository;
-    private final PasswordEncoder passwordEncoder;
+    private final PasswordHashingService passwordHashingService;
     private final CustomerValidator customerValidator;
     private final SaleInvoiceHeaderRepository saleInvoiceHeaderRepository;
+    private final UserDetailsCache userDetailsCache;
+    private final RefreshTokenService refreshTokenService;
 
     /**
      * Lấy tất cả khách hàng chưa bị xóa
@@ -254,11 +256,12 @@ public class CustomerService {
 
             existingUser.setName(request.getName().trim());
             existingUser.setEmail(normalizedEmail);
-            existingUser.setPasswordHash(passwordEncoder.encode(request.getPassword()));
+            existingUser.setPasswordHash(passwordHashingService.encode(request.getPassword()));
             existingUser.setGender(request.getGender());
             existingUser.setDateOfBirth(request.getDateOfBirth());
 
             User savedUser = userRepository.save(existingUser);
+            userDetailsCache.evict(savedUser.getUserId());
 
             // Lấy Customer từ user_id và cập nhật customerCode, address
             Customer existingCustomer = customerRepository.findByUser_UserId(savedUser.getUserId())
@@ -278,7 +281,7 @@ public class CustomerService {
         user.setName(request.getName().trim());
         user.setEmail(normalizedEmail);
         user.setPhone(normalizedPhone);
-        user.setPasswordHash(passwordEncoder.encode(request.getPassword()));
+        user.setPasswordHash(passwordHashingService.encode(request.getPassword()));
         user.setUserRole(UserRole.CUSTOMER);
         user.setGender(request.getGender());
         user.setDateOfBirth(request.getDateOfBirth());
@@ -412,6 +415,7 @@ public class CustomerService {
         existingUser.setDateOfBirth(request.getDateOfBirth());
 
         userRepository.save(existingUser);
+        userDetailsCache.evict(existingUser.getUserId());
 
         // Cập nhật thông tin Customer (chỉ address và customerType)
         existingCustomer.setAddress(request.getAddress() != null ? request.getAddress().trim() : null);
@@ -480,6 +484,7 @@ public class CustomerService {
         existingUser.setDateOfBirth(request.getDateOfBirth());
 
         userRepository.save(existingUser);
+        userDetailsCache.evict(existingUser.getUserId());
 
         // Cập nhật thông tin Customer (chỉ address, KHÔNG cho phép thay đổi customerType)
         existingCustomer.setAddress(request.getAddress() != null ? request.getAddress().trim() : null);
@@ -508,6 +513,8 @@ public class CustomerService {
         User user = customer.getUser();
         user.setIsDeleted(true);
         userRepository.save(user);
+        userDetailsCache.evict(user.getUserId());
+        refreshTokenService.revokeAllForUser(user.getUserId());
 
         log.info("Đã xóa khách hàng với ID: {}", customerId);
     }
@@ -544,6 +551,8 @@ public class CustomerService {
                     User user = customer.getUser();
                     user.setIsDeleted(true);
                     userRepository.save(user);
+                    userDetailsCache.evict(user.getUserId());
+                    refreshTokenService.revokeAllForUser(user.getUserId());
 
                     successIds.add(customerId);
                     log.debug("Đã xóa thành công khách hàng với ID: {}", customerId);
@@ -589,6 +598,7 @@ public class CustomerService {
         User user = customer.getUser();
         user.setIsDeleted(false);
         userRepository.save(user);
+        userDetailsCache.evict(user.getUserId());
 
         log.info("Đã khôi phục khách hàng với ID: {}", customerId);
     }
@@ -618,13 +628,15 @@ public class CustomerService {
 
         User user = customer.getUser();
 
-        // Verify old password
-        if (!passwordEncoder.matches(request.getOldPassword(), user.getPasswordHash())) {
+        // Verify old password (BCrypt chạy trên executor giới hạn)
+        if (!passwordHashingService.matches(request.getOldPassword(), user.getPasswordHash())) {
             throw new CustomerValidationException("oldPassword", "Mật khẩu cũ không đúng");
         }
 
-        user.setPasswordHash(passwordEncoder.encode(request.getNewPassword()));
+        user.setPasswordHash(passwordHashingService.encode(request.getNewPassword()));
         userRepository.save(user);
+        userDetailsCache.evict(user.getUserId());
+        refreshTokenService.revokeAllForUser(user.getUserId());
 
         log.info("Đã đổi mật khẩu cho khách hàng với ID: {}", customerId);
     }
@@ -902,8 +914,11 @@ public class CustomerService {
 
     /**
      * Validate CreateCustomerRequest (for admin creation - no password required)
+     * Dùng chung cho tạo từng khách hàng và import hàng loạt; không truy cập DB nên có thể gọi song song
+     *
+     * @throws CustomerValidationException nếu dữ liệu không hợp lệ
      */
-    private void validateCreateCustomerRequest(CreateCustomerRequest request) {
+    public void validateCreateCustomerRequest(CreateCustomerRequest request) {
         if (!customerValidator.isValidName(request.getName())) {
             throw new CustomerValidationException("name", "Tên khách hàng không hợp lệ");
         }
@@ -0,0 +1,28 @@
+package iuh.fit.supermarket.service;
+
+import iuh.fit.supermarket.dto.sale.SaleInvoiceFullDTO;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Service interface cho việc tạo HTML in hóa đơn
+ */
+public interface InvoiceHtmlService {
+
+    /**
+     * Tạo HTML in hóa đơn bán hàng
+     *
+     * @param invoice thông tin hóa đơn đầy đủ
+     * @return HTML content có thể in trực tiếp
+     */
+    String generateInvoiceHtml(SaleInvoiceFullDTO invoice);
+
+    /**
+     * Ghi HTML in hóa đơn trực tiếp vào writer (ví dụ writer của HTTP response)
+     *
+     * @param invoice thông tin hóa đơn đầy đủ
+     * @param writer  nơi ghi HTML
+     */
+    void writeInvoiceHtml(SaleInvoiceFullDTO invoice, Writer writer) throws IOException;
+}
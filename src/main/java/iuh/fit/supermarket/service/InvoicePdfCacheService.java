@@ -0,0 +1,23 @@
+package iuh.fit.supermarket.service;
+
+import iuh.fit.supermarket.dto.sale.SaleInvoiceFullDTO;
+
+import java.util.function.Supplier;
+
+/**
+ * Service interface cho bộ nhớ đệm PDF hóa đơn
+ * PDF được lưu trên đĩa theo địa chỉ nội dung (SHA-256 của dữ liệu hóa đơn),
+ * nên lần tải lại không cần tải dữ liệu hóa đơn hay render lại
+ */
+public interface InvoicePdfCacheService {
+
+    /**
+     * Lấy PDF hóa đơn từ cache, render và lưu vào cache nếu chưa có
+     *
+     * @param invoiceId ID hóa đơn
+     * @param version   phiên bản hiện tại của hóa đơn (thay đổi mỗi khi hóa đơn được cập nhật)
+     * @param loader    hàm tải dữ liệu hóa đơn đầy đủ, chỉ được gọi khi cache không có phiên bản hiện tại
+     * @return byte array của file PDF
+     */
+    byte[] getOrRender(Integer invoiceId, String version, Supplier<SaleInvoiceFullDTO> loader);
+}
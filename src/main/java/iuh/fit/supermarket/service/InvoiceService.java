@@ -2,6 +2,8 @@ package iuh.fit.supermarket.service;
 
 import iuh.fit.supermarket.dto.checkout.PromotionAppliedDTO;
 import iuh.fit.supermarket.dto.sale.OrderPromotionRequestDTO;
+import iuh.fit.supermarket.entity.SaleInvoiceDetail;
+import iuh.fit.supermarket.entity.SaleInvoiceHeader;
 
 import java.util.List;
 import java.util.Map;
@@ -31,4 +33,20 @@ public interface InvoiceService {
             List<OrderPromotionRequestDTO> orderPromotions,
             Map<Integer, PromotionAppliedDTO> itemPromotionsByIndex
     );
+
+    /**
+     * Lưu thông tin khuyến mãi đã áp dụng khi invoice và chi tiết đã có sẵn trong bộ nhớ
+     * - Không truy vấn lại invoice/chi tiết, lưu theo lô (dùng cho bán hàng theo lô)
+     *
+     * @param invoice Hóa đơn đã lưu
+     * @param invoiceDetails Chi tiết hóa đơn theo đúng thứ tự item trong request
+     * @param orderPromotions Danh sách khuyến mãi order level
+     * @param itemPromotionsByIndex Map index -> PromotionAppliedDTO cho từng item
+     */
+    void saveAppliedPromotions(
+            SaleInvoiceHeader invoice,
+            List<SaleInvoiceDetail> invoiceDetails,
+            List<OrderPromotionRequestDTO> orderPromotions,
+            Map<Integer, PromotionAppliedDTO> itemPromotionsByIndex
+    );
 }
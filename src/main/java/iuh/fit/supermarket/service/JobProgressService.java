@@ -0,0 +1,69 @@
+package iuh.fit.supermarket.service;
+
+import iuh.fit.supermarket.dto.job.JobStatusResponse;
+
+/**
+ * Service interface theo dõi tiến độ các tác vụ chạy nền
+ * Trạng thái được giữ trong bộ nhớ và tự xóa sau một thời gian kể từ khi tác vụ kết thúc
+ */
+public interface JobProgressService {
+
+    /**
+     * Tạo tác vụ mới ở trạng thái PENDING
+     *
+     * @param type loại tác vụ
+     * @return mã tác vụ
+     */
+    String create(String type);
+
+    /**
+     * Đánh dấu tác vụ bắt đầu chạy
+     *
+     * @param jobId mã tác vụ
+     * @param total tổng số bản ghi dự kiến (null nếu chưa biết)
+     */
+    void start(String jobId, Long total);
+
+    /**
+     * Cộng thêm số bản ghi đã xử lý
+     *
+     * @param jobId mã tác vụ
+     * @param count số bản ghi vừa xử lý
+     */
+    void addProcessed(String jobId, long count);
+
+    /**
+     * Ghi nhận lỗi của một bản ghi, tác vụ vẫn tiếp tục chạy
+     * Người gọi có thể xem lỗi qua getStatus ngay khi tác vụ đang chạy
+     *
+     * @param jobId   mã tác vụ
+     * @param message thông báo lỗi (ví dụ "Dòng 12: Mã vạch đã tồn tại")
+     */
+    void addError(String jobId, String message);
+
+    /**
+     * Đánh dấu tác vụ hoàn thành
+     *
+     * @param jobId     mã tác vụ
+     * @param resultUrl link tải kết quả (có thể null)
+     * @param message   thông báo kết quả
+     */
+    void complete(String jobId, String resultUrl, String message);
+
+    /**
+     * Đánh dấu tác vụ thất bại
+     *
+     * @param jobId   mã tác vụ
+     * @param message thông báo lỗi
+     */
+    void fail(String jobId, String message);
+
+    /**
+     * Lấy trạng thái tác vụ
+     *
+     * @param jobId mã tác vụ
+     * @return trạng thái tác vụ
+     * @throws iuh.fit.supermarket.exception.NotFoundException nếu không tìm thấy tác vụ
+     */
+    JobStatusResponse getStatus(String jobId);
+}
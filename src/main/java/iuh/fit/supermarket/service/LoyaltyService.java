@@ -0,0 +1,80 @@
+package iuh.fit.supermarket.service;
+
+import iuh.fit.supermarket.dto.customer.LoyaltySummaryDto;
+import iuh.fit.supermarket.entity.Order;
+import iuh.fit.supermarket.entity.ReturnInvoiceHeader;
+
+import java.math.BigDecimal;
+
+/**
+ * Service quản lý điểm tích lũy của khách hàng
+ * Mọi thay đổi điểm được ghi vào sổ điểm (loyalty_points) và cập nhật số dư (loyalty_accounts)
+ * trong cùng transaction, nên đọc số dư không cần cộng lại toàn bộ lịch sử
+ */
+public interface LoyaltyService {
+
+    /**
+     * Lấy số dư điểm hiện tại của khách hàng
+     *
+     * @param customerId ID khách hàng
+     * @return số dư điểm
+     */
+    int getBalance(Integer customerId);
+
+    /**
+     * Khách hàng xem số dư và lịch sử điểm của chính mình
+     *
+     * @param username email hoặc số điện thoại (có thể kèm prefix CUSTOMER:)
+     * @param page     số trang (bắt đầu từ 0)
+     * @param size     kích thước trang
+     * @return số dư và lịch sử điểm
+     */
+    LoyaltySummaryDto getMyLoyalty(String username, int page, int size);
+
+    /**
+     * Tích điểm cho hóa đơn đã thanh toán của khách hàng
+     * Mỗi hóa đơn chỉ được tích điểm một lần; hóa đơn khách lẻ hoặc chưa thanh toán bị bỏ qua
+     *
+     * @param invoiceId ID hóa đơn
+     */
+    void accrueForInvoice(Integer invoiceId);
+
+    /**
+     * Thu hồi phần điểm còn lại đã tích từ hóa đơn gốc của phiếu trả hàng
+     * và hoàn lại điểm khách đã dùng cho đơn hàng của hóa đơn (nếu có)
+     *
+     * @param returnInvoice phiếu trả hàng vừa tạo
+     */
+    void reverseForReturn(ReturnInvoiceHeader returnInvoice);
+
+    /**
+     * Tính số tiền giảm khi dùng điểm, kiểm tra số điểm hợp lệ với giá trị đơn hàng
+     *
+     * @param points        số điểm muốn dùng
+     * @param payableAmount số tiền phải trả trước khi trừ điểm (chưa gồm phí vận chuyển)
+     * @return số tiền được giảm
+     */
+    BigDecimal calculateRedemptionDiscount(int points, BigDecimal payableAmount);
+
+    /**
+     * Trừ điểm đã dùng cho đơn hàng (order.loyaltyPointsUsed)
+     * Ném BadRequestException nếu số dư không đủ
+     *
+     * @param order đơn hàng đã lưu
+     */
+    void redeemForOrder(Order order);
+
+    /**
+     * Hoàn lại điểm đã dùng khi đơn hàng bị hủy, mỗi đơn hàng chỉ hoàn một lần
+     *
+     * @param order đơn hàng bị hủy
+     */
+    void refundRedemption(Order order);
+
+    /**
+     * Đối soát số dư với tổng sổ điểm theo từng lô tài khoản
+     *
+     * @return số tài khoản có số dư lệch
+     */
+    int reconcileBalances();
+}
@@ -0,0 +1,64 @@
+package iuh.fit.supermarket.service;
+
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Lớp lưu trữ object (S3/R2 hoặc thư mục cục bộ) làm việc theo key
+ * Mọi thao tác đều bất đồng bộ, luồng gọi không bị giữ trong lúc truyền dữ liệu qua mạng
+ */
+public interface ObjectStorageService {
+
+    /**
+     * Ghi object từ file trên đĩa (đọc dần từ file, file lớn được upload nhiều phần song song)
+     *
+     * @param key         key của object
+     * @param file        file nguồn, phải còn tồn tại đến khi future hoàn thành
+     * @param contentType loại nội dung
+     * @return future hoàn thành khi object đã được ghi
+     */
+    CompletableFuture<Void> put(String key, Path file, String contentType);
+
+    /**
+     * Ghi object từ byte array
+     *
+     * @param key         key của object
+     * @param content     nội dung
+     * @param contentType loại nội dung
+     * @return future hoàn thành khi object đã được ghi
+     */
+    CompletableFuture<Void> put(String key, byte[] content, String contentType);
+
+    /**
+     * Tải object xuống file trên đĩa (ghi đè nếu file đã tồn tại)
+     *
+     * @param key    key của object
+     * @param target file đích
+     * @return future hoàn thành khi đã tải xong
+     */
+    CompletableFuture<Void> download(String key, Path target);
+
+    /**
+     * Xóa object
+     *
+     * @param key key của object
+     * @return future hoàn thành khi đã xóa
+     */
+    CompletableFuture<Void> delete(String key);
+
+    /**
+     * URL công khai để truy cập object
+     *
+     * @param key key của object
+     * @return URL công khai
+     */
+    String publicUrl(String key);
+
+    /**
+     * Trích xuất key từ URL công khai
+     *
+     * @param url URL công khai
+     * @return key của object, null nếu URL không thuộc kho lưu trữ này
+     */
+    String keyFromUrl(String url);
+}
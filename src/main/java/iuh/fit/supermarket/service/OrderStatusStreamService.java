@@ -0,0 +1,36 @@
+package iuh.fit.supermarket.service;
+
+import iuh.fit.supermarket.event.OrderStatusChangedEvent;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+/**
+ * Service đẩy trạng thái đơn hàng theo thời gian thực qua Server-Sent Events
+ * Mỗi kết nối có bộ đệm giới hạn; kết nối chậm bị bỏ sự kiện cũ nhất thay vì giữ bộ nhớ không giới hạn
+ */
+public interface OrderStatusStreamService {
+
+    /**
+     * Đăng ký theo dõi đơn hàng của khách hàng đang đăng nhập
+     *
+     * @param username username của khách hàng (email hoặc số điện thoại)
+     * @return kết nối SSE
+     * @throws iuh.fit.supermarket.exception.TooManyRequestsException nếu đã đạt số kết nối tối đa
+     */
+    SseEmitter subscribeCustomer(String username);
+
+    /**
+     * Đăng ký theo dõi đơn hàng cho nhân viên
+     *
+     * @param storeId ID cửa hàng nhận hàng cần theo dõi, null để theo dõi mọi đơn hàng
+     * @return kết nối SSE
+     * @throws iuh.fit.supermarket.exception.TooManyRequestsException nếu đã đạt số kết nối tối đa
+     */
+    SseEmitter subscribeStaff(Long storeId);
+
+    /**
+     * Đưa sự kiện vào bộ đệm của các kết nối liên quan (khách hàng của đơn, cửa hàng nhận hàng, nhân viên theo dõi tất cả)
+     *
+     * @param event sự kiện đổi trạng thái
+     */
+    void publish(OrderStatusChangedEvent event);
+}
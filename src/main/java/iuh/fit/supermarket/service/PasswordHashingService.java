@@ -0,0 +1,36 @@
+package iuh.fit.supermarket.service;
+
+/**
+ * Service băm và kiểm tra mật khẩu trên executor giới hạn
+ */
+public interface PasswordHashingService {
+
+    /**
+     * Kiểm tra mật khẩu với hash đã lưu
+     * Hash null hoặc rỗng (tài khoản không tồn tại hoặc chưa đặt mật khẩu) vẫn chạy BCrypt với hash giả
+     * rồi trả về false, để thời gian phản hồi không cho biết tài khoản có tồn tại hay không
+     *
+     * @param rawPassword     mật khẩu người dùng nhập
+     * @param encodedPassword hash đã lưu (null nếu không tìm thấy tài khoản)
+     * @return true nếu khớp
+     * @throws iuh.fit.supermarket.exception.TooManyRequestsException nếu hàng đợi băm đã đầy hoặc chờ quá lâu
+     */
+    boolean matches(String rawPassword, String encodedPassword);
+
+    /**
+     * Băm mật khẩu với cost hiện tại
+     *
+     * @param rawPassword mật khẩu
+     * @return hash BCrypt
+     * @throws iuh.fit.supermarket.exception.TooManyRequestsException nếu hàng đợi băm đã đầy hoặc chờ quá lâu
+     */
+    String encode(String rawPassword);
+
+    /**
+     * Hash đã lưu có cost thấp hơn cost mục tiêu và cần băm lại không
+     *
+     * @param encodedPassword hash đã lưu
+     * @return true nếu nên băm lại khi người dùng đăng nhập thành công
+     */
+    boolean needsRehash(String encodedPassword);
+}
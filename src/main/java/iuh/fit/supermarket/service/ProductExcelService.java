@@ -1,23 +1,35 @@
 package iuh.fit.supermarket.service;
 
-import iuh.fit.supermarket.dto.product.ProductCreateRequest;
-import iuh.fit.supermarket.dto.product.ProductResponse;
+import iuh.fit.supermarket.dto.product.ProductImportItem;
 import iuh.fit.supermarket.dto.product.ProductUnitRequest;
+import iuh.fit.supermarket.entity.Product;
+import iuh.fit.supermarket.entity.ProductUnit;
+import iuh.fit.supermarket.exception.ProductException;
+import iuh.fit.supermarket.repository.ProductRepository;
+import iuh.fit.supermarket.repository.ProductUnitRepository;
+import iuh.fit.supermarket.util.ExcelRowReader;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.poi.ss.usermodel.*;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
-import org.springframework.web.multipart.MultipartFile;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Path;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Optional;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+import java.util.function.ObjIntConsumer;
+import java.util.stream.Collectors;
 
 /**
  * Service xử lý import/export Excel cho sản phẩm
@@ -26,14 +38,21 @@ import java.util.Optional;
 @Slf4j
 public class ProductExcelService {
 
-    private final iuh.fit.supermarket.repository.CategoryRepository categoryRepository;
-    private final iuh.fit.supermarket.repository.BrandRepository brandRepository;
+    private final CategoryTreeService categoryTreeService;
+    private final ProductRepository productRepository;
+    private final ProductUnitRepository productUnitRepository;
+    private final TransactionTemplate readOnlyTransaction;
 
     public ProductExcelService(
-            iuh.fit.supermarket.repository.CategoryRepository categoryRepository,
-            iuh.fit.supermarket.repository.BrandRepository brandRepository) {
-        this.categoryRepository = categoryRepository;
-        this.brandRepository = brandRepository;
+            CategoryTreeService categoryTreeService,
+            ProductRepository productRepository,
+            ProductUnitRepository productUnitRepository,
+            PlatformTransactionManager transactionManager) {
+        this.categoryTreeService = categoryTreeService;
+        this.productRepository = productRepository;
+        this.productUnitRepository = productUnitRepository;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
     }
 
     // Định nghĩa các cột trong Excel cho Export
@@ -54,14 +73,40 @@ public class ProductExcelService {
             "Trạng thái", "Tích điểm", "Tên đơn vị", "Tỷ lệ quy đổi", "Đơn vị cơ bản", "Mã vạch"
     };
 
+    private static final int IMPORT_COLUMN_COUNT = IMPORT_HEADERS.length;
+
     /**
-     * Export danh sách sản phẩm ra file Excel
+     * Số sản phẩm được đọc từ DB cho mỗi trang khi export
      */
-    @Transactional(readOnly = true)
-    public byte[] exportProductsToExcel(List<ProductResponse> products) throws IOException {
-        log.info("Bắt đầu export {} sản phẩm ra Excel", products.size());
+    private static final int EXPORT_PAGE_SIZE = 500;
 
-        try (Workbook workbook = new XSSFWorkbook()) {
+    /**
+     * Số dòng giữ trong bộ nhớ khi ghi Excel, các dòng cũ hơn được đẩy ra file tạm
+     */
+    private static final int EXPORT_ROW_WINDOW = 200;
+
+    /**
+     * Độ rộng cột export (số ký tự), dùng thay cho auto-size vì SXSSF không giữ toàn bộ dòng
+     */
+    private static final int[] EXPORT_COLUMN_WIDTHS = { 15, 40, 40, 20, 30, 15, 10, 15, 12, 12, 18, 20, 20 };
+
+    /**
+     * Export toàn bộ sản phẩm đang hoạt động ra Excel và ghi thẳng vào output stream
+     * Sản phẩm được đọc theo trang (keyset), mỗi trang trong một transaction riêng,
+     * và ghi bằng SXSSF nên bộ nhớ sử dụng không phụ thuộc số lượng sản phẩm
+     *
+     * @param outputStream nơi ghi file Excel
+     * @param onProgress   được gọi với số sản phẩm vừa ghi sau mỗi trang
+     * @return số sản phẩm đã export
+     */
+    public long exportActiveProducts(OutputStream outputStream, LongConsumer onProgress) throws IOException {
+        log.info("Bắt đầu export sản phẩm ra Excel");
+
+        Map<Integer, String> categoryPaths = categoryTreeService.getPaths();
+
+        SXSSFWorkbook workbook = new SXSSFWorkbook(EXPORT_ROW_WINDOW);
+        workbook.setCompressTempFiles(true);
+        try {
             Sheet sheet = workbook.createSheet("Danh sách sản phẩm");
 
             // Tạo style cho header
@@ -76,376 +121,282 @@ public class ProductExcelService {
                 Cell cell = headerRow.createCell(i);
                 cell.setCellValue(EXPORT_HEADERS[i]);
                 cell.setCellStyle(headerStyle);
+                sheet.setColumnWidth(i, EXPORT_COLUMN_WIDTHS[i] * 256);
             }
 
             // Tạo data rows - mỗi ProductUnit là một dòng
             DateTimeFormatter formatter = DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm:ss");
-            int rowNum = 1;
-            int totalUnits = 0;
-
-            for (ProductResponse product : products) {
-                // Nếu sản phẩm có ProductUnits, export từng unit
-                if (product.getProductUnits() != null && !product.getProductUnits().isEmpty()) {
-                    for (ProductResponse.ProductUnitInfo unit : product.getProductUnits()) {
-                        Row row = sheet.createRow(rowNum++);
-                        int colNum = 0;
-
-                        // Thông tin sản phẩm
-                        row.createCell(colNum++).setCellValue(product.getCode() != null ? product.getCode() : "");
-                        row.createCell(colNum++).setCellValue(product.getName() != null ? product.getName() : "");
-                        row.createCell(colNum++)
-                                .setCellValue(product.getDescription() != null ? product.getDescription() : "");
-                        row.createCell(colNum++)
-                                .setCellValue(product.getBrand() != null ? product.getBrand().getName() : "");
-                        row.createCell(colNum++)
-                                .setCellValue(product.getCategory() != null ? getCategoryFullPath(product.getCategory())
-                                        : "");
-                        row.createCell(colNum++)
-                                .setCellValue(product.getIsActive() != null && product.getIsActive() ? "Hoạt động"
-                                        : "Không hoạt động");
-                        row.createCell(colNum++).setCellValue(
-                                product.getIsRewardPoint() != null && product.getIsRewardPoint() ? "Có" : "Không");
-
-                        // Thông tin đơn vị
-                        row.createCell(colNum++).setCellValue(unit.getUnitName() != null ? unit.getUnitName() : "");
-                        row.createCell(colNum++)
-                                .setCellValue(unit.getConversionValue() != null ? unit.getConversionValue() : 1);
-                        row.createCell(colNum++)
-                                .setCellValue(unit.getIsBaseUnit() != null && unit.getIsBaseUnit() ? "Có" : "Không");
-                        row.createCell(colNum++).setCellValue(unit.getBarcode() != null ? unit.getBarcode() : "");
-
-                        // Ngày tạo và cập nhật
-                        row.createCell(colNum++).setCellValue(
-                                product.getCreatedDate() != null ? product.getCreatedDate().format(formatter) : "");
-                        row.createCell(colNum++).setCellValue(
-                                product.getUpdatedAt() != null ? product.getUpdatedAt().format(formatter) : "");
-
-                        // Apply data style
-                        for (int i = 0; i < EXPORT_HEADERS.length; i++) {
-                            Cell cell = row.getCell(i);
-                            if (cell != null) {
-                                cell.setCellStyle(dataStyle);
-                            }
-                        }
-                        totalUnits++;
+            int[] rowNum = { 1 };
+            long totalProducts = 0;
+            long lastId = 0L;
+
+            while (true) {
+                long afterId = lastId;
+                // Mỗi trang một transaction để persistence context không tích lũy qua các trang
+                ExportPage page = readOnlyTransaction.execute(status -> {
+                    List<Product> products = productRepository.findActiveProductsAfter(afterId,
+                            PageRequest.of(0, EXPORT_PAGE_SIZE));
+                    if (products.isEmpty()) {
+                        return new ExportPage(0, afterId);
                     }
-                } else {
-                    // Nếu không có unit, vẫn export thông tin sản phẩm
-                    Row row = sheet.createRow(rowNum++);
-                    int colNum = 0;
-
-                    row.createCell(colNum++).setCellValue(product.getCode() != null ? product.getCode() : "");
-                    row.createCell(colNum++).setCellValue(product.getName() != null ? product.getName() : "");
-                    row.createCell(colNum++)
-                            .setCellValue(product.getDescription() != null ? product.getDescription() : "");
-                    row.createCell(colNum++)
-                            .setCellValue(product.getBrand() != null ? product.getBrand().getName() : "");
-                    row.createCell(colNum++)
-                            .setCellValue(
-                                    product.getCategory() != null ? getCategoryFullPath(product.getCategory()) : "");
-                    row.createCell(colNum++).setCellValue(
-                            product.getIsActive() != null && product.getIsActive() ? "Hoạt động" : "Không hoạt động");
-                    row.createCell(colNum++).setCellValue(
-                            product.getIsRewardPoint() != null && product.getIsRewardPoint() ? "Có" : "Không");
-
-                    // Các cột unit để trống
-                    row.createCell(colNum++).setCellValue("");
-                    row.createCell(colNum++).setCellValue("");
-                    row.createCell(colNum++).setCellValue("");
-                    row.createCell(colNum++).setCellValue("");
-
-                    row.createCell(colNum++).setCellValue(
-                            product.getCreatedDate() != null ? product.getCreatedDate().format(formatter) : "");
-                    row.createCell(colNum++).setCellValue(
-                            product.getUpdatedAt() != null ? product.getUpdatedAt().format(formatter) : "");
-
-                    // Apply data style
-                    for (int i = 0; i < EXPORT_HEADERS.length; i++) {
-                        Cell cell = row.getCell(i);
-                        if (cell != null) {
-                            cell.setCellStyle(dataStyle);
+
+                    Map<Long, List<ProductUnit>> unitsByProduct = productUnitRepository
+                            .findActiveByProductIdIn(products.stream().map(Product::getId).toList())
+                            .stream()
+                            .collect(Collectors.groupingBy(pu -> pu.getProduct().getId()));
+
+                    for (Product product : products) {
+                        String categoryPath = product.getCategory() != null
+                                ? categoryPaths.getOrDefault(product.getCategory().getCategoryId(), "")
+                                : "";
+                        List<ProductUnit> units = unitsByProduct.getOrDefault(product.getId(), List.of());
+
+                        // Nếu sản phẩm có ProductUnits, export từng unit; nếu không, vẫn export thông tin sản phẩm
+                        if (units.isEmpty()) {
+                            writeProductRow(sheet.createRow(rowNum[0]++), product, categoryPath, null,
+                                    formatter, dataStyle);
+                        } else {
+                            for (ProductUnit unit : units) {
+                                writeProductRow(sheet.createRow(rowNum[0]++), product, categoryPath, unit,
+                                        formatter, dataStyle);
+                            }
                         }
                     }
-                }
-            }
+                    return new ExportPage(products.size(), products.get(products.size() - 1).getId());
+                });
 
-            // Auto-size columns
-            for (int i = 0; i < EXPORT_HEADERS.length; i++) {
-                sheet.autoSizeColumn(i);
+                if (page == null || page.productCount() == 0) {
+                    break;
+                }
+                // Trang kế tiếp bắt đầu sau sản phẩm cuối của trang này (ID tăng dần)
+                lastId = page.lastProductId();
+                totalProducts += page.productCount();
+                onProgress.accept(page.productCount());
             }
 
-            // Convert to byte array
-            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
             workbook.write(outputStream);
 
-            log.info("Export Excel thành công với {} sản phẩm, {} đơn vị", products.size(), totalUnits);
-            return outputStream.toByteArray();
+            log.info("Export Excel thành công với {} sản phẩm, {} dòng", totalProducts, rowNum[0] - 1);
+            return totalProducts;
+        } finally {
+            // Xóa các file tạm của SXSSF
+            workbook.dispose();
+            workbook.close();
         }
     }
 
     /**
-     * Import sản phẩm từ file Excel
-     * Hỗ trợ nhiều đơn vị cho cùng một sản phẩm (các dòng có cùng mã sản phẩm)
+     * Ghi một dòng export cho sản phẩm (và đơn vị nếu có)
      */
-    public List<ProductCreateRequest> importProductsFromExcel(MultipartFile file) throws IOException {
-        log.info("Bắt đầu import sản phẩm từ file Excel: {}", file.getOriginalFilename());
-
-        java.util.Map<String, ProductCreateRequest> productMap = new java.util.LinkedHashMap<>();
-
-        try (InputStream inputStream = file.getInputStream();
-                Workbook workbook = WorkbookFactory.create(inputStream)) {
-
-            Sheet sheet = workbook.getSheetAt(0);
-            Iterator<Row> rowIterator = sheet.iterator();
-
-            // Skip header row
-            if (rowIterator.hasNext()) {
-                rowIterator.next();
-            }
-
-            int rowNum = 1;
-            while (rowIterator.hasNext()) {
-                Row row = rowIterator.next();
-                rowNum++;
-
-                try {
-                    // Kiểm tra dòng trống
-                    if (isRowEmpty(row)) {
-                        continue;
-                    }
-
-                    // Parse thông tin sản phẩm và đơn vị
-                    String productCode = getCellValueAsString(row.getCell(0));
-                    String productName = getCellValueAsString(row.getCell(1));
+    private void writeProductRow(Row row, Product product, String categoryPath, ProductUnit unit,
+            DateTimeFormatter formatter, CellStyle dataStyle) {
+        int colNum = 0;
+
+        // Thông tin sản phẩm
+        row.createCell(colNum++).setCellValue(product.getCode() != null ? product.getCode() : "");
+        row.createCell(colNum++).setCellValue(product.getName() != null ? product.getName() : "");
+        row.createCell(colNum++).setCellValue(product.getDescription() != null ? product.getDescription() : "");
+        row.createCell(colNum++).setCellValue(product.getBrand() != null ? product.getBrand().getName() : "");
+        row.createCell(colNum++).setCellValue(categoryPath);
+        row.createCell(colNum++).setCellValue(
+                product.getIsActive() != null && product.getIsActive() ? "Hoạt động" : "Không hoạt động");
+        row.createCell(colNum++).setCellValue(
+                product.getIsRewardPoint() != null && product.getIsRewardPoint() ? "Có" : "Không");
+
+        // Thông tin đơn vị (để trống nếu sản phẩm chưa có đơn vị)
+        if (unit != null) {
+            row.createCell(colNum++).setCellValue(unit.getUnit() != null ? unit.getUnit().getName() : "");
+            row.createCell(colNum++).setCellValue(unit.getConversionValue() != null ? unit.getConversionValue() : 1);
+            row.createCell(colNum++).setCellValue(unit.getIsBaseUnit() != null && unit.getIsBaseUnit() ? "Có" : "Không");
+            row.createCell(colNum++).setCellValue(unit.getBarcode() != null ? unit.getBarcode() : "");
+        } else {
+            row.createCell(colNum++).setCellValue("");
+            row.createCell(colNum++).setCellValue("");
+            row.createCell(colNum++).setCellValue("");
+            row.createCell(colNum++).setCellValue("");
+        }
 
-                    if (productName == null || productName.trim().isEmpty()) {
-                        throw new RuntimeException("Tên sản phẩm không được để trống");
-                    }
+        // Ngày tạo và cập nhật
+        row.createCell(colNum++).setCellValue(
+                product.getCreatedAt() != null ? product.getCreatedAt().format(formatter) : "");
+        row.createCell(colNum++).setCellValue(
+                product.getUpdatedAt() != null ? product.getUpdatedAt().format(formatter) : "");
 
-                    // Sử dụng mã sản phẩm hoặc tên sản phẩm làm key
-                    String key = (productCode != null && !productCode.trim().isEmpty())
-                            ? productCode.trim()
-                            : productName.trim();
-
-                    // Nếu sản phẩm đã tồn tại trong map, thêm unit mới
-                    if (productMap.containsKey(key)) {
-                        ProductCreateRequest existingProduct = productMap.get(key);
-                        ProductUnitRequest newUnit = parseUnitFromRow(row, rowNum);
-
-                        if (newUnit != null) {
-                            // Thêm unit mới vào danh sách units
-                            List<ProductUnitRequest> units = new ArrayList<>(existingProduct.getUnits());
-                            units.add(newUnit);
-                            existingProduct.setUnits(units);
-                            log.debug("Thêm đơn vị '{}' cho sản phẩm '{}'", newUnit.unitName(), key);
-                        }
-                    } else {
-                        // Tạo sản phẩm mới
-                        ProductCreateRequest product = parseRowToProduct(row, rowNum);
-                        if (product != null) {
-                            productMap.put(key, product);
-                            log.debug("Tạo sản phẩm mới: {}", key);
-                        }
-                    }
-                } catch (Exception e) {
-                    log.warn("Lỗi khi parse dòng {}: {}", rowNum, e.getMessage());
-                    throw new RuntimeException("Lỗi tại dòng " + rowNum + ": " + e.getMessage());
-                }
-            }
+        // Apply data style
+        for (int i = 0; i < colNum; i++) {
+            row.getCell(i).setCellStyle(dataStyle);
         }
-
-        List<ProductCreateRequest> products = new ArrayList<>(productMap.values());
-        log.info("Import thành công {} sản phẩm từ Excel", products.size());
-        return products;
     }
 
     /**
-     * Parse một dòng Excel thành ProductCreateRequest
-     * Format: Mã SP | Tên SP | Mô tả | Tên Thương hiệu | Tên Danh mục | Trạng thái
-     * |
-     * Tích điểm | Tên đơn vị | Tỷ lệ quy đổi | Đơn vị cơ bản | Mã vạch
+     * Kết quả ghi một trang sản phẩm khi export
      */
-    private ProductCreateRequest parseRowToProduct(Row row, int rowNum) {
-        try {
-            String productCode = getCellValueAsString(row.getCell(0));
-            String name = getCellValueAsString(row.getCell(1));
+    private record ExportPage(int productCount, long lastProductId) {
+    }
 
-            if (name == null || name.trim().isEmpty()) {
-                throw new RuntimeException("Tên sản phẩm không được để trống");
+    /**
+     * Đọc file Excel import theo luồng và gom các dòng cùng mã (hoặc tên) sản phẩm thành một sản phẩm nhiều đơn vị
+     * Thương hiệu và danh mục được giữ ở dạng tên để service import ánh xạ hàng loạt
+     *
+     * @param file       file Excel đã lưu trên đĩa
+     * @param onRowError nhận thông báo lỗi của từng dòng không hợp lệ (dòng lỗi bị bỏ qua)
+     * @return danh sách sản phẩm theo thứ tự xuất hiện trong file
+     */
+    public List<ProductImportItem> readImportFile(Path file, Consumer<String> onRowError) throws IOException {
+        log.info("Bắt đầu đọc file Excel import sản phẩm: {}", file.getFileName());
+
+        Map<String, ProductImportItem> productMap = new LinkedHashMap<>();
+        ObjIntConsumer<String[]> rowHandler = (cells, rowNum) -> {
+            // Bỏ qua dòng header và dòng trống
+            if (rowNum == 1 || isRowEmpty(cells)) {
+                return;
             }
+            try {
+                addImportRow(productMap, cells, rowNum);
+            } catch (RuntimeException e) {
+                log.debug("Lỗi khi parse dòng {}: {}", rowNum, e.getMessage());
+                onRowError.accept("Dòng " + rowNum + ": " + e.getMessage());
+            }
+        };
 
-            String description = getCellValueAsString(row.getCell(2));
-            String brandName = getCellValueAsString(row.getCell(3));
-            String categoryPath = getCellValueAsString(row.getCell(4));
+        ExcelRowReader.read(file, IMPORT_COLUMN_COUNT, rowHandler);
 
-            if (categoryPath == null || categoryPath.trim().isEmpty()) {
-                throw new RuntimeException("Tên danh mục không được để trống");
-            }
+        log.info("Đọc được {} sản phẩm từ file Excel", productMap.size());
+        return new ArrayList<>(productMap.values());
+    }
 
-            // Tìm hoặc tạo thương hiệu theo tên
-            Integer brandId = null;
-            if (brandName != null && !brandName.trim().isEmpty()) {
-                brandId = findOrCreateBrandByName(brandName.trim());
-            }
+    /**
+     * Thêm một dòng vào danh sách sản phẩm: dòng có mã (hoặc tên) đã gặp được thêm như một đơn vị mới
+     * Format: Mã SP | Tên SP | Mô tả | Tên Thương hiệu | Tên Danh mục | Trạng thái |
+     * Tích điểm | Tên đơn vị | Tỷ lệ quy đổi | Đơn vị cơ bản | Mã vạch
+     */
+    private void addImportRow(Map<String, ProductImportItem> productMap, String[] cells, int rowNum) {
+        String productCode = trimToNull(cells[0]);
+        String name = trimToNull(cells[1]);
 
-            // Tìm hoặc tạo danh mục theo đường dẫn
-            Integer categoryId = findOrCreateCategoryByPath(categoryPath.trim());
+        if (name == null) {
+            throw new ProductException("Tên sản phẩm không được để trống");
+        }
 
-            Boolean isActive = getCellValueAsBoolean(row.getCell(5));
-            Boolean isRewardPoint = getCellValueAsBoolean(row.getCell(6));
+        ProductUnitRequest unit = parseImportUnit(cells);
 
-            // Parse unit information
-            ProductUnitRequest unitRequest = parseUnitFromRow(row, rowNum);
-            if (unitRequest == null) {
-                throw new RuntimeException("Thông tin đơn vị không hợp lệ");
-            }
+        // Sử dụng mã sản phẩm hoặc tên sản phẩm làm key
+        String key = productCode != null ? productCode : name;
+        ProductImportItem existingProduct = productMap.get(key);
+        if (existingProduct != null) {
+            existingProduct.units().add(unit);
+            return;
+        }
 
-            // Tạo ProductCreateRequest
-            ProductCreateRequest product = new ProductCreateRequest();
-            product.setCode(productCode != null ? productCode.trim() : null);
-            product.setName(name.trim());
-            product.setDescription(description);
-            product.setBrandId(brandId);
-            product.setCategoryId(categoryId);
-            product.setIsActive(isActive != null ? isActive : true);
-            product.setIsRewardPoint(isRewardPoint != null ? isRewardPoint : false);
-            product.setUnits(List.of(unitRequest));
-
-            return product;
-
-        } catch (Exception e) {
-            throw new RuntimeException("Lỗi parse dữ liệu: " + e.getMessage());
+        String categoryPath = trimToNull(cells[4]);
+        if (categoryPath == null) {
+            throw new ProductException("Tên danh mục không được để trống");
         }
+
+        Boolean isActive = parseBoolean(cells[5]);
+        Boolean isRewardPoint = parseBoolean(cells[6]);
+
+        List<ProductUnitRequest> units = new ArrayList<>();
+        units.add(unit);
+        productMap.put(key, new ProductImportItem(
+                rowNum,
+                productCode,
+                name,
+                cells[2],
+                trimToNull(cells[3]),
+                categoryPath,
+                isActive != null ? isActive : true,
+                isRewardPoint != null ? isRewardPoint : false,
+                units));
     }
 
     /**
-     * Parse thông tin đơn vị từ một dòng Excel
+     * Parse thông tin đơn vị từ một dòng
      * Format: ... | Tên đơn vị | Tỷ lệ quy đổi | Đơn vị cơ bản | Mã vạch
      */
-    private ProductUnitRequest parseUnitFromRow(Row row, int rowNum) {
-        try {
-            String unitName = getCellValueAsString(row.getCell(7));
-            Integer conversionValue = getCellValueAsInteger(row.getCell(8));
-            Boolean isBaseUnit = getCellValueAsBoolean(row.getCell(9));
-            String barcode = getCellValueAsString(row.getCell(10));
-
-            if (unitName == null || unitName.trim().isEmpty()) {
-                throw new RuntimeException("Tên đơn vị không được để trống");
-            }
-            if (conversionValue == null || conversionValue <= 0) {
-                conversionValue = 1;
-            }
-            if (isBaseUnit == null) {
-                isBaseUnit = false;
-            }
-
-            // Tạo ProductUnitRequest
-            return new ProductUnitRequest(
-                    unitName.trim(),
-                    conversionValue,
-                    isBaseUnit,
-                    barcode != null ? barcode.trim() : null);
+    private ProductUnitRequest parseImportUnit(String[] cells) {
+        String unitName = trimToNull(cells[7]);
+        if (unitName == null) {
+            throw new ProductException("Tên đơn vị không được để trống");
+        }
 
-        } catch (Exception e) {
-            throw new RuntimeException("Lỗi parse thông tin đơn vị: " + e.getMessage());
+        Integer conversionValue = parseInteger(cells[8]);
+        if (conversionValue == null || conversionValue <= 0) {
+            conversionValue = 1;
         }
+        Boolean isBaseUnit = parseBoolean(cells[9]);
+
+        return new ProductUnitRequest(
+                unitName,
+                conversionValue,
+                isBaseUnit != null ? isBaseUnit : false,
+                trimToNull(cells[10]));
     }
 
     /**
      * Kiểm tra dòng có trống không
      */
-    private boolean isRowEmpty(Row row) {
-        if (row == null)
-            return true;
-
-        for (int i = 0; i < row.getLastCellNum(); i++) {
-            Cell cell = row.getCell(i);
-            if (cell != null && cell.getCellType() != CellType.BLANK) {
-                String value = getCellValueAsString(cell);
-                if (value != null && !value.trim().isEmpty()) {
-                    return false;
-                }
+    private boolean isRowEmpty(String[] cells) {
+        for (String cell : cells) {
+            if (trimToNull(cell) != null) {
+                return false;
             }
         }
         return true;
     }
 
-    /**
-     * Lấy giá trị cell dưới dạng String
-     */
-    private String getCellValueAsString(Cell cell) {
-        if (cell == null)
+    private String trimToNull(String value) {
+        if (value == null) {
             return null;
-
-        switch (cell.getCellType()) {
-            case STRING:
-                return cell.getStringCellValue();
-            case NUMERIC:
-                if (DateUtil.isCellDateFormatted(cell)) {
-                    return cell.getDateCellValue().toString();
-                } else {
-                    return String.valueOf((long) cell.getNumericCellValue());
-                }
-            case BOOLEAN:
-                return String.valueOf(cell.getBooleanCellValue());
-            case FORMULA:
-                return cell.getCellFormula();
-            default:
-                return null;
         }
+        String trimmed = value.trim();
+        return trimmed.isEmpty() ? null : trimmed;
     }
 
     /**
-     * Lấy giá trị cell dưới dạng Integer
+     * Chuyển giá trị ô thành Integer (chấp nhận cả dạng "2.0")
      */
-    private Integer getCellValueAsInteger(Cell cell) {
-        if (cell == null)
+    private Integer parseInteger(String value) {
+        value = trimToNull(value);
+        if (value == null) {
             return null;
-
+        }
         try {
-            switch (cell.getCellType()) {
-                case NUMERIC:
-                    return (int) cell.getNumericCellValue();
-                case STRING:
-                    String value = cell.getStringCellValue().trim();
-                    return value.isEmpty() ? null : Integer.parseInt(value);
-                default:
-                    return null;
-            }
+            return Integer.parseInt(value);
         } catch (NumberFormatException e) {
-            return null;
+            try {
+                return (int) Double.parseDouble(value);
+            } catch (NumberFormatException ex) {
+                return null;
+            }
         }
     }
 
     /**
-     * Lấy giá trị cell dưới dạng Boolean
+     * Chuyển giá trị ô thành Boolean
      * Xử lý các giá trị tiếng Việt từ file export:
      * - Trạng thái: "Hoạt động" / "Không hoạt động"
      * - Tích điểm, Đơn vị cơ bản: "Có" / "Không"
      */
-    private Boolean getCellValueAsBoolean(Cell cell) {
-        if (cell == null)
+    private Boolean parseBoolean(String value) {
+        value = trimToNull(value);
+        if (value == null) {
+            return null;
+        }
+        value = value.toLowerCase();
+        // Kiểm tra các giá trị TRUE (tiếng Anh và tiếng Việt)
+        if ("true".equals(value) || "có".equals(value) || "hoạt động".equals(value) || "1".equals(value) || "yes".equals(value)) {
+            return true;
+        }
+        // Kiểm tra các giá trị FALSE (tiếng Anh và tiếng Việt)
+        if ("false".equals(value) || "không".equals(value) || "không hoạt động".equals(value) || "0".equals(value) || "no".equals(value)) {
+            return false;
+        }
+        // Ô số khác 0/1 được hiểu theo dấu, mặc định trả về null nếu không nhận diện được
+        try {
+            return Double.parseDouble(value) > 0;
+        } catch (NumberFormatException e) {
             return null;
-
-        switch (cell.getCellType()) {
-            case BOOLEAN:
-                return cell.getBooleanCellValue();
-            case STRING:
-                String value = cell.getStringCellValue().trim().toLowerCase();
-                // Kiểm tra các giá trị TRUE (tiếng Anh và tiếng Việt)
-                if ("true".equals(value) || "có".equals(value) || "hoạt động".equals(value) || "1".equals(value) || "yes".equals(value)) {
-                    return true;
-                }
-                // Kiểm tra các giá trị FALSE (tiếng Anh và tiếng Việt)
-                if ("false".equals(value) || "không".equals(value) || "không hoạt động".equals(value) || "0".equals(value) || "no".equals(value)) {
-                    return false;
-                }
-                // Mặc định trả về null nếu không nhận diện được
-                return null;
-            case NUMERIC:
-                return cell.getNumericCellValue() > 0;
-            default:
-                return null;
         }
     }
 
@@ -649,183 +600,4 @@ public class ProductExcelService {
         // Auto-size column
         sheet.autoSizeColumn(0);
     }
-
-    /**
-     * Lấy đường dẫn đầy đủ của danh mục theo format "Cha>Con"
-     * Ví dụ: "Thực phẩm>Đồ uống>Nước ngọt"
-     */
-    private String getCategoryFullPath(ProductResponse.CategoryInfo category) {
-        if (category == null) {
-            return "";
-        }
-
-        // Load category entity để lấy thông tin parent
-        iuh.fit.supermarket.entity.Category categoryEntity = categoryRepository.findById(category.getCategoryId())
-                .orElse(null);
-
-        if (categoryEntity == null) {
-            return category.getName();
-        }
-
-        return buildCategoryPath(categoryEntity);
-    }
-
-    /**
-     * Xây dựng đường dẫn danh mục từ entity
-     */
-    private String buildCategoryPath(iuh.fit.supermarket.entity.Category category) {
-        if (category == null) {
-            return "";
-        }
-
-        List<String> pathParts = new ArrayList<>();
-        iuh.fit.supermarket.entity.Category current = category;
-
-        // Duyệt ngược từ con lên cha
-        while (current != null) {
-            pathParts.add(0, current.getName()); // Thêm vào đầu list
-            current = current.getParent();
-        }
-
-        return String.join(">", pathParts);
-    }
-
-    /**
-     * Tìm hoặc tạo danh mục theo đường dẫn
-     * Format: "Cha>Con" (chỉ hỗ trợ tối đa 2 cấp)
-     * Nếu danh mục chưa tồn tại, sẽ tự động tạo mới
-     */
-    private Integer findOrCreateCategoryByPath(String categoryPath) {
-        if (categoryPath == null || categoryPath.trim().isEmpty()) {
-            throw new RuntimeException("Đường dẫn danh mục không được để trống");
-        }
-
-        // Tách đường dẫn thành các phần
-        String[] parts = categoryPath.split(">");
-
-        // Kiểm tra chỉ cho phép tối đa 2 cấp
-        if (parts.length > 2) {
-            throw new RuntimeException(
-                    "Chỉ hỗ trợ tối đa 2 cấp danh mục (Cha>Con). Đường dẫn không hợp lệ: " + categoryPath);
-        }
-
-        iuh.fit.supermarket.entity.Category parentCategory = null;
-
-        // Duyệt qua từng phần để tìm hoặc tạo danh mục
-        for (int i = 0; i < parts.length; i++) {
-            String categoryName = parts[i].trim();
-
-            if (categoryName.isEmpty()) {
-                throw new RuntimeException("Tên danh mục không được để trống trong đường dẫn: " + categoryPath);
-            }
-
-            // Tìm danh mục theo tên và parent
-            iuh.fit.supermarket.entity.Category category = findCategoryByNameAndParent(categoryName, parentCategory);
-
-            if (category == null) {
-                // Tạo danh mục mới
-                category = new iuh.fit.supermarket.entity.Category();
-                category.setName(categoryName);
-                category.setDescription("Tự động tạo từ import Excel");
-                category.setIsActive(true);
-                category.setParent(parentCategory);
-
-                category = categoryRepository.save(category);
-                log.info("Đã tạo danh mục mới: {} (Parent: {})",
-                        categoryName,
-                        parentCategory != null ? parentCategory.getName() : "null");
-            }
-
-            // Cập nhật parent cho lần lặp tiếp theo
-            parentCategory = category;
-        }
-
-        // Trả về ID của danh mục cuối cùng (danh mục lá)
-        return parentCategory != null ? parentCategory.getCategoryId() : null;
-    }
-
-    /**
-     * Tìm hoặc tạo thương hiệu theo tên
-     * Nếu thương hiệu chưa tồn tại, sẽ tự động tạo mới
-     */
-    private Integer findOrCreateBrandByName(String brandName) {
-        if (brandName == null || brandName.trim().isEmpty()) {
-            return null;
-        }
-
-        // Tìm thương hiệu theo tên (không phân biệt chữ hoa/thường)
-        Optional<iuh.fit.supermarket.entity.Brand> existingBrand = brandRepository.findByName(brandName.trim());
-
-        if (existingBrand.isPresent()) {
-            return existingBrand.get().getBrandId();
-        }
-
-        // Tạo thương hiệu mới
-        iuh.fit.supermarket.entity.Brand newBrand = new iuh.fit.supermarket.entity.Brand();
-        newBrand.setName(brandName.trim());
-        newBrand.setDescription("Tự động tạo từ import Excel");
-        newBrand.setIsActive(true);
-
-        // Tự động sinh mã thương hiệu
-        String brandCode = generateBrandCode();
-        newBrand.setBrandCode(brandCode);
-
-        iuh.fit.supermarket.entity.Brand savedBrand = brandRepository.save(newBrand);
-        log.info("Đã tạo thương hiệu mới: {} với mã: {}", brandName, brandCode);
-
-        return savedBrand.getBrandId();
-    }
-
-    /**
-     * Sinh mã thương hiệu tự động theo format BRxxxx
-     */
-    private String generateBrandCode() {
-        List<String> existingCodes = brandRepository.findMaxBrandCode();
-
-        if (existingCodes.isEmpty()) {
-            return "BR0001";
-        }
-
-        String maxCode = existingCodes.get(0);
-        try {
-            int nextNumber = Integer.parseInt(maxCode.substring(2)) + 1;
-            return String.format("BR%04d", nextNumber);
-        } catch (Exception e) {
-            // Nếu có lỗi, tìm số lớn nhất từ tất cả các mã
-            int maxNumber = 0;
-            for (String code : existingCodes) {
-                try {
-                    int num = Integer.parseInt(code.substring(2));
-                    if (num > maxNumber) {
-                        maxNumber = num;
-                    }
-                } catch (Exception ex) {
-                    // Bỏ qua mã không hợp lệ
-                }
-            }
-            return String.format("BR%04d", maxNumber + 1);
-        }
-    }
-
-    /**
-     * Tìm danh mục theo tên và parent
-     */
-    private iuh.fit.supermarket.entity.Category findCategoryByNameAndParent(
-            String name,
-            iuh.fit.supermarket.entity.Category parent) {
-
-        if (parent == null) {
-            // Tìm danh mục gốc (không có parent)
-            return categoryRepository.findByParentIsNull().stream()
-                    .filter(c -> c.getName().equalsIgnoreCase(name))
-                    .findFirst()
-                    .orElse(null);
-        } else {
-            // Tìm danh mục con của parent
-            return categoryRepository.findByParent_CategoryId(parent.getCategoryId()).stream()
-                    .filter(c -> c.getName().equalsIgnoreCase(name))
-                    .findFirst()
-                    .orElse(null);
-        }
-    }
 }
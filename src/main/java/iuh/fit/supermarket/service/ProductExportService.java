@@ -0,0 +1,33 @@
+package iuh.fit.supermarket.service;
+
+import iuh.fit.supermarket.dto.job.JobStatusResponse;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Service interface cho export danh sách sản phẩm ra Excel
+ */
+public interface ProductExportService {
+
+    /**
+     * Export sản phẩm ra file Excel, upload lên storage và trả về link download
+     *
+     * @return URL của file đã upload
+     */
+    String exportToStorage() throws IOException;
+
+    /**
+     * Export sản phẩm ra Excel và ghi thẳng vào output stream (ví dụ HTTP response)
+     *
+     * @param outputStream nơi ghi file Excel
+     */
+    void exportTo(OutputStream outputStream) throws IOException;
+
+    /**
+     * Tạo tác vụ export chạy nền, kết quả được upload lên storage khi hoàn thành
+     *
+     * @return trạng thái ban đầu của tác vụ (dùng jobId để theo dõi tiến độ)
+     */
+    JobStatusResponse startExportJob();
+}
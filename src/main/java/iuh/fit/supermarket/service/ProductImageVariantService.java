@@ -0,0 +1,59 @@
+package iuh.fit.supermarket.service;
+
+import iuh.fit.supermarket.entity.ProductImage;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.nio.file.Path;
+
+/**
+ * Service tạo các biến thể (thu nhỏ, thẻ sản phẩm, cỡ lớn) cho ảnh sản phẩm
+ * Ảnh gốc được upload ngay trong request, các biến thể được resize và nén lại trên luồng nền
+ */
+public interface ProductImageVariantService {
+
+    /**
+     * Ảnh đã upload bản gốc, file tạm được giữ lại để tạo biến thể
+     *
+     * @param originalUrl URL ảnh gốc trên S3
+     * @param file        file tạm chứa ảnh gốc
+     */
+    record StagedImage(String originalUrl, Path file) {
+    }
+
+    /**
+     * Ghi file upload ra file tạm rồi upload bản gốc lên S3 (đọc dần từ file tạm)
+     *
+     * @param file   file ảnh upload
+     * @param folder thư mục trên S3
+     * @return ảnh đã upload kèm file tạm
+     */
+    StagedImage stageAndUpload(MultipartFile file, String folder);
+
+    /**
+     * Lên lịch tạo biến thể sau khi transaction hiện tại commit (chạy ngay nếu không có transaction)
+     * File tạm bị xóa khi tạo xong hoặc khi transaction không commit
+     *
+     * @param imageId     ID ảnh đã lưu
+     * @param stagedImage ảnh trả về từ stageAndUpload
+     */
+    void scheduleVariants(Integer imageId, StagedImage stagedImage);
+
+    /**
+     * Bỏ ảnh đã stage khi không lưu được ảnh (xóa file tạm)
+     *
+     * @param stagedImage ảnh trả về từ stageAndUpload
+     */
+    void discard(StagedImage stagedImage);
+
+    /**
+     * Xóa các file biến thể của ảnh trên S3
+     *
+     * @param image ảnh sản phẩm
+     */
+    void deleteVariants(ProductImage image);
+
+    /**
+     * Tạo biến thể cho các ảnh chưa có (ảnh cũ, hoặc lần tạo trước bị bỏ qua/thất bại)
+     */
+    void backfillMissingVariants();
+}
@@ -0,0 +1,31 @@
+package iuh.fit.supermarket.service;
+
+import iuh.fit.supermarket.dto.job.JobStatusResponse;
+import iuh.fit.supermarket.dto.product.ProductImportResult;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+
+/**
+ * Service import sản phẩm hàng loạt từ file Excel
+ */
+public interface ProductImportService {
+
+    /**
+     * Import sản phẩm từ file Excel và chờ đến khi hoàn tất
+     * Dòng lỗi được bỏ qua và ghi vào kết quả, các sản phẩm hợp lệ vẫn được tạo
+     *
+     * @param file file Excel (.xlsx hoặc .xls)
+     * @return kết quả import
+     */
+    ProductImportResult importProducts(MultipartFile file) throws IOException;
+
+    /**
+     * Chạy import sản phẩm dưới dạng tác vụ nền
+     * Tiến độ và lỗi theo từng dòng được cập nhật dần vào trạng thái tác vụ
+     *
+     * @param file file Excel (.xlsx hoặc .xls)
+     * @return trạng thái ban đầu của tác vụ (chứa jobId để theo dõi)
+     */
+    JobStatusResponse startImportJob(MultipartFile file) throws IOException;
+}
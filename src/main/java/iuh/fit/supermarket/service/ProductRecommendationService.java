@@ -1,11 +1,12 @@
 package iuh.fit.supermarket.service;
 
 import iuh.fit.supermarket.dto.product.ProductResponse;
+import iuh.fit.supermarket.dto.product.RecommendedProductResponse;
 
 import java.util.List;
 
 /**
- * Service interface cho tính năng gợi ý sản phẩm cho AI
+ * Service interface cho tính năng gợi ý sản phẩm (AI chat và trang sản phẩm)
  */
 public interface ProductRecommendationService {
 
@@ -40,4 +41,22 @@ public interface ProductRecommendationService {
      * @return danh sách sản phẩm của thương hiệu
      */
     List<ProductResponse> getProductsByBrand(String brandName);
+
+    /**
+     * Lấy các sản phẩm thường được mua cùng một đơn vị sản phẩm
+     *
+     * @param productUnitId ID đơn vị sản phẩm đang xem
+     * @param limit         số kết quả tối đa
+     * @return danh sách sản phẩm gợi ý theo độ liên quan giảm dần
+     */
+    List<RecommendedProductResponse> getFrequentlyBoughtTogether(Long productUnitId, int limit);
+
+    /**
+     * Lấy sản phẩm gợi ý riêng cho khách hàng theo lịch sử mua và sản phẩm yêu thích
+     *
+     * @param customerId ID khách hàng
+     * @param limit      số kết quả tối đa
+     * @return danh sách sản phẩm gợi ý theo điểm giảm dần
+     */
+    List<RecommendedProductResponse> getRecommendationsForCustomer(Integer customerId, int limit);
 }
@@ -1,5 +1,8 @@
 package iuh.fit.supermarket.service;
 
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import iuh.fit.supermarket.dto.checkout.*;
 import iuh.fit.supermarket.entity.*;
 import iuh.fit.supermarket.enums.ApplyToType;
@@ -8,7 +11,7 @@ import iuh.fit.supermarket.enums.PromotionStatus;
 import iuh.fit.supermarket.enums.PromotionType;
 import iuh.fit.supermarket.exception.ProductNotFoundException;
 import iuh.fit.supermarket.repository.*;
-import lombok.RequiredArgsConstructor;
+import iuh.fit.supermarket.util.TimedOperation;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -23,14 +26,36 @@ import java.util.stream.Collectors;
  * Service để kiểm tra và áp dụng các chương trình khuyến mãi
  */
 @Service
-@RequiredArgsConstructor
 @Slf4j
 public class PromotionCheckService {
 
     private final ProductUnitRepository productUnitRepository;
-    private final PromotionLineRepository promotionLineRepository;
     private final PromotionDetailRepository promotionDetailRepository;
     private final PriceDetailRepository priceDetailRepository;
+    private final PromotionUsageService promotionUsageService;
+    private final MeterRegistry meterRegistry;
+
+    private final DistributionSummary linesSummary;
+    private final DistributionSummary rulesSummary;
+
+    public PromotionCheckService(ProductUnitRepository productUnitRepository,
+            PromotionDetailRepository promotionDetailRepository,
+            PriceDetailRepository priceDetailRepository,
+            PromotionUsageService promotionUsageService,
+            MeterRegistry meterRegistry) {
+        this.productUnitRepository = productUnitRepository;
+        this.promotionDetailRepository = promotionDetailRepository;
+        this.priceDetailRepository = priceDetailRepository;
+        this.promotionUsageService = promotionUsageService;
+        this.meterRegistry = meterRegistry;
+
+        this.linesSummary = DistributionSummary.builder("promotion.check.lines")
+                .description("Số dòng sản phẩm trong mỗi lần kiểm tra khuyến mãi")
+                .register(meterRegistry);
+        this.rulesSummary = DistributionSummary.builder("promotion.check.rules")
+                .description("Số khuyến mãi cấp sản phẩm (giảm giá sản phẩm, mua X tặng Y) được đánh giá mỗi lần kiểm tra")
+                .register(meterRegistry);
+    }
 
     /**
      * Kiểm tra và áp dụng khuyến mãi cho giỏ hàng
@@ -41,22 +66,40 @@ public class PromotionCheckService {
      * 2. BUY_X_GET_Y - tạo dòng quà tặng
      * 3. ORDER_DISCOUNT - giảm giá toàn đơn (tính sau 2 bước trên)
      * 
+     * Thời gian được ghi vào timer promotion.check theo kết quả
+     *
      * @param request danh sách sản phẩm trong giỏ hàng
      * @return response với các sản phẩm và khuyến mãi được áp dụng
      */
     @Transactional(readOnly = true)
     public CheckPromotionResponseDTO checkAndApplyPromotions(CheckPromotionRequestDTO request) {
+        linesSummary.record(request.items().size());
+        return TimedOperation.record(meterRegistry,
+                Timer.builder("promotion.check").description("Thời gian kiểm tra và áp dụng khuyến mãi cho giỏ hàng"),
+                () -> evaluatePromotions(request));
+    }
+
+    private CheckPromotionResponseDTO evaluatePromotions(CheckPromotionRequestDTO request) {
         log.info("Bắt đầu kiểm tra khuyến mãi cho {} sản phẩm", request.items().size());
 
         Map<Long, ProductUnit> productUnitMap = loadProductUnits(request.items());
-        // Tải giá ban đầu cho các sản phẩm trong request
-        Map<Long, BigDecimal> priceMap = loadPrices(productUnitMap.keySet());
 
         // Tải tất cả khuyến mãi giảm giá sản phẩm đang active
         List<ProductDiscountDetail> productDiscounts = findApplicableProductDiscounts();
 
-        // Tải tất cả khuyến mãi BuyXGetY đang active (để kiểm tra gift product)
+        // Tải tất cả khuyến mãi BuyXGetY đang active một lần cho cả giỏ (kiểm tra gift product và quà tặng tự động)
         List<BuyXGetYDetail> allBuyXGetYPromotions = findAllActiveBuyXGetYPromotions();
+        List<BuyXGetYDetail> freeGiftPromotions = allBuyXGetYPromotions.stream()
+                .filter(promotion -> promotion.getGiftDiscountType() == DiscountType.FREE)
+                .toList();
+        rulesSummary.record(productDiscounts.size() + allBuyXGetYPromotions.size());
+
+        // Tải giá của sản phẩm trong request và của quà tặng tự động trong cùng một truy vấn
+        Set<Long> pricedProductUnitIds = new HashSet<>(productUnitMap.keySet());
+        freeGiftPromotions.stream()
+                .filter(promotion -> promotion.getGiftProduct() != null)
+                .forEach(promotion -> pricedProductUnitIds.add(promotion.getGiftProduct().getId()));
+        Map<Long, BigDecimal> priceMap = loadPrices(pricedProductUnitIds);
 
         List<CartItemResponseDTO> resultItems = new ArrayList<>();
         Long lineItemId = 1L;
@@ -115,7 +158,7 @@ public class PromotionCheckService {
                         productUnit.getId(),
                         item.quantity(),
                         request.items(),
-                        productUnitMap
+                        priceMap
                 );
 
                 if (giftPromotion != null) {
@@ -412,6 +455,7 @@ public class PromotionCheckService {
 
             // 3. Kiểm tra BUY_X_GET_Y (mua X tặng Y - CHỈ FREE GIFTS)
             List<BuyXGetYDetail> applicableFreeGifts = findApplicableFreeGifts(
+                    freeGiftPromotions,
                     productUnit.getId(),
                     item.quantity()
             );
@@ -470,31 +514,34 @@ public class PromotionCheckService {
                 .map(CartItemRequestDTO::productUnitId)
                 .collect(Collectors.toSet());
 
-        return productUnitRepository.findAllById(productUnitIds).stream()
+        // Tải kèm Product và Unit để không truy vấn lại từng dòng khi dựng tên sản phẩm
+        return productUnitRepository.findAllByIdWithProductAndUnit(productUnitIds).stream()
                 .collect(Collectors.toMap(ProductUnit::getId, pu -> pu));
     }
 
     /**
-     * Tải giá hiện tại của các sản phẩm
+     * Tải giá hiện tại của các sản phẩm trong một truy vấn
      * Nếu có nhiều giá ACTIVE, lấy giá từ bảng giá có ngày tạo mới nhất
      */
     private Map<Long, BigDecimal> loadPrices(Set<Long> productUnitIds) {
         Map<Long, BigDecimal> priceMap = new HashMap<>();
+        if (productUnitIds.isEmpty()) {
+            return priceMap;
+        }
 
-        for (Long productUnitId : productUnitIds) {
-            // Sử dụng phương thức trả về List để xử lý trường hợp có nhiều giá
-            List<PriceDetail> priceDetails = priceDetailRepository.findByProductUnitIdAndPriceStatus(
-                    productUnitId, iuh.fit.supermarket.enums.PriceType.ACTIVE);
-            
-            if (!priceDetails.isEmpty()) {
-                // Lấy giá từ bảng giá có ngày tạo mới nhất
-                PriceDetail latestPriceDetail = priceDetails.stream()
-                        .max((pd1, pd2) -> pd1.getPrice().getCreatedAt().compareTo(pd2.getPrice().getCreatedAt()))
-                        .orElse(priceDetails.get(0));
-                
-                priceMap.put(productUnitId, latestPriceDetail.getSalePrice());
-            }
+        // Sử dụng phương thức trả về List để xử lý trường hợp có nhiều giá
+        List<PriceDetail> priceDetails = priceDetailRepository.findByProductUnitIdsAndPriceStatus(
+                productUnitIds, iuh.fit.supermarket.enums.PriceType.ACTIVE);
+
+        // Lấy giá từ bảng giá có ngày tạo mới nhất cho từng sản phẩm
+        Map<Long, PriceDetail> latestPriceDetails = new HashMap<>();
+        for (PriceDetail priceDetail : priceDetails) {
+            latestPriceDetails.merge(priceDetail.getProductUnit().getId(), priceDetail,
+                    (pd1, pd2) -> pd2.getPrice().getCreatedAt().compareTo(pd1.getPrice().getCreatedAt()) > 0
+                            ? pd2 : pd1);
         }
+        latestPriceDetails.forEach((productUnitId, priceDetail) ->
+                priceMap.put(productUnitId, priceDetail.getSalePrice()));
 
         return priceMap;
     }
@@ -550,76 +597,29 @@ public class PromotionCheckService {
     }
 
     /**
-     * Tìm các khuyến mãi Mua X Tặng Y (chỉ FREE gifts - tự động thêm vào giỏ)
-     * Chỉ trả về các promotion có giftDiscountType = FREE
+     * Tìm các khuyến mãi Mua X Tặng Y (chỉ FREE gifts - tự động thêm vào giỏ) áp dụng cho một dòng
+     *
+     * @param freeGiftPromotions các promotion FREE đang active và còn lượt, đã tải một lần cho cả giỏ
+     * @param productUnitId      ID sản phẩm của dòng
+     * @param quantity           số lượng mua
+     * @return các promotion áp dụng được
      */
-    private List<BuyXGetYDetail> findApplicableFreeGifts(Long productUnitId, Integer quantity) {
-        LocalDate now = LocalDate.now();
-
-        List<PromotionLine> activeLines = promotionLineRepository.findAll().stream()
-                .filter(line -> line.getPromotionType() == PromotionType.BUY_X_GET_Y)
-                .filter(line -> line.getStatus() == PromotionStatus.ACTIVE)
-                .filter(line -> !now.isBefore(line.getStartDate()) && !now.isAfter(line.getEndDate()))
-                .filter(line -> line.getHeader().getStatus() == PromotionStatus.ACTIVE)
-                .filter(line -> !now.isBefore(line.getHeader().getStartDate()) &&
-                               !now.isAfter(line.getHeader().getEndDate()))
+    private List<BuyXGetYDetail> findApplicableFreeGifts(List<BuyXGetYDetail> freeGiftPromotions,
+                                                         Long productUnitId, Integer quantity) {
+        return freeGiftPromotions.stream()
+                .filter(promotion -> isBuyXGetYApplicable(promotion, productUnitId, quantity))
                 .toList();
-
-        List<BuyXGetYDetail> applicablePromotions = new ArrayList<>();
-
-        for (PromotionLine line : activeLines) {
-            List<PromotionDetail> details = promotionDetailRepository
-                    .findByPromotionLine_PromotionLineId(line.getPromotionLineId());
-
-            for (PromotionDetail detail : details) {
-                if (detail instanceof BuyXGetYDetail buyXGetYDetail) {
-                    // Chỉ lấy promotion có giftDiscountType = FREE (tự động tặng)
-                    // VÀ kiểm tra còn lượt sử dụng
-                    if (buyXGetYDetail.getGiftDiscountType() == DiscountType.FREE &&
-                        canUsePromotion(buyXGetYDetail) &&
-                        isBuyXGetYApplicable(buyXGetYDetail, productUnitId, quantity)) {
-                        applicablePromotions.add(buyXGetYDetail);
-                    }
-                }
-            }
-        }
-
-        return applicablePromotions;
     }
 
     /**
-     * Tìm tất cả các khuyến mãi Mua X Tặng Y đang active (bao gồm cả FREE và DISCOUNTED)
-     * Dùng để kiểm tra xem item hiện tại có phải là gift product không
+     * Tìm tất cả các khuyến mãi Mua X Tặng Y đang active và còn lượt (bao gồm cả FREE và DISCOUNTED)
+     * Một truy vấn tải kèm line, header và sản phẩm mua/tặng nên không phát sinh truy vấn theo từng dòng giỏ hàng
      */
     private List<BuyXGetYDetail> findAllActiveBuyXGetYPromotions() {
-        LocalDate now = LocalDate.now();
-
-        List<PromotionLine> activeLines = promotionLineRepository.findAll().stream()
-                .filter(line -> line.getPromotionType() == PromotionType.BUY_X_GET_Y)
-                .filter(line -> line.getStatus() == PromotionStatus.ACTIVE)
-                .filter(line -> !now.isBefore(line.getStartDate()) && !now.isAfter(line.getEndDate()))
-                .filter(line -> line.getHeader().getStatus() == PromotionStatus.ACTIVE)
-                .filter(line -> !now.isBefore(line.getHeader().getStartDate()) &&
-                               !now.isAfter(line.getHeader().getEndDate()))
+        return promotionDetailRepository.findActiveBuyXGetYDetails(
+                        PromotionType.BUY_X_GET_Y, PromotionStatus.ACTIVE, LocalDate.now()).stream()
+                .filter(this::canUsePromotion)
                 .toList();
-
-        List<BuyXGetYDetail> allPromotions = new ArrayList<>();
-
-        for (PromotionLine line : activeLines) {
-            List<PromotionDetail> details = promotionDetailRepository
-                    .findByPromotionLine_PromotionLineId(line.getPromotionLineId());
-
-            for (PromotionDetail detail : details) {
-                if (detail instanceof BuyXGetYDetail buyXGetYDetail) {
-                    // Kiểm tra còn lượt sử dụng không
-                    if (canUsePromotion(buyXGetYDetail)) {
-                        allPromotions.add(buyXGetYDetail);
-                    }
-                }
-            }
-        }
-
-        return allPromotions;
     }
 
     /**
@@ -630,7 +630,7 @@ public class PromotionCheckService {
      * @param currentProductUnitId ID của sản phẩm hiện tại (có thể là gift product)
      * @param currentQuantity số lượng sản phẩm hiện tại
      * @param allItems tất cả items trong giỏ hàng
-     * @param productUnitMap map chứa thông tin ProductUnit
+     * @param priceMap giá hiện tại của các sản phẩm trong giỏ
      * @return promotion tốt nhất hoặc null
      */
     private BuyXGetYDetail findApplicableGiftDiscount(
@@ -638,7 +638,7 @@ public class PromotionCheckService {
             Long currentProductUnitId,
             Integer currentQuantity,
             List<CartItemRequestDTO> allItems,
-            Map<Long, ProductUnit> productUnitMap
+            Map<Long, BigDecimal> priceMap
     ) {
         BuyXGetYDetail bestPromotion = null;
         BigDecimal maxDiscountAmount = BigDecimal.ZERO;
@@ -691,16 +691,10 @@ public class PromotionCheckService {
             }
 
             // Tính discount amount để so sánh
-            // Tải giá của gift product
-            List<PriceDetail> priceDetails = priceDetailRepository.findByProductUnitIdAndPriceStatus(
-                    currentProductUnitId, iuh.fit.supermarket.enums.PriceType.ACTIVE);
-
-            if (!priceDetails.isEmpty()) {
-                BigDecimal giftPrice = priceDetails.stream()
-                        .max((pd1, pd2) -> pd1.getPrice().getCreatedAt().compareTo(pd2.getPrice().getCreatedAt()))
-                        .orElse(priceDetails.get(0))
-                        .getSalePrice();
+            // Gift product chính là dòng hiện tại nên giá đã có trong priceMap
+            BigDecimal giftPrice = priceMap.get(currentProductUnitId);
 
+            if (giftPrice != null) {
                 BigDecimal discountAmount = calculateGiftDiscount(
                         promotion.getGiftDiscountType(),
                         promotion.getGiftDiscountValue(),
@@ -751,26 +745,8 @@ public class PromotionCheckService {
             Map<Long, BigDecimal> priceMap
     ) {
         ProductUnit giftProduct = promotion.getGiftProduct();
-        // Đảm bảo có giá cho quà tặng, nếu chưa có thì tải từ database
-        BigDecimal giftPrice = priceMap.get(giftProduct.getId());
-        if (giftPrice == null) {
-            // Tải giá cho quà tặng nếu chưa có trong priceMap
-            List<PriceDetail> giftPriceDetails = priceDetailRepository.findByProductUnitIdAndPriceStatus(
-                    giftProduct.getId(), iuh.fit.supermarket.enums.PriceType.ACTIVE);
-            
-            if (!giftPriceDetails.isEmpty()) {
-                // Lấy giá từ bảng giá có ngày tạo mới nhất
-                giftPrice = giftPriceDetails.stream()
-                        .max((pd1, pd2) -> pd1.getPrice().getCreatedAt().compareTo(pd2.getPrice().getCreatedAt()))
-                        .orElse(giftPriceDetails.get(0))
-                        .getSalePrice();
-                
-                // Thêm vào priceMap để dùng lại sau
-                priceMap.put(giftProduct.getId(), giftPrice);
-            } else {
-                giftPrice = BigDecimal.ZERO;
-            }
-        }
+        // Giá quà tặng đã được tải cùng giá của giỏ hàng; không có bảng giá hiệu lực thì tính là 0
+        BigDecimal giftPrice = priceMap.getOrDefault(giftProduct.getId(), BigDecimal.ZERO);
 
         int giftQuantity = calculateGiftQuantity(promotion, buyQuantity);
 
@@ -961,7 +937,7 @@ public class PromotionCheckService {
                     totalAfterLineDiscount
             );
             
-            log.info("Áp dụng ORDER_DISCOUNT: {} - Giảm {}đ",
+            log.debug("Áp dụng ORDER_DISCOUNT: {} - Giảm {}đ",
                     applicableOrderDiscount.getPromotionCode(),
                     orderDiscount);
 
@@ -1004,37 +980,15 @@ public class PromotionCheckService {
     // ============= PRODUCT_DISCOUNT METHODS =============
 
     /**
-     * Tìm tất cả các khuyến mãi giảm giá sản phẩm đang active
+     * Tìm tất cả các khuyến mãi giảm giá sản phẩm đang active và còn lượt
+     * Một truy vấn tải kèm line, header và sản phẩm áp dụng
      */
     private List<ProductDiscountDetail> findApplicableProductDiscounts() {
-        LocalDate now = LocalDate.now();
-
-        List<PromotionLine> activeLines = promotionLineRepository.findAll().stream()
-                .filter(line -> line.getPromotionType() == PromotionType.PRODUCT_DISCOUNT)
-                .filter(line -> line.getStatus() == PromotionStatus.ACTIVE)
-                .filter(line -> !now.isBefore(line.getStartDate()) && !now.isAfter(line.getEndDate()))
-                .filter(line -> line.getHeader().getStatus() == PromotionStatus.ACTIVE)
-                .filter(line -> !now.isBefore(line.getHeader().getStartDate()) &&
-                               !now.isAfter(line.getHeader().getEndDate()))
+        // Kiểm tra còn lượt sử dụng không
+        return promotionDetailRepository.findActiveProductDiscountDetails(
+                        PromotionType.PRODUCT_DISCOUNT, PromotionStatus.ACTIVE, LocalDate.now()).stream()
+                .filter(this::canUsePromotion)
                 .toList();
-
-        List<ProductDiscountDetail> productDiscounts = new ArrayList<>();
-
-        for (PromotionLine line : activeLines) {
-            List<PromotionDetail> details = promotionDetailRepository
-                    .findByPromotionLine_PromotionLineId(line.getPromotionLineId());
-
-            for (PromotionDetail detail : details) {
-                if (detail instanceof ProductDiscountDetail productDiscountDetail) {
-                    // Kiểm tra còn lượt sử dụng không
-                    if (canUsePromotion(productDiscountDetail)) {
-                        productDiscounts.add(productDiscountDetail);
-                    }
-                }
-            }
-        }
-
-        return productDiscounts;
     }
 
     /**
@@ -1145,42 +1099,27 @@ public class PromotionCheckService {
             BigDecimal totalAfterLineDiscount,
             Integer totalQuantity
     ) {
-        LocalDate now = LocalDate.now();
-
-        List<PromotionLine> activeLines = promotionLineRepository.findAll().stream()
-                .filter(line -> line.getPromotionType() == PromotionType.ORDER_DISCOUNT)
-                .filter(line -> line.getStatus() == PromotionStatus.ACTIVE)
-                .filter(line -> !now.isBefore(line.getStartDate()) && !now.isAfter(line.getEndDate()))
-                .filter(line -> line.getHeader().getStatus() == PromotionStatus.ACTIVE)
-                .filter(line -> !now.isBefore(line.getHeader().getStartDate()) &&
-                               !now.isAfter(line.getHeader().getEndDate()))
-                .toList();
+        List<OrderDiscountDetail> orderDiscounts = promotionDetailRepository.findActiveOrderDiscountDetails(
+                PromotionType.ORDER_DISCOUNT, PromotionStatus.ACTIVE, LocalDate.now());
 
         OrderDiscountDetail bestDiscount = null;
         BigDecimal maxDiscountAmount = BigDecimal.ZERO;
 
-        for (PromotionLine line : activeLines) {
-            List<PromotionDetail> details = promotionDetailRepository
-                    .findByPromotionLine_PromotionLineId(line.getPromotionLineId());
-
-            for (PromotionDetail detail : details) {
-                if (detail instanceof OrderDiscountDetail orderDiscountDetail) {
-                    // Kiểm tra còn lượt sử dụng không
-                    if (!canUsePromotion(orderDiscountDetail)) {
-                        continue;
-                    }
+        for (OrderDiscountDetail orderDiscountDetail : orderDiscounts) {
+            // Kiểm tra còn lượt sử dụng không
+            if (!canUsePromotion(orderDiscountDetail)) {
+                continue;
+            }
 
-                    if (isOrderDiscountApplicable(orderDiscountDetail, totalAfterLineDiscount, totalQuantity)) {
-                        BigDecimal discountAmount = calculateOrderDiscountAmount(
-                                orderDiscountDetail,
-                                totalAfterLineDiscount
-                        );
+            if (isOrderDiscountApplicable(orderDiscountDetail, totalAfterLineDiscount, totalQuantity)) {
+                BigDecimal discountAmount = calculateOrderDiscountAmount(
+                        orderDiscountDetail,
+                        totalAfterLineDiscount
+                );
 
-                        if (discountAmount.compareTo(maxDiscountAmount) > 0) {
-                            maxDiscountAmount = discountAmount;
-                            bestDiscount = orderDiscountDetail;
-                        }
-                    }
+                if (discountAmount.compareTo(maxDiscountAmount) > 0) {
+                    maxDiscountAmount = discountAmount;
+                    bestDiscount = orderDiscountDetail;
                 }
             }
         }
@@ -1397,19 +1336,13 @@ public class PromotionCheckService {
     }
 
     /**
-     * Kiểm tra xem promotion detail còn có thể sử dụng không dựa trên usageLimit và usageCount
+     * Kiểm tra xem promotion detail còn có thể sử dụng không dựa trên usageLimit và bộ đếm lượt sử dụng
      *
      * @param detail PromotionDetail cần kiểm tra
      * @return true nếu còn có thể sử dụng, false nếu đã hết lượt
      */
     private boolean canUsePromotion(PromotionDetail detail) {
-        // Nếu không có giới hạn (usageLimit = null), luôn có thể sử dụng
-        if (detail.getUsageLimit() == null) {
-            return true;
-        }
-
-        // Nếu có giới hạn, kiểm tra usageCount < usageLimit
-        Integer usageCount = detail.getUsageCount() != null ? detail.getUsageCount() : 0;
-        return usageCount < detail.getUsageLimit();
+        // Đọc bộ đếm hiện tại (bao gồm lượt đang cộng dồn trong bộ nhớ)
+        return promotionUsageService.canUse(detail);
     }
 }
@@ -0,0 +1,52 @@
+package iuh.fit.supermarket.service;
+
+import iuh.fit.supermarket.entity.PromotionDetail;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Service quản lý bộ đếm lượt sử dụng khuyến mãi
+ * - Khuyến mãi có giới hạn: tăng nguyên tử và kiểm tra usageLimit trong cùng một câu lệnh UPDATE
+ * - Khuyến mãi không giới hạn: cộng dồn trong bộ nhớ sau khi transaction commit, ghi định kỳ xuống DB
+ */
+public interface PromotionUsageService {
+
+    /**
+     * Ghi nhận một lượt sử dụng cho mỗi khuyến mãi
+     *
+     * @param promotionDetailIds danh sách ID chi tiết khuyến mãi (không trùng)
+     * @return danh sách ID bị từ chối do đã hết lượt hoặc không tồn tại
+     */
+    List<Long> consume(Collection<Long> promotionDetailIds);
+
+    /**
+     * Ghi nhận nhiều lượt sử dụng cho mỗi khuyến mãi
+     *
+     * @param usageByDetailId map ID chi tiết khuyến mãi -> số lượt cần ghi nhận
+     * @return danh sách ID bị từ chối do không đủ lượt hoặc không tồn tại
+     */
+    List<Long> consume(Map<Long, Integer> usageByDetailId);
+
+    /**
+     * Kiểm tra khuyến mãi còn lượt sử dụng không theo bộ đếm hiện tại
+     *
+     * @param detail chi tiết khuyến mãi
+     * @return true nếu còn có thể sử dụng
+     */
+    boolean canUse(PromotionDetail detail);
+
+    /**
+     * Lấy số lượt đã sử dụng hiện tại (bao gồm các lượt chưa ghi xuống DB)
+     *
+     * @param detail chi tiết khuyến mãi
+     * @return số lượt đã sử dụng
+     */
+    int getUsageCount(PromotionDetail detail);
+
+    /**
+     * Ghi các lượt sử dụng đang cộng dồn trong bộ nhớ xuống DB
+     */
+    void flushPendingUsage();
+}
@@ -0,0 +1,52 @@
+package iuh.fit.supermarket.service;
+
+import java.util.List;
+
+/**
+ * Service giữ chỉ mục gợi ý sản phẩm trong bộ nhớ
+ * Gồm ma trận đồng xuất hiện giữa các đơn vị sản phẩm (mua cùng hóa đơn đã thanh toán)
+ * và vector sở thích của từng khách hàng (lịch sử mua và sản phẩm yêu thích)
+ */
+public interface RecommendationIndexService {
+
+    /**
+     * Cập nhật chỉ mục với một hóa đơn vừa được thanh toán
+     * Mỗi hóa đơn chỉ được tính một lần dù được gọi nhiều lần
+     *
+     * @param invoiceId ID hóa đơn
+     */
+    void indexPaidInvoice(Integer invoiceId);
+
+    /**
+     * Cập nhật vector sở thích khi khách hàng thêm/bỏ sản phẩm yêu thích
+     *
+     * @param customerId    ID khách hàng
+     * @param productUnitId ID đơn vị sản phẩm
+     * @param added         true nếu thêm, false nếu bỏ
+     */
+    void recordFavoriteChange(Integer customerId, Long productUnitId, boolean added);
+
+    /**
+     * Dựng lại toàn bộ chỉ mục từ DB rồi thay thế chỉ mục đang dùng
+     */
+    void rebuildIndex();
+
+    /**
+     * Các đơn vị sản phẩm thường được mua cùng, theo độ tương đồng giảm dần
+     *
+     * @param productUnitId ID đơn vị sản phẩm
+     * @param limit         số kết quả tối đa
+     * @return danh sách ID đơn vị sản phẩm (rỗng nếu chưa đủ dữ liệu)
+     */
+    List<Long> findFrequentlyBoughtTogether(Long productUnitId, int limit);
+
+    /**
+     * Các đơn vị sản phẩm gợi ý cho khách hàng, không gồm sản phẩm khách đã mua hoặc đã yêu thích
+     * Khách chưa có lịch sử nhận danh sách bán chạy
+     *
+     * @param customerId ID khách hàng
+     * @param limit      số kết quả tối đa
+     * @return danh sách ID đơn vị sản phẩm theo điểm giảm dần
+     */
+    List<Long> findRecommendedForCustomer(Integer customerId, int limit);
+}
@@ -0,0 +1,56 @@
+package iuh.fit.supermarket.service;
+
+import iuh.fit.supermarket.entity.User;
+
+/**
+ * Service phát hành, xoay vòng và thu hồi refresh token
+ */
+public interface RefreshTokenService {
+
+    /**
+     * Phát hành refresh token cho phiên đăng nhập mới
+     *
+     * @param user user vừa đăng nhập
+     * @return refresh token (chỉ trả về một lần, DB chỉ lưu hash)
+     */
+    String issue(User user);
+
+    /**
+     * Đổi refresh token lấy token mới cùng phiên (token cũ bị thu hồi)
+     * Nếu token đã bị dùng trước đó (dấu hiệu bị đánh cắp), toàn bộ phiên bị thu hồi
+     *
+     * @param refreshToken refresh token hiện tại
+     * @return user sở hữu và refresh token mới
+     * @throws org.springframework.security.authentication.BadCredentialsException nếu token không hợp lệ,
+     *         đã hết hạn, đã bị thu hồi hoặc user đã bị khóa
+     */
+    Rotation rotate(String refreshToken);
+
+    /**
+     * Thu hồi phiên đăng nhập chứa refresh token (đăng xuất)
+     *
+     * @param refreshToken refresh token của phiên
+     */
+    void revokeSession(String refreshToken);
+
+    /**
+     * Thu hồi mọi phiên đăng nhập của user (khóa tài khoản, đổi mật khẩu)
+     *
+     * @param userId ID user
+     */
+    void revokeAllForUser(Long userId);
+
+    /**
+     * Thời gian sống của refresh token (milliseconds)
+     */
+    Long getRefreshExpirationTime();
+
+    /**
+     * Kết quả xoay vòng refresh token
+     *
+     * @param user         user sở hữu token
+     * @param refreshToken refresh token mới
+     */
+    record Rotation(User user, String refreshToken) {
+    }
+}
@@ -2,6 +2,9 @@ package iuh.fit.supermarket.service;
 
 import org.springframework.web.multipart.MultipartFile;
 
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+
 /**
  * Service interface cho việc upload file lên AWS S3
  */
@@ -50,5 +53,46 @@ public interface S3FileUploadService {
      * @return URL của file đã upload
      */
     String uploadFile(byte[] fileBytes, String fileName, String contentType, String folder);
-}
 
+    /**
+     * Upload file trên đĩa lên S3 bucket (đọc dần từ file, không nạp toàn bộ vào bộ nhớ)
+     * 
+     * @param file đường dẫn file cần upload
+     * @param fileName tên file
+     * @param contentType loại nội dung
+     * @param folder thư mục trong S3 bucket
+     * @return URL của file đã upload
+     */
+    String uploadFile(Path file, String fileName, String contentType, String folder);
+
+    /**
+     * Upload byte array lên S3 bucket, không giữ luồng gọi trong lúc truyền dữ liệu
+     * 
+     * @param fileBytes byte array của file
+     * @param fileName tên file
+     * @param contentType loại nội dung
+     * @param folder thư mục trong S3 bucket
+     * @return future chứa URL của file đã upload
+     */
+    CompletableFuture<String> uploadFileAsync(byte[] fileBytes, String fileName, String contentType, String folder);
+
+    /**
+     * Upload file trên đĩa lên S3 bucket, không giữ luồng gọi trong lúc truyền dữ liệu
+     * File lớn được chia nhiều phần và upload song song; file phải còn tồn tại đến khi future hoàn thành
+     * 
+     * @param file đường dẫn file cần upload
+     * @param fileName tên file
+     * @param contentType loại nội dung
+     * @param folder thư mục trong S3 bucket
+     * @return future chứa URL của file đã upload
+     */
+    CompletableFuture<String> uploadFileAsync(Path file, String fileName, String contentType, String folder);
+
+    /**
+     * Tải file từ S3 bucket xuống đĩa (ghi dần vào file, không nạp toàn bộ vào bộ nhớ)
+     * 
+     * @param fileUrl URL của file trên S3
+     * @param target file đích (bị ghi đè nếu đã tồn tại)
+     */
+    void downloadFile(String fileUrl, Path target);
+}
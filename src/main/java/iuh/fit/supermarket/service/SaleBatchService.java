@@ -0,0 +1,21 @@
+package iuh.fit.supermarket.service;
+
+import iuh.fit.supermarket.dto.sale.BatchSaleRequestDTO;
+import iuh.fit.supermarket.dto.sale.BatchSaleResponseDTO;
+
+/**
+ * Service interface cho đồng bộ bán hàng theo lô từ máy POS
+ */
+public interface SaleBatchService {
+
+    /**
+     * Ghi nhận nhiều hóa đơn tiền mặt đã hoàn tất tại quầy trong một lần gọi
+     * - Mỗi hóa đơn có khóa idempotency do máy POS sinh ra, gửi lại không tạo trùng
+     * - Ghi theo từng nhóm trong một transaction, nhóm lỗi sẽ được xử lý lại từng hóa đơn
+     * - Trừ kho, lưu khuyến mãi và cập nhật lượt sử dụng khuyến mãi như bán hàng thường
+     *
+     * @param request lô hóa đơn cần đồng bộ
+     * @return kết quả cho từng hóa đơn theo thứ tự gửi lên
+     */
+    BatchSaleResponseDTO createSalesBatch(BatchSaleRequestDTO request);
+}
@@ -80,6 +80,14 @@ public interface SaleService {
      */
     String generateInvoiceHtml(Integer invoiceId);
 
+    /**
+     * Ghi HTML in hóa đơn bán hàng trực tiếp vào writer (không tạo chuỗi trung gian)
+     * 
+     * @param invoiceId ID của hoá đơn
+     * @param writer    nơi ghi HTML, thường là writer của HTTP response
+     */
+    void writeInvoiceHtml(Integer invoiceId, java.io.Writer writer) throws java.io.IOException;
+
     /**
      * Lấy danh sách hóa đơn của customer theo username
      * - Customer chỉ có thể xem hóa đơn của chính mình
@@ -51,4 +51,20 @@ public interface ShoppingCartService {
      * @param customerId ID khách hàng
      */
     void clearCart(Integer customerId);
+
+    /**
+     * Ghi ngay các thay đổi giỏ hàng còn trong bộ nhớ xuống DB
+     * Nếu đang trong transaction thì ghi trong transaction đó
+     *
+     * @param customerId ID khách hàng
+     */
+    void flushCart(Integer customerId);
+
+    /**
+     * Bỏ giỏ hàng khỏi bộ nhớ (sau khi transaction hiện tại commit, nếu có)
+     * Dùng sau khi các dòng giỏ hàng đã bị xóa trực tiếp trong DB, ví dụ khi checkout
+     *
+     * @param customerId ID khách hàng
+     */
+    void evictCart(Integer customerId);
 }
@@ -0,0 +1,50 @@
+package iuh.fit.supermarket.service;
+
+import iuh.fit.supermarket.dto.stocktake.StocktakeScanRequest;
+import iuh.fit.supermarket.dto.stocktake.StocktakeScanResponse;
+
+import java.util.List;
+
+/**
+ * Service ghi nhận lượt quét kiểm kê từ nhiều máy quét đồng thời
+ * Lượt quét là số lượng cộng thêm nên được gộp giao hoán trong bộ nhớ theo phiếu và đơn vị sản phẩm,
+ * sau đó ghi định kỳ xuống chi tiết kiểm kê
+ */
+public interface StocktakeCountingService {
+
+    /**
+     * Ghi nhận một lô lượt quét cho phiếu kiểm kê (không ghi DB ngay)
+     *
+     * @param stocktakeId ID phiếu kiểm kê (phải đang PENDING)
+     * @param scans       danh sách lượt quét
+     * @return số lượt được ghi nhận và các đơn vị sản phẩm không tồn tại
+     */
+    StocktakeScanResponse submitScans(Integer stocktakeId, List<StocktakeScanRequest.ScanEvent> scans);
+
+    /**
+     * Ghi các số lượng đang cộng dồn trong bộ nhớ của mọi phiếu xuống DB
+     */
+    void flushPendingCounts();
+
+    /**
+     * Ngừng nhận lượt quét cho phiếu và ghi hết số lượng còn trong bộ nhớ xuống DB
+     * Gọi trước khi hoàn thành phiếu kiểm kê
+     *
+     * @param stocktakeId ID phiếu kiểm kê
+     */
+    void closeCounting(Integer stocktakeId);
+
+    /**
+     * Nhận lại lượt quét cho phiếu (khi hoàn thành phiếu thất bại)
+     *
+     * @param stocktakeId ID phiếu kiểm kê
+     */
+    void reopenCounting(Integer stocktakeId);
+
+    /**
+     * Bỏ toàn bộ số lượng đang cộng dồn của phiếu (khi phiếu đã hoàn thành hoặc bị xóa)
+     *
+     * @param stocktakeId ID phiếu kiểm kê
+     */
+    void discardCounting(Integer stocktakeId);
+}
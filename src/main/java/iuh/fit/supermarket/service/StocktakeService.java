@@ -1,5 +1,6 @@
 package iuh.fit.supermarket.service;
 
+import iuh.fit.supermarket.dto.job.JobStatusResponse;
 import iuh.fit.supermarket.dto.stocktake.*;
 import iuh.fit.supermarket.enums.StocktakeStatus;
 import org.springframework.data.domain.Page;
@@ -55,6 +56,15 @@ public interface StocktakeService {
      */
     StocktakeDto completeStocktake(Integer stocktakeId);
 
+    /**
+     * Hoàn thành phiếu kiểm kê dưới dạng tác vụ nền
+     * Tồn kho được điều chỉnh theo từng lô chi tiết, tiến độ cập nhật sau mỗi lô
+     *
+     * @param stocktakeId ID phiếu kiểm kê
+     * @return trạng thái ban đầu của tác vụ (chứa jobId để theo dõi)
+     */
+    JobStatusResponse startCompleteStocktakeJob(Integer stocktakeId);
+
     /**
      * Xóa phiếu kiểm kê (chỉ cho phép khi trạng thái PENDING)
      * 
@@ -0,0 +1,32 @@
+package iuh.fit.supermarket.service;
+
+import java.util.Date;
+
+/**
+ * Service quản lý danh sách access token bị thu hồi trước hạn
+ */
+public interface TokenRevocationService {
+
+    /**
+     * Thu hồi access token
+     *
+     * @param tokenId   ID token (claim jti)
+     * @param userId    ID user sở hữu token
+     * @param expiresAt thời điểm token hết hạn tự nhiên
+     */
+    void revoke(String tokenId, Long userId, Date expiresAt);
+
+    /**
+     * Kiểm tra token đã bị thu hồi chưa
+     * Token chưa thu hồi được trả lời từ Bloom filter trong bộ nhớ, không truy vấn DB
+     *
+     * @param tokenId ID token (claim jti)
+     * @return true nếu token đã bị thu hồi
+     */
+    boolean isRevoked(String tokenId);
+
+    /**
+     * Dọn các bản ghi đã hết hạn và dựng lại Bloom filter từ DB
+     */
+    void rebuildFilter();
+}
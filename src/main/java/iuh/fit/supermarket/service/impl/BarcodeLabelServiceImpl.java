@@ -0,0 +1,157 @@
+package iuh.fit.supermarket.service.impl;
+
+import com.google.zxing.BarcodeFormat;
+import com.itextpdf.io.image.ImageDataFactory;
+import com.itextpdf.kernel.geom.PageSize;
+import com.itextpdf.kernel.pdf.PdfDocument;
+import com.itextpdf.kernel.pdf.PdfWriter;
+import com.itextpdf.kernel.pdf.xobject.PdfImageXObject;
+import com.itextpdf.layout.Document;
+import com.itextpdf.layout.borders.Border;
+import com.itextpdf.layout.borders.DashedBorder;
+import com.itextpdf.layout.element.Cell;
+import com.itextpdf.layout.element.Image;
+import com.itextpdf.layout.element.Paragraph;
+import com.itextpdf.layout.element.Table;
+import com.itextpdf.layout.properties.HorizontalAlignment;
+import com.itextpdf.layout.properties.TextAlignment;
+import com.itextpdf.layout.properties.UnitValue;
+import iuh.fit.supermarket.dto.barcode.BarcodeImage;
+import iuh.fit.supermarket.entity.PriceDetail;
+import iuh.fit.supermarket.entity.ProductUnit;
+import iuh.fit.supermarket.enums.PriceType;
+import iuh.fit.supermarket.repository.PriceDetailRepository;
+import iuh.fit.supermarket.repository.ProductUnitRepository;
+import iuh.fit.supermarket.service.BarcodeLabelService;
+import iuh.fit.supermarket.service.BarcodeService;
+import iuh.fit.supermarket.util.BarcodeUtils;
+import iuh.fit.supermarket.util.PdfFontProvider;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.text.NumberFormat;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Implementation của BarcodeLabelService
+ * Dữ liệu sản phẩm và giá được tải bằng hai truy vấn cho cả tờ tem, ảnh barcode lấy từ cache của BarcodeService
+ * nên tem trùng mã chỉ render một lần; PDF được ghi thẳng vào output stream
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class BarcodeLabelServiceImpl implements BarcodeLabelService {
+
+    private static final int COLUMNS = 3;
+    private static final int LABEL_BARCODE_WIDTH = 300;
+    private static final int LABEL_BARCODE_HEIGHT = 100;
+    private static final int MAX_NAME_LENGTH = 40;
+
+    private final ProductUnitRepository productUnitRepository;
+    private final PriceDetailRepository priceDetailRepository;
+    private final BarcodeService barcodeService;
+    private final PdfFontProvider pdfFontProvider;
+
+    @Override
+    public int writeLabelSheet(List<Long> productUnitIds, int copies, OutputStream outputStream) {
+        log.info("In tem mã vạch cho {} đơn vị sản phẩm, {} tem mỗi sản phẩm", productUnitIds.size(), copies);
+
+        Map<Long, ProductUnit> productUnits = productUnitRepository.findAllByIdWithProductAndUnit(productUnitIds)
+                .stream()
+                .collect(Collectors.toMap(ProductUnit::getId, Function.identity()));
+        Map<Long, BigDecimal> prices = loadPrices(productUnitIds);
+
+        NumberFormat currencyFormatter = NumberFormat.getCurrencyInstance(new Locale("vi", "VN"));
+        PdfDocument pdfDoc = new PdfDocument(new PdfWriter(outputStream));
+        Document document = new Document(pdfDoc, PageSize.A4);
+        document.setMargins(20, 20, 20, 20);
+        document.setFont(pdfFontProvider.createFont());
+
+        Table table = new Table(UnitValue.createPercentArray(COLUMNS)).useAllAvailableWidth();
+        int labelCount = 0;
+        for (Long productUnitId : productUnitIds) {
+            ProductUnit productUnit = productUnits.get(productUnitId);
+            if (productUnit == null || productUnit.getBarcode() == null || productUnit.getBarcode().isBlank()) {
+                log.warn("Bỏ qua đơn vị sản phẩm ID: {} vì không tồn tại hoặc chưa có mã vạch", productUnitId);
+                continue;
+            }
+
+            // Ảnh barcode được nhúng một lần vào PDF, các tem cùng sản phẩm tham chiếu chung
+            String barcode = productUnit.getBarcode().trim();
+            BarcodeFormat format = BarcodeUtils.isValidEan13(barcode) ? BarcodeFormat.EAN_13 : BarcodeFormat.CODE_128;
+            BarcodeImage barcodeImage = barcodeService.renderBarcode(
+                    barcode, format, LABEL_BARCODE_WIDTH, LABEL_BARCODE_HEIGHT);
+            PdfImageXObject barcodeXObject = new PdfImageXObject(ImageDataFactory.create(barcodeImage.png()));
+
+            for (int i = 0; i < copies; i++) {
+                table.addCell(buildLabel(productUnit, barcode, barcodeXObject,
+                        prices.get(productUnitId), currencyFormatter));
+                labelCount++;
+            }
+        }
+
+        // Lấp đầy hàng cuối để bảng không bị lệch
+        int remainder = labelCount % COLUMNS;
+        for (int i = 0; remainder != 0 && i < COLUMNS - remainder; i++) {
+            table.addCell(new Cell().setBorder(Border.NO_BORDER));
+        }
+
+        if (labelCount > 0) {
+            document.add(table);
+        } else {
+            document.add(new Paragraph("Không có đơn vị sản phẩm nào có mã vạch để in"));
+        }
+        document.close();
+
+        log.info("Đã in {} tem mã vạch", labelCount);
+        return labelCount;
+    }
+
+    private Cell buildLabel(ProductUnit productUnit, String barcode, PdfImageXObject barcodeXObject,
+            BigDecimal price, NumberFormat currencyFormatter) {
+        String name = productUnit.getProduct().getName();
+        if (name.length() > MAX_NAME_LENGTH) {
+            name = name.substring(0, MAX_NAME_LENGTH - 1) + "…";
+        }
+        String unitName = productUnit.getUnit() != null ? productUnit.getUnit().getName() : "";
+
+        Cell cell = new Cell()
+                .setBorder(new DashedBorder(0.5f))
+                .setPadding(6)
+                .setTextAlignment(TextAlignment.CENTER);
+        cell.add(new Paragraph(name).setFontSize(9).setBold().setMarginBottom(0));
+        cell.add(new Paragraph(unitName).setFontSize(8).setMarginTop(0).setMarginBottom(2));
+        cell.add(new Image(barcodeXObject)
+                .setAutoScale(true)
+                .setHorizontalAlignment(HorizontalAlignment.CENTER));
+        cell.add(new Paragraph(barcode).setFontSize(8).setMarginTop(0).setMarginBottom(0));
+        if (price != null) {
+            cell.add(new Paragraph(currencyFormatter.format(price)).setFontSize(11).setBold().setMarginTop(2));
+        }
+        return cell;
+    }
+
+    /**
+     * Tải giá đang áp dụng cho các đơn vị sản phẩm bằng một truy vấn
+     * Nếu có nhiều giá ACTIVE, lấy giá từ bảng giá có ngày tạo mới nhất
+     */
+    private Map<Long, BigDecimal> loadPrices(List<Long> productUnitIds) {
+        Map<Long, PriceDetail> latest = new HashMap<>();
+        for (PriceDetail priceDetail : priceDetailRepository.findByProductUnitIdsAndPriceStatus(
+                productUnitIds, PriceType.ACTIVE)) {
+            latest.merge(priceDetail.getProductUnit().getId(), priceDetail,
+                    (pd1, pd2) -> pd2.getPrice().getCreatedAt().compareTo(pd1.getPrice().getCreatedAt()) > 0
+                            ? pd2 : pd1);
+        }
+        return latest.entrySet().stream()
+                .collect(Collectors.toMap(Map.Entry::getKey, entry -> entry.getValue().getSalePrice()));
+    }
+}
@@ -3,58 +3,107 @@ package iuh.fit.supermarket.service.impl;
 import com.google.zxing.BarcodeFormat;
 import com.google.zxing.EncodeHintType;
 import com.google.zxing.MultiFormatWriter;
+import com.google.zxing.WriterException;
 import com.google.zxing.client.j2se.MatrixToImageWriter;
 import com.google.zxing.common.BitMatrix;
+import iuh.fit.supermarket.dto.barcode.BarcodeImage;
 import iuh.fit.supermarket.service.BarcodeService;
 import iuh.fit.supermarket.service.S3FileUploadService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Implementation cho BarcodeService sử dụng ZXing library
+ * Ảnh PNG được cache LRU trong bộ nhớ theo (mã, định dạng, kích thước); ETag và tên file trên S3
+ * là SHA-256 của nội dung ảnh nên cùng một barcode luôn có cùng ETag và cùng một object trên S3
  */
 @Service
 @Slf4j
 public class BarcodeServiceImpl implements BarcodeService {
 
-    @Autowired
-    private S3FileUploadService s3FileUploadService;
-
     private static final int BARCODE_WIDTH = 300;
     private static final int BARCODE_HEIGHT = 150;
+    private static final int MIN_SIZE = 50;
+    private static final int MAX_SIZE = 2000;
     private static final String IMAGE_FORMAT = "PNG";
 
+    private final S3FileUploadService s3FileUploadService;
+    private final Map<BarcodeKey, BarcodeImage> cache;
+
     /**
-     * Tạo barcode dưới dạng byte array
+     * URL đã upload theo (thư mục, ETag), tránh upload lại cùng một ảnh
      */
-    @Override
-    public byte[] generateBarcode(String code, BarcodeFormat format) {
-        log.info("Tạo barcode với mã: {} và định dạng: {}", code, format);
-
-        try {
-            // Cấu hình hints cho barcode
-            Map<EncodeHintType, Object> hints = new HashMap<>();
-            hints.put(EncodeHintType.MARGIN, 1); // Giảm margin xung quanh barcode
-
-            // Tạo BitMatrix
-            MultiFormatWriter writer = new MultiFormatWriter();
-            BitMatrix bitMatrix = writer.encode(code, format, BARCODE_WIDTH, BARCODE_HEIGHT, hints);
+    private final Map<String, String> uploadedUrls = new ConcurrentHashMap<>();
+
+    private final Counter hitCounter;
+    private final Counter missCounter;
+
+    public BarcodeServiceImpl(S3FileUploadService s3FileUploadService,
+            MeterRegistry meterRegistry,
+            @Value("${barcode.cache-size:5000}") int cacheSize) {
+        this.s3FileUploadService = s3FileUploadService;
+        this.cache = Collections.synchronizedMap(new LinkedHashMap<>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<BarcodeKey, BarcodeImage> eldest) {
+                return size() > cacheSize;
+            }
+        });
+        this.hitCounter = cacheCounter(meterRegistry, "hit");
+        this.missCounter = cacheCounter(meterRegistry, "miss");
+    }
 
-            // Chuyển BitMatrix thành ảnh PNG
-            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-            MatrixToImageWriter.writeToStream(bitMatrix, IMAGE_FORMAT, outputStream);
+    /**
+     * Render barcode PNG, lấy từ cache nếu đã render
+     * Hai luồng cùng miss một khóa có thể render trùng, kết quả giống nhau nên không cần khóa
+     */
+    @Override
+    public BarcodeImage renderBarcode(String code, BarcodeFormat format, int width, int height) {
+        if (code == null || code.isBlank()) {
+            throw new IllegalArgumentException("Mã barcode không được rỗng");
+        }
+        if (width < MIN_SIZE || width > MAX_SIZE || height < MIN_SIZE || height > MAX_SIZE) {
+            throw new IllegalArgumentException(
+                    "Kích thước barcode phải trong khoảng " + MIN_SIZE + " - " + MAX_SIZE + " pixel");
+        }
 
-            byte[] barcodeBytes = outputStream.toByteArray();
-            log.info("Tạo barcode thành công, size: {} bytes", barcodeBytes.length);
+        BarcodeKey key = new BarcodeKey(code, format, width, height);
+        BarcodeImage cached = cache.get(key);
+        if (cached != null) {
+            hitCounter.increment();
+            return cached;
+        }
 
-            return barcodeBytes;
+        missCounter.increment();
+        BarcodeImage image = encode(key);
+        cache.put(key, image);
+        return image;
+    }
 
+    /**
+     * Tạo barcode dưới dạng byte array
+     */
+    @Override
+    public byte[] generateBarcode(String code, BarcodeFormat format) {
+        try {
+            return renderBarcode(code, format, BARCODE_WIDTH, BARCODE_HEIGHT).png();
         } catch (Exception e) {
             log.error("Lỗi khi tạo barcode: {}", e.getMessage(), e);
             throw new RuntimeException("Không thể tạo barcode: " + e.getMessage(), e);
@@ -74,25 +123,43 @@ public class BarcodeServiceImpl implements BarcodeService {
      */
     @Override
     public String generateBarcodeUrl(String code, BarcodeFormat format, String folder) {
-        log.info("Tạo barcode và upload lên S3: {}", code);
-
         try {
-            // Tạo barcode
-            byte[] barcodeBytes = generateBarcode(code, format);
-
-            // Tạo tên file unique
-            String fileName = s3FileUploadService.generateUniqueFileName("barcode_" + code + ".png");
-
-            // Upload lên S3
-            String barcodeUrl = s3FileUploadService.uploadFile(barcodeBytes, fileName, "image/png", folder);
+            return generateBarcodeUrlAsync(code, format, folder).join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            log.error("Lỗi khi tạo và upload barcode: {}", cause.getMessage(), cause);
+            throw new RuntimeException("Không thể tạo và upload barcode: " + cause.getMessage(), cause);
+        }
+    }
 
-            log.info("Upload barcode lên S3 thành công: {}", barcodeUrl);
-            return barcodeUrl;
+    /**
+     * Tạo barcode và upload lên S3 không chờ kết quả
+     * Tên file là ETag của ảnh nên upload lại (ví dụ sau khi khởi động lại) chỉ ghi đè cùng nội dung
+     */
+    @Override
+    public CompletableFuture<String> generateBarcodeUrlAsync(String code, BarcodeFormat format, String folder) {
+        BarcodeImage image;
+        try {
+            image = renderBarcode(code, format, BARCODE_WIDTH, BARCODE_HEIGHT);
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        String fileName = "barcode_" + image.etag().replace("\"", "") + ".png";
 
-        } catch (Exception e) {
-            log.error("Lỗi khi tạo và upload barcode: {}", e.getMessage(), e);
-            throw new RuntimeException("Không thể tạo và upload barcode: " + e.getMessage(), e);
+        String uploadKey = folder + "/" + fileName;
+        String barcodeUrl = uploadedUrls.get(uploadKey);
+        if (barcodeUrl != null) {
+            return CompletableFuture.completedFuture(barcodeUrl);
         }
+
+        // Upload ngoài map để không chặn luồng khác trong lúc gọi S3, upload trùng chỉ ghi đè cùng nội dung
+        log.info("Upload barcode lên S3: {}", code);
+        return s3FileUploadService.uploadFileAsync(image.png(), fileName, "image/png", folder)
+                .thenApply(url -> {
+                    uploadedUrls.put(uploadKey, url);
+                    log.info("Upload barcode lên S3 thành công: {}", url);
+                    return url;
+                });
     }
 
     /**
@@ -140,4 +207,47 @@ public class BarcodeServiceImpl implements BarcodeService {
         int remainder = sum % 10;
         return (remainder == 0) ? 0 : (10 - remainder);
     }
+
+    private BarcodeImage encode(BarcodeKey key) {
+        log.debug("Render barcode với mã: {} và định dạng: {}", key.code(), key.format());
+        try {
+            // Cấu hình hints cho barcode
+            Map<EncodeHintType, Object> hints = new HashMap<>();
+            hints.put(EncodeHintType.MARGIN, 1); // Giảm margin xung quanh barcode
+
+            BitMatrix bitMatrix = new MultiFormatWriter()
+                    .encode(key.code(), key.format(), key.width(), key.height(), hints);
+
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            MatrixToImageWriter.writeToStream(bitMatrix, IMAGE_FORMAT, outputStream);
+            byte[] png = outputStream.toByteArray();
+
+            return new BarcodeImage(png, "\"" + sha256(png) + "\"");
+        } catch (WriterException | IllegalArgumentException e) {
+            throw new IllegalArgumentException("Mã " + key.code() + " không hợp lệ với định dạng " + key.format(), e);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static String sha256(byte[] content) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(content));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 không khả dụng", e);
+        }
+    }
+
+    private static Counter cacheCounter(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("barcode.render.cache")
+                .description("Số lần lấy ảnh barcode theo kết quả cache")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Khóa cache ảnh barcode
+     */
+    private record BarcodeKey(String code, BarcodeFormat format, int width, int height) {
+    }
 }
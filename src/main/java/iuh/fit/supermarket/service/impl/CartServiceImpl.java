@@ -12,7 +12,6 @@ import iuh.fit.supermarket.service.ShoppingCartService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
 import java.util.stream.Collectors;
@@ -20,6 +19,9 @@ import java.util.stream.Collectors;
 /**
  * Implementation của CartService
  * Quản lý giỏ hàng cho chatbot - Sử dụng ShoppingCartService để đảm bảo dữ liệu đồng nhất
+ * Đây chỉ là view rút gọn (CartInfo) của cùng một giỏ hàng trong bộ nhớ mà REST API dùng,
+ * nên không mở transaction riêng: ShoppingCartService tự quản lý transaction khi đọc/ghi DB
+ * và kết quả tính khuyến mãi được dùng chung giữa hai kênh
  */
 @Service
 @Slf4j
@@ -33,7 +35,6 @@ public class CartServiceImpl implements CartService {
      * Sử dụng ShoppingCartService để đảm bảo tính khuyến mãi chính xác
      */
     @Override
-    @Transactional
     public CartInfo addToCart(Integer customerId, Long productUnitId, Integer quantity) {
         log.info("Thêm sản phẩm vào giỏ hàng - Customer: {}, ProductUnit: {}, Quantity: {}",
                 customerId, productUnitId, quantity);
@@ -56,7 +57,6 @@ public class CartServiceImpl implements CartService {
      * Sử dụng ShoppingCartService để đảm bảo dữ liệu đồng nhất
      */
     @Override
-    @Transactional
     public CartInfo removeFromCart(Integer customerId, Long productUnitId) {
         log.info("Xóa sản phẩm khỏi giỏ hàng - Customer: {}, ProductUnit: {}",
                 customerId, productUnitId);
@@ -73,7 +73,6 @@ public class CartServiceImpl implements CartService {
      * Sử dụng ShoppingCartService để đảm bảo dữ liệu đồng nhất
      */
     @Override
-    @Transactional
     public CartInfo updateQuantity(Integer customerId, Long productUnitId, Integer quantity) {
         log.info("Cập nhật số lượng sản phẩm - Customer: {}, ProductUnit: {}, NewQuantity: {}",
                 customerId, productUnitId, quantity);
@@ -101,7 +100,6 @@ public class CartServiceImpl implements CartService {
      * Sử dụng ShoppingCartService để lấy dữ liệu với khuyến mãi đầy đủ
      */
     @Override
-    @Transactional(readOnly = true)
     public CartInfo getCart(Integer customerId) {
         log.info("Lấy thông tin giỏ hàng - Customer: {}", customerId);
 
@@ -117,7 +115,6 @@ public class CartServiceImpl implements CartService {
      * Sử dụng ShoppingCartService để đảm bảo dữ liệu đồng nhất
      */
     @Override
-    @Transactional
     public CartInfo clearCart(Integer customerId) {
         log.info("Xóa tất cả sản phẩm trong giỏ hàng - Customer: {}", customerId);
 
@@ -7,6 +7,8 @@ import iuh.fit.supermarket.entity.Category;
 import iuh.fit.supermarket.exception.CategoryException;
 import iuh.fit.supermarket.repository.CategoryRepository;
 import iuh.fit.supermarket.service.CategoryService;
+import iuh.fit.supermarket.service.CategoryTreeService;
+import iuh.fit.supermarket.service.CategoryTreeService.CategoryNode;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.domain.Page;
@@ -14,12 +16,12 @@ import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
-import java.util.ArrayList;
 import java.util.List;
 import java.util.stream.Collectors;
 
 /**
  * Implementation của CategoryService
+ * Các thao tác đọc cây (gốc, con, chi tiết) dùng ảnh chụp của CategoryTreeService, không truy vấn DB
  */
 @Service
 @RequiredArgsConstructor
@@ -28,6 +30,7 @@ import java.util.stream.Collectors;
 public class CategoryServiceImpl implements CategoryService {
 
     private final CategoryRepository categoryRepository;
+    private final CategoryTreeService categoryTreeService;
 
     /**
      * Tạo danh mục mới
@@ -71,6 +74,7 @@ public class CategoryServiceImpl implements CategoryService {
 
         // Lưu danh mục
         category = categoryRepository.save(category);
+        categoryTreeService.rebuild();
         log.info("Đã tạo danh mục với ID: {}", category.getCategoryId());
 
         return mapToCategoryDto(category);
@@ -84,10 +88,10 @@ public class CategoryServiceImpl implements CategoryService {
     public CategoryDto getCategoryById(Integer id) {
         log.info("Lấy thông tin danh mục với ID: {}", id);
 
-        Category category = categoryRepository.findById(id)
+        CategoryNode node = categoryTreeService.findNode(id)
                 .orElseThrow(() -> new CategoryException("Không tìm thấy danh mục với ID: " + id));
 
-        return mapToCategoryDtoWithChildren(category);
+        return mapToCategoryDtoWithChildren(node);
     }
 
     /**
@@ -140,20 +144,14 @@ public class CategoryServiceImpl implements CategoryService {
                     .orElseThrow(() -> new CategoryException(
                             "Không tìm thấy danh mục cha với ID: " + request.getParentId()));
             category.setParent(parent);
-            // Cập nhật level dựa trên danh mục cha mới
-            // category.setLevel(parent.getLevel() + 1);
-            // Cập nhật level cho tất cả danh mục con_
-            updateChildrenLevels(category);
         } else if (request.getParentId() == null && category.getParent() != null) {
-            // Nếu parentId = null và hiện tại có parent, thì gỡ bỏ parent và đặt level = 0
+            // Nếu parentId = null và hiện tại có parent, thì gỡ bỏ parent
             category.setParent(null);
-            // category.setLevel(0);
-            // Cập nhật level cho tất cả danh mục con
-            updateChildrenLevels(category);
         }
 
-        // Lưu danh mục
+        // Lưu danh mục, cấp và khoảng nested set của cả nhánh được tính lại khi dựng lại cây
         category = categoryRepository.save(category);
+        categoryTreeService.rebuild();
         log.info("Đã cập nhật danh mục với ID: {}", category.getCategoryId());
 
         return mapToCategoryDto(category);
@@ -182,6 +180,7 @@ public class CategoryServiceImpl implements CategoryService {
         // Đánh dấu không hoạt động thay vì xóa
         category.setIsActive(false);
         categoryRepository.save(category);
+        categoryTreeService.rebuild();
         log.info("Đã đánh dấu không hoạt động cho danh mục với ID: {}", id);
     }
 
@@ -218,7 +217,7 @@ public class CategoryServiceImpl implements CategoryService {
     public List<CategoryDto> getRootCategories() {
         log.info("Lấy danh sách danh mục gốc");
 
-        return categoryRepository.findByParentIsNull().stream()
+        return categoryTreeService.getRoots().stream()
                 .map(this::mapToCategoryDtoWithChildren)
                 .collect(Collectors.toList());
     }
@@ -232,11 +231,11 @@ public class CategoryServiceImpl implements CategoryService {
         log.info("Lấy danh sách danh mục con của danh mục với ID: {}", parentId);
 
         // Kiểm tra danh mục cha tồn tại
-        if (!categoryRepository.existsById(parentId)) {
+        if (categoryTreeService.findNode(parentId).isEmpty()) {
             throw new CategoryException("Không tìm thấy danh mục cha với ID: " + parentId);
         }
 
-        return categoryRepository.findByParent_CategoryId(parentId).stream()
+        return categoryTreeService.getChildren(parentId).stream()
                 .map(this::mapToCategoryDto)
                 .collect(Collectors.toList());
     }
@@ -276,42 +275,48 @@ public class CategoryServiceImpl implements CategoryService {
     }
 
     /**
-     * Chuyển đổi từ entity Category sang DTO kèm danh sách con
+     * Chuyển đổi từ nút cây danh mục sang DTO
      */
-    private CategoryDto mapToCategoryDtoWithChildren(Category category) {
-        CategoryDto dto = mapToCategoryDto(category);
-
-        // Thiết lập danh sách danh mục con nếu có
-        if (category.getChildren() != null && !category.getChildren().isEmpty()) {
-            List<CategoryDto> childrenDtos = category.getChildren().stream()
-                    .map(this::mapToCategoryDto)
-                    .collect(Collectors.toList());
-            dto.setChildren(childrenDtos);
-        } else {
-            dto.setChildren(new ArrayList<>());
-        }
-
+    private CategoryDto mapToCategoryDto(CategoryNode node) {
+        CategoryDto dto = new CategoryDto();
+        dto.setId(node.id());
+        dto.setName(node.name());
+        dto.setDescription(node.description());
+        dto.setIsActive(node.isActive());
+        dto.setLevel(node.level());
+        dto.setCreatedAt(node.createdAt());
+        dto.setUpdatedAt(node.updatedAt());
+        dto.setParentId(node.parentId());
+        dto.setParentName(node.parentName());
         return dto;
     }
 
     /**
-     * Cập nhật level cho tất cả danh mục con một cách đệ quy
+     * Chuyển đổi từ nút cây danh mục sang DTO kèm danh sách con trực tiếp
      */
-    private void updateChildrenLevels(Category parentCategory) {
-        List<Category> children = categoryRepository.findByParent_CategoryId(parentCategory.getCategoryId());
-        for (Category child : children) {
-            // child.setLevel(parentCategory.getLevel() + 1);
-            categoryRepository.save(child);
-            // Đệ quy cập nhật cho danh mục con của con
-            updateChildrenLevels(child);
-        }
+    private CategoryDto mapToCategoryDtoWithChildren(CategoryNode node) {
+        CategoryDto dto = mapToCategoryDto(node);
+        dto.setChildren(categoryTreeService.getChildren(node.id()).stream()
+                .map(this::mapToCategoryDto)
+                .collect(Collectors.toList()));
+        return dto;
     }
 
     /**
      * Kiểm tra tham chiếu vòng tròn trong cấu trúc cây danh mục
      */
     private void checkCyclicReference(Integer categoryId, Integer newParentId) {
-        // Kiểm tra xem newParentId có phải là con cháu của categoryId không
+        // newParentId là con cháu của categoryId khi nằm trong khoảng nested set của categoryId
+        CategoryNode category = categoryTreeService.findNode(categoryId).orElse(null);
+        CategoryNode newParent = categoryTreeService.findNode(newParentId).orElse(null);
+        if (category != null && newParent != null) {
+            if (newParent.left() >= category.left() && newParent.left() <= category.right()) {
+                throw new CategoryException("Không thể đặt danh mục con làm cha (tham chiếu vòng tròn)");
+            }
+            return;
+        }
+
+        // Ảnh chụp chưa có một trong hai danh mục (vừa tạo trên instance khác): duyệt chuỗi cha trong DB
         Category parent = categoryRepository.findById(newParentId).orElse(null);
         while (parent != null) {
             if (parent.getCategoryId().equals(categoryId)) {
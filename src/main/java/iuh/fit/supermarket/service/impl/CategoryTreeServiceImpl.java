@@ -0,0 +1,278 @@
+package iuh.fit.supermarket.service.impl;
+
+import iuh.fit.supermarket.entity.Category;
+import iuh.fit.supermarket.entity.CategoryTreeState;
+import iuh.fit.supermarket.repository.CategoryRepository;
+import iuh.fit.supermarket.repository.CategoryTreeStateRepository;
+import iuh.fit.supermarket.service.CategoryTreeService;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * Implementation của CategoryTreeService
+ * Ảnh chụp được dựng từ một lần đọc toàn bộ bảng categories rồi thay thế nguyên khối,
+ * luồng đọc luôn thấy một cây nhất quán mà không cần khóa.
+ * Việc đánh số nested set chạy trong transaction riêng sau khi thao tác sửa danh mục commit, giữ khóa dòng
+ * category_tree_state nên hai lần đánh số (kể cả ở hai instance) không chạy chồng lên nhau và lần sau luôn
+ * đọc được danh mục lần trước đã commit. Instance khác so phiên bản định kỳ để tải lại ảnh chụp
+ */
+@Service
+@Slf4j
+public class CategoryTreeServiceImpl implements CategoryTreeService {
+
+    private final CategoryRepository categoryRepository;
+    private final CategoryTreeStateRepository categoryTreeStateRepository;
+    private final TransactionTemplate rebuildTransaction;
+    private final TransactionTemplate readOnlyTransaction;
+
+    /**
+     * Ảnh chụp đang dùng
+     */
+    private volatile Snapshot snapshot = Snapshot.EMPTY;
+
+    public CategoryTreeServiceImpl(CategoryRepository categoryRepository,
+                                   CategoryTreeStateRepository categoryTreeStateRepository,
+                                   PlatformTransactionManager transactionManager) {
+        this.categoryRepository = categoryRepository;
+        this.categoryTreeStateRepository = categoryTreeStateRepository;
+        // Luôn là transaction mới: được gọi từ afterCommit, khi transaction của thao tác sửa đã kết thúc
+        this.rebuildTransaction = new TransactionTemplate(transactionManager);
+        this.rebuildTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+    }
+
+    /**
+     * Dựng cây khi khởi động, đồng thời đánh số nested set cho danh mục chưa có (dữ liệu cũ)
+     */
+    @PostConstruct
+    public void init() {
+        try {
+            rebuildNow();
+        } catch (RuntimeException e) {
+            log.error("Không thể dựng cây danh mục: {}", e.getMessage());
+        }
+    }
+
+    @Override
+    public Optional<CategoryNode> findNode(Integer categoryId) {
+        return Optional.ofNullable(snapshot.nodes.get(categoryId));
+    }
+
+    @Override
+    public List<CategoryNode> getRoots() {
+        return snapshot.roots;
+    }
+
+    @Override
+    public List<CategoryNode> getChildren(Integer categoryId) {
+        Snapshot current = snapshot;
+        CategoryNode node = current.nodes.get(categoryId);
+        if (node == null) {
+            return List.of();
+        }
+        return node.childIds().stream().map(current.nodes::get).toList();
+    }
+
+    @Override
+    public Map<Integer, String> getPaths() {
+        return snapshot.paths;
+    }
+
+    @Override
+    public void rebuild() {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            rebuildNow();
+            return;
+        }
+
+        // Chờ thao tác sửa danh mục commit rồi mới đánh số, để đọc được trạng thái đã commit
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                try {
+                    rebuildNow();
+                } catch (RuntimeException e) {
+                    // Danh mục đã lưu; lần kiểm tra định kỳ thấy danh mục chưa đánh số sẽ dựng lại
+                    log.error("Không thể dựng lại cây danh mục sau khi commit: {}", e.getMessage());
+                }
+            }
+        });
+    }
+
+    @Override
+    @Scheduled(fixedDelayString = "${category.tree.refresh-interval-ms:30000}",
+            initialDelayString = "${category.tree.refresh-interval-ms:30000}")
+    public void refreshIfStale() {
+        try {
+            if (categoryRepository.existsByTreeLeftIsNull()) {
+                rebuildNow();
+                return;
+            }
+
+            // Đọc phiên bản và danh mục trong cùng transaction để ảnh chụp khớp với phiên bản
+            Snapshot next = readOnlyTransaction.execute(status -> {
+                long version = categoryTreeStateRepository.findVersionById(CategoryTreeState.SINGLETON_ID).orElse(0L);
+                if (version == snapshot.version()) {
+                    return null;
+                }
+                return buildSnapshot(categoryRepository.findAll(), version);
+            });
+            if (next != null) {
+                install(next);
+                log.info("Đã tải lại cây danh mục phiên bản {}", next.version());
+            }
+        } catch (RuntimeException e) {
+            log.error("Lỗi khi kiểm tra phiên bản cây danh mục: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Đánh số lại nested set trong transaction mới, giữ khóa dòng trạng thái để tuần tự hóa giữa các instance
+     */
+    private void rebuildNow() {
+        Snapshot next = rebuildTransaction.execute(status -> {
+            categoryTreeStateRepository.createIfAbsent(CategoryTreeState.SINGLETON_ID);
+            // Khóa trước khi đọc danh mục: lần đọc đầu tiên sau khóa thấy mọi thay đổi đã commit trước đó
+            CategoryTreeState state = categoryTreeStateRepository.lockById(CategoryTreeState.SINGLETON_ID)
+                    .orElseThrow();
+            List<Category> categories = categoryRepository.findAll();
+            long version = state.getVersion() + 1;
+            Snapshot built = buildSnapshot(categories, version);
+
+            int renumbered = 0;
+            for (Category category : categories) {
+                CategoryNode node = built.nodes.get(category.getCategoryId());
+                if (!Objects.equals(category.getTreeLeft(), node.left())
+                        || !Objects.equals(category.getTreeRight(), node.right())) {
+                    // Entity đang được quản lý, thay đổi được ghi khi flush
+                    category.setTreeLeft(node.left());
+                    category.setTreeRight(node.right());
+                    renumbered++;
+                }
+            }
+
+            // Tăng phiên bản cả khi không cần đánh số lại, vì tên/cha/trạng thái có thể đã đổi
+            state.setVersion(version);
+            state.setUpdatedAt(LocalDateTime.now());
+            log.info("Đã dựng cây danh mục phiên bản {}: {} danh mục, {} danh mục được đánh số lại",
+                    version, categories.size(), renumbered);
+            return built;
+        });
+        install(next);
+    }
+
+    /**
+     * Thay ảnh chụp đang dùng, bỏ qua ảnh chụp cũ hơn (hai lần dựng lại xong không theo thứ tự)
+     */
+    private synchronized void install(Snapshot next) {
+        if (next != null && next.version() >= snapshot.version()) {
+            snapshot = next;
+        }
+    }
+
+    /**
+     * Duyệt cây theo chiều sâu (con theo thứ tự ID) để tính cấp, đường dẫn và khoảng nested set
+     */
+    private Snapshot buildSnapshot(List<Category> categories, long version) {
+        Map<Integer, Category> byId = new HashMap<>();
+        Map<Integer, List<Category>> childrenByParent = new HashMap<>();
+        List<Category> roots = new ArrayList<>();
+        for (Category category : categories) {
+            byId.put(category.getCategoryId(), category);
+        }
+        for (Category category : categories) {
+            Integer parentId = category.getParent() != null ? category.getParent().getCategoryId() : null;
+            if (parentId == null || !byId.containsKey(parentId)) {
+                roots.add(category);
+            } else {
+                childrenByParent.computeIfAbsent(parentId, id -> new ArrayList<>()).add(category);
+            }
+        }
+        Comparator<Category> byCategoryId = Comparator.comparing(Category::getCategoryId);
+        roots.sort(byCategoryId);
+        childrenByParent.values().forEach(children -> children.sort(byCategoryId));
+
+        TreeBuilder builder = new TreeBuilder(childrenByParent);
+        for (Category root : roots) {
+            builder.visit(root, null, 0, null);
+        }
+        // Danh mục nằm trong vòng tham chiếu không đến được từ gốc, tách thành gốc riêng để vẫn được đánh số
+        for (Category category : categories.stream().sorted(byCategoryId).toList()) {
+            if (!builder.nodes.containsKey(category.getCategoryId())) {
+                log.warn("Danh mục ID {} nằm trong vòng tham chiếu cha - con, được xem là danh mục gốc",
+                        category.getCategoryId());
+                roots.add(category);
+                builder.visit(category, null, 0, null);
+            }
+        }
+
+        List<CategoryNode> rootNodes = roots.stream().map(root -> builder.nodes.get(root.getCategoryId())).toList();
+        Map<Integer, String> paths = new HashMap<>();
+        builder.nodes.forEach((id, node) -> paths.put(id, node.path()));
+        return new Snapshot(Collections.unmodifiableMap(builder.nodes), rootNodes, Collections.unmodifiableMap(paths),
+                version);
+    }
+
+    /**
+     * Đánh số nested set theo thứ tự duyệt
+     */
+    private static final class TreeBuilder {
+
+        private final Map<Integer, List<Category>> childrenByParent;
+        private final Map<Integer, CategoryNode> nodes = new LinkedHashMap<>();
+        private int counter = 1;
+
+        private TreeBuilder(Map<Integer, List<Category>> childrenByParent) {
+            this.childrenByParent = childrenByParent;
+        }
+
+        private void visit(Category category, Category parent, int level, String parentPath) {
+            int left = counter++;
+            String path = parentPath == null ? category.getName() : parentPath + ">" + category.getName();
+
+            List<Integer> childIds = new ArrayList<>();
+            // Giữ chỗ để con trong vòng tham chiếu không bị duyệt lại
+            nodes.put(category.getCategoryId(), null);
+            for (Category child : childrenByParent.getOrDefault(category.getCategoryId(), List.of())) {
+                if (!nodes.containsKey(child.getCategoryId())) {
+                    childIds.add(child.getCategoryId());
+                    visit(child, category, level + 1, path);
+                }
+            }
+            int right = counter++;
+
+            nodes.put(category.getCategoryId(), new CategoryNode(category.getCategoryId(), category.getName(),
+                    category.getDescription(), category.getIsActive(), category.getCreatedAt(), category.getUpdatedAt(),
+                    parent != null ? parent.getCategoryId() : null, parent != null ? parent.getName() : null,
+                    level, left, right, path, List.copyOf(childIds)));
+        }
+    }
+
+    /**
+     * Ảnh chụp bất biến của cây danh mục
+     */
+    private record Snapshot(Map<Integer, CategoryNode> nodes, List<CategoryNode> roots, Map<Integer, String> paths,
+                            long version) {
+
+        private static final Snapshot EMPTY = new Snapshot(Map.of(), List.of(), Map.of(), -1L);
+    }
+}
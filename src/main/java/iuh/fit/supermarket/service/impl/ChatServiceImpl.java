@@ -58,6 +58,7 @@ public class ChatServiceImpl implements ChatService {
         private final UpdateCartQuantityTool updateCartQuantityTool;
         private final GetCartTool getCartTool;
         private final ClearCartTool clearCartTool;
+        private final ProductRecommendationTool productRecommendationTool;
 
         @Value("${google.genai.chat.memory-size:10}")
         private Integer memorySize;
@@ -237,7 +238,7 @@ public class ChatServiceImpl implements ChatService {
                                         formatInstructions);
 
                         // Gọi AI với tools - Spring AI yêu cầu bean names
-                        log.info("🤖 Calling AI with {} messages, 8 tools, and BeanOutputConverter", messages.size());
+                        log.info("🤖 Calling AI with {} messages, 9 tools, and BeanOutputConverter", messages.size());
 
                         String response = chatClient.prompt()
                                         .system(systemInstruction)
@@ -250,7 +251,8 @@ public class ChatServiceImpl implements ChatService {
                                                         "removeFromCartTool",
                                                         "updateCartQuantityTool",
                                                         "getCartTool",
-                                                        "clearCartTool")
+                                                        "clearCartTool",
+                                                        "productRecommendationTool")
                                         .call()
                                         .content();
 
@@ -338,6 +340,7 @@ public class ChatServiceImpl implements ChatService {
                                 - updateCartQuantityTool: cập nhật số lượng
                                 - getCartTool: xem giỏ hàng
                                 - clearCartTool: xóa toàn bộ giỏ hàng
+                                - productRecommendationTool: gợi ý sản phẩm (có productUnitId → sản phẩm thường mua cùng, không có → gợi ý theo sở thích của khách)
 
                                 📤 FORMAT RESPONSE (PHẢI TRẢ VỀ JSON):
                                 {
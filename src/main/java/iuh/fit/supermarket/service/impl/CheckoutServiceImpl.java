@@ -2,20 +2,27 @@ package iuh.fit.supermarket.service.impl;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import iuh.fit.supermarket.dto.checkout.*;
 import iuh.fit.supermarket.entity.*;
 import iuh.fit.supermarket.entity.CustomerAddress;
 import iuh.fit.supermarket.enums.*;
+import iuh.fit.supermarket.event.InvoicePaidEvent;
+import iuh.fit.supermarket.event.OrderStatusChangedEvent;
 import iuh.fit.supermarket.exception.BadRequestException;
 import iuh.fit.supermarket.exception.NotFoundException;
 import iuh.fit.supermarket.repository.*;
 import iuh.fit.supermarket.service.CheckoutService;
+import iuh.fit.supermarket.service.LoyaltyService;
 import iuh.fit.supermarket.service.PromotionCheckService;
 import iuh.fit.supermarket.service.SaleService;
 import iuh.fit.supermarket.exception.UnauthorizedException;
+import iuh.fit.supermarket.util.TimedOperation;
 import iuh.fit.supermarket.validator.OrderStatusTransitionValidator;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -24,7 +31,7 @@ import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -58,16 +65,32 @@ public class CheckoutServiceImpl implements CheckoutService {
     private final AppliedPromotionRepository appliedPromotionRepository;
     private final AppliedOrderPromotionRepository appliedOrderPromotionRepository;
     private final iuh.fit.supermarket.service.WarehouseService warehouseService;
-    private final PromotionDetailRepository promotionDetailRepository;
+    private final iuh.fit.supermarket.service.PromotionUsageService promotionUsageService;
     private final CustomerAddressRepository customerAddressRepository;
+    private final ApplicationEventPublisher eventPublisher;
     private final StoreRepository storeRepository;
+    private final iuh.fit.supermarket.service.ShoppingCartService shoppingCartService;
+    private final ProductUnitImageRepository productUnitImageRepository;
+    private final LoyaltyService loyaltyService;
+    private final MeterRegistry meterRegistry;
 
     /**
      * Thực hiện checkout giỏ hàng cho khách hàng
+     * Thời gian được ghi vào timer checkout theo hình thức nhận hàng, phương thức thanh toán và kết quả
+     * Kết quả thành công chỉ được ghi khi transaction commit, để lỗi lúc flush/commit không bị tính là success
      */
     @Override
     @Transactional
     public CheckoutResponseDTO checkoutForCustomer(String username, CheckoutRequestDTO request) {
+        return TimedOperation.recordThroughCommit(meterRegistry,
+                Timer.builder("checkout")
+                        .description("Thời gian checkout giỏ hàng của khách hàng")
+                        .tag("deliveryType", String.valueOf(request.deliveryType()))
+                        .tag("paymentMethod", String.valueOf(request.paymentMethod())),
+                () -> processCheckout(username, request));
+    }
+
+    private CheckoutResponseDTO processCheckout(String username, CheckoutRequestDTO request) {
         log.info("Bắt đầu checkout cho khách hàng: {}", username);
 
         // Bỏ prefix nếu có
@@ -87,6 +110,9 @@ public class CheckoutServiceImpl implements CheckoutService {
             throw new NotFoundException("Không tìm thấy thông tin khách hàng");
         }
 
+        // Ghi các thay đổi giỏ hàng còn trong bộ nhớ trước khi đọc cart_items
+        shoppingCartService.flushCart(customer.getCustomerId());
+
         // Lấy giỏ hàng của khách hàng
         ShoppingCart cart = shoppingCartRepository.findByCustomerId(customer.getCustomerId())
                 .orElseThrow(() -> new NotFoundException("Không tìm thấy giỏ hàng"));
@@ -255,10 +281,18 @@ public class CheckoutServiceImpl implements CheckoutService {
             }
         }
 
-        // Tính totalAmount = totalPayable + shippingFee
+        // Dùng điểm tích lũy (nếu có): giảm trên số tiền sau khuyến mãi, không áp dụng cho phí vận chuyển
+        int loyaltyPointsToUse = request.loyaltyPointsToUse() != null ? request.loyaltyPointsToUse() : 0;
+        BigDecimal loyaltyPointsDiscount = loyaltyService.calculateRedemptionDiscount(
+                loyaltyPointsToUse, promotionResponse.summary().totalPayable());
+        order.setLoyaltyPointsUsed(loyaltyPointsToUse);
+        order.setLoyaltyPointsDiscount(loyaltyPointsDiscount);
+
+        // Tính totalAmount = totalPayable - loyaltyPointsDiscount + shippingFee
         // (totalPayable đã bao gồm subTotal - lineItemDiscount - orderDiscount)
         order.setTotalAmount(
                 promotionResponse.summary().totalPayable()
+                        .subtract(loyaltyPointsDiscount)
                         .add(order.getShippingFee()));
 
         // Set số tiền khách trả
@@ -267,6 +301,10 @@ public class CheckoutServiceImpl implements CheckoutService {
 
         // Lưu đơn hàng
         order = orderRepository.save(order);
+        eventPublisher.publishEvent(OrderStatusChangedEvent.of(order, null));
+
+        // Trừ điểm đã dùng, không đủ điểm thì rollback cả đơn hàng
+        loyaltyService.redeemForOrder(order);
 
         // Lưu chi tiết đơn hàng
         for (OrderDetail detail : orderDetails) {
@@ -279,6 +317,7 @@ public class CheckoutServiceImpl implements CheckoutService {
 
         // Xóa giỏ hàng sau khi checkout thành công
         cartItemRepository.deleteAll(cartItems);
+        shoppingCartService.evictCart(customer.getCustomerId());
 
         // Tạo payment link nếu thanh toán ONLINE
         String paymentUrl = null;
@@ -378,6 +417,7 @@ public class CheckoutServiceImpl implements CheckoutService {
             log.info("Tự động chuyển đơn hàng {} từ DELIVERED sang COMPLETED", orderId);
             order.setStatus(OrderStatus.COMPLETED);
             order = orderRepository.save(order);
+            eventPublisher.publishEvent(OrderStatusChangedEvent.of(order, currentStatus));
 
             log.info("Đơn hàng {} đã được tự động hoàn thành", orderId);
             return buildCheckoutResponse(order, order.getOrderDetails());
@@ -386,9 +426,11 @@ public class CheckoutServiceImpl implements CheckoutService {
         // Nếu chuyển sang CANCELLED -> Hoàn lại tồn kho
         if (newStatus == OrderStatus.CANCELLED) {
             restoreInventory(order.getOrderDetails());
+            loyaltyService.refundRedemption(order);
         }
 
         order = orderRepository.save(order);
+        eventPublisher.publishEvent(OrderStatusChangedEvent.of(order, currentStatus));
 
         log.info("Đã cập nhật trạng thái đơn hàng {} từ {} sang {}",
                 orderId, currentStatus, newStatus);
@@ -464,13 +506,16 @@ public class CheckoutServiceImpl implements CheckoutService {
             throw new BadRequestException("Không thể hủy đơn hàng ở trạng thái: " + order.getStatus());
         }
 
+        OrderStatus previousStatus = order.getStatus();
         order.setStatus(OrderStatus.CANCELLED);
         order.setNote(order.getNote() != null ? order.getNote() + " | Lý do hủy: " + reason : "Lý do hủy: " + reason);
 
-        // Hoàn lại tồn kho
+        // Hoàn lại tồn kho và điểm tích lũy đã dùng
         restoreInventory(order.getOrderDetails());
+        loyaltyService.refundRedemption(order);
 
         order = orderRepository.save(order);
+        eventPublisher.publishEvent(OrderStatusChangedEvent.of(order, previousStatus));
 
         return buildCheckoutResponse(order, order.getOrderDetails());
     }
@@ -491,13 +536,16 @@ public class CheckoutServiceImpl implements CheckoutService {
             throw new BadRequestException("Không thể hủy đơn hàng ở trạng thái: " + order.getStatus());
         }
 
+        OrderStatus previousStatus = order.getStatus();
         order.setStatus(OrderStatus.CANCELLED);
         order.setNote(order.getNote() != null ? order.getNote() + " | Lý do hủy: " + reason : "Lý do hủy: " + reason);
 
-        // Hoàn lại tồn kho
+        // Hoàn lại tồn kho và điểm tích lũy đã dùng
         restoreInventory(order.getOrderDetails());
+        loyaltyService.refundRedemption(order);
 
         order = orderRepository.save(order);
+        eventPublisher.publishEvent(OrderStatusChangedEvent.of(order, previousStatus));
 
         return buildCheckoutResponse(order, order.getOrderDetails());
     }
@@ -536,6 +584,7 @@ public class CheckoutServiceImpl implements CheckoutService {
                 : "Transaction ID: " + transactionId);
 
         order = orderRepository.save(order);
+        eventPublisher.publishEvent(OrderStatusChangedEvent.of(order, OrderStatus.UNPAID));
         log.info("Đã xác nhận thanh toán cho đơn hàng {}, chuyển sang trạng thái PENDING, transactionId: {}",
                 orderId, transactionId);
 
@@ -593,7 +642,7 @@ public class CheckoutServiceImpl implements CheckoutService {
                                 orderId,
                                 productUnit.getProduct().getName()));
 
-                log.info("Đã trừ {} {} {} khỏi kho cho đơn hàng #{}",
+                log.debug("Đã trừ {} {} {} khỏi kho cho đơn hàng #{}",
                         detail.getQuantity(),
                         productUnit.getUnit().getName(),
                         productUnit.getProduct().getName(),
@@ -633,7 +682,7 @@ public class CheckoutServiceImpl implements CheckoutService {
                                 orderId,
                                 productUnit.getProduct().getName()));
 
-                log.info("Đã hoàn {} {} {} vào kho từ đơn hàng hủy #{}",
+                log.debug("Đã hoàn {} {} {} vào kho từ đơn hàng hủy #{}",
                         detail.getQuantity(),
                         productUnit.getUnit().getName(),
                         productUnit.getProduct().getName(),
@@ -731,8 +780,12 @@ public class CheckoutServiceImpl implements CheckoutService {
         invoice.setTotalDiscount(totalDiscount);
         invoice.setTotalTax(totalTax);
 
-        // Tổng tiền cuối cùng
-        BigDecimal totalAmount = subtotal.add(totalTax);
+        // Tổng tiền cuối cùng, trừ phần khách trả bằng điểm tích lũy
+        // (hóa đơn chỉ ghi số tiền thực trả nên không tích điểm và không hoàn tiền cho phần trả bằng điểm)
+        BigDecimal loyaltyPointsDiscount = order.getLoyaltyPointsDiscount() != null
+                ? order.getLoyaltyPointsDiscount()
+                : BigDecimal.ZERO;
+        BigDecimal totalAmount = subtotal.add(totalTax).subtract(loyaltyPointsDiscount).max(BigDecimal.ZERO);
         invoice.setTotalAmount(totalAmount);
 
         // Set trạng thái hóa đơn dựa trên trạng thái đơn hàng
@@ -751,6 +804,9 @@ public class CheckoutServiceImpl implements CheckoutService {
 
         // Lưu hóa đơn
         invoice = saleInvoiceHeaderRepository.save(invoice);
+        if (invoice.getStatus() == InvoiceStatus.PAID) {
+            eventPublisher.publishEvent(new InvoicePaidEvent(invoice.getInvoiceId()));
+        }
 
         // Lưu chi tiết hóa đơn và thông tin khuyến mãi
         int detailIndex = 0;
@@ -868,6 +924,113 @@ public class CheckoutServiceImpl implements CheckoutService {
      */
     private CheckoutResponseDTO buildCheckoutResponse(Order order, List<OrderDetail> orderDetails,
             String paymentUrl, String qrCode) {
+        // Build order items
+        List<OrderItemDTO> orderItems = orderDetails.stream()
+                .map(detail -> {
+                    // Lấy URL hình ảnh chính của ProductUnit
+                    String imageUrl = null;
+                    ProductUnit productUnit = detail.getProductUnit();
+                    if (productUnit.getProductUnitImages() != null && !productUnit.getProductUnitImages().isEmpty()) {
+                        imageUrl = selectImageUrl(productUnit.getProductUnitImages());
+                    }
+
+                    return new OrderItemDTO(
+                            detail.getProductUnit().getId(),
+                            detail.getProductUnit().getProduct().getName(),
+                            detail.getProductUnit().getUnit().getName(),
+                            detail.getProductUnit().getBarcode(),
+                            detail.getQuantity(),
+                            detail.getPriceAtPurchase(),
+                            detail.getPriceAtPurchase().subtract(detail.getDiscount()),
+                            detail.getDiscount(),
+                            detail.getLineTotal(),
+                            buildPromotionInfo(detail.getPromotionName(), detail.getPromotionSummary()),
+                            imageUrl);
+                })
+                .collect(Collectors.toList());
+
+        // Lấy khuyến mãi từ OrderDetail (PRODUCT_DISCOUNT, BUY_X_GET_Y)
+        List<PromotionAppliedDTO> linePromotions = new ArrayList<>();
+        for (OrderDetail detail : orderDetails) {
+            if (detail.getPromotionLineId() != null) {
+                linePromotions.add(new PromotionAppliedDTO(
+                        detail.getPromotionName(),
+                        detail.getPromotionLineId(),
+                        detail.getPromotionDetailId(),
+                        detail.getPromotionSummary(),
+                        detail.getDiscountType(),
+                        detail.getDiscountValue(),
+                        detail.getSourceLineItemId()));
+            }
+        }
+
+        return buildCheckoutResponse(order, orderItems, linePromotions, paymentUrl, qrCode);
+    }
+
+    /**
+     * Xây dựng response cho danh sách đơn hàng từ các dòng chi tiết đã đọc bằng projection
+     *
+     * @param imageUrls URL ảnh theo ID đơn vị sản phẩm
+     */
+    private CheckoutResponseDTO buildCheckoutResponse(Order order, List<OrderLineProjection> lines,
+            Map<Long, String> imageUrls) {
+        List<OrderItemDTO> orderItems = new ArrayList<>(lines.size());
+        List<PromotionAppliedDTO> linePromotions = new ArrayList<>();
+        for (OrderLineProjection line : lines) {
+            orderItems.add(new OrderItemDTO(
+                    line.productUnitId(),
+                    line.productName(),
+                    line.unitName(),
+                    line.barcode(),
+                    line.quantity(),
+                    line.priceAtPurchase(),
+                    line.priceAtPurchase().subtract(line.discount()),
+                    line.discount(),
+                    line.lineTotal(),
+                    buildPromotionInfo(line.promotionName(), line.promotionSummary()),
+                    imageUrls.get(line.productUnitId())));
+
+            if (line.promotionLineId() != null) {
+                linePromotions.add(new PromotionAppliedDTO(
+                        line.promotionName(),
+                        line.promotionLineId(),
+                        line.promotionDetailId(),
+                        line.promotionSummary(),
+                        line.discountType(),
+                        line.discountValue(),
+                        line.sourceLineItemId()));
+            }
+        }
+        return buildCheckoutResponse(order, orderItems, linePromotions, null, null);
+    }
+
+    /**
+     * Thông tin khuyến mãi hiển thị của một dòng hàng
+     */
+    private String buildPromotionInfo(String promotionName, String promotionSummary) {
+        if (promotionName == null) {
+            return null;
+        }
+        return promotionSummary != null ? promotionName + " - " + promotionSummary : promotionName;
+    }
+
+    /**
+     * Chọn ảnh hiển thị của đơn vị sản phẩm: ảnh chính nếu có, nếu không thì ảnh đầu tiên đang hoạt động
+     */
+    private String selectImageUrl(List<ProductUnitImage> productUnitImages) {
+        return productUnitImages.stream()
+                .filter(pui -> pui.getIsPrimary() != null && pui.getIsPrimary() && pui.getIsActive())
+                .findFirst()
+                .or(() -> productUnitImages.stream().filter(pui -> pui.getIsActive()).findFirst())
+                .map(pui -> pui.getProductImage().thumbnailOrOriginalUrl())
+                .orElse(null);
+    }
+
+    /**
+     * Xây dựng response từ đơn hàng và các dòng hàng đã ánh xạ
+     */
+    private CheckoutResponseDTO buildCheckoutResponse(Order order, List<OrderItemDTO> orderItems,
+            List<PromotionAppliedDTO> linePromotions, String paymentUrl, String qrCode) {
         // Build customer info
         CustomerInfoDTO customerInfo = null;
         if (order.getCustomer() != null) {
@@ -893,54 +1056,6 @@ public class CheckoutServiceImpl implements CheckoutService {
             );
         }
 
-        // Build order items
-        List<OrderItemDTO> orderItems = orderDetails.stream()
-                .map(detail -> {
-                    // Xây dựng thông tin khuyến mãi cho từng item
-                    String promotionInfo = null;
-                    if (detail.getPromotionName() != null) {
-                        promotionInfo = detail.getPromotionName();
-                        if (detail.getPromotionSummary() != null) {
-                            promotionInfo += " - " + detail.getPromotionSummary();
-                        }
-                    }
-
-                    // Lấy URL hình ảnh chính của ProductUnit
-                    String imageUrl = null;
-                    ProductUnit productUnit = detail.getProductUnit();
-                    if (productUnit.getProductUnitImages() != null && !productUnit.getProductUnitImages().isEmpty()) {
-                        // Tìm hình ảnh chính (isPrimary = true)
-                        imageUrl = productUnit.getProductUnitImages().stream()
-                                .filter(pui -> pui.getIsPrimary() != null && pui.getIsPrimary() && pui.getIsActive())
-                                .findFirst()
-                                .map(pui -> pui.getProductImage().getImageUrl())
-                                .orElse(null);
-
-                        // Nếu không có hình ảnh chính, lấy hình ảnh đầu tiên
-                        if (imageUrl == null) {
-                            imageUrl = productUnit.getProductUnitImages().stream()
-                                    .filter(pui -> pui.getIsActive())
-                                    .findFirst()
-                                    .map(pui -> pui.getProductImage().getImageUrl())
-                                    .orElse(null);
-                        }
-                    }
-
-                    return new OrderItemDTO(
-                            detail.getProductUnit().getId(),
-                            detail.getProductUnit().getProduct().getName(),
-                            detail.getProductUnit().getUnit().getName(),
-                            detail.getProductUnit().getBarcode(),
-                            detail.getQuantity(),
-                            detail.getPriceAtPurchase(),
-                            detail.getPriceAtPurchase().subtract(detail.getDiscount()),
-                            detail.getDiscount(),
-                            detail.getLineTotal(),
-                            promotionInfo,
-                            imageUrl);
-                })
-                .collect(Collectors.toList());
-
         // Build online payment info (if applicable)
         OnlinePaymentInfoDTO onlinePaymentInfo = null;
         if (order.getPaymentMethod() == PaymentMethod.ONLINE || order.getPaymentMethod() == PaymentMethod.CARD) {
@@ -966,22 +1081,8 @@ public class CheckoutServiceImpl implements CheckoutService {
         // trong request
         BigDecimal changeAmount = BigDecimal.ZERO;
 
-        // Build danh sách khuyến mãi đã áp dụng
-        List<PromotionAppliedDTO> appliedPromotions = new ArrayList<>();
-
-        // Lấy khuyến mãi từ OrderDetail (PRODUCT_DISCOUNT, BUY_X_GET_Y)
-        for (OrderDetail detail : orderDetails) {
-            if (detail.getPromotionLineId() != null) {
-                appliedPromotions.add(new PromotionAppliedDTO(
-                        detail.getPromotionName(),
-                        detail.getPromotionLineId(),
-                        detail.getPromotionDetailId(),
-                        detail.getPromotionSummary(),
-                        detail.getDiscountType(),
-                        detail.getDiscountValue(),
-                        detail.getSourceLineItemId()));
-            }
-        }
+        // Build danh sách khuyến mãi đã áp dụng (khuyến mãi theo dòng hàng trước)
+        List<PromotionAppliedDTO> appliedPromotions = new ArrayList<>(linePromotions);
 
         // Lấy khuyến mãi toàn đơn từ JSON (ORDER_DISCOUNT)
         if (order.getAppliedOrderPromotionsJson() != null && !order.getAppliedOrderPromotionsJson().isEmpty()) {
@@ -1042,8 +1143,8 @@ public class CheckoutServiceImpl implements CheckoutService {
                 order.getSubtotal(),
                 totalDiscount,
                 order.getShippingFee(),
-                0, // loyaltyPointsUsed
-                BigDecimal.ZERO, // loyaltyPointsDiscount
+                order.getLoyaltyPointsUsed() != null ? order.getLoyaltyPointsUsed() : 0,
+                order.getLoyaltyPointsDiscount() != null ? order.getLoyaltyPointsDiscount() : BigDecimal.ZERO,
                 order.getTotalAmount(),
                 order.getAmountPaid(),
                 changeAmount,
@@ -1071,19 +1172,10 @@ public class CheckoutServiceImpl implements CheckoutService {
         // Bỏ prefix nếu có
         String actualUsername = extractActualUsername(username);
 
-        // Lấy danh sách đơn hàng với phân trang
-        org.springframework.data.domain.Page<Order> orderPage;
-        if (status == null) {
-            orderPage = orderRepository.findByCustomerUsername(actualUsername, pageable);
-        } else {
-            orderPage = orderRepository.findByCustomerUsernameAndStatus(actualUsername, status, pageable);
-        }
-
-        // Convert sang DTO
-        return orderPage.map(order -> {
-            List<OrderDetail> orderDetails = orderDetailRepository.findByOrder_OrderId(order.getOrderId());
-            return buildCheckoutResponse(order, orderDetails);
-        });
+        // Lấy trang ID đơn hàng rồi nạp dữ liệu của cả trang theo lô
+        org.springframework.data.domain.Page<Long> orderIdPage = orderRepository.findOrderIdsByCustomerUsername(
+                actualUsername, status, pageable);
+        return loadOrderPage(orderIdPage);
     }
 
     /**
@@ -1114,32 +1206,64 @@ public class CheckoutServiceImpl implements CheckoutService {
         log.info("Admin lấy danh sách tất cả đơn hàng, trạng thái: {}, loại hình nhận hàng: {}, page: {}, size: {}",
                 status, deliveryType, pageable.getPageNumber(), pageable.getPageSize());
 
-        // Lấy danh sách tất cả đơn hàng với phân trang
-        org.springframework.data.domain.Page<Order> orderPage;
-
-        // Xác định cách lấy dữ liệu dựa trên các tham số
-        if (status == null && deliveryType == null) {
-            // Lấy tất cả đơn hàng trừ UNPAID (chưa thanh toán)
-            orderPage = orderRepository.findByStatusNot(OrderStatus.UNPAID, pageable);
-        } else if (status != null && deliveryType == null) {
-            // Lọc theo trạng thái
-            orderPage = orderRepository.findByStatus(status, pageable);
-        } else if (status == null && deliveryType != null) {
-            // Lọc theo loại hình nhận hàng, loại trừ UNPAID
-            orderPage = orderRepository.findByStatusNotAndDeliveryType(OrderStatus.UNPAID, deliveryType, pageable);
-        } else {
-            // Lọc theo cả trạng thái và loại hình nhận hàng
-            orderPage = orderRepository.findByStatusAndDeliveryType(status, deliveryType, pageable);
-        }
+        // Không lọc theo trạng thái thì bỏ qua đơn UNPAID (chưa thanh toán)
+        org.springframework.data.domain.Page<Long> orderIdPage = orderRepository.findOrderIdsForAdmin(
+                status, OrderStatus.UNPAID, deliveryType, pageable);
 
         log.info("Tìm thấy {} đơn hàng, tổng số trang: {}",
-                orderPage.getNumberOfElements(), orderPage.getTotalPages());
+                orderIdPage.getNumberOfElements(), orderIdPage.getTotalPages());
 
-        // Convert sang DTO
-        return orderPage.map(order -> {
-            List<OrderDetail> orderDetails = orderDetailRepository.findByOrder_OrderId(order.getOrderId());
-            return buildCheckoutResponse(order, orderDetails);
+        return loadOrderPage(orderIdPage);
+    }
+
+    /**
+     * Nạp dữ liệu cho một trang ID đơn hàng với số truy vấn cố định, không phụ thuộc kích thước trang:
+     * đơn hàng kèm khách hàng và cửa hàng, chi tiết của cả trang (projection), ảnh của các đơn vị sản phẩm
+     */
+    private org.springframework.data.domain.Page<CheckoutResponseDTO> loadOrderPage(
+            org.springframework.data.domain.Page<Long> orderIdPage) {
+        List<Long> orderIds = orderIdPage.getContent();
+        if (orderIds.isEmpty()) {
+            return orderIdPage.map(orderId -> null);
+        }
+
+        Map<Long, Order> ordersById = orderRepository.findAllForListingByOrderIdIn(orderIds).stream()
+                .collect(Collectors.toMap(Order::getOrderId, order -> order));
+
+        Map<Long, List<OrderLineProjection>> linesByOrder = orderDetailRepository.findLinesByOrderIds(orderIds)
+                .stream()
+                .collect(Collectors.groupingBy(OrderLineProjection::orderId));
+
+        Set<Long> productUnitIds = linesByOrder.values().stream()
+                .flatMap(List::stream)
+                .map(OrderLineProjection::productUnitId)
+                .collect(Collectors.toSet());
+        Map<Long, String> imageUrls = loadImageUrls(productUnitIds);
+
+        // Giữ thứ tự của trang ID
+        return orderIdPage.map(orderId -> buildCheckoutResponse(
+                ordersById.get(orderId), linesByOrder.getOrDefault(orderId, List.of()), imageUrls));
+    }
+
+    /**
+     * URL ảnh hiển thị của nhiều đơn vị sản phẩm trong một truy vấn
+     */
+    private Map<Long, String> loadImageUrls(Set<Long> productUnitIds) {
+        if (productUnitIds.isEmpty()) {
+            return Map.of();
+        }
+        Map<Long, List<ProductUnitImage>> imagesByUnit = productUnitImageRepository
+                .findActiveImagesByProductUnitIds(productUnitIds).stream()
+                .collect(Collectors.groupingBy(pui -> pui.getProductUnit().getId()));
+
+        Map<Long, String> imageUrls = new HashMap<>();
+        imagesByUnit.forEach((productUnitId, images) -> {
+            String imageUrl = selectImageUrl(images);
+            if (imageUrl != null) {
+                imageUrls.put(productUnitId, imageUrl);
+            }
         });
+        return imageUrls;
     }
 
     /**
@@ -1150,28 +1274,16 @@ public class CheckoutServiceImpl implements CheckoutService {
     private void updatePromotionUsageCount(Order order) {
         log.info("Cập nhật usage count cho các khuyến mãi của đơn hàng {}", order.getOrderId());
 
-        Set<Long> processedDetailIds = new HashSet<>();
+        Set<Long> processedDetailIds = new LinkedHashSet<>();
 
-        // Cập nhật usageCount cho khuyến mãi từ OrderDetails (PRODUCT_DISCOUNT,
-        // BUY_X_GET_Y)
+        // Khuyến mãi từ OrderDetails (PRODUCT_DISCOUNT, BUY_X_GET_Y)
         for (OrderDetail orderDetail : order.getOrderDetails()) {
-            if (orderDetail.getPromotionDetailId() != null &&
-                    !processedDetailIds.contains(orderDetail.getPromotionDetailId())) {
-
-                promotionDetailRepository.findById(orderDetail.getPromotionDetailId())
-                        .ifPresent(detail -> {
-                            Integer currentCount = detail.getUsageCount() != null ? detail.getUsageCount() : 0;
-                            detail.setUsageCount(currentCount + 1);
-                            promotionDetailRepository.save(detail);
-                            log.debug("Đã cập nhật usageCount cho promotion detail ID: {} ({}->{})",
-                                    detail.getDetailId(), currentCount, currentCount + 1);
-                        });
-
+            if (orderDetail.getPromotionDetailId() != null) {
                 processedDetailIds.add(orderDetail.getPromotionDetailId());
             }
         }
 
-        // Cập nhật usageCount cho khuyến mãi đơn hàng (ORDER_DISCOUNT)
+        // Khuyến mãi đơn hàng (ORDER_DISCOUNT)
         if (order.getAppliedOrderPromotionsJson() != null && !order.getAppliedOrderPromotionsJson().isEmpty()) {
             try {
                 List<CheckPromotionResponseDTO.OrderPromotionDTO> orderPromotions = objectMapper.readValue(
@@ -1181,18 +1293,7 @@ public class CheckoutServiceImpl implements CheckoutService {
                                 CheckPromotionResponseDTO.OrderPromotionDTO.class));
 
                 for (CheckPromotionResponseDTO.OrderPromotionDTO orderPromotion : orderPromotions) {
-                    if (orderPromotion.promotionDetailId() != null &&
-                            !processedDetailIds.contains(orderPromotion.promotionDetailId())) {
-
-                        promotionDetailRepository.findById(orderPromotion.promotionDetailId())
-                                .ifPresent(detail -> {
-                                    Integer currentCount = detail.getUsageCount() != null ? detail.getUsageCount() : 0;
-                                    detail.setUsageCount(currentCount + 1);
-                                    promotionDetailRepository.save(detail);
-                                    log.debug("Đã cập nhật usageCount cho order promotion detail ID: {} ({}->{})",
-                                            detail.getDetailId(), currentCount, currentCount + 1);
-                                });
-
+                    if (orderPromotion.promotionDetailId() != null) {
                         processedDetailIds.add(orderPromotion.promotionDetailId());
                     }
                 }
@@ -1201,6 +1302,12 @@ public class CheckoutServiceImpl implements CheckoutService {
             }
         }
 
+        // Tăng nguyên tử trong giới hạn usageLimit; đơn đã giao nên chỉ ghi nhận khuyến mãi vượt giới hạn
+        List<Long> rejectedDetailIds = promotionUsageService.consume(processedDetailIds);
+        if (!rejectedDetailIds.isEmpty()) {
+            log.warn("Đơn hàng {} dùng khuyến mãi đã hết lượt: {}", order.getOrderId(), rejectedDetailIds);
+        }
+
         log.info("Hoàn thành cập nhật usage count cho {} promotion details", processedDetailIds.size());
     }
 }
\ No newline at end of file
@@ -8,10 +8,13 @@ import iuh.fit.supermarket.repository.CustomerFavoriteRepository;
 import iuh.fit.supermarket.repository.CustomerRepository;
 import iuh.fit.supermarket.repository.ProductUnitRepository;
 import iuh.fit.supermarket.service.CustomerFavoriteService;
+import iuh.fit.supermarket.service.RecommendationIndexService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.time.LocalDateTime;
 import java.util.List;
@@ -28,6 +31,7 @@ public class CustomerFavoriteServiceImpl implements CustomerFavoriteService {
     private final CustomerFavoriteRepository customerFavoriteRepository;
     private final CustomerRepository customerRepository;
     private final ProductUnitRepository productUnitRepository;
+    private final RecommendationIndexService recommendationIndexService;
 
     /**
      * Thêm sản phẩm vào danh sách yêu thích
@@ -77,6 +81,7 @@ public class CustomerFavoriteServiceImpl implements CustomerFavoriteService {
         customerFavoriteRepository.save(favorite);
         log.info("Đã thêm sản phẩm vào danh sách yêu thích - Customer: {}, ProductUnit: {}",
                 customerId, productUnitId);
+        recordFavoriteChangeAfterCommit(customerId, productUnitId, true);
 
         return "Đã thêm sản phẩm vào danh sách yêu thích";
     }
@@ -108,6 +113,7 @@ public class CustomerFavoriteServiceImpl implements CustomerFavoriteService {
         customerFavoriteRepository.deleteByCustomerIdAndProductUnitId(customerId, productUnitId);
         log.info("Đã xóa sản phẩm khỏi danh sách yêu thích - Customer: {}, ProductUnit: {}",
                 customerId, productUnitId);
+        recordFavoriteChangeAfterCommit(customerId, productUnitId, false);
 
         return "Đã xóa sản phẩm khỏi danh sách yêu thích";
     }
@@ -169,4 +175,20 @@ public class CustomerFavoriteServiceImpl implements CustomerFavoriteService {
 
         return customerFavoriteRepository.countByCustomerId(customerId);
     }
+
+    /**
+     * Cập nhật chỉ mục gợi ý sau khi transaction commit để thay đổi bị rollback không lọt vào chỉ mục
+     */
+    private void recordFavoriteChangeAfterCommit(Integer customerId, Long productUnitId, boolean added) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            recommendationIndexService.recordFavoriteChange(customerId, productUnitId, added);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                recommendationIndexService.recordFavoriteChange(customerId, productUnitId, added);
+            }
+        });
+    }
 }
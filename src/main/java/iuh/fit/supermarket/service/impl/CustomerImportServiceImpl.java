@@ -0,0 +1,290 @@
+package iuh.fit.supermarket.service.impl;
+
+import iuh.fit.supermarket.dto.customer.CreateCustomerRequest;
+import iuh.fit.supermarket.dto.customer.CustomerImportResult;
+import iuh.fit.supermarket.dto.customer.CustomerImportRow;
+import iuh.fit.supermarket.dto.customer.UserContactProjection;
+import iuh.fit.supermarket.dto.job.JobStatusResponse;
+import iuh.fit.supermarket.entity.Customer;
+import iuh.fit.supermarket.entity.User;
+import iuh.fit.supermarket.enums.CustomerType;
+import iuh.fit.supermarket.enums.UserRole;
+import iuh.fit.supermarket.exception.CustomerException;
+import iuh.fit.supermarket.exception.CustomerValidationException;
+import iuh.fit.supermarket.exception.DuplicateCustomerException;
+import iuh.fit.supermarket.repository.CustomerRepository;
+import iuh.fit.supermarket.repository.UserRepository;
+import iuh.fit.supermarket.service.CustomerExcelService;
+import iuh.fit.supermarket.service.CustomerImportService;
+import iuh.fit.supermarket.service.CustomerService;
+import iuh.fit.supermarket.service.impl.ExcelImportJobRunner.ImportCandidate;
+import iuh.fit.supermarket.service.impl.ExcelImportJobRunner.RowRejecter;
+import iuh.fit.supermarket.util.CustomerValidator;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Implementation của CustomerImportService
+ * Quy trình: đọc file theo luồng (SAX) → validate song song → kiểm tra trùng email/số điện thoại
+ * với DB bằng truy vấn theo lô → sinh mã khách hàng từ một lần tra cứu → ghi theo từng lô, mỗi lô một transaction
+ * Phần file tạm, tác vụ nền, báo lỗi theo dòng và ghi theo lô dùng chung ExcelImportJobRunner
+ */
+@Service
+@Slf4j
+public class CustomerImportServiceImpl implements CustomerImportService {
+
+    private static final String JOB_TYPE = "CUSTOMER_IMPORT";
+    private static final int MAX_CUSTOMER_CODE_NUMBER = 999999;
+
+    /**
+     * Số email/số điện thoại tối đa trong một truy vấn kiểm tra trùng (giới hạn độ dài mệnh đề IN)
+     */
+    private static final int LOOKUP_BATCH_SIZE = 1000;
+
+    private final CustomerExcelService customerExcelService;
+    private final CustomerService customerService;
+    private final CustomerRepository customerRepository;
+    private final UserRepository userRepository;
+    private final CustomerValidator customerValidator;
+    private final ExcelImportJobRunner importJobRunner;
+    private final CustomerImportHandler importHandler = new CustomerImportHandler();
+    private final int chunkSize;
+
+    public CustomerImportServiceImpl(CustomerExcelService customerExcelService,
+            CustomerService customerService,
+            CustomerRepository customerRepository,
+            UserRepository userRepository,
+            CustomerValidator customerValidator,
+            ExcelImportJobRunner importJobRunner,
+            @Value("${customer.import.chunk-size:500}") int chunkSize) {
+        this.customerExcelService = customerExcelService;
+        this.customerService = customerService;
+        this.customerRepository = customerRepository;
+        this.userRepository = userRepository;
+        this.customerValidator = customerValidator;
+        this.importJobRunner = importJobRunner;
+        this.chunkSize = chunkSize;
+    }
+
+    @Override
+    public CustomerImportResult importCustomers(MultipartFile file) throws IOException {
+        ExcelImportJobRunner.ImportSummary summary = importJobRunner.run(file, importHandler);
+        return new CustomerImportResult(summary.totalRows(), summary.successCount(), summary.errorCount(),
+                summary.errors());
+    }
+
+    @Override
+    public JobStatusResponse startImportJob(MultipartFile file) throws IOException {
+        return importJobRunner.start(file, importHandler);
+    }
+
+    /**
+     * Kiểm tra trùng email/số điện thoại với DB và trong file, sinh mã khách hàng theo đúng thứ tự dòng
+     */
+    private List<ImportCandidate<ValidatedCustomer>> prepareCandidates(List<CustomerImportRow> rows,
+            RowRejecter rejecter) {
+        // Validate và chuẩn hóa từng dòng song song (không truy cập DB)
+        List<ValidatedCustomer> validated = rows.parallelStream()
+                .map(this::validate)
+                .toList();
+
+        // Tải các email / số điện thoại đã tồn tại bằng truy vấn theo lô
+        Set<String> existingEmails = new HashSet<>();
+        Set<String> existingPhones = new HashSet<>();
+        loadExistingContacts(validated, existingEmails, existingPhones);
+
+        int nextCodeNumber = nextCustomerCodeNumber();
+        List<ImportCandidate<ValidatedCustomer>> candidates = new ArrayList<>(validated.size());
+        for (ValidatedCustomer customer : validated) {
+            String error = customer.error();
+            if (error == null) {
+                try {
+                    claimUniqueValues(customer, existingEmails, existingPhones);
+                    if (nextCodeNumber > MAX_CUSTOMER_CODE_NUMBER) {
+                        throw new CustomerValidationException("customerCode",
+                                "Đã hết mã khách hàng có thể tạo (KH999999)");
+                    }
+                    candidates.add(new ImportCandidate<>(customer.row().rowNum(), customer,
+                            String.format("KH%06d", nextCodeNumber++)));
+                    continue;
+                } catch (CustomerException e) {
+                    error = e.getMessage();
+                }
+            }
+            rejecter.reject(customer.row().rowNum(), error);
+        }
+        return candidates;
+    }
+
+    /**
+     * Validate một dòng theo cùng quy tắc với CustomerService.createCustomerByAdmin và chuẩn hóa email, số điện thoại
+     * Không truy cập DB nên có thể chạy song song
+     */
+    private ValidatedCustomer validate(CustomerImportRow row) {
+        try {
+            CreateCustomerRequest request = row.request();
+            customerService.validateCreateCustomerRequest(request);
+
+            String phone = customerValidator.normalizePhone(request.getPhone());
+            return new ValidatedCustomer(row,
+                    customerValidator.normalizeEmail(request.getEmail()),
+                    phone != null && !phone.isEmpty() ? phone : null,
+                    null);
+        } catch (CustomerException e) {
+            return new ValidatedCustomer(row, null, null, e.getMessage());
+        }
+    }
+
+    private void loadExistingContacts(List<ValidatedCustomer> validated, Set<String> existingEmails,
+            Set<String> existingPhones) {
+        List<ValidatedCustomer> valid = validated.stream().filter(customer -> customer.error() == null).toList();
+
+        for (int from = 0; from < valid.size(); from += LOOKUP_BATCH_SIZE) {
+            List<ValidatedCustomer> batch = valid.subList(from, Math.min(from + LOOKUP_BATCH_SIZE, valid.size()));
+            Set<String> emails = new HashSet<>();
+            Set<String> phones = new HashSet<>();
+            for (ValidatedCustomer customer : batch) {
+                emails.add(customer.email());
+                if (customer.phone() != null) {
+                    phones.add(customer.phone());
+                }
+            }
+
+            for (UserContactProjection contact : userRepository.findContactsByEmailInOrPhoneIn(emails, phones)) {
+                if (contact.email() != null) {
+                    existingEmails.add(contact.email().toLowerCase());
+                }
+                if (contact.phone() != null) {
+                    existingPhones.add(contact.phone());
+                }
+            }
+        }
+    }
+
+    /**
+     * Giữ chỗ email và số điện thoại cho khách hàng
+     * Chạy tuần tự theo thứ tự dòng để dòng xuất hiện trước được ưu tiên khi trùng trong file
+     */
+    private void claimUniqueValues(ValidatedCustomer customer, Set<String> existingEmails, Set<String> existingPhones) {
+        if (existingEmails.contains(customer.email())) {
+            throw new DuplicateCustomerException("email", customer.email());
+        }
+        if (customer.phone() != null && existingPhones.contains(customer.phone())) {
+            throw new DuplicateCustomerException("phone", customer.phone());
+        }
+
+        existingEmails.add(customer.email());
+        if (customer.phone() != null) {
+            existingPhones.add(customer.phone());
+        }
+    }
+
+    /**
+     * Số thứ tự tiếp theo cho mã khách hàng KHxxxxxx, cùng quy tắc với CustomerService.generateCustomerCode
+     */
+    private int nextCustomerCodeNumber() {
+        return customerRepository.findTopByCustomerCodeIsNotNullOrderByCustomerCodeDesc()
+                .map(Customer::getCustomerCode)
+                .filter(code -> code.length() >= 8 && code.startsWith("KH"))
+                .map(code -> {
+                    try {
+                        return Integer.parseInt(code.substring(2)) + 1;
+                    } catch (NumberFormatException e) {
+                        log.warn("Không thể parse mã khách hàng: {}", code);
+                        return 1;
+                    }
+                })
+                .orElse(1);
+    }
+
+    /**
+     * Ghi một lô khách hàng, được ExcelImportJobRunner gọi trong transaction
+     */
+    private List<Customer> saveCustomers(List<ImportCandidate<ValidatedCustomer>> candidates) {
+        List<User> users = new ArrayList<>(candidates.size());
+        for (ImportCandidate<ValidatedCustomer> candidate : candidates) {
+            ValidatedCustomer validated = candidate.value();
+            CreateCustomerRequest request = validated.row().request();
+
+            // Admin import -> không có password
+            User user = new User();
+            user.setName(request.getName().trim());
+            user.setEmail(validated.email());
+            user.setPhone(validated.phone());
+            user.setPasswordHash(null);
+            user.setUserRole(UserRole.CUSTOMER);
+            user.setGender(request.getGender());
+            user.setDateOfBirth(request.getDateOfBirth());
+            user.setIsDeleted(false);
+            users.add(user);
+        }
+        userRepository.saveAll(users);
+
+        List<Customer> customers = new ArrayList<>(candidates.size());
+        for (int i = 0; i < candidates.size(); i++) {
+            CreateCustomerRequest request = candidates.get(i).value().row().request();
+            Customer customer = new Customer();
+            customer.setUser(users.get(i));
+            customer.setCustomerCode(candidates.get(i).code());
+            customer.setAddress(request.getAddress() != null ? request.getAddress().trim() : null);
+            customer.setCustomerType(request.getCustomerType() != null ? request.getCustomerType() : CustomerType.REGULAR);
+            customers.add(customer);
+        }
+        customerRepository.saveAll(customers);
+        return customers;
+    }
+
+    /**
+     * Dòng đã validate: email, số điện thoại đã chuẩn hóa, hoặc lỗi validate
+     */
+    private record ValidatedCustomer(CustomerImportRow row, String email, String phone, String error) {
+    }
+
+
+    /**
+     * Phần riêng của import khách hàng chạy trên ExcelImportJobRunner
+     */
+    private final class CustomerImportHandler
+            implements ExcelImportJobRunner.Handler<CustomerImportRow, ValidatedCustomer, Customer> {
+
+        @Override
+        public String jobType() {
+            return JOB_TYPE;
+        }
+
+        @Override
+        public String itemName() {
+            return "khách hàng";
+        }
+
+        @Override
+        public int chunkSize() {
+            return chunkSize;
+        }
+
+        @Override
+        public List<CustomerImportRow> readRows(Path file, Consumer<String> onRowError) throws IOException {
+            return customerExcelService.readImportFile(file, onRowError);
+        }
+
+        @Override
+        public List<ImportCandidate<ValidatedCustomer>> prepare(List<CustomerImportRow> rows, RowRejecter rejecter) {
+            return prepareCandidates(rows, rejecter);
+        }
+
+        @Override
+        public List<Customer> save(List<ImportCandidate<ValidatedCustomer>> chunk) {
+            return saveCustomers(chunk);
+        }
+    }
+}
@@ -10,14 +10,16 @@ import iuh.fit.supermarket.entity.User;
 import iuh.fit.supermarket.enums.UserRole;
 import iuh.fit.supermarket.repository.EmployeeRepository;
 import iuh.fit.supermarket.repository.UserRepository;
+import iuh.fit.supermarket.security.UserDetailsCache;
 import iuh.fit.supermarket.service.EmployeeService;
+import iuh.fit.supermarket.service.PasswordHashingService;
+import iuh.fit.supermarket.service.RefreshTokenService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
-import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -36,7 +38,9 @@ public class EmployeeServiceImpl implements EmployeeService {
 
     private final EmployeeRepository employeeRepository;
     private final UserRepository userRepository;
-    private final PasswordEncoder passwordEncoder;
+    private final PasswordHashingService passwordHashingService;
+    private final UserDetailsCache userDetailsCache;
+    private final RefreshTokenService refreshTokenService;
 
 
     /**
@@ -151,7 +155,7 @@ public class EmployeeServiceImpl implements EmployeeService {
         user.setName(request.getName());
         user.setEmail(request.getEmail());
         user.setPhone(request.getPhone());
-        user.setPasswordHash(passwordEncoder.encode(request.getPassword()));
+        user.setPasswordHash(passwordHashingService.encode(request.getPassword()));
         user.setUserRole(request.getRole());
         user.setDateOfBirth(request.getDateOfBirth());
         user.setGender(request.getGender());
@@ -226,6 +230,7 @@ public class EmployeeServiceImpl implements EmployeeService {
 
         // Lưu User
         userRepository.save(existingUser);
+        userDetailsCache.evict(existingUser.getUserId());
 
         // Cập nhật Employee code nếu có
         if (request.getEmployeeCode() != null && !request.getEmployeeCode().trim().isEmpty()) {
@@ -261,6 +266,8 @@ public class EmployeeServiceImpl implements EmployeeService {
         User user = employee.getUser();
         user.setIsDeleted(true);
         userRepository.save(user);
+        userDetailsCache.evict(user.getUserId());
+        refreshTokenService.revokeAllForUser(user.getUserId());
 
         log.info("Đã xóa nhân viên với ID: {}", employeeId);
     }
@@ -281,6 +288,7 @@ public class EmployeeServiceImpl implements EmployeeService {
         User user = employee.getUser();
         user.setIsDeleted(false);
         userRepository.save(user);
+        userDetailsCache.evict(user.getUserId());
 
         log.info("Đã khôi phục nhân viên với ID: {}", employeeId);
     }
@@ -382,8 +390,10 @@ public class EmployeeServiceImpl implements EmployeeService {
 
         // Update password in User
         User user = employee.getUser();
-        user.setPasswordHash(passwordEncoder.encode(newPassword));
+        user.setPasswordHash(passwordHashingService.encode(newPassword));
         userRepository.save(user);
+        userDetailsCache.evict(user.getUserId());
+        refreshTokenService.revokeAllForUser(user.getUserId());
 
         log.info("Đã đổi mật khẩu cho nhân viên với ID: {}", employeeId);
     }
@@ -0,0 +1,266 @@
+package iuh.fit.supermarket.service.impl;
+
+import iuh.fit.supermarket.dto.job.JobStatusResponse;
+import iuh.fit.supermarket.service.JobProgressService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Phần dùng chung của các chức năng import Excel: sao chép file upload ra file tạm, chạy nền trên
+ * backgroundJobExecutor và báo tiến độ qua JobProgressService, gom lỗi theo dòng ("Dòng N: ...")
+ * và ghi theo lô, mỗi lô một transaction, lô lỗi được ghi lại từng dòng
+ * Mỗi service import chỉ cung cấp một Handler: đọc dòng, validate/ánh xạ và ghi một lô
+ */
+@Component
+@Slf4j
+class ExcelImportJobRunner {
+
+    private final JobProgressService jobProgressService;
+    private final TaskExecutor backgroundJobExecutor;
+    private final TransactionTemplate transactionTemplate;
+
+    ExcelImportJobRunner(JobProgressService jobProgressService,
+            @Qualifier("backgroundJobExecutor") TaskExecutor backgroundJobExecutor,
+            PlatformTransactionManager transactionManager) {
+        this.jobProgressService = jobProgressService;
+        this.backgroundJobExecutor = backgroundJobExecutor;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * Import đồng bộ trong request hiện tại
+     */
+    <R, V, S> ImportSummary run(MultipartFile file, Handler<R, V, S> handler) throws IOException {
+        Path tempFile = copyToTempFile(file, handler);
+        try {
+            return runImport(tempFile, handler, new ImportListener() {
+            });
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    /**
+     * Tạo tác vụ import chạy nền, tiến độ và lỗi từng dòng được cập nhật vào JobProgressService
+     */
+    <R, V, S> JobStatusResponse start(MultipartFile file, Handler<R, V, S> handler) throws IOException {
+        // File upload chỉ tồn tại trong phạm vi request nên phải sao chép trước khi chạy nền
+        Path tempFile = copyToTempFile(file, handler);
+        String jobId = jobProgressService.create(handler.jobType());
+
+        try {
+            backgroundJobExecutor.execute(() -> runJob(jobId, tempFile, handler));
+        } catch (TaskRejectedException e) {
+            Files.deleteIfExists(tempFile);
+            jobProgressService.fail(jobId, "Hệ thống đang xử lý quá nhiều tác vụ, vui lòng thử lại sau");
+        }
+
+        return jobProgressService.getStatus(jobId);
+    }
+
+    private <R, V, S> void runJob(String jobId, Path file, Handler<R, V, S> handler) {
+        try {
+            ImportSummary result = runImport(file, handler, new ImportListener() {
+                @Override
+                public void onStart(int totalRows) {
+                    jobProgressService.start(jobId, (long) totalRows);
+                }
+
+                @Override
+                public void onProcessed(int count) {
+                    jobProgressService.addProcessed(jobId, count);
+                }
+
+                @Override
+                public void onError(String message) {
+                    jobProgressService.addError(jobId, message);
+                }
+            });
+            jobProgressService.complete(jobId, null, String.format("Import hoàn tất: %d thành công, %d lỗi",
+                    result.successCount(), result.errorCount()));
+        } catch (Exception e) {
+            log.error("Lỗi khi import {} (tác vụ {}): ", handler.itemName(), jobId, e);
+            jobProgressService.fail(jobId, "Lỗi khi import " + handler.itemName() + ": " + e.getMessage());
+        } finally {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                log.warn("Không xóa được file import tạm {}: {}", file, e.getMessage());
+            }
+        }
+    }
+
+    private <R, V, S> ImportSummary runImport(Path file, Handler<R, V, S> handler, ImportListener listener)
+            throws IOException {
+        List<String> errors = new ArrayList<>();
+        Consumer<String> reporter = message -> {
+            errors.add(message);
+            listener.onError(message);
+        };
+
+        // 1. Đọc file theo luồng, dòng lỗi định dạng được báo ngay
+        List<R> rows = handler.readRows(file, reporter);
+        listener.onStart(rows.size());
+        if (rows.isEmpty()) {
+            return new ImportSummary(0, 0, List.copyOf(errors));
+        }
+
+        // 2. Validate, kiểm tra trùng và sinh mã theo thứ tự dòng trong file
+        AtomicInteger rejected = new AtomicInteger();
+        List<ImportCandidate<V>> candidates = handler.prepare(rows, (rowNum, error) -> {
+            reporter.accept("Dòng " + rowNum + ": " + error);
+            rejected.incrementAndGet();
+        });
+        if (rejected.get() > 0) {
+            listener.onProcessed(rejected.get());
+        }
+
+        // 3. Ghi theo lô
+        int successCount = 0;
+        for (int from = 0; from < candidates.size(); from += handler.chunkSize()) {
+            List<ImportCandidate<V>> chunk = candidates.subList(from,
+                    Math.min(from + handler.chunkSize(), candidates.size()));
+            successCount += insertChunk(chunk, handler, reporter);
+            listener.onProcessed(chunk.size());
+        }
+
+        log.info("Import Excel hoàn tất: {} {}, {} thành công, {} lỗi",
+                rows.size(), handler.itemName(), successCount, errors.size());
+        return new ImportSummary(rows.size(), successCount, List.copyOf(errors));
+    }
+
+    /**
+     * Ghi một lô trong một transaction
+     * Nếu lô lỗi (ví dụ vi phạm ràng buộc do dữ liệu vừa được tạo ở nơi khác), ghi lại từng dòng
+     * để chỉ những dòng thực sự lỗi bị bỏ qua
+     *
+     * @return số dòng đã ghi
+     */
+    private <R, V, S> int insertChunk(List<ImportCandidate<V>> chunk, Handler<R, V, S> handler,
+            Consumer<String> reporter) {
+        List<S> saved = new ArrayList<>();
+        int created = 0;
+        try {
+            saved.addAll(transactionTemplate.execute(status -> handler.save(chunk)));
+            created = chunk.size();
+        } catch (RuntimeException e) {
+            log.warn("Lỗi khi ghi lô {} {}, chuyển sang ghi từng dòng: {}",
+                    chunk.size(), handler.itemName(), e.getMessage());
+            for (ImportCandidate<V> candidate : chunk) {
+                try {
+                    saved.addAll(transactionTemplate.execute(status -> handler.save(List.of(candidate))));
+                    created++;
+                } catch (RuntimeException ex) {
+                    reporter.accept("Dòng " + candidate.rowNum() + ": " + ex.getMessage());
+                }
+            }
+        }
+
+        handler.afterCommit(saved);
+        return created;
+    }
+
+    private static Path copyToTempFile(MultipartFile file, Handler<?, ?, ?> handler) throws IOException {
+        String originalName = file.getOriginalFilename();
+        String suffix = originalName != null && originalName.endsWith(".xls") ? ".xls" : ".xlsx";
+        String prefix = handler.jobType().toLowerCase(Locale.ROOT).replace('_', '-') + "-";
+        Path tempFile = Files.createTempFile(prefix, suffix);
+        file.transferTo(tempFile);
+        return tempFile;
+    }
+
+    /**
+     * Phần riêng của từng loại import
+     *
+     * @param <R> dòng đọc từ file
+     * @param <V> dòng đã validate
+     * @param <S> đối tượng đã ghi, chuyển cho afterCommit
+     */
+    interface Handler<R, V, S> {
+
+        /**
+         * Loại tác vụ trong JobProgressService, đồng thời là tiền tố của file tạm
+         */
+        String jobType();
+
+        /**
+         * Tên đối tượng import dùng trong log và thông báo lỗi, ví dụ "khách hàng"
+         */
+        String itemName();
+
+        int chunkSize();
+
+        List<R> readRows(Path file, Consumer<String> onRowError) throws IOException;
+
+        /**
+         * Validate các dòng và giữ chỗ giá trị duy nhất theo thứ tự dòng
+         *
+         * @param rejecter nhận các dòng không hợp lệ
+         * @return các dòng sẵn sàng ghi
+         */
+        List<ImportCandidate<V>> prepare(List<R> rows, RowRejecter rejecter);
+
+        /**
+         * Ghi một lô, được gọi trong transaction
+         */
+        List<S> save(List<ImportCandidate<V>> chunk);
+
+        /**
+         * Xử lý sau khi lô đã commit, mặc định không làm gì
+         */
+        default void afterCommit(List<S> saved) {
+        }
+    }
+
+    @FunctionalInterface
+    interface RowRejecter {
+
+        void reject(int rowNum, String error);
+    }
+
+    /**
+     * Dòng hợp lệ sẵn sàng ghi vào DB cùng mã đã được giữ chỗ
+     */
+    record ImportCandidate<V>(int rowNum, V value, String code) {
+    }
+
+    /**
+     * Kết quả import, mỗi service chuyển sang DTO kết quả của mình
+     */
+    record ImportSummary(int totalRows, int successCount, List<String> errors) {
+
+        int errorCount() {
+            return errors.size();
+        }
+    }
+
+    /**
+     * Nhận thông báo tiến độ và lỗi trong quá trình import
+     */
+    private interface ImportListener {
+
+        default void onStart(int totalRows) {
+        }
+
+        default void onProcessed(int count) {
+        }
+
+        default void onError(String message) {
+        }
+    }
+}
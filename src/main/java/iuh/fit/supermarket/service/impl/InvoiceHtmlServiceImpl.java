@@ -0,0 +1,184 @@
+package iuh.fit.supermarket.service.impl;
+
+import iuh.fit.supermarket.dto.sale.AppliedOrderPromotionDetailDTO;
+import iuh.fit.supermarket.dto.sale.AppliedPromotionDetailDTO;
+import iuh.fit.supermarket.dto.sale.SaleInvoiceFullDTO;
+import iuh.fit.supermarket.dto.sale.SaleInvoiceItemDetailDTO;
+import iuh.fit.supermarket.enums.InvoiceStatus;
+import iuh.fit.supermarket.enums.PaymentMethod;
+import iuh.fit.supermarket.service.InvoiceHtmlService;
+import iuh.fit.supermarket.util.HtmlTemplate;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.text.NumberFormat;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Implementation của InvoiceHtmlService
+ * Template in hóa đơn được đọc và biên dịch một lần khi khởi động,
+ * mỗi lần in chỉ ghi các phần đã biên dịch vào buffer dùng lại của luồng hoặc thẳng vào response
+ */
+@Service
+@Slf4j
+public class InvoiceHtmlServiceImpl implements InvoiceHtmlService {
+
+    private static final String TEMPLATE_PATH = "/templates/invoice-print-template.html";
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm:ss");
+
+    /**
+     * Buffer lớn hơn ngưỡng này (hóa đơn rất dài) không được giữ lại cho lần sau
+     */
+    private static final int MAX_POOLED_BUFFER_SIZE = 256 * 1024;
+
+    /**
+     * NumberFormat không thread-safe nên mỗi luồng dùng một instance riêng
+     */
+    private static final ThreadLocal<NumberFormat> CURRENCY_FORMATTER = ThreadLocal
+            .withInitial(() -> NumberFormat.getCurrencyInstance(new Locale("vi", "VN")));
+
+    private static final ThreadLocal<StringBuilder> BUFFER = ThreadLocal
+            .withInitial(() -> new StringBuilder(16 * 1024));
+
+    private HtmlTemplate template;
+
+    @PostConstruct
+    void compileTemplate() throws IOException {
+        try (InputStream templateStream = getClass().getResourceAsStream(TEMPLATE_PATH)) {
+            if (templateStream == null) {
+                throw new IllegalStateException("Không tìm thấy template hóa đơn");
+            }
+            template = HtmlTemplate.compile(new String(templateStream.readAllBytes(), StandardCharsets.UTF_8));
+        }
+        log.info("Đã biên dịch template in hóa đơn {}", TEMPLATE_PATH);
+    }
+
+    @Override
+    public String generateInvoiceHtml(SaleInvoiceFullDTO invoice) {
+        StringBuilder buffer = BUFFER.get();
+        buffer.setLength(0);
+        try {
+            template.render(invoiceScope(invoice), buffer);
+        } catch (IOException e) {
+            // StringBuilder không ném IOException
+            throw new UncheckedIOException(e);
+        }
+
+        String html = buffer.toString();
+        if (buffer.capacity() > MAX_POOLED_BUFFER_SIZE) {
+            BUFFER.remove();
+        }
+        return html;
+    }
+
+    @Override
+    public void writeInvoiceHtml(SaleInvoiceFullDTO invoice, Writer writer) throws IOException {
+        template.render(invoiceScope(invoice), writer);
+        writer.flush();
+    }
+
+    private HtmlTemplate.Scope invoiceScope(SaleInvoiceFullDTO invoice) {
+        NumberFormat currency = CURRENCY_FORMATTER.get();
+        BigDecimal remaining = invoice.totalAmount().subtract(invoice.paidAmount());
+
+        return name -> switch (name) {
+            case "invoiceNumber" -> invoice.invoiceNumber();
+            case "invoiceDate" -> invoice.invoiceDate().format(DATE_FORMATTER);
+            case "status" -> getStatusText(invoice.status());
+            case "paymentMethod" -> getPaymentMethodText(invoice.paymentMethod());
+            case "customerName" -> invoice.customerName() != null ? invoice.customerName() : "Khách lẻ";
+            case "employeeName" -> invoice.employeeName();
+            case "items" -> itemScopes(invoice.items(), currency);
+            case "hasOrderPromotions" -> invoice.appliedOrderPromotions() != null
+                    && !invoice.appliedOrderPromotions().isEmpty();
+            case "orderPromotions" -> orderPromotionScopes(invoice.appliedOrderPromotions(), currency);
+            case "subtotal" -> currency.format(invoice.subtotal());
+            case "totalDiscount" -> currency.format(invoice.totalDiscount());
+            case "totalTax" -> currency.format(invoice.totalTax());
+            case "totalAmount" -> currency.format(invoice.totalAmount());
+            case "paidAmount" -> currency.format(invoice.paidAmount());
+            case "remaining" -> currency.format(remaining);
+            case "printTime" -> LocalDateTime.now().format(DATE_FORMATTER);
+            default -> null;
+        };
+    }
+
+    private List<HtmlTemplate.Scope> itemScopes(List<SaleInvoiceItemDetailDTO> items, NumberFormat currency) {
+        List<HtmlTemplate.Scope> scopes = new ArrayList<>(items.size());
+        for (int i = 0; i < items.size(); i++) {
+            SaleInvoiceItemDetailDTO item = items.get(i);
+            int index = i + 1;
+            scopes.add(name -> switch (name) {
+                case "index" -> index;
+                case "productName" -> item.productName();
+                case "unit" -> item.unit();
+                case "quantity" -> item.quantity();
+                case "unitPrice" -> currency.format(item.unitPrice());
+                case "lineTotal" -> currency.format(item.lineTotal());
+                case "hasPromotions" -> item.appliedPromotions() != null && !item.appliedPromotions().isEmpty();
+                case "promotions" -> itemPromotionScopes(item.appliedPromotions(), currency);
+                default -> null;
+            });
+        }
+        return scopes;
+    }
+
+    private List<HtmlTemplate.Scope> itemPromotionScopes(List<AppliedPromotionDetailDTO> promotions,
+            NumberFormat currency) {
+        if (promotions == null) {
+            return List.of();
+        }
+        return promotions.stream()
+                .<HtmlTemplate.Scope>map(promo -> name -> switch (name) {
+                    case "summary" -> promo.promotionSummary();
+                    case "discount" -> currency.format(promo.discountValue());
+                    default -> null;
+                })
+                .toList();
+    }
+
+    private List<HtmlTemplate.Scope> orderPromotionScopes(List<AppliedOrderPromotionDetailDTO> promotions,
+            NumberFormat currency) {
+        if (promotions == null) {
+            return List.of();
+        }
+        return promotions.stream()
+                .<HtmlTemplate.Scope>map(promo -> name -> switch (name) {
+                    case "summary" -> promo.promotionSummary();
+                    case "discount" -> currency.format(promo.discountValue());
+                    default -> null;
+                })
+                .toList();
+    }
+
+    private String getStatusText(InvoiceStatus status) {
+        return switch (status) {
+            case UNPAID -> "Chưa thanh toán";
+            case PAID -> "Đã thanh toán";
+            default -> status.name();
+        };
+    }
+
+    private String getPaymentMethodText(PaymentMethod method) {
+        if (method == null) {
+            return "Không xác định";
+        }
+        return switch (method) {
+            case CASH -> "Tiền mặt";
+            case CARD -> "Thẻ";
+            case ONLINE -> "Chuyển khoản";
+            default -> method.name();
+        };
+    }
+}
@@ -0,0 +1,196 @@
+package iuh.fit.supermarket.service.impl;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import iuh.fit.supermarket.dto.sale.SaleInvoiceFullDTO;
+import iuh.fit.supermarket.service.InvoicePdfCacheService;
+import iuh.fit.supermarket.service.InvoicePdfService;
+import iuh.fit.supermarket.util.TimedOperation;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Implementation của InvoicePdfCacheService lưu PDF trên đĩa cục bộ
+ * Tên file là SHA-256 của dữ liệu hóa đơn và phiên bản layout, chỉ mục trong bộ nhớ
+ * ánh xạ (ID hóa đơn, phiên bản) sang mã nội dung để lần tải lại đọc thẳng file
+ */
+@Service
+@Slf4j
+public class InvoicePdfCacheServiceImpl implements InvoicePdfCacheService {
+
+    /**
+     * Tăng giá trị này khi thay đổi layout PDF để bỏ toàn bộ cache cũ
+     */
+    private static final String LAYOUT_VERSION = "1";
+
+    private final InvoicePdfService invoicePdfService;
+    private final ObjectMapper objectMapper;
+    private final Path cacheDir;
+    private final Duration retention;
+    private final Map<Integer, IndexEntry> index;
+
+    private final MeterRegistry meterRegistry;
+    private final Counter hitCounter;
+    private final Counter diskHitCounter;
+    private final Counter missCounter;
+
+    public InvoicePdfCacheServiceImpl(InvoicePdfService invoicePdfService,
+            ObjectMapper objectMapper,
+            MeterRegistry meterRegistry,
+            @Value("${invoice.pdf.cache-dir:${java.io.tmpdir}/supermarket/invoice-pdf}") String cacheDir,
+            @Value("${invoice.pdf.cache-retention-days:30}") int retentionDays,
+            @Value("${invoice.pdf.cache-index-size:10000}") int indexSize) {
+        this.invoicePdfService = invoicePdfService;
+        this.objectMapper = objectMapper;
+        this.cacheDir = Path.of(cacheDir);
+        this.retention = Duration.ofDays(retentionDays);
+        this.index = Collections.synchronizedMap(new LinkedHashMap<>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, IndexEntry> eldest) {
+                return size() > indexSize;
+            }
+        });
+
+        this.meterRegistry = meterRegistry;
+        this.hitCounter = cacheCounter(meterRegistry, "hit");
+        this.diskHitCounter = cacheCounter(meterRegistry, "disk_hit");
+        this.missCounter = cacheCounter(meterRegistry, "miss");
+    }
+
+    @PostConstruct
+    void createCacheDir() throws IOException {
+        Files.createDirectories(cacheDir);
+        log.info("Thư mục cache PDF hóa đơn: {}", cacheDir.toAbsolutePath());
+    }
+
+    @Override
+    public byte[] getOrRender(Integer invoiceId, String version, Supplier<SaleInvoiceFullDTO> loader) {
+        // 1. Chỉ mục còn đúng phiên bản: đọc file, không tải dữ liệu hóa đơn
+        IndexEntry entry = index.get(invoiceId);
+        if (entry != null && entry.version().equals(version)) {
+            byte[] cached = readIfExists(entry.contentHash());
+            if (cached != null) {
+                hitCounter.increment();
+                return cached;
+            }
+        }
+
+        // 2. Tải dữ liệu và tính mã nội dung; file có thể đã tồn tại (ví dụ sau khi khởi động lại)
+        SaleInvoiceFullDTO invoice = loader.get();
+        String contentHash = contentHash(invoice);
+
+        byte[] pdf = readIfExists(contentHash);
+        if (pdf != null) {
+            diskHitCounter.increment();
+        } else {
+            missCounter.increment();
+            pdf = TimedOperation.record(meterRegistry,
+                    Timer.builder("invoice.pdf.render").description("Thời gian render PDF hóa đơn"),
+                    () -> invoicePdfService.generateInvoicePdf(invoice));
+            write(contentHash, pdf);
+        }
+
+        index.put(invoiceId, new IndexEntry(version, contentHash));
+        return pdf;
+    }
+
+    /**
+     * Xóa các file PDF không được ghi lại trong khoảng thời gian lưu giữ (chạy lúc 3h sáng hằng ngày)
+     * Hóa đơn cũ bị xóa khỏi cache sẽ được render lại khi có yêu cầu tải
+     */
+    @Scheduled(cron = "${invoice.pdf.cache-cleanup-cron:0 0 3 * * *}")
+    public void evictExpired() {
+        FileTime threshold = FileTime.from(Instant.now().minus(retention));
+        int deleted = 0;
+
+        try (Stream<Path> files = Files.list(cacheDir)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                if (Files.getLastModifiedTime(file).compareTo(threshold) < 0 && Files.deleteIfExists(file)) {
+                    deleted++;
+                }
+            }
+        } catch (IOException e) {
+            log.error("Lỗi khi dọn cache PDF hóa đơn: {}", e.getMessage());
+        }
+
+        if (deleted > 0) {
+            log.info("Đã xóa {} file PDF hóa đơn hết hạn khỏi cache", deleted);
+        }
+    }
+
+    private String contentHash(SaleInvoiceFullDTO invoice) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(LAYOUT_VERSION.getBytes());
+            digest.update(objectMapper.writeValueAsBytes(invoice));
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (JsonProcessingException | NoSuchAlgorithmException e) {
+            throw new IllegalStateException("Không thể tính mã nội dung cho hóa đơn: " + invoice.invoiceNumber(), e);
+        }
+    }
+
+    private byte[] readIfExists(String contentHash) {
+        try {
+            return Files.readAllBytes(fileOf(contentHash));
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            log.warn("Không đọc được PDF {} từ cache: {}", contentHash, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Ghi ra file tạm rồi đổi tên để request khác không bao giờ đọc phải file ghi dở
+     */
+    private void write(String contentHash, byte[] pdf) {
+        try {
+            Path tmp = Files.createTempFile(cacheDir, contentHash, ".tmp");
+            Files.write(tmp, pdf);
+            Files.move(tmp, fileOf(contentHash), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            // Không lưu được cache vẫn trả PDF cho người dùng
+            log.warn("Không ghi được PDF {} vào cache: {}", contentHash, e.getMessage());
+        }
+    }
+
+    private Path fileOf(String contentHash) {
+        return cacheDir.resolve(contentHash + ".pdf");
+    }
+
+    private static Counter cacheCounter(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("invoice.pdf.cache")
+                .description("Số lần lấy PDF hóa đơn theo kết quả tra cache")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Phiên bản hóa đơn đã render và mã nội dung của file PDF tương ứng
+     */
+    private record IndexEntry(String version, String contentHash) {
+    }
+}
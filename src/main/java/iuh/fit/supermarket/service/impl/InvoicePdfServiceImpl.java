@@ -1,11 +1,8 @@
 package iuh.fit.supermarket.service.impl;
 
-import com.itextpdf.io.font.PdfEncodings;
-import com.itextpdf.io.font.constants.StandardFonts;
 import com.itextpdf.kernel.colors.ColorConstants;
 import com.itextpdf.kernel.colors.DeviceRgb;
 import com.itextpdf.kernel.font.PdfFont;
-import com.itextpdf.kernel.font.PdfFontFactory;
 import com.itextpdf.kernel.pdf.PdfDocument;
 import com.itextpdf.kernel.pdf.PdfWriter;
 import com.itextpdf.layout.Document;
@@ -19,6 +16,8 @@ import iuh.fit.supermarket.dto.sale.AppliedOrderPromotionDetailDTO;
 import iuh.fit.supermarket.dto.sale.SaleInvoiceFullDTO;
 import iuh.fit.supermarket.dto.sale.SaleInvoiceItemDetailDTO;
 import iuh.fit.supermarket.service.InvoicePdfService;
+import iuh.fit.supermarket.util.PdfFontProvider;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
@@ -33,10 +32,19 @@ import java.util.Locale;
  */
 @Service
 @Slf4j
+@RequiredArgsConstructor
 public class InvoicePdfServiceImpl implements InvoicePdfService {
 
     private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm:ss");
-    private static final NumberFormat CURRENCY_FORMATTER = NumberFormat.getCurrencyInstance(new Locale("vi", "VN"));
+    private static final DeviceRgb HEADER_COLOR = new DeviceRgb(200, 200, 200);
+
+    /**
+     * NumberFormat không thread-safe nên mỗi luồng render dùng một instance riêng
+     */
+    private static final ThreadLocal<NumberFormat> CURRENCY_FORMATTER = ThreadLocal
+            .withInitial(() -> NumberFormat.getCurrencyInstance(new Locale("vi", "VN")));
+
+    private final PdfFontProvider pdfFontProvider;
 
     @Override
     public byte[] generateInvoicePdf(SaleInvoiceFullDTO invoice) {
@@ -47,8 +55,8 @@ public class InvoicePdfServiceImpl implements InvoicePdfService {
             PdfDocument pdfDoc = new PdfDocument(writer);
             Document document = new Document(pdfDoc);
 
-            // Set font hỗ trợ tiếng Việt - sử dụng font từ hệ thống hoặc font embedded
-            PdfFont font = getVietnameseFont();
+            // Set font hỗ trợ tiếng Việt - tạo từ font program đã đọc sẵn khi khởi động
+            PdfFont font = pdfFontProvider.createFont();
             document.setFont(font);
 
             // Header - Thông tin cửa hàng
@@ -151,13 +159,12 @@ public class InvoicePdfServiceImpl implements InvoicePdfService {
         itemsTable.setWidth(UnitValue.createPercentValue(100));
 
         // Header của bảng
-        DeviceRgb headerColor = new DeviceRgb(200, 200, 200);
-        itemsTable.addHeaderCell(createHeaderCell("STT", headerColor));
-        itemsTable.addHeaderCell(createHeaderCell("Sản phẩm", headerColor));
-        itemsTable.addHeaderCell(createHeaderCell("ĐVT", headerColor));
-        itemsTable.addHeaderCell(createHeaderCell("SL", headerColor));
-        itemsTable.addHeaderCell(createHeaderCell("Đơn giá", headerColor));
-        itemsTable.addHeaderCell(createHeaderCell("Thành tiền", headerColor));
+        itemsTable.addHeaderCell(createHeaderCell("STT", HEADER_COLOR));
+        itemsTable.addHeaderCell(createHeaderCell("Sản phẩm", HEADER_COLOR));
+        itemsTable.addHeaderCell(createHeaderCell("ĐVT", HEADER_COLOR));
+        itemsTable.addHeaderCell(createHeaderCell("SL", HEADER_COLOR));
+        itemsTable.addHeaderCell(createHeaderCell("Đơn giá", HEADER_COLOR));
+        itemsTable.addHeaderCell(createHeaderCell("Thành tiền", HEADER_COLOR));
 
         // Dữ liệu
         int index = 1;
@@ -166,8 +173,8 @@ public class InvoicePdfServiceImpl implements InvoicePdfService {
             itemsTable.addCell(createCell(item.productName(), false));
             itemsTable.addCell(createCell(item.unit(), false));
             itemsTable.addCell(createCell(String.valueOf(item.quantity()), false));
-            itemsTable.addCell(createCell(CURRENCY_FORMATTER.format(item.unitPrice()), false));
-            itemsTable.addCell(createCell(CURRENCY_FORMATTER.format(item.lineTotal()), false));
+            itemsTable.addCell(createCell(CURRENCY_FORMATTER.get().format(item.unitPrice()), false));
+            itemsTable.addCell(createCell(CURRENCY_FORMATTER.get().format(item.lineTotal()), false));
 
             // Hiển thị khuyến mãi của item (nếu có)
             if (item.appliedPromotions() != null && !item.appliedPromotions().isEmpty()) {
@@ -181,7 +188,7 @@ public class InvoicePdfServiceImpl implements InvoicePdfService {
                 for (var promo : item.appliedPromotions()) {
                     promoText.append(promo.promotionSummary())
                             .append(" (-")
-                            .append(CURRENCY_FORMATTER.format(promo.discountValue()))
+                            .append(CURRENCY_FORMATTER.get().format(promo.discountValue()))
                             .append("); ");
                 }
 
@@ -205,7 +212,7 @@ public class InvoicePdfServiceImpl implements InvoicePdfService {
             Paragraph promoDetail = new Paragraph(
                     String.format("  • %s: -%s",
                             promo.promotionSummary(),
-                            CURRENCY_FORMATTER.format(promo.discountValue())))
+                            CURRENCY_FORMATTER.get().format(promo.discountValue())))
                     .setFontSize(10)
                     .setFontColor(ColorConstants.BLUE)
                     .setMarginLeft(10);
@@ -221,13 +228,13 @@ public class InvoicePdfServiceImpl implements InvoicePdfService {
         totalTable.setHorizontalAlignment(com.itextpdf.layout.properties.HorizontalAlignment.RIGHT);
 
         totalTable.addCell(createCell("Tổng tiền hàng:", false));
-        totalTable.addCell(createCell(CURRENCY_FORMATTER.format(invoice.subtotal()), true));
+        totalTable.addCell(createCell(CURRENCY_FORMATTER.get().format(invoice.subtotal()), true));
 
         totalTable.addCell(createCell("Tổng giảm giá:", false));
-        totalTable.addCell(createCell("-" + CURRENCY_FORMATTER.format(invoice.totalDiscount()), true));
+        totalTable.addCell(createCell("-" + CURRENCY_FORMATTER.get().format(invoice.totalDiscount()), true));
 
         totalTable.addCell(createCell("Thuế:", false));
-        totalTable.addCell(createCell(CURRENCY_FORMATTER.format(invoice.totalTax()), true));
+        totalTable.addCell(createCell(CURRENCY_FORMATTER.get().format(invoice.totalTax()), true));
 
         Cell totalLabelCell = new Cell()
                 .add(new Paragraph("TỔNG THANH TOÁN:"))
@@ -238,7 +245,7 @@ public class InvoicePdfServiceImpl implements InvoicePdfService {
         totalTable.addCell(totalLabelCell);
 
         Cell totalValueCell = new Cell()
-                .add(new Paragraph(CURRENCY_FORMATTER.format(invoice.totalAmount())))
+                .add(new Paragraph(CURRENCY_FORMATTER.get().format(invoice.totalAmount())))
                 .setBold()
                 .setFontSize(12)
                 .setFontColor(ColorConstants.RED)
@@ -247,11 +254,11 @@ public class InvoicePdfServiceImpl implements InvoicePdfService {
         totalTable.addCell(totalValueCell);
 
         totalTable.addCell(createCell("Đã thanh toán:", false));
-        totalTable.addCell(createCell(CURRENCY_FORMATTER.format(invoice.paidAmount()), true));
+        totalTable.addCell(createCell(CURRENCY_FORMATTER.get().format(invoice.paidAmount()), true));
 
         BigDecimal remaining = invoice.totalAmount().subtract(invoice.paidAmount());
         totalTable.addCell(createCell("Còn lại:", false));
-        totalTable.addCell(createCell(CURRENCY_FORMATTER.format(remaining), true));
+        totalTable.addCell(createCell(CURRENCY_FORMATTER.get().format(remaining), true));
 
         document.add(totalTable);
     }
@@ -309,50 +316,4 @@ public class InvoicePdfServiceImpl implements InvoicePdfService {
             default -> method.name();
         };
     }
-
-    /**
-     * Tạo font hỗ trợ tiếng Việt
-     * Thử các font từ hệ thống Windows/Linux, fallback về Helvetica với Unicode nếu
-     * không tìm thấy
-     */
-    private PdfFont getVietnameseFont() {
-        try {
-            // Thử tìm font Arial trên Windows
-            try {
-                String arialPath = "C:/Windows/Fonts/arial.ttf";
-                if (new java.io.File(arialPath).exists()) {
-                    return PdfFontFactory.createFont(arialPath, PdfEncodings.IDENTITY_H,
-                            PdfFontFactory.EmbeddingStrategy.PREFER_EMBEDDED);
-                }
-            } catch (Exception e) {
-                log.debug("Không tìm thấy font Arial trên Windows");
-            }
-
-            // Thử tìm font trên Linux
-            try {
-                String[] linuxFonts = {
-                        "/usr/share/fonts/truetype/dejavu/DejaVuSans.ttf",
-                        "/usr/share/fonts/truetype/liberation/LiberationSans-Regular.ttf"
-                };
-
-                for (String fontPath : linuxFonts) {
-                    if (new java.io.File(fontPath).exists()) {
-                        return PdfFontFactory.createFont(fontPath, PdfEncodings.IDENTITY_H,
-                                PdfFontFactory.EmbeddingStrategy.PREFER_EMBEDDED);
-                    }
-                }
-            } catch (Exception e) {
-                log.debug("Không tìm thấy font trên Linux");
-            }
-
-            // Fallback: Sử dụng Helvetica với encoding Unicode
-            log.warn("Không tìm thấy font hệ thống, sử dụng Helvetica (có thể không hiển thị đúng tiếng Việt)");
-            return PdfFontFactory.createFont(StandardFonts.HELVETICA,
-                    PdfEncodings.IDENTITY_H, PdfFontFactory.EmbeddingStrategy.PREFER_EMBEDDED);
-
-        } catch (Exception e) {
-            log.error("Lỗi khi tạo font: {}", e.getMessage());
-            throw new RuntimeException("Không thể tạo font cho PDF", e);
-        }
-    }
 }
@@ -11,6 +11,7 @@ import iuh.fit.supermarket.enums.OrderStatus;
 import iuh.fit.supermarket.exception.InvalidSaleDataException;
 import iuh.fit.supermarket.repository.*;
 import iuh.fit.supermarket.service.InvoiceService;
+import iuh.fit.supermarket.service.PromotionUsageService;
 import iuh.fit.supermarket.service.WarehouseService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -20,7 +21,8 @@ import org.springframework.transaction.annotation.Transactional;
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
-import java.util.HashSet;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
@@ -40,7 +42,7 @@ public class InvoiceServiceImpl implements InvoiceService {
     private final AppliedPromotionRepository appliedPromotionRepository;
     private final AppliedOrderPromotionRepository appliedOrderPromotionRepository;
     private final WarehouseService warehouseService;
-    private final PromotionDetailRepository promotionDetailRepository;
+    private final PromotionUsageService promotionUsageService;
     private final ObjectMapper objectMapper;
 
     @Override
@@ -129,50 +131,26 @@ public class InvoiceServiceImpl implements InvoiceService {
     private void updatePromotionUsageCount(Order order) {
         log.info("Cập nhật usage count cho các khuyến mãi của đơn hàng {}", order.getOrderId());
 
-        Set<Long> processedDetailIds = new HashSet<>();
+        Set<Long> processedDetailIds = new LinkedHashSet<>();
 
-        // Cập nhật usageCount cho khuyến mãi từ OrderDetails (PRODUCT_DISCOUNT, BUY_X_GET_Y)
+        // Khuyến mãi từ OrderDetails (PRODUCT_DISCOUNT, BUY_X_GET_Y)
         for (OrderDetail orderDetail : order.getOrderDetails()) {
-            if (orderDetail.getPromotionDetailId() != null &&
-                !processedDetailIds.contains(orderDetail.getPromotionDetailId())) {
-
-                promotionDetailRepository.findById(orderDetail.getPromotionDetailId())
-                    .ifPresent(detail -> {
-                        Integer currentCount = detail.getUsageCount() != null ? detail.getUsageCount() : 0;
-                        detail.setUsageCount(currentCount + 1);
-                        promotionDetailRepository.save(detail);
-                        log.debug("Đã cập nhật usageCount cho promotion detail ID: {} ({}->{})",
-                            detail.getDetailId(), currentCount, currentCount + 1);
-                    });
-
+            if (orderDetail.getPromotionDetailId() != null) {
                 processedDetailIds.add(orderDetail.getPromotionDetailId());
             }
         }
 
-        // Cập nhật usageCount cho khuyến mãi đơn hàng (ORDER_DISCOUNT)
+        // Khuyến mãi đơn hàng (ORDER_DISCOUNT)
         if (order.getAppliedOrderPromotionsJson() != null && !order.getAppliedOrderPromotionsJson().isEmpty()) {
             try {
                 List<CheckPromotionResponseDTO.OrderPromotionDTO> orderPromotions = objectMapper.readValue(
-                    order.getAppliedOrderPromotionsJson(),
-                    objectMapper.getTypeFactory().constructCollectionType(
-                        List.class,
-                        CheckPromotionResponseDTO.OrderPromotionDTO.class
-                    )
-                );
+                        order.getAppliedOrderPromotionsJson(),
+                        objectMapper.getTypeFactory().constructCollectionType(
+                                List.class,
+                                CheckPromotionResponseDTO.OrderPromotionDTO.class));
 
                 for (CheckPromotionResponseDTO.OrderPromotionDTO orderPromotion : orderPromotions) {
-                    if (orderPromotion.promotionDetailId() != null &&
-                        !processedDetailIds.contains(orderPromotion.promotionDetailId())) {
-
-                        promotionDetailRepository.findById(orderPromotion.promotionDetailId())
-                            .ifPresent(detail -> {
-                                Integer currentCount = detail.getUsageCount() != null ? detail.getUsageCount() : 0;
-                                detail.setUsageCount(currentCount + 1);
-                                promotionDetailRepository.save(detail);
-                                log.debug("Đã cập nhật usageCount cho order promotion detail ID: {} ({}->{})",
-                                    detail.getDetailId(), currentCount, currentCount + 1);
-                            });
-
+                    if (orderPromotion.promotionDetailId() != null) {
                         processedDetailIds.add(orderPromotion.promotionDetailId());
                     }
                 }
@@ -181,6 +159,12 @@ public class InvoiceServiceImpl implements InvoiceService {
             }
         }
 
+        // Tăng nguyên tử trong giới hạn usageLimit; đơn đã giao nên chỉ ghi nhận khuyến mãi vượt giới hạn
+        List<Long> rejectedDetailIds = promotionUsageService.consume(processedDetailIds);
+        if (!rejectedDetailIds.isEmpty()) {
+            log.warn("Đơn hàng {} dùng khuyến mãi đã hết lượt: {}", order.getOrderId(), rejectedDetailIds);
+        }
+
         log.info("Hoàn thành cập nhật usage count cho {} promotion details", processedDetailIds.size());
     }
 
@@ -194,8 +178,26 @@ public class InvoiceServiceImpl implements InvoiceService {
         SaleInvoiceHeader invoice = saleInvoiceHeaderRepository.findByInvoiceNumber(invoiceNumber)
                 .orElseThrow(() -> new InvalidSaleDataException("Không tìm thấy invoice: " + invoiceNumber));
 
+        List<SaleInvoiceDetail> invoiceDetails = itemPromotionsByIndex != null && !itemPromotionsByIndex.isEmpty()
+                ? saleInvoiceDetailRepository.findByInvoice_InvoiceId(invoice.getInvoiceId())
+                : List.of();
+
+        saveAppliedPromotions(invoice, invoiceDetails, orderPromotions, itemPromotionsByIndex);
+    }
+
+    @Override
+    @Transactional
+    public void saveAppliedPromotions(
+            SaleInvoiceHeader invoice,
+            List<SaleInvoiceDetail> invoiceDetails,
+            List<OrderPromotionRequestDTO> orderPromotions,
+            Map<Integer, PromotionAppliedDTO> itemPromotionsByIndex
+    ) {
+        String invoiceNumber = invoice.getInvoiceNumber();
+
         // Lưu khuyến mãi order level
         if (orderPromotions != null && !orderPromotions.isEmpty()) {
+            List<AppliedOrderPromotion> appliedOrderPromotions = new ArrayList<>();
             for (OrderPromotionRequestDTO orderPromotion : orderPromotions) {
                 AppliedOrderPromotion appliedOrderPromotion = new AppliedOrderPromotion();
                 appliedOrderPromotion.setPromotionId(orderPromotion.promotionId());
@@ -206,15 +208,16 @@ public class InvoiceServiceImpl implements InvoiceService {
                 appliedOrderPromotion.setDiscountValue(orderPromotion.discountValue());
                 appliedOrderPromotion.setInvoice(invoice);
 
-                appliedOrderPromotionRepository.save(appliedOrderPromotion);
+                appliedOrderPromotions.add(appliedOrderPromotion);
             }
+            appliedOrderPromotionRepository.saveAll(appliedOrderPromotions);
             log.info("Đã lưu {} khuyến mãi order level cho invoice {}", orderPromotions.size(), invoiceNumber);
         }
 
         // Lưu khuyến mãi item level (match theo index)
-        if (itemPromotionsByIndex != null && !itemPromotionsByIndex.isEmpty()) {
-            List<SaleInvoiceDetail> invoiceDetails = saleInvoiceDetailRepository.findByInvoice_InvoiceId(invoice.getInvoiceId());
-            
+        if (itemPromotionsByIndex != null && !itemPromotionsByIndex.isEmpty() && invoiceDetails != null) {
+            List<AppliedPromotion> appliedPromotions = new ArrayList<>();
+
             for (int i = 0; i < invoiceDetails.size(); i++) {
                 SaleInvoiceDetail invoiceDetail = invoiceDetails.get(i);
                 PromotionAppliedDTO promotion = itemPromotionsByIndex.get(i);
@@ -230,9 +233,10 @@ public class InvoiceServiceImpl implements InvoiceService {
                     appliedPromotion.setSourceLineItemId(promotion.sourceLineItemId());
                     appliedPromotion.setInvoiceDetail(invoiceDetail);
 
-                    appliedPromotionRepository.save(appliedPromotion);
+                    appliedPromotions.add(appliedPromotion);
                 }
             }
+            appliedPromotionRepository.saveAll(appliedPromotions);
             log.info("Đã lưu {} khuyến mãi item level cho invoice {}", itemPromotionsByIndex.size(), invoiceNumber);
         }
     }
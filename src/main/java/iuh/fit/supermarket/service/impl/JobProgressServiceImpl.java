@@ -0,0 +1,129 @@
+package iuh.fit.supermarket.service.impl;
+
+import iuh.fit.supermarket.dto.job.JobStatusResponse;
+import iuh.fit.supermarket.enums.JobStatus;
+import iuh.fit.supermarket.exception.NotFoundException;
+import iuh.fit.supermarket.service.JobProgressService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Implementation của JobProgressService lưu trạng thái tác vụ trong bộ nhớ
+ */
+@Service
+@Slf4j
+public class JobProgressServiceImpl implements JobProgressService {
+
+    /**
+     * Số lỗi chi tiết tối đa giữ lại cho mỗi tác vụ, các lỗi sau chỉ được đếm
+     */
+    private static final int MAX_STORED_ERRORS = 1000;
+
+    private final Map<String, JobState> jobs = new ConcurrentHashMap<>();
+
+    @Value("${job.retention-minutes:60}")
+    private long retentionMinutes;
+
+    @Override
+    public String create(String type) {
+        String jobId = UUID.randomUUID().toString();
+        jobs.put(jobId, new JobState(type));
+        log.info("Tạo tác vụ nền {} loại {}", jobId, type);
+        return jobId;
+    }
+
+    @Override
+    public void start(String jobId, Long total) {
+        JobState state = get(jobId);
+        state.total = total;
+        state.status = JobStatus.RUNNING;
+    }
+
+    @Override
+    public void addProcessed(String jobId, long count) {
+        get(jobId).processed.addAndGet(count);
+    }
+
+    @Override
+    public void addError(String jobId, String message) {
+        JobState state = get(jobId);
+        if (state.errorCount.incrementAndGet() <= MAX_STORED_ERRORS) {
+            state.errors.add(message);
+        }
+    }
+
+    @Override
+    public void complete(String jobId, String resultUrl, String message) {
+        JobState state = get(jobId);
+        state.resultUrl = resultUrl;
+        state.message = message;
+        state.finishedAt = LocalDateTime.now();
+        state.status = JobStatus.COMPLETED;
+        log.info("Tác vụ nền {} hoàn thành: {}", jobId, message);
+    }
+
+    @Override
+    public void fail(String jobId, String message) {
+        JobState state = get(jobId);
+        state.message = message;
+        state.finishedAt = LocalDateTime.now();
+        state.status = JobStatus.FAILED;
+        log.warn("Tác vụ nền {} thất bại: {}", jobId, message);
+    }
+
+    @Override
+    public JobStatusResponse getStatus(String jobId) {
+        JobState state = get(jobId);
+        return new JobStatusResponse(jobId, state.type, state.status, state.processed.get(), state.total,
+                state.resultUrl, state.message, state.errorCount.get(), List.copyOf(state.errors),
+                state.createdAt, state.finishedAt);
+    }
+
+    /**
+     * Xóa các tác vụ đã kết thúc quá thời gian lưu giữ (chạy mỗi 10 phút)
+     */
+    @Scheduled(fixedDelay = 600_000)
+    public void evictFinishedJobs() {
+        LocalDateTime threshold = LocalDateTime.now().minusMinutes(retentionMinutes);
+        jobs.values().removeIf(state -> state.finishedAt != null && state.finishedAt.isBefore(threshold));
+    }
+
+    private JobState get(String jobId) {
+        JobState state = jobs.get(jobId);
+        if (state == null) {
+            throw new NotFoundException("Không tìm thấy tác vụ với ID: " + jobId);
+        }
+        return state;
+    }
+
+    /**
+     * Trạng thái tác vụ; được ghi bởi luồng xử lý và đọc bởi request kiểm tra tiến độ
+     */
+    private static final class JobState {
+        private final String type;
+        private final LocalDateTime createdAt = LocalDateTime.now();
+        private final AtomicLong processed = new AtomicLong();
+        private final AtomicLong errorCount = new AtomicLong();
+        private final Queue<String> errors = new ConcurrentLinkedQueue<>();
+        private volatile JobStatus status = JobStatus.PENDING;
+        private volatile Long total;
+        private volatile String resultUrl;
+        private volatile String message;
+        private volatile LocalDateTime finishedAt;
+
+        private JobState(String type) {
+            this.type = type;
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package iuh.fit.supermarket.service.impl;
+
+import iuh.fit.supermarket.service.ObjectStorageService;
+import lombok.extern.slf4j.Slf4j;
+
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Lưu trữ object trong thư mục cục bộ, dùng thay R2 cho test và môi trường phát triển (storage.type = local)
+ * Thao tác chạy đồng bộ trên luồng gọi và trả về future đã hoàn thành
+ */
+@Service
+@ConditionalOnProperty(name = "storage.type", havingValue = "local")
+@Slf4j
+public class LocalObjectStorageServiceImpl implements ObjectStorageService {
+
+    private final Path rootDir;
+    private final String rootUri;
+
+    public LocalObjectStorageServiceImpl(@Value("${storage.local.root-dir:${java.io.tmpdir}/supermarket-storage}") String rootDir) {
+        this.rootDir = Paths.get(rootDir).toAbsolutePath().normalize();
+        this.rootUri = this.rootDir.toUri().toString();
+        log.info("Lưu trữ object trong thư mục cục bộ: {}", this.rootDir);
+    }
+
+    @Override
+    public CompletableFuture<Void> put(String key, Path file, String contentType) {
+        return run(() -> Files.copy(file, prepareTarget(key), StandardCopyOption.REPLACE_EXISTING));
+    }
+
+    @Override
+    public CompletableFuture<Void> put(String key, byte[] content, String contentType) {
+        return run(() -> Files.write(prepareTarget(key), content));
+    }
+
+    @Override
+    public CompletableFuture<Void> download(String key, Path target) {
+        return run(() -> Files.copy(resolve(key), target, StandardCopyOption.REPLACE_EXISTING));
+    }
+
+    @Override
+    public CompletableFuture<Void> delete(String key) {
+        return run(() -> Files.deleteIfExists(resolve(key)));
+    }
+
+    @Override
+    public String publicUrl(String key) {
+        return resolve(key).toUri().toString();
+    }
+
+    @Override
+    public String keyFromUrl(String url) {
+        if (StringUtils.isEmpty(url) || !url.startsWith(rootUri)) {
+            return null;
+        }
+        return url.substring(rootUri.length());
+    }
+
+    private Path prepareTarget(String key) throws IOException {
+        Path target = resolve(key);
+        Files.createDirectories(target.getParent());
+        return target;
+    }
+
+    /**
+     * Chặn key thoát ra ngoài thư mục gốc (ví dụ "../")
+     */
+    private Path resolve(String key) {
+        Path path = rootDir.resolve(key).normalize();
+        if (!path.startsWith(rootDir)) {
+            throw new IllegalArgumentException("Key không hợp lệ: " + key);
+        }
+        return path;
+    }
+
+    private CompletableFuture<Void> run(IoAction action) {
+        try {
+            action.run();
+            return CompletableFuture.completedFuture(null);
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(new UncheckedIOException(e));
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    @FunctionalInterface
+    private interface IoAction {
+
+        void run() throws IOException;
+    }
+}
@@ -0,0 +1,380 @@
+package iuh.fit.supermarket.service.impl;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import iuh.fit.supermarket.dto.customer.LoyaltySummaryDto;
+import iuh.fit.supermarket.dto.customer.LoyaltyTransactionDto;
+import iuh.fit.supermarket.entity.Customer;
+import iuh.fit.supermarket.entity.LoyaltyAccount;
+import iuh.fit.supermarket.entity.LoyaltyPoint;
+import iuh.fit.supermarket.entity.Order;
+import iuh.fit.supermarket.entity.ReturnInvoiceHeader;
+import iuh.fit.supermarket.entity.SaleInvoiceHeader;
+import iuh.fit.supermarket.entity.User;
+import iuh.fit.supermarket.enums.InvoiceStatus;
+import iuh.fit.supermarket.enums.LoyaltyTransactionType;
+import iuh.fit.supermarket.exception.BadRequestException;
+import iuh.fit.supermarket.exception.NotFoundException;
+import iuh.fit.supermarket.repository.LoyaltyAccountRepository;
+import iuh.fit.supermarket.repository.LoyaltyPointRepository;
+import iuh.fit.supermarket.repository.SaleInvoiceHeaderRepository;
+import iuh.fit.supermarket.repository.UserRepository;
+import iuh.fit.supermarket.service.LoyaltyService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Implementation của LoyaltyService
+ * Thứ tự ghi mỗi giao dịch: đảm bảo có tài khoản điểm -> UPDATE số dư (khóa dòng tài khoản) -> ghi sổ điểm,
+ * tất cả trong transaction của nơi gọi nên sổ điểm và số dư luôn cùng commit hoặc cùng rollback
+ */
+@Service
+@Slf4j
+public class LoyaltyServiceImpl implements LoyaltyService {
+
+    private static final List<LoyaltyTransactionType> EARN_TYPES =
+            List.of(LoyaltyTransactionType.EARN, LoyaltyTransactionType.EARN_REVERSAL);
+
+    private final LoyaltyPointRepository loyaltyPointRepository;
+    private final LoyaltyAccountRepository loyaltyAccountRepository;
+    private final SaleInvoiceHeaderRepository saleInvoiceHeaderRepository;
+    private final UserRepository userRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final Counter reconcileMismatches;
+    private final BigDecimal amountPerPoint;
+    private final BigDecimal pointValue;
+    private final BigDecimal maxRedeemRatio;
+    private final int reconcileChunkSize;
+    private final boolean reconcileRepair;
+
+    public LoyaltyServiceImpl(LoyaltyPointRepository loyaltyPointRepository,
+                              LoyaltyAccountRepository loyaltyAccountRepository,
+                              SaleInvoiceHeaderRepository saleInvoiceHeaderRepository,
+                              UserRepository userRepository,
+                              TransactionTemplate transactionTemplate,
+                              MeterRegistry meterRegistry,
+                              @Value("${loyalty.earn.amount-per-point:10000}") BigDecimal amountPerPoint,
+                              @Value("${loyalty.redeem.point-value:1000}") BigDecimal pointValue,
+                              @Value("${loyalty.redeem.max-ratio:0.5}") BigDecimal maxRedeemRatio,
+                              @Value("${loyalty.reconcile.chunk-size:1000}") int reconcileChunkSize,
+                              @Value("${loyalty.reconcile.repair:true}") boolean reconcileRepair) {
+        this.loyaltyPointRepository = loyaltyPointRepository;
+        this.loyaltyAccountRepository = loyaltyAccountRepository;
+        this.saleInvoiceHeaderRepository = saleInvoiceHeaderRepository;
+        this.userRepository = userRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.reconcileMismatches = Counter.builder("loyalty.reconcile.mismatches")
+                .description("Số tài khoản điểm có số dư lệch với sổ điểm khi đối soát")
+                .register(meterRegistry);
+        this.amountPerPoint = amountPerPoint;
+        this.pointValue = pointValue;
+        this.maxRedeemRatio = maxRedeemRatio;
+        this.reconcileChunkSize = reconcileChunkSize;
+        this.reconcileRepair = reconcileRepair;
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public int getBalance(Integer customerId) {
+        // Khách hàng chưa có tài khoản điểm: số dư bằng tổng lịch sử điểm cũ (nếu có)
+        return loyaltyAccountRepository.findBalanceByCustomerId(customerId)
+                .orElseGet(() -> Math.toIntExact(loyaltyPointRepository.sumPointsByCustomerId(customerId)));
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public LoyaltySummaryDto getMyLoyalty(String username, int page, int size) {
+        String actualUsername = extractActualUsername(username);
+        User user = userRepository.findByEmailOrPhone(actualUsername, actualUsername)
+                .orElseThrow(() -> new NotFoundException("Không tìm thấy tài khoản"));
+        Customer customer = user.getCustomer();
+        if (customer == null) {
+            throw new NotFoundException("Không tìm thấy thông tin khách hàng");
+        }
+
+        Page<LoyaltyTransactionDto> history = loyaltyPointRepository
+                .findHistoryByCustomerId(customer.getCustomerId(), PageRequest.of(page, size))
+                .map(this::toDto);
+        return new LoyaltySummaryDto(customer.getCustomerId(), getBalance(customer.getCustomerId()), history);
+    }
+
+    @Override
+    @Transactional
+    public void accrueForInvoice(Integer invoiceId) {
+        SaleInvoiceHeader invoice = saleInvoiceHeaderRepository.findById(invoiceId).orElse(null);
+        if (invoice == null || invoice.getCustomer() == null || invoice.getStatus() != InvoiceStatus.PAID) {
+            return;
+        }
+
+        int points = calculateEarnedPoints(invoice.getPaidAmount());
+        if (points <= 0) {
+            return;
+        }
+
+        LoyaltyPoint entry = newEntry(invoice.getCustomer(), points, LoyaltyTransactionType.EARN,
+                "EARN:INVOICE:" + invoiceId,
+                "Tích điểm hóa đơn " + invoice.getInvoiceNumber());
+        entry.setInvoice(invoice);
+        entry.setOrder(invoice.getOrder());
+        if (record(entry, false)) {
+            log.info("Tích {} điểm cho khách hàng {} từ hóa đơn {}",
+                    points, invoice.getCustomer().getCustomerId(), invoice.getInvoiceNumber());
+        }
+    }
+
+    @Override
+    @Transactional
+    public void reverseForReturn(ReturnInvoiceHeader returnInvoice) {
+        SaleInvoiceHeader invoice = returnInvoice.getOriginalInvoice();
+        if (invoice.getCustomer() == null) {
+            return;
+        }
+
+        // Điểm khách đã dùng cho đơn hàng không được hoàn thành tiền (hóa đơn chỉ ghi phần trả bằng tiền)
+        // nên được hoàn lại dưới dạng điểm
+        if (invoice.getOrder() != null) {
+            restoreRedeemedPoints(invoice.getOrder(),
+                    "Hoàn điểm đã dùng do trả hàng - Phiếu: " + returnInvoice.getReturnCode());
+        }
+
+        // Phiếu trả là trả toàn bộ hóa đơn nên thu hồi toàn bộ điểm còn lại của hóa đơn
+        long remaining = loyaltyPointRepository.sumPointsByInvoiceIdAndTypes(invoice.getInvoiceId(), EARN_TYPES);
+        if (remaining <= 0) {
+            return;
+        }
+
+        LoyaltyPoint entry = newEntry(invoice.getCustomer(), -Math.toIntExact(remaining),
+                LoyaltyTransactionType.EARN_REVERSAL,
+                "EARN_REVERSAL:RETURN:" + returnInvoice.getReturnId(),
+                "Thu hồi điểm do trả hàng - Phiếu: " + returnInvoice.getReturnCode());
+        entry.setInvoice(invoice);
+        entry.setOrder(invoice.getOrder());
+        // Điểm đã dùng hết vẫn bị thu hồi, số dư có thể âm và khách không dùng được điểm đến khi tích lại
+        if (record(entry, false)) {
+            log.info("Thu hồi {} điểm của khách hàng {} do trả hóa đơn {}",
+                    remaining, invoice.getCustomer().getCustomerId(), invoice.getInvoiceNumber());
+        }
+    }
+
+    @Override
+    public BigDecimal calculateRedemptionDiscount(int points, BigDecimal payableAmount) {
+        if (points < 0) {
+            throw new BadRequestException("Số điểm sử dụng không được âm");
+        }
+        if (points == 0) {
+            return BigDecimal.ZERO;
+        }
+
+        BigDecimal discount = pointValue.multiply(BigDecimal.valueOf(points));
+        BigDecimal maxDiscount = payableAmount.multiply(maxRedeemRatio).setScale(0, RoundingMode.DOWN);
+        if (discount.compareTo(maxDiscount) > 0) {
+            throw new BadRequestException(String.format(
+                    "Chỉ được dùng điểm để giảm tối đa %s (%d điểm) cho đơn hàng này",
+                    maxDiscount.toPlainString(),
+                    maxDiscount.divide(pointValue, 0, RoundingMode.DOWN).intValue()));
+        }
+        return discount;
+    }
+
+    @Override
+    @Transactional
+    public void redeemForOrder(Order order) {
+        int points = order.getLoyaltyPointsUsed() != null ? order.getLoyaltyPointsUsed() : 0;
+        if (points <= 0) {
+            return;
+        }
+
+        LoyaltyPoint entry = newEntry(order.getCustomer(), -points, LoyaltyTransactionType.REDEEM,
+                "REDEEM:ORDER:" + order.getOrderId(),
+                "Dùng điểm cho đơn hàng " + order.getOrderCode());
+        entry.setOrder(order);
+        record(entry, true);
+    }
+
+    @Override
+    @Transactional
+    public void refundRedemption(Order order) {
+        restoreRedeemedPoints(order, "Hoàn điểm do hủy đơn hàng " + order.getOrderCode());
+    }
+
+    /**
+     * Đối soát định kỳ; mỗi lô đọc số dư và tổng sổ điểm trong cùng một transaction
+     * nên cùng một snapshot, không báo lệch giả khi đang có giao dịch điểm
+     */
+    @Override
+    @Scheduled(cron = "${loyalty.reconcile.cron:0 30 3 * * *}")
+    public int reconcileBalances() {
+        long startTime = System.currentTimeMillis();
+        int checked = 0;
+        int mismatched = 0;
+        Integer afterCustomerId = 0;
+
+        while (true) {
+            Integer cursor = afterCustomerId;
+            ChunkResult result = transactionTemplate.execute(status -> reconcileChunk(cursor));
+            if (result == null || result.checked() == 0) {
+                break;
+            }
+            checked += result.checked();
+            mismatched += result.mismatched();
+            afterCustomerId = result.lastCustomerId();
+            if (result.checked() < reconcileChunkSize) {
+                break;
+            }
+        }
+
+        if (mismatched > 0) {
+            log.warn("Đối soát điểm tích lũy: {} / {} tài khoản lệch số dư ({}ms)",
+                    mismatched, checked, System.currentTimeMillis() - startTime);
+        } else {
+            log.info("Đối soát điểm tích lũy: {} tài khoản khớp số dư ({}ms)",
+                    checked, System.currentTimeMillis() - startTime);
+        }
+        return mismatched;
+    }
+
+    /**
+     * Kết quả đối soát một lô tài khoản
+     */
+    private record ChunkResult(int checked, int mismatched, Integer lastCustomerId) {
+    }
+
+    private ChunkResult reconcileChunk(Integer afterCustomerId) {
+        List<LoyaltyAccount> accounts = loyaltyAccountRepository.findChunkAfter(
+                afterCustomerId, PageRequest.of(0, reconcileChunkSize));
+        if (accounts.isEmpty()) {
+            return new ChunkResult(0, 0, afterCustomerId);
+        }
+
+        Map<Integer, Long> ledgerSums = new HashMap<>();
+        for (Object[] row : loyaltyPointRepository.sumPointsGroupByCustomerIds(
+                accounts.stream().map(LoyaltyAccount::getCustomerId).toList())) {
+            ledgerSums.put((Integer) row[0], ((Number) row[1]).longValue());
+        }
+
+        int mismatched = 0;
+        for (LoyaltyAccount account : accounts) {
+            long expected = ledgerSums.getOrDefault(account.getCustomerId(), 0L);
+            if (account.getBalance() == expected) {
+                continue;
+            }
+
+            mismatched++;
+            reconcileMismatches.increment();
+            log.warn("Số dư điểm của khách hàng {} lệch sổ điểm: số dư {}, sổ điểm {}",
+                    account.getCustomerId(), account.getBalance(), expected);
+            if (reconcileRepair) {
+                int updated = loyaltyAccountRepository.repairBalance(
+                        account.getCustomerId(), account.getBalance(), Math.toIntExact(expected));
+                if (updated == 0) {
+                    log.info("Bỏ qua sửa số dư khách hàng {} vì số dư vừa thay đổi", account.getCustomerId());
+                }
+            }
+        }
+
+        return new ChunkResult(accounts.size(), mismatched,
+                accounts.get(accounts.size() - 1).getCustomerId());
+    }
+
+    /**
+     * Ghi một giao dịch điểm và cập nhật số dư
+     *
+     * @param entry            giao dịch điểm (đã có khách hàng, số điểm, khóa nghiệp vụ)
+     * @param requireSufficient true nếu là trừ điểm cần số dư đủ
+     * @return false nếu giao dịch với khóa nghiệp vụ này đã được ghi trước đó
+     */
+    private boolean record(LoyaltyPoint entry, boolean requireSufficient) {
+        if (loyaltyPointRepository.existsByReferenceKey(entry.getReferenceKey())) {
+            log.debug("Giao dịch điểm {} đã được ghi, bỏ qua", entry.getReferenceKey());
+            return false;
+        }
+
+        Integer customerId = entry.getCustomer().getCustomerId();
+        loyaltyAccountRepository.createIfAbsent(customerId);
+
+        if (requireSufficient) {
+            if (loyaltyAccountRepository.deductIfSufficient(customerId, -entry.getPoints()) == 0) {
+                throw new BadRequestException(String.format(
+                        "Không đủ điểm tích lũy (hiện có %d, cần %d)",
+                        getBalance(customerId), -entry.getPoints()));
+            }
+        } else {
+            loyaltyAccountRepository.addToBalance(customerId, entry.getPoints());
+        }
+
+        loyaltyPointRepository.save(entry);
+        return true;
+    }
+
+    /**
+     * Hoàn lại điểm đã dùng cho đơn hàng
+     * Hủy đơn và trả hàng dùng chung khóa nghiệp vụ nên một đơn hàng chỉ được hoàn điểm một lần
+     */
+    private void restoreRedeemedPoints(Order order, String description) {
+        int points = order.getLoyaltyPointsUsed() != null ? order.getLoyaltyPointsUsed() : 0;
+        if (points <= 0 || order.getCustomer() == null) {
+            return;
+        }
+
+        LoyaltyPoint entry = newEntry(order.getCustomer(), points, LoyaltyTransactionType.REDEEM_REFUND,
+                "REDEEM_REFUND:ORDER:" + order.getOrderId(), description);
+        entry.setOrder(order);
+        if (record(entry, false)) {
+            log.info("Hoàn {} điểm cho khách hàng {} của đơn hàng {}",
+                    points, order.getCustomer().getCustomerId(), order.getOrderCode());
+        }
+    }
+
+    private LoyaltyPoint newEntry(Customer customer, int points, LoyaltyTransactionType type,
+                                  String referenceKey, String description) {
+        LoyaltyPoint entry = new LoyaltyPoint();
+        entry.setCustomer(customer);
+        entry.setPoints(points);
+        entry.setType(type);
+        entry.setReferenceKey(referenceKey);
+        entry.setDescription(description);
+        return entry;
+    }
+
+    /**
+     * Số điểm nhận được cho số tiền đã thanh toán (làm tròn xuống)
+     */
+    private int calculateEarnedPoints(BigDecimal amount) {
+        if (amount == null || amount.signum() <= 0) {
+            return 0;
+        }
+        return amount.divide(amountPerPoint, 0, RoundingMode.DOWN).intValue();
+    }
+
+    private LoyaltyTransactionDto toDto(LoyaltyPoint point) {
+        return new LoyaltyTransactionDto(
+                point.getPointId(),
+                point.getType(),
+                point.getPoints(),
+                point.getDescription(),
+                point.getOrder() != null ? point.getOrder().getOrderId() : null,
+                point.getInvoice() != null ? point.getInvoice().getInvoiceId() : null,
+                point.getEarnedDate());
+    }
+
+    private static String extractActualUsername(String username) {
+        if (username.startsWith("CUSTOMER:")) {
+            return username.substring("CUSTOMER:".length());
+        } else if (username.startsWith("EMPLOYEE:")) {
+            return username.substring("EMPLOYEE:".length());
+        }
+        return username;
+    }
+}
@@ -0,0 +1,281 @@
+package iuh.fit.supermarket.service.impl;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import iuh.fit.supermarket.entity.Customer;
+import iuh.fit.supermarket.entity.User;
+import iuh.fit.supermarket.event.OrderStatusChangedEvent;
+import iuh.fit.supermarket.exception.NotFoundException;
+import iuh.fit.supermarket.exception.TooManyRequestsException;
+import iuh.fit.supermarket.repository.UserRepository;
+import iuh.fit.supermarket.service.OrderStatusStreamService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Implementation của OrderStatusStreamService
+ * Kết nối rảnh không giữ luồng nào (SseEmitter dùng async request), chỉ tốn một bộ đệm nhỏ;
+ * việc ghi ra socket chạy trên orderStreamExecutor, mỗi kết nối tối đa một tác vụ gửi tại một thời điểm
+ */
+@Service
+@Slf4j
+public class OrderStatusStreamServiceImpl implements OrderStatusStreamService {
+
+    private static final String EVENT_NAME = "order-status";
+    private static final String ALL_ORDERS_TOPIC = "all";
+
+    private final UserRepository userRepository;
+    private final TaskExecutor orderStreamExecutor;
+    private final int bufferSize;
+    private final int maxSubscribers;
+    private final long timeoutMillis;
+    private final Counter droppedEvents;
+
+    /**
+     * Các kết nối theo topic: "customer:{id}", "store:{id}" hoặc "all"
+     */
+    private final Map<String, Set<Subscriber>> topics = new ConcurrentHashMap<>();
+    private final AtomicInteger subscriberCount = new AtomicInteger();
+    private final AtomicLong eventSequence = new AtomicLong();
+
+    public OrderStatusStreamServiceImpl(UserRepository userRepository,
+                                        @Qualifier("orderStreamExecutor") TaskExecutor orderStreamExecutor,
+                                        MeterRegistry meterRegistry,
+                                        @Value("${order.stream.buffer-size:16}") int bufferSize,
+                                        @Value("${order.stream.max-subscribers:10000}") int maxSubscribers,
+                                        @Value("${order.stream.timeout:30m}") Duration timeout) {
+        this.userRepository = userRepository;
+        this.orderStreamExecutor = orderStreamExecutor;
+        this.bufferSize = bufferSize;
+        this.maxSubscribers = maxSubscribers;
+        this.timeoutMillis = timeout.toMillis();
+        this.droppedEvents = Counter.builder("order.stream.dropped")
+                .description("Số sự kiện trạng thái đơn hàng bị bỏ do bộ đệm kết nối đầy")
+                .register(meterRegistry);
+        Gauge.builder("order.stream.subscribers", subscriberCount, AtomicInteger::get)
+                .description("Số kết nối SSE trạng thái đơn hàng đang mở")
+                .register(meterRegistry);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public SseEmitter subscribeCustomer(String username) {
+        String actualUsername = extractActualUsername(username);
+        User user = userRepository.findByEmailOrPhone(actualUsername, actualUsername)
+                .orElseThrow(() -> new NotFoundException("Không tìm thấy tài khoản"));
+        Customer customer = user.getCustomer();
+        if (customer == null) {
+            throw new NotFoundException("Tài khoản không phải khách hàng");
+        }
+        return subscribe(customerTopic(customer.getCustomerId()));
+    }
+
+    @Override
+    public SseEmitter subscribeStaff(Long storeId) {
+        return subscribe(storeId != null ? storeTopic(storeId) : ALL_ORDERS_TOPIC);
+    }
+
+    @Override
+    public void publish(OrderStatusChangedEvent event) {
+        if (event.customerId() != null) {
+            publishTo(customerTopic(event.customerId()), event);
+        }
+        if (event.storeId() != null) {
+            publishTo(storeTopic(event.storeId()), event);
+        }
+        publishTo(ALL_ORDERS_TOPIC, event);
+    }
+
+    /**
+     * Gửi heartbeat định kỳ để proxy không cắt kết nối rảnh và để phát hiện kết nối đã đóng
+     */
+    @Scheduled(fixedDelayString = "${order.stream.heartbeat-interval-ms:25000}")
+    public void sendHeartbeats() {
+        for (Set<Subscriber> subscribers : topics.values()) {
+            for (Subscriber subscriber : subscribers) {
+                boolean schedule;
+                synchronized (subscriber) {
+                    subscriber.heartbeatPending = true;
+                    schedule = subscriber.markSending();
+                }
+                if (schedule) {
+                    scheduleSend(subscriber);
+                }
+            }
+        }
+    }
+
+    private SseEmitter subscribe(String topic) {
+        if (subscriberCount.incrementAndGet() > maxSubscribers) {
+            subscriberCount.decrementAndGet();
+            throw new TooManyRequestsException("Đã đạt số kết nối theo dõi đơn hàng tối đa, vui lòng thử lại sau", 30);
+        }
+
+        SseEmitter emitter = new SseEmitter(timeoutMillis);
+        Subscriber subscriber = new Subscriber(topic, emitter);
+        emitter.onCompletion(() -> remove(subscriber));
+        emitter.onTimeout(() -> remove(subscriber));
+        emitter.onError(error -> remove(subscriber));
+        // Thêm trong compute để không xen giữa lúc remove() xóa topic rỗng (mất kết nối vừa đăng ký)
+        topics.compute(topic, (key, set) -> {
+            Set<Subscriber> subscribers = set != null ? set : ConcurrentHashMap.newKeySet();
+            subscribers.add(subscriber);
+            return subscribers;
+        });
+
+        // Gửi ngay một heartbeat để client nhận header và biết kết nối đã mở
+        synchronized (subscriber) {
+            subscriber.heartbeatPending = true;
+            subscriber.markSending();
+        }
+        scheduleSend(subscriber);
+        log.debug("Mở kết nối theo dõi đơn hàng, topic: {}", topic);
+        return emitter;
+    }
+
+    private void publishTo(String topic, OrderStatusChangedEvent event) {
+        Set<Subscriber> subscribers = topics.get(topic);
+        if (subscribers == null) {
+            return;
+        }
+        for (Subscriber subscriber : subscribers) {
+            boolean schedule;
+            synchronized (subscriber) {
+                // Bộ đệm đầy thì bỏ sự kiện cũ nhất, client luôn nhận trạng thái mới nhất
+                if (subscriber.buffer.size() >= bufferSize) {
+                    subscriber.buffer.pollFirst();
+                    droppedEvents.increment();
+                }
+                subscriber.buffer.addLast(event);
+                schedule = subscriber.markSending();
+            }
+            if (schedule) {
+                scheduleSend(subscriber);
+            }
+        }
+    }
+
+    private void scheduleSend(Subscriber subscriber) {
+        try {
+            orderStreamExecutor.execute(() -> send(subscriber));
+        } catch (TaskRejectedException e) {
+            // Sự kiện vẫn nằm trong bộ đệm, lần publish hoặc heartbeat tiếp theo sẽ thử lại
+            synchronized (subscriber) {
+                subscriber.sending = false;
+            }
+            log.debug("Hàng đợi gửi sự kiện đơn hàng đã đầy, topic: {}", subscriber.topic);
+        }
+    }
+
+    /**
+     * Gửi hết bộ đệm của một kết nối; chỉ một luồng gửi cho mỗi kết nối tại một thời điểm
+     */
+    private void send(Subscriber subscriber) {
+        while (true) {
+            OrderStatusChangedEvent event;
+            synchronized (subscriber) {
+                event = subscriber.buffer.pollFirst();
+                boolean heartbeat = subscriber.heartbeatPending;
+                subscriber.heartbeatPending = false;
+                if (event == null && !heartbeat) {
+                    subscriber.sending = false;
+                    return;
+                }
+            }
+
+            try {
+                if (event != null) {
+                    subscriber.emitter.send(SseEmitter.event()
+                            .id(String.valueOf(eventSequence.incrementAndGet()))
+                            .name(EVENT_NAME)
+                            .data(event, MediaType.APPLICATION_JSON));
+                } else {
+                    subscriber.emitter.send(SseEmitter.event().comment("heartbeat"));
+                }
+            } catch (IOException | IllegalStateException e) {
+                // Client đã ngắt kết nối; giữ cờ sending để không lên lịch gửi lại cho kết nối này
+                log.debug("Không thể gửi sự kiện đơn hàng, đóng kết nối topic {}: {}", subscriber.topic, e.getMessage());
+                remove(subscriber);
+                return;
+            }
+        }
+    }
+
+    private void remove(Subscriber subscriber) {
+        // Xóa kết nối và topic rỗng trong cùng một compute, nguyên tử với việc thêm kết nối ở subscribe()
+        boolean[] removed = new boolean[1];
+        topics.computeIfPresent(subscriber.topic, (key, set) -> {
+            removed[0] = set.remove(subscriber);
+            return set.isEmpty() ? null : set;
+        });
+        if (removed[0]) {
+            subscriberCount.decrementAndGet();
+        }
+    }
+
+    private static String customerTopic(Integer customerId) {
+        return "customer:" + customerId;
+    }
+
+    private static String storeTopic(Long storeId) {
+        return "store:" + storeId;
+    }
+
+    private static String extractActualUsername(String username) {
+        if (username.startsWith("CUSTOMER:")) {
+            return username.substring("CUSTOMER:".length());
+        } else if (username.startsWith("EMPLOYEE:")) {
+            return username.substring("EMPLOYEE:".length());
+        }
+        return username;
+    }
+
+    /**
+     * Một kết nối SSE với bộ đệm sự kiện có giới hạn
+     * Các trường (trừ topic, emitter) chỉ được đọc/ghi khi giữ khóa của chính đối tượng
+     */
+    private static final class Subscriber {
+
+        private final String topic;
+        private final SseEmitter emitter;
+        private final ArrayDeque<OrderStatusChangedEvent> buffer = new ArrayDeque<>();
+        private boolean heartbeatPending;
+        private boolean sending;
+
+        private Subscriber(String topic, SseEmitter emitter) {
+            this.topic = topic;
+            this.emitter = emitter;
+        }
+
+        /**
+         * Đánh dấu đang gửi
+         *
+         * @return true nếu nơi gọi cần lên lịch tác vụ gửi
+         */
+        private boolean markSending() {
+            if (sending) {
+                return false;
+            }
+            sending = true;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package iuh.fit.supermarket.service.impl;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import iuh.fit.supermarket.exception.TooManyRequestsException;
+import iuh.fit.supermarket.service.PasswordHashingService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Implementation của PasswordHashingService
+ * Mọi phép BCrypt chạy trên passwordHashingExecutor (số luồng cố định, hàng đợi giới hạn);
+ * luồng gọi bị chặn trong lúc chờ kết quả, tối đa bằng thời gian cấu hình (security.password.hash-timeout-ms)
+ */
+@Service
+@Slf4j
+public class PasswordHashingServiceImpl implements PasswordHashingService {
+
+    private final PasswordEncoder passwordEncoder;
+    private final ThreadPoolTaskExecutor executor;
+    private final long timeoutMillis;
+
+    /**
+     * Hash giả (cùng cost với encoder) để kiểm tra khi không có hash thật,
+     * giúp thời gian phản hồi không cho biết tài khoản có tồn tại hay không
+     */
+    private final String dummyHash;
+
+    private final Timer matchTimer;
+    private final Timer encodeTimer;
+    private final Timer waitTimer;
+    private final Counter rejectedCounter;
+
+    public PasswordHashingServiceImpl(PasswordEncoder passwordEncoder,
+                                      @Qualifier("passwordHashingExecutor") ThreadPoolTaskExecutor executor,
+                                      MeterRegistry meterRegistry,
+                                      @Value("${security.password.hash-timeout-ms:5000}") long timeoutMillis) {
+        this.passwordEncoder = passwordEncoder;
+        this.executor = executor;
+        this.timeoutMillis = timeoutMillis;
+        this.dummyHash = passwordEncoder.encode("supermarket-dummy-password");
+
+        this.matchTimer = hashTimer(meterRegistry, "matches");
+        this.encodeTimer = hashTimer(meterRegistry, "encode");
+        this.waitTimer = Timer.builder("auth.password.hash.wait")
+                .description("Thời gian chờ trong hàng đợi trước khi được băm")
+                .register(meterRegistry);
+        this.rejectedCounter = Counter.builder("auth.password.hash.rejected")
+                .description("Số yêu cầu băm mật khẩu bị từ chối do hàng đợi đầy hoặc quá thời gian chờ")
+                .register(meterRegistry);
+        Gauge.builder("auth.password.hash.queue", executor,
+                        e -> e.getThreadPoolExecutor().getQueue().size())
+                .description("Số yêu cầu băm mật khẩu đang chờ trong hàng đợi")
+                .register(meterRegistry);
+        Gauge.builder("auth.password.hash.active", executor, ThreadPoolTaskExecutor::getActiveCount)
+                .description("Số luồng đang băm mật khẩu")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public boolean matches(String rawPassword, String encodedPassword) {
+        if (encodedPassword == null || encodedPassword.isEmpty()) {
+            // Vẫn chạy BCrypt với hash giả để mất cùng thời gian như khi kiểm tra hash thật
+            execute(matchTimer, () -> passwordEncoder.matches(rawPassword, dummyHash));
+            return false;
+        }
+        return execute(matchTimer, () -> passwordEncoder.matches(rawPassword, encodedPassword));
+    }
+
+    @Override
+    public String encode(String rawPassword) {
+        return execute(encodeTimer, () -> passwordEncoder.encode(rawPassword));
+    }
+
+    @Override
+    public boolean needsRehash(String encodedPassword) {
+        return encodedPassword != null && !encodedPassword.isEmpty()
+                && passwordEncoder.upgradeEncoding(encodedPassword);
+    }
+
+    private <T> T execute(Timer hashTimer, Callable<T> task) {
+        long submittedAt = System.nanoTime();
+        Future<T> future;
+        try {
+            future = executor.submit(() -> {
+                waitTimer.record(System.nanoTime() - submittedAt, TimeUnit.NANOSECONDS);
+                return hashTimer.recordCallable(task);
+            });
+        } catch (TaskRejectedException e) {
+            rejectedCounter.increment();
+            log.warn("Hàng đợi băm mật khẩu đã đầy, từ chối yêu cầu");
+            throw new TooManyRequestsException("Hệ thống đang bận xử lý đăng nhập, vui lòng thử lại sau", 1);
+        }
+
+        try {
+            return future.get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            rejectedCounter.increment();
+            log.warn("Băm mật khẩu chờ quá {} ms, từ chối yêu cầu", timeoutMillis);
+            throw new TooManyRequestsException("Hệ thống đang bận xử lý đăng nhập, vui lòng thử lại sau", 1);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            future.cancel(true);
+            throw new IllegalStateException("Bị gián đoạn khi chờ băm mật khẩu", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IllegalStateException("Lỗi khi băm mật khẩu", cause);
+        }
+    }
+
+    private static Timer hashTimer(MeterRegistry meterRegistry, String operation) {
+        return Timer.builder("auth.password.hash")
+                .description("Thời gian chạy BCrypt")
+                .tag("operation", operation)
+                .register(meterRegistry);
+    }
+}
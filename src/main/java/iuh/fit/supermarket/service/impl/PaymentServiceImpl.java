@@ -3,6 +3,7 @@ package iuh.fit.supermarket.service.impl;
 import iuh.fit.supermarket.config.PayOSConfig;
 import iuh.fit.supermarket.entity.Order;
 import iuh.fit.supermarket.enums.OrderStatus;
+import iuh.fit.supermarket.event.OrderStatusChangedEvent;
 import iuh.fit.supermarket.exception.InvalidSaleDataException;
 import iuh.fit.supermarket.exception.NotFoundException;
 import iuh.fit.supermarket.repository.OrderRepository;
@@ -10,6 +11,7 @@ import iuh.fit.supermarket.repository.SaleInvoiceHeaderRepository;
 import iuh.fit.supermarket.service.PaymentService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import vn.payos.PayOS;
@@ -33,6 +35,7 @@ public class PaymentServiceImpl implements PaymentService {
     private final PayOSConfig payOSConfig;
     private final SaleInvoiceHeaderRepository saleInvoiceHeaderRepository;
     private final OrderRepository orderRepository;
+    private final ApplicationEventPublisher eventPublisher;
     
     @org.springframework.beans.factory.annotation.Autowired
     @org.springframework.context.annotation.Lazy
@@ -178,6 +181,7 @@ public class PaymentServiceImpl implements PaymentService {
             currentNote + " | Transaction ID: " + transactionId);
 
         orderRepository.save(order);
+        eventPublisher.publishEvent(OrderStatusChangedEvent.of(order, OrderStatus.UNPAID));
 
         log.info("Đã xử lý thành công thanh toán cho đơn hàng {}, chuyển sang trạng thái PENDING, transactionId: {}",
                 orderId, transactionId);
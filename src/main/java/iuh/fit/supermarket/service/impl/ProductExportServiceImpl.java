@@ -0,0 +1,110 @@
+package iuh.fit.supermarket.service.impl;
+
+import iuh.fit.supermarket.dto.job.JobStatusResponse;
+import iuh.fit.supermarket.repository.ProductRepository;
+import iuh.fit.supermarket.service.JobProgressService;
+import iuh.fit.supermarket.service.ProductExcelService;
+import iuh.fit.supermarket.service.ProductExportService;
+import iuh.fit.supermarket.service.S3FileUploadService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.function.LongConsumer;
+
+/**
+ * Implementation của ProductExportService
+ * File Excel được ghi ra file tạm rồi upload theo luồng, không giữ toàn bộ file trong bộ nhớ
+ */
+@Service
+@Slf4j
+public class ProductExportServiceImpl implements ProductExportService {
+
+    private static final String JOB_TYPE = "PRODUCT_EXPORT";
+    private static final String EXCEL_CONTENT_TYPE = "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet";
+
+    private final ProductExcelService productExcelService;
+    private final ProductRepository productRepository;
+    private final S3FileUploadService s3FileUploadService;
+    private final JobProgressService jobProgressService;
+    private final TaskExecutor backgroundJobExecutor;
+
+    public ProductExportServiceImpl(ProductExcelService productExcelService,
+            ProductRepository productRepository,
+            S3FileUploadService s3FileUploadService,
+            JobProgressService jobProgressService,
+            @Qualifier("backgroundJobExecutor") TaskExecutor backgroundJobExecutor) {
+        this.productExcelService = productExcelService;
+        this.productRepository = productRepository;
+        this.s3FileUploadService = s3FileUploadService;
+        this.jobProgressService = jobProgressService;
+        this.backgroundJobExecutor = backgroundJobExecutor;
+    }
+
+    @Override
+    public String exportToStorage() throws IOException {
+        return exportToStorage(count -> {
+        });
+    }
+
+    @Override
+    public void exportTo(OutputStream outputStream) throws IOException {
+        productExcelService.exportActiveProducts(outputStream, count -> {
+        });
+    }
+
+    @Override
+    public JobStatusResponse startExportJob() {
+        String jobId = jobProgressService.create(JOB_TYPE);
+
+        try {
+            backgroundJobExecutor.execute(() -> runExportJob(jobId));
+        } catch (TaskRejectedException e) {
+            jobProgressService.fail(jobId, "Hệ thống đang xử lý quá nhiều tác vụ, vui lòng thử lại sau");
+        }
+
+        return jobProgressService.getStatus(jobId);
+    }
+
+    private void runExportJob(String jobId) {
+        try {
+            jobProgressService.start(jobId, productRepository.countByIsActiveAndIsDeleted(true, false));
+            String downloadUrl = exportToStorage(count -> jobProgressService.addProcessed(jobId, count));
+            jobProgressService.complete(jobId, downloadUrl, "Export thành công");
+        } catch (Exception e) {
+            log.error("Lỗi khi export sản phẩm (tác vụ {}): ", jobId, e);
+            jobProgressService.fail(jobId, "Lỗi khi export sản phẩm: " + e.getMessage());
+        }
+    }
+
+    private String exportToStorage(LongConsumer onProgress) throws IOException {
+        Path tempFile = Files.createTempFile("product-export-", ".xlsx");
+        try {
+            long exported;
+            try (OutputStream outputStream = new BufferedOutputStream(Files.newOutputStream(tempFile))) {
+                exported = productExcelService.exportActiveProducts(outputStream, onProgress);
+            }
+
+            // Tạo tên file với timestamp
+            String fileName = "danh_sach_san_pham_" +
+                    LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss")) + ".xlsx";
+
+            // Upload file lên R2 storage và lấy URL download
+            String downloadUrl = s3FileUploadService.uploadFile(tempFile, fileName, EXCEL_CONTENT_TYPE, "exports");
+
+            log.info("Export Excel thành công với {} sản phẩm, URL: {}", exported, downloadUrl);
+            return downloadUrl;
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+}
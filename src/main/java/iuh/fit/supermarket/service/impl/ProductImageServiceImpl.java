@@ -8,6 +8,8 @@ import iuh.fit.supermarket.entity.ProductImage;
 import iuh.fit.supermarket.repository.ProductImageRepository;
 import iuh.fit.supermarket.repository.ProductRepository;
 import iuh.fit.supermarket.service.ProductImageService;
+import iuh.fit.supermarket.service.ProductImageVariantService;
+import iuh.fit.supermarket.service.ProductImageVariantService.StagedImage;
 import iuh.fit.supermarket.service.S3FileUploadService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -33,6 +35,7 @@ public class ProductImageServiceImpl implements ProductImageService {
     private final ProductImageRepository productImageRepository;
     private final ProductRepository productRepository;
     private final S3FileUploadService s3FileUploadService;
+    private final ProductImageVariantService productImageVariantService;
 
     @Value("${product.image.max-count:5}")
     private int maxImageCount;
@@ -61,10 +64,11 @@ public class ProductImageServiceImpl implements ProductImageService {
             throw new IllegalArgumentException("File ảnh không hợp lệ");
         }
 
+        StagedImage stagedImage = null;
         try {
-            // Upload file lên S3
-            String imageUrl = s3FileUploadService.uploadFile(request.getImageFile(),
-                    "products");
+            // Upload file gốc lên S3 (đọc dần từ file tạm), file tạm được giữ để tạo biến thể
+            stagedImage = productImageVariantService.stageAndUpload(request.getImageFile(), "products");
+            String imageUrl = stagedImage.originalUrl();
 
             // Tạo entity ProductImage
             ProductImage productImage = new ProductImage();
@@ -89,6 +93,10 @@ public class ProductImageServiceImpl implements ProductImageService {
             // Lưu vào database
             productImage = productImageRepository.save(productImage);
 
+            // Tạo ảnh thu nhỏ/thẻ/cỡ lớn trên luồng nền sau khi commit
+            productImageVariantService.scheduleVariants(productImage.getImageId(), stagedImage);
+            stagedImage = null;
+
             log.info("Upload ảnh thành công cho sản phẩm ID: {}, Image ID: {}",
                     request.getProductId(),
                     productImage.getImageId());
@@ -102,6 +110,9 @@ public class ProductImageServiceImpl implements ProductImageService {
                     request.getImageFile().getContentType());
 
         } catch (Exception e) {
+            if (stagedImage != null) {
+                productImageVariantService.discard(stagedImage);
+            }
             log.error("Lỗi khi upload ảnh cho sản phẩm ID: {}", request.getProductId(),
                     e);
             throw new RuntimeException("Upload ảnh thất bại: " + e.getMessage());
@@ -211,6 +222,7 @@ public class ProductImageServiceImpl implements ProductImageService {
             if (!deletedFromS3) {
                 log.warn("Không thể xóa file từ S3: {}", imageUrl);
             }
+            productImageVariantService.deleteVariants(image);
 
             // Xóa record từ database
             productImageRepository.delete(image);
@@ -317,6 +329,9 @@ public class ProductImageServiceImpl implements ProductImageService {
         ProductImageDto dto = new ProductImageDto();
         dto.setImageId(image.getImageId());
         dto.setImageUrl(image.getImageUrl());
+        dto.setThumbnailUrl(image.getThumbnailUrl());
+        dto.setCardUrl(image.getCardUrl());
+        dto.setFullUrl(image.getFullUrl());
         dto.setImageAlt(image.getImageAlt());
         dto.setSortOrder(image.getSortOrder());
         dto.setCreatedAt(image.getCreatedAt());
@@ -0,0 +1,377 @@
+package iuh.fit.supermarket.service.impl;
+
+import iuh.fit.supermarket.entity.ProductImage;
+import iuh.fit.supermarket.repository.ProductImageRepository;
+import iuh.fit.supermarket.service.ProductImageVariantService;
+import iuh.fit.supermarket.service.S3FileUploadService;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.multipart.MultipartFile;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Implementation của ProductImageVariantService
+ * Ảnh upload được ghi ra file tạm và upload bản gốc từ file (không đọc cả file vào heap);
+ * sau khi transaction commit, luồng nền giải mã ảnh một lần, tạo các biến thể JPEG và lưu URL vào ProductImage.
+ * Số luồng xử lý nhỏ và cố định nên bộ nhớ dùng cho ảnh giải mã luôn có giới hạn
+ */
+@Service
+@Slf4j
+public class ProductImageVariantServiceImpl implements ProductImageVariantService {
+
+    private static final String VARIANT_FOLDER = "product-images/variants";
+    private static final String VARIANT_CONTENT_TYPE = "image/jpeg";
+
+    private final S3FileUploadService s3FileUploadService;
+    private final ProductImageRepository productImageRepository;
+    private final TaskExecutor imageProcessingExecutor;
+    private final Path stagingDir;
+    private final List<VariantSpec> variantSpecs;
+    private final float jpegQuality;
+    private final long maxSourcePixels;
+    private final int backfillBatchSize;
+
+    /**
+     * ID ảnh đang chờ hoặc đang tạo biến thể, tránh xử lý trùng giữa upload và tác vụ định kỳ
+     */
+    private final Set<Integer> inFlight = ConcurrentHashMap.newKeySet();
+
+    /**
+     * ID ảnh tạo biến thể thất bại (ví dụ định dạng ImageIO không đọc được như WebP),
+     * tác vụ định kỳ bỏ qua để không tải lại ảnh gốc mỗi lần chạy
+     */
+    private final Set<Integer> failed = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Con trỏ của tác vụ định kỳ, quay về 0 khi đã duyệt hết
+     */
+    private volatile int backfillCursor;
+
+    public ProductImageVariantServiceImpl(S3FileUploadService s3FileUploadService,
+            ProductImageRepository productImageRepository,
+            @Qualifier("imageProcessingExecutor") TaskExecutor imageProcessingExecutor,
+            @Value("${product.image.staging-dir:${java.io.tmpdir}/supermarket/image-staging}") String stagingDir,
+            @Value("${product.image.variants.thumbnail-size:200}") int thumbnailSize,
+            @Value("${product.image.variants.card-size:600}") int cardSize,
+            @Value("${product.image.variants.full-size:1600}") int fullSize,
+            @Value("${product.image.variants.jpeg-quality:0.8}") float jpegQuality,
+            @Value("${product.image.variants.max-source-pixels:25000000}") long maxSourcePixels,
+            @Value("${product.image.variants.backfill-batch-size:50}") int backfillBatchSize) {
+        this.s3FileUploadService = s3FileUploadService;
+        this.productImageRepository = productImageRepository;
+        this.imageProcessingExecutor = imageProcessingExecutor;
+        this.stagingDir = Path.of(stagingDir);
+        this.variantSpecs = List.of(
+                new VariantSpec("thumb", thumbnailSize),
+                new VariantSpec("card", cardSize),
+                new VariantSpec("full", fullSize));
+        this.jpegQuality = jpegQuality;
+        this.maxSourcePixels = maxSourcePixels;
+        this.backfillBatchSize = backfillBatchSize;
+    }
+
+    /**
+     * Tạo thư mục tạm và dọn file còn sót từ lần chạy trước
+     * (ảnh của các file này chưa có biến thể nên tác vụ định kỳ sẽ tạo lại từ S3)
+     */
+    @PostConstruct
+    void prepareStagingDir() throws IOException {
+        Files.createDirectories(stagingDir);
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(stagingDir)) {
+            for (Path file : files) {
+                deleteQuietly(file);
+            }
+        }
+        log.info("Thư mục tạm xử lý ảnh sản phẩm: {}", stagingDir.toAbsolutePath());
+    }
+
+    @Override
+    public StagedImage stageAndUpload(MultipartFile file, String folder) {
+        Path staged = null;
+        try {
+            staged = Files.createTempFile(stagingDir, "upload-", ".tmp");
+            // MultipartFile lớn đã nằm trên đĩa nên transferTo chỉ là copy/move file
+            file.transferTo(staged);
+
+            String fileName = s3FileUploadService.generateUniqueFileName(file.getOriginalFilename());
+            String originalUrl = s3FileUploadService.uploadFile(staged, fileName, file.getContentType(), folder);
+            return new StagedImage(originalUrl, staged);
+
+        } catch (IOException e) {
+            deleteQuietly(staged);
+            throw new UncheckedIOException("Không thể lưu file ảnh tạm: " + e.getMessage(), e);
+        } catch (RuntimeException e) {
+            deleteQuietly(staged);
+            throw e;
+        }
+    }
+
+    @Override
+    public void scheduleVariants(Integer imageId, StagedImage stagedImage) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            submit(imageId, stagedImage.file(), null);
+            return;
+        }
+
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status == STATUS_COMMITTED) {
+                    submit(imageId, stagedImage.file(), null);
+                } else {
+                    deleteQuietly(stagedImage.file());
+                }
+            }
+        });
+    }
+
+    @Override
+    public void discard(StagedImage stagedImage) {
+        deleteQuietly(stagedImage.file());
+    }
+
+    @Override
+    public void deleteVariants(ProductImage image) {
+        for (String url : new String[]{image.getThumbnailUrl(), image.getCardUrl(), image.getFullUrl()}) {
+            if (url != null && !s3FileUploadService.deleteFile(url)) {
+                log.warn("Không thể xóa biến thể ảnh từ S3: {}", url);
+            }
+        }
+    }
+
+    /**
+     * Tạo biến thể cho ảnh chưa có theo từng lô nhỏ, bỏ qua ảnh vừa upload (đang được xử lý)
+     * Chỉ đưa việc vào executor nên không giữ luồng scheduler trong lúc tải và resize ảnh
+     */
+    @Override
+    @Scheduled(initialDelayString = "${product.image.variants.backfill-initial-delay-ms:60000}",
+            fixedDelayString = "${product.image.variants.backfill-interval-ms:300000}")
+    public void backfillMissingVariants() {
+        List<ProductImage> images = productImageRepository.findWithoutVariants(
+                backfillCursor, LocalDateTime.now().minusMinutes(10), PageRequest.of(0, backfillBatchSize));
+        if (images.isEmpty()) {
+            backfillCursor = 0;
+            return;
+        }
+
+        int submitted = 0;
+        for (ProductImage image : images) {
+            if (inFlight.contains(image.getImageId()) || failed.contains(image.getImageId())) {
+                backfillCursor = image.getImageId();
+                continue;
+            }
+            Path target;
+            try {
+                target = Files.createTempFile(stagingDir, "backfill-", ".tmp");
+            } catch (IOException e) {
+                log.warn("Không thể tạo file tạm để tạo biến thể ảnh: {}", e.getMessage());
+                return;
+            }
+            if (!submit(image.getImageId(), target, image.getImageUrl())) {
+                // Hàng đợi đầy: lần chạy sau tiếp tục từ ảnh này
+                break;
+            }
+            backfillCursor = image.getImageId();
+            submitted++;
+        }
+        log.info("Đã lên lịch tạo biến thể cho {} ảnh cũ", submitted);
+    }
+
+    /**
+     * Đưa việc tạo biến thể vào executor; sourceUrl khác null thì tải ảnh gốc từ S3 về file trước
+     *
+     * @return false nếu ảnh đang được xử lý hoặc hàng đợi đầy
+     */
+    private boolean submit(Integer imageId, Path file, String sourceUrl) {
+        if (!inFlight.add(imageId)) {
+            deleteQuietly(file);
+            return false;
+        }
+
+        try {
+            imageProcessingExecutor.execute(() -> {
+                try {
+                    if (sourceUrl != null) {
+                        s3FileUploadService.downloadFile(sourceUrl, file);
+                    }
+                    generateVariants(imageId, file);
+                } catch (Exception e) {
+                    failed.add(imageId);
+                    log.warn("Không thể tạo biến thể cho ảnh ID: {}. Lỗi: {}", imageId, e.getMessage());
+                } finally {
+                    inFlight.remove(imageId);
+                    deleteQuietly(file);
+                }
+            });
+            return true;
+        } catch (TaskRejectedException e) {
+            inFlight.remove(imageId);
+            deleteQuietly(file);
+            log.warn("Hàng đợi xử lý ảnh đã đầy, biến thể của ảnh ID: {} sẽ được tạo bởi tác vụ định kỳ", imageId);
+            return false;
+        }
+    }
+
+    private void generateVariants(Integer imageId, Path file) throws IOException {
+        long start = System.currentTimeMillis();
+        BufferedImage source = readImage(file);
+
+        // Upload mỗi biến thể ngay khi encode xong, song song với việc resize biến thể tiếp theo
+        List<CompletableFuture<String>> uploads = new ArrayList<>(variantSpecs.size());
+        long totalBytes = 0;
+        for (VariantSpec spec : variantSpecs) {
+            byte[] jpeg = encodeJpeg(resize(source, spec.maxSize()));
+            totalBytes += jpeg.length;
+            // Tên file cố định theo ID ảnh nên tạo lại chỉ ghi đè, không sinh file rác
+            String fileName = "image_" + imageId + "_" + spec.suffix() + ".jpg";
+            uploads.add(s3FileUploadService.uploadFileAsync(jpeg, fileName, VARIANT_CONTENT_TYPE, VARIANT_FOLDER));
+        }
+        CompletableFuture.allOf(uploads.toArray(CompletableFuture[]::new)).join();
+        List<String> urls = uploads.stream().map(CompletableFuture::join).toList();
+
+        int updated = productImageRepository.updateVariantUrls(imageId, urls.get(0), urls.get(1), urls.get(2));
+        if (updated == 0) {
+            // Ảnh đã bị xóa trong lúc xử lý
+            urls.forEach(s3FileUploadService::deleteFile);
+            return;
+        }
+
+        log.info("Đã tạo {} biến thể cho ảnh ID: {} ({}x{} → {} bytes) trong {} ms", urls.size(), imageId,
+                source.getWidth(), source.getHeight(), totalBytes, System.currentTimeMillis() - start);
+    }
+
+    /**
+     * Giải mã ảnh gốc sau khi đã kiểm tra kích thước từ header
+     * Ảnh giải mã chiếm khoảng 4 byte mỗi pixel bất kể dung lượng file, nên ảnh nén tốt nhưng kích thước
+     * rất lớn bị từ chối trước khi cấp phát bộ nhớ cho bitmap
+     */
+    private BufferedImage readImage(Path file) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(file.toFile())) {
+            Iterator<ImageReader> readers = input != null ? ImageIO.getImageReaders(input) : null;
+            if (readers == null || !readers.hasNext()) {
+                throw new IllegalArgumentException("Định dạng ảnh không được hỗ trợ");
+            }
+
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+                if ((long) width * height > maxSourcePixels) {
+                    throw new IllegalArgumentException(String.format(
+                            "Ảnh quá lớn (%dx%d pixel), tối đa %d pixel", width, height, maxSourcePixels));
+                }
+                return reader.read(0);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * Thu nhỏ để cạnh dài nhất không vượt quá maxSize (không phóng to ảnh nhỏ)
+     * Thu nhỏ từng bước một nửa để ảnh không bị răng cưa khi tỉ lệ lớn
+     */
+    private static BufferedImage resize(BufferedImage source, int maxSize) {
+        double scale = Math.min(1.0, (double) maxSize / Math.max(source.getWidth(), source.getHeight()));
+        int targetWidth = Math.max(1, (int) Math.round(source.getWidth() * scale));
+        int targetHeight = Math.max(1, (int) Math.round(source.getHeight() * scale));
+
+        BufferedImage current = source;
+        int width = source.getWidth();
+        int height = source.getHeight();
+        do {
+            width = Math.max(targetWidth, width / 2);
+            height = Math.max(targetHeight, height / 2);
+            current = draw(current, width, height);
+        } while (width != targetWidth || height != targetHeight);
+        return current;
+    }
+
+    private static BufferedImage draw(BufferedImage source, int width, int height) {
+        BufferedImage result = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = result.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            // Nền trắng cho ảnh PNG trong suốt vì JPEG không có kênh alpha
+            graphics.setColor(Color.WHITE);
+            graphics.fillRect(0, 0, width, height);
+            graphics.drawImage(source, 0, 0, width, height, null);
+        } finally {
+            graphics.dispose();
+        }
+        return result;
+    }
+
+    private byte[] encodeJpeg(BufferedImage image) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        try {
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(jpegQuality);
+
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            try (ImageOutputStream imageOutputStream = ImageIO.createImageOutputStream(outputStream)) {
+                writer.setOutput(imageOutputStream);
+                writer.write(null, new IIOImage(image, null, null), param);
+            }
+            return outputStream.toByteArray();
+        } finally {
+            writer.dispose();
+        }
+    }
+
+    private static void deleteQuietly(Path file) {
+        if (file == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.debug("Không xóa được file tạm {}: {}", file, e.getMessage());
+        }
+    }
+
+    /**
+     * Cấu hình một biến thể ảnh
+     *
+     * @param suffix  hậu tố tên file
+     * @param maxSize độ dài tối đa của cạnh dài nhất (pixel)
+     */
+    private record VariantSpec(String suffix, int maxSize) {
+    }
+}
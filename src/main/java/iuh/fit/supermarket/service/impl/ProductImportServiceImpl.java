@@ -0,0 +1,565 @@
+package iuh.fit.supermarket.service.impl;
+
+import iuh.fit.supermarket.dto.job.JobStatusResponse;
+import iuh.fit.supermarket.dto.product.ProductImportItem;
+import iuh.fit.supermarket.dto.product.ProductImportResult;
+import iuh.fit.supermarket.dto.product.ProductUnitRequest;
+import iuh.fit.supermarket.entity.Brand;
+import iuh.fit.supermarket.entity.Category;
+import iuh.fit.supermarket.entity.Product;
+import iuh.fit.supermarket.entity.ProductUnit;
+import iuh.fit.supermarket.entity.Unit;
+import iuh.fit.supermarket.exception.DuplicateProductException;
+import iuh.fit.supermarket.exception.ProductException;
+import iuh.fit.supermarket.repository.BrandRepository;
+import iuh.fit.supermarket.repository.CategoryRepository;
+import iuh.fit.supermarket.repository.ProductRepository;
+import iuh.fit.supermarket.repository.ProductUnitRepository;
+import iuh.fit.supermarket.repository.UnitRepository;
+import iuh.fit.supermarket.service.CategoryTreeService;
+import iuh.fit.supermarket.service.BarcodeService;
+import iuh.fit.supermarket.service.ProductExcelService;
+import iuh.fit.supermarket.service.ProductImportService;
+import iuh.fit.supermarket.service.impl.ExcelImportJobRunner.ImportCandidate;
+import iuh.fit.supermarket.service.impl.ExcelImportJobRunner.RowRejecter;
+import iuh.fit.supermarket.util.BarcodeUtils;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Implementation của ProductImportService
+ * Quy trình: đọc file theo luồng (SAX) → ánh xạ toàn bộ thương hiệu, danh mục, đơn vị tính trong một lần
+ * → validate song song → kiểm tra trùng lặp theo thứ tự dòng → ghi theo từng lô, mỗi lô một transaction
+ * Phần file tạm, tác vụ nền, báo lỗi theo dòng và ghi theo lô dùng chung ExcelImportJobRunner
+ */
+@Service
+@Slf4j
+public class ProductImportServiceImpl implements ProductImportService {
+
+    private static final String JOB_TYPE = "PRODUCT_IMPORT";
+    private static final String AUTO_CREATED_DESCRIPTION = "Tự động tạo từ import Excel";
+    private static final String BARCODE_FOLDER = "barcodes/products";
+    private static final int MAX_PRODUCT_CODE_NUMBER = 99999;
+
+    private final ProductExcelService productExcelService;
+    private final ProductRepository productRepository;
+    private final ProductUnitRepository productUnitRepository;
+    private final BrandRepository brandRepository;
+    private final CategoryRepository categoryRepository;
+    private final CategoryTreeService categoryTreeService;
+    private final UnitRepository unitRepository;
+    private final BarcodeService barcodeService;
+    private final ExcelImportJobRunner importJobRunner;
+    private final ProductImportHandler importHandler = new ProductImportHandler();
+    private final TransactionTemplate transactionTemplate;
+    private final int chunkSize;
+    private final boolean generateBarcodeImages;
+
+    public ProductImportServiceImpl(ProductExcelService productExcelService,
+            ProductRepository productRepository,
+            ProductUnitRepository productUnitRepository,
+            BrandRepository brandRepository,
+            CategoryRepository categoryRepository,
+            CategoryTreeService categoryTreeService,
+            UnitRepository unitRepository,
+            BarcodeService barcodeService,
+            ExcelImportJobRunner importJobRunner,
+            PlatformTransactionManager transactionManager,
+            @Value("${product.import.chunk-size:500}") int chunkSize,
+            @Value("${product.import.generate-barcode-images:true}") boolean generateBarcodeImages) {
+        this.productExcelService = productExcelService;
+        this.productRepository = productRepository;
+        this.productUnitRepository = productUnitRepository;
+        this.brandRepository = brandRepository;
+        this.categoryRepository = categoryRepository;
+        this.categoryTreeService = categoryTreeService;
+        this.unitRepository = unitRepository;
+        this.barcodeService = barcodeService;
+        this.importJobRunner = importJobRunner;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.chunkSize = chunkSize;
+        this.generateBarcodeImages = generateBarcodeImages;
+    }
+
+    @Override
+    public ProductImportResult importProducts(MultipartFile file) throws IOException {
+        ExcelImportJobRunner.ImportSummary summary = importJobRunner.run(file, importHandler);
+        return new ProductImportResult(summary.totalRows(), summary.successCount(), summary.errorCount(),
+                summary.errors());
+    }
+
+    @Override
+    public JobStatusResponse startImportJob(MultipartFile file) throws IOException {
+        return importJobRunner.start(file, importHandler);
+    }
+
+    /**
+     * Ánh xạ dữ liệu tham chiếu, validate và kiểm tra trùng mã / tên / mã vạch theo đúng thứ tự dòng
+     */
+    private List<ImportCandidate<ValidatedProduct>> prepareCandidates(List<ProductImportItem> items,
+            RowRejecter rejecter) {
+        // Ánh xạ thương hiệu, danh mục, đơn vị tính và tải dữ liệu kiểm tra trùng trong một transaction
+        ReferenceData references = transactionTemplate.execute(status -> loadReferences(items));
+
+        // Validate từng sản phẩm song song (chỉ đọc dữ liệu đã tải, không truy cập DB)
+        List<ValidatedProduct> validated = items.parallelStream()
+                .map(item -> validate(item, references))
+                .toList();
+
+        // Kiểm tra trùng và sinh mã theo đúng thứ tự dòng trong file
+        List<ImportCandidate<ValidatedProduct>> candidates = new ArrayList<>(validated.size());
+        for (ValidatedProduct product : validated) {
+            String error = product.error();
+            if (error == null) {
+                try {
+                    candidates.add(new ImportCandidate<>(product.item().rowNum(), product,
+                            claimUniqueValues(product, references)));
+                    continue;
+                } catch (ProductException | DuplicateProductException e) {
+                    error = e.getMessage();
+                }
+            }
+            rejecter.reject(product.item().rowNum(), error);
+        }
+        return candidates;
+    }
+
+    /**
+     * Ghi một lô sản phẩm, được ExcelImportJobRunner gọi trong transaction
+     *
+     * @return các đơn vị sản phẩm đã tạo
+     */
+    private List<ProductUnit> saveProducts(List<ImportCandidate<ValidatedProduct>> candidates) {
+        List<Product> entities = new ArrayList<>(candidates.size());
+        for (ImportCandidate<ValidatedProduct> candidate : candidates) {
+            ValidatedProduct validated = candidate.value();
+            ProductImportItem item = validated.item();
+            Product product = new Product();
+            product.setCode(candidate.code());
+            product.setName(item.name());
+            product.setDescription(item.description());
+            product.setCategory(categoryRepository.getReferenceById(validated.categoryId()));
+            product.setBrand(validated.brandId() != null ? brandRepository.getReferenceById(validated.brandId()) : null);
+            product.setIsRewardPoint(item.isRewardPoint());
+            product.setIsActive(item.isActive());
+            product.setIsDeleted(false);
+            entities.add(product);
+        }
+        productRepository.saveAll(entities);
+
+        List<ProductUnit> units = new ArrayList<>();
+        for (int i = 0; i < candidates.size(); i++) {
+            for (ValidatedUnit validatedUnit : candidates.get(i).value().units()) {
+                ProductUnit productUnit = new ProductUnit();
+                productUnit.setProduct(entities.get(i));
+                productUnit.setUnit(unitRepository.getReferenceById(validatedUnit.unitId()));
+                productUnit.setConversionValue(validatedUnit.conversionValue());
+                productUnit.setIsBaseUnit(validatedUnit.isBaseUnit());
+                productUnit.setBarcode(validatedUnit.barcode());
+                productUnit.setIsActive(true);
+                productUnit.setIsDeleted(false);
+                units.add(productUnit);
+            }
+        }
+        productUnitRepository.saveAll(units);
+        return units;
+    }
+
+    /**
+     * Tạo và upload ảnh barcode cho các đơn vị vừa tạo sau khi lô đã commit
+     * Lỗi upload chỉ được log, không ảnh hưởng sản phẩm đã tạo
+     */
+    private void createBarcodeImages(List<ProductUnit> units) {
+        Map<Long, String> imageUrls = new ConcurrentHashMap<>();
+        // Render tuần tự, các upload chạy đồng thời trên client bất đồng bộ (giới hạn bởi kho lưu trữ)
+        CompletableFuture<?>[] uploads = units.stream()
+                .filter(unit -> unit.getBarcode() != null)
+                .map(unit -> barcodeService.generateBarcodeUrlAsync(
+                                unit.getBarcode(), com.google.zxing.BarcodeFormat.EAN_13, BARCODE_FOLDER)
+                        .handle((url, error) -> {
+                            if (error != null) {
+                                log.warn("Không thể tạo barcode image cho product unit ID: {}. Lỗi: {}",
+                                        unit.getId(), error.getMessage());
+                            } else {
+                                imageUrls.put(unit.getId(), url);
+                            }
+                            return null;
+                        }))
+                .toArray(CompletableFuture[]::new);
+        CompletableFuture.allOf(uploads).join();
+
+        if (!imageUrls.isEmpty()) {
+            transactionTemplate.executeWithoutResult(status -> imageUrls.forEach(productUnitRepository::updateBarcodeImageUrl));
+        }
+    }
+
+    // ==================== ÁNH XẠ DỮ LIỆU THAM CHIẾU ====================
+
+    /**
+     * Tải toàn bộ dữ liệu tham chiếu một lần và tạo các thương hiệu, danh mục, đơn vị tính còn thiếu
+     */
+    private ReferenceData loadReferences(List<ProductImportItem> items) {
+        ReferenceData references = new ReferenceData();
+        resolveBrands(items, references);
+        resolveCategories(items, references);
+        resolveUnits(items, references);
+
+        for (String code : productRepository.findAllCodes()) {
+            references.productCodes.add(code);
+            references.nextCodeNumber = Math.max(references.nextCodeNumber, productCodeNumber(code) + 1);
+        }
+        for (String name : productRepository.findActiveProductNames()) {
+            references.productNames.add(normalize(name));
+        }
+        references.barcodes.addAll(productUnitRepository.findAllBarcodes());
+        return references;
+    }
+
+    private void resolveBrands(List<ProductImportItem> items, ReferenceData references) {
+        Map<String, Brand> brandsByName = new HashMap<>();
+        for (Brand brand : brandRepository.findAll()) {
+            brandsByName.put(normalize(brand.getName()), brand);
+        }
+
+        int nextBrandNumber = nextBrandNumber();
+        List<Brand> newBrands = new ArrayList<>();
+        for (ProductImportItem item : items) {
+            if (item.brandName() == null || brandsByName.containsKey(normalize(item.brandName()))) {
+                continue;
+            }
+            Brand brand = new Brand();
+            brand.setName(item.brandName());
+            brand.setDescription(AUTO_CREATED_DESCRIPTION);
+            brand.setIsActive(true);
+            brand.setBrandCode(String.format("BR%04d", nextBrandNumber++));
+            brandsByName.put(normalize(item.brandName()), brand);
+            newBrands.add(brand);
+        }
+        if (!newBrands.isEmpty()) {
+            brandRepository.saveAll(newBrands);
+            log.info("Đã tạo {} thương hiệu mới từ import Excel", newBrands.size());
+        }
+
+        brandsByName.forEach((name, brand) -> references.brands.put(name, Boolean.TRUE.equals(brand.getIsActive())
+                ? Resolved.of(brand.getBrandId())
+                : Resolved.error("Thương hiệu đã bị vô hiệu hóa")));
+    }
+
+    /**
+     * Số thứ tự tiếp theo cho mã thương hiệu BRxxxx
+     */
+    private int nextBrandNumber() {
+        int maxNumber = 0;
+        for (String code : brandRepository.findMaxBrandCode()) {
+            try {
+                maxNumber = Math.max(maxNumber, Integer.parseInt(code.substring(2)));
+            } catch (NumberFormatException e) {
+                // Bỏ qua mã không hợp lệ
+            }
+        }
+        return maxNumber + 1;
+    }
+
+    private void resolveCategories(List<ProductImportItem> items, ReferenceData references) {
+        // Tên danh mục là duy nhất trong toàn hệ thống
+        Map<String, Category> categoriesByName = new HashMap<>();
+        for (Category category : categoryRepository.findAll()) {
+            categoriesByName.put(normalize(category.getName()), category);
+        }
+
+        int categoryCount = categoriesByName.size();
+        for (ProductImportItem item : items) {
+            references.categories.computeIfAbsent(item.categoryPath(),
+                    path -> resolveCategoryPath(path, categoriesByName));
+        }
+
+        // Có danh mục mới thì đánh số lại cây sau khi transaction commit
+        if (categoriesByName.size() > categoryCount) {
+            categoryTreeService.rebuild();
+        }
+    }
+
+    /**
+     * Tìm hoặc tạo danh mục theo đường dẫn "Cha>Con" (tối đa 2 cấp)
+     */
+    private Resolved<Integer> resolveCategoryPath(String categoryPath, Map<String, Category> categoriesByName) {
+        String[] parts = categoryPath.split(">");
+        if (parts.length > 2) {
+            return Resolved.error(
+                    "Chỉ hỗ trợ tối đa 2 cấp danh mục (Cha>Con). Đường dẫn không hợp lệ: " + categoryPath);
+        }
+
+        Category parent = null;
+        for (String part : parts) {
+            String categoryName = part.trim();
+            if (categoryName.isEmpty()) {
+                return Resolved.error("Tên danh mục không được để trống trong đường dẫn: " + categoryPath);
+            }
+
+            Category category = categoriesByName.get(normalize(categoryName));
+            if (category == null) {
+                category = new Category();
+                category.setName(categoryName);
+                category.setDescription(AUTO_CREATED_DESCRIPTION);
+                category.setIsActive(true);
+                category.setParent(parent);
+                category = categoryRepository.save(category);
+                categoriesByName.put(normalize(categoryName), category);
+                log.info("Đã tạo danh mục mới: {} (Parent: {})",
+                        categoryName, parent != null ? parent.getName() : "null");
+            } else if (!Objects.equals(parentId(category), parent != null ? parent.getCategoryId() : null)) {
+                return Resolved.error("Danh mục '" + categoryName
+                        + "' đã tồn tại ở nhánh khác, không khớp đường dẫn: " + categoryPath);
+            }
+            parent = category;
+        }
+
+        if (!Boolean.TRUE.equals(parent.getIsActive())) {
+            return Resolved.error("Danh mục đã bị vô hiệu hóa");
+        }
+        return Resolved.of(parent.getCategoryId());
+    }
+
+    private Integer parentId(Category category) {
+        return category.getParent() != null ? category.getParent().getCategoryId() : null;
+    }
+
+    private void resolveUnits(List<ProductImportItem> items, ReferenceData references) {
+        Map<String, Unit> unitsByName = new HashMap<>();
+        for (Unit unit : unitRepository.findAll()) {
+            unitsByName.put(normalize(unit.getName()), unit);
+        }
+
+        List<Unit> newUnits = new ArrayList<>();
+        for (ProductImportItem item : items) {
+            for (ProductUnitRequest unitRequest : item.units()) {
+                if (unitsByName.containsKey(normalize(unitRequest.unitName()))) {
+                    continue;
+                }
+                Unit unit = new Unit();
+                unit.setName(unitRequest.unitName());
+                unit.setIsActive(true);
+                unit.setIsDeleted(false);
+                unitsByName.put(normalize(unitRequest.unitName()), unit);
+                newUnits.add(unit);
+            }
+        }
+        if (!newUnits.isEmpty()) {
+            unitRepository.saveAll(newUnits);
+            log.info("Đã tạo {} đơn vị tính mới từ import Excel", newUnits.size());
+        }
+
+        unitsByName.forEach((name, unit) -> references.units.put(name,
+                Boolean.TRUE.equals(unit.getIsActive()) && !Boolean.TRUE.equals(unit.getIsDeleted())
+                        ? Resolved.of(unit.getId())
+                        : Resolved.error("Đơn vị tính '" + unit.getName() + "' đã bị vô hiệu hóa hoặc xóa")));
+    }
+
+    // ==================== VALIDATE ====================
+
+    /**
+     * Validate một sản phẩm theo cùng quy tắc với ProductService.createProduct
+     * Chỉ đọc ReferenceData nên có thể chạy song song
+     */
+    private ValidatedProduct validate(ProductImportItem item, ReferenceData references) {
+        try {
+            if (item.code() != null && item.code().length() > 50) {
+                throw new ProductException("Mã sản phẩm không được vượt quá 50 ký tự");
+            }
+            if (item.name().length() > 255) {
+                throw new ProductException("Tên sản phẩm không được vượt quá 255 ký tự");
+            }
+
+            Integer categoryId = references.categories.get(item.categoryPath()).get();
+            Integer brandId = item.brandName() != null ? references.brands.get(normalize(item.brandName())).get() : null;
+
+            List<ProductUnitRequest> units = item.units();
+            long baseUnitCount = units.stream().filter(ProductUnitRequest::isBaseUnit).count();
+            if (baseUnitCount == 0) {
+                throw new ProductException("Phải có ít nhất 1 đơn vị cơ bản (isBaseUnit = true)");
+            }
+            if (baseUnitCount > 1) {
+                throw new ProductException("Chỉ được có 1 đơn vị cơ bản");
+            }
+
+            Set<String> unitNames = new HashSet<>();
+            List<ValidatedUnit> validatedUnits = new ArrayList<>(units.size());
+            for (ProductUnitRequest unitRequest : units) {
+                if (!unitNames.add(normalize(unitRequest.unitName()))) {
+                    throw new ProductException("Không được có đơn vị tính trùng lặp");
+                }
+                validatedUnits.add(new ValidatedUnit(
+                        references.units.get(normalize(unitRequest.unitName())).get(),
+                        unitRequest.conversionValue(),
+                        unitRequest.isBaseUnit(),
+                        BarcodeUtils.normalizeEan13(unitRequest.barcode())));
+            }
+
+            return new ValidatedProduct(item, categoryId, brandId, validatedUnits, null);
+        } catch (ProductException e) {
+            return new ValidatedProduct(item, null, null, List.of(), e.getMessage());
+        }
+    }
+
+    /**
+     * Sinh mã (nếu cần) và giữ chỗ mã, tên, mã vạch cho sản phẩm
+     * Chạy tuần tự theo thứ tự dòng để dòng xuất hiện trước được ưu tiên khi trùng
+     *
+     * @return mã sản phẩm sẽ dùng
+     */
+    private String claimUniqueValues(ValidatedProduct product, ReferenceData references) {
+        ProductImportItem item = product.item();
+
+        String code = item.code();
+        if (code == null) {
+            while (references.productCodes.contains(String.format("SP%05d", references.nextCodeNumber))) {
+                references.nextCodeNumber++;
+            }
+            if (references.nextCodeNumber > MAX_PRODUCT_CODE_NUMBER) {
+                throw new ProductException("Số lượng mã sản phẩm đã vượt quá giới hạn (99999)");
+            }
+            code = String.format("SP%05d", references.nextCodeNumber);
+        } else if (references.productCodes.contains(code)) {
+            throw DuplicateProductException.forProductCode(code);
+        }
+
+        if (references.productNames.contains(normalize(item.name()))) {
+            throw DuplicateProductException.forProductName(item.name());
+        }
+
+        Set<String> barcodes = new HashSet<>();
+        for (ValidatedUnit unit : product.units()) {
+            if (unit.barcode() != null
+                    && (references.barcodes.contains(unit.barcode()) || !barcodes.add(unit.barcode()))) {
+                throw new ProductException("Mã vạch '" + unit.barcode() + "' đã tồn tại trong hệ thống");
+            }
+        }
+
+        references.productCodes.add(code);
+        references.productNames.add(normalize(item.name()));
+        references.barcodes.addAll(barcodes);
+        return code;
+    }
+
+    private static long productCodeNumber(String code) {
+        if (code == null || !code.startsWith("SP")) {
+            return 0;
+        }
+        try {
+            return Long.parseLong(code.substring(2));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static String normalize(String name) {
+        return name.trim().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Kết quả ánh xạ tên sang ID: hoặc ID, hoặc lý do không dùng được
+     */
+    private record Resolved<T>(T id, String error) {
+
+        static <T> Resolved<T> of(T id) {
+            return new Resolved<>(id, null);
+        }
+
+        static <T> Resolved<T> error(String error) {
+            return new Resolved<>(null, error);
+        }
+
+        T get() {
+            if (error != null) {
+                throw new ProductException(error);
+            }
+            return id;
+        }
+    }
+
+    /**
+     * Dữ liệu tham chiếu tải một lần cho cả file import
+     * Các map ánh xạ chỉ được đọc khi validate song song; các tập giữ chỗ chỉ được ghi ở bước tuần tự
+     */
+    private static final class ReferenceData {
+        private final Map<String, Resolved<Integer>> brands = new HashMap<>();
+        private final Map<String, Resolved<Integer>> categories = new HashMap<>();
+        private final Map<String, Resolved<Long>> units = new HashMap<>();
+        private final Set<String> productCodes = new HashSet<>();
+        private final Set<String> productNames = new HashSet<>();
+        private final Set<String> barcodes = new HashSet<>();
+        private long nextCodeNumber = 1;
+    }
+
+    /**
+     * Sản phẩm đã validate (error khác null nếu không hợp lệ)
+     */
+    private record ValidatedProduct(ProductImportItem item, Integer categoryId, Integer brandId,
+            List<ValidatedUnit> units, String error) {
+    }
+
+    private record ValidatedUnit(Long unitId, Integer conversionValue, Boolean isBaseUnit, String barcode) {
+    }
+
+    /**
+     * Phần riêng của import sản phẩm chạy trên ExcelImportJobRunner
+     */
+    private final class ProductImportHandler
+            implements ExcelImportJobRunner.Handler<ProductImportItem, ValidatedProduct, ProductUnit> {
+
+        @Override
+        public String jobType() {
+            return JOB_TYPE;
+        }
+
+        @Override
+        public String itemName() {
+            return "sản phẩm";
+        }
+
+        @Override
+        public int chunkSize() {
+            return chunkSize;
+        }
+
+        @Override
+        public List<ProductImportItem> readRows(Path file, Consumer<String> onRowError) throws IOException {
+            return productExcelService.readImportFile(file, onRowError);
+        }
+
+        @Override
+        public List<ImportCandidate<ValidatedProduct>> prepare(List<ProductImportItem> items, RowRejecter rejecter) {
+            return prepareCandidates(items, rejecter);
+        }
+
+        @Override
+        public List<ProductUnit> save(List<ImportCandidate<ValidatedProduct>> chunk) {
+            return saveProducts(chunk);
+        }
+
+        @Override
+        public void afterCommit(List<ProductUnit> createdUnits) {
+            if (generateBarcodeImages) {
+                createBarcodeImages(createdUnits);
+            }
+        }
+    }
+}
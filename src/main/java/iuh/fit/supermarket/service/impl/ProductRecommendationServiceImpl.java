@@ -1,24 +1,43 @@
 package iuh.fit.supermarket.service.impl;
 
 import iuh.fit.supermarket.dto.product.ProductResponse;
+import iuh.fit.supermarket.dto.product.RecommendedProductResponse;
 import iuh.fit.supermarket.entity.Brand;
 import iuh.fit.supermarket.entity.Category;
+import iuh.fit.supermarket.entity.PriceDetail;
 import iuh.fit.supermarket.entity.Product;
+import iuh.fit.supermarket.entity.ProductUnit;
+import iuh.fit.supermarket.entity.ProductUnitImage;
+import iuh.fit.supermarket.entity.Warehouse;
+import iuh.fit.supermarket.enums.PriceType;
 import iuh.fit.supermarket.exception.ProductNotFoundException;
 import iuh.fit.supermarket.repository.BrandRepository;
 import iuh.fit.supermarket.repository.CategoryRepository;
+import iuh.fit.supermarket.repository.PriceDetailRepository;
 import iuh.fit.supermarket.repository.ProductRepository;
+import iuh.fit.supermarket.repository.ProductUnitImageRepository;
+import iuh.fit.supermarket.repository.ProductUnitRepository;
+import iuh.fit.supermarket.repository.WarehouseRepository;
 import iuh.fit.supermarket.service.ProductRecommendationService;
 import iuh.fit.supermarket.service.ProductService;
+import iuh.fit.supermarket.service.RecommendationIndexService;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 /**
  * Implementation của ProductRecommendationService
- * Service này cung cấp các hàm đơn giản để AI tìm kiếm và gợi ý sản phẩm
+ * Service này cung cấp các hàm đơn giản để AI tìm kiếm và gợi ý sản phẩm,
+ * và gợi ý "thường mua cùng"/gợi ý cá nhân lấy từ chỉ mục trong bộ nhớ (RecommendationIndexService);
+ * chỉ bước lấy thông tin hiển thị của các sản phẩm gợi ý truy vấn DB, với số truy vấn cố định
  */
 @Service
 @Transactional(readOnly = true)
@@ -28,6 +47,16 @@ public class ProductRecommendationServiceImpl implements ProductRecommendationSe
     private final CategoryRepository categoryRepository;
     private final BrandRepository brandRepository;
     private final ProductService productService;
+    private final RecommendationIndexService recommendationIndexService;
+    private final ProductUnitRepository productUnitRepository;
+    private final PriceDetailRepository priceDetailRepository;
+    private final WarehouseRepository warehouseRepository;
+    private final ProductUnitImageRepository productUnitImageRepository;
+
+    /**
+     * Số kết quả tối đa cho một lần gợi ý
+     */
+    private static final int MAX_RECOMMENDATIONS = 50;
 
     /**
      * Constructor injection cho tất cả dependencies
@@ -36,11 +65,21 @@ public class ProductRecommendationServiceImpl implements ProductRecommendationSe
             ProductRepository productRepository,
             CategoryRepository categoryRepository,
             BrandRepository brandRepository,
-            ProductService productService) {
+            ProductService productService,
+            RecommendationIndexService recommendationIndexService,
+            ProductUnitRepository productUnitRepository,
+            PriceDetailRepository priceDetailRepository,
+            WarehouseRepository warehouseRepository,
+            ProductUnitImageRepository productUnitImageRepository) {
         this.productRepository = productRepository;
         this.categoryRepository = categoryRepository;
         this.brandRepository = brandRepository;
         this.productService = productService;
+        this.recommendationIndexService = recommendationIndexService;
+        this.productUnitRepository = productUnitRepository;
+        this.priceDetailRepository = priceDetailRepository;
+        this.warehouseRepository = warehouseRepository;
+        this.productUnitImageRepository = productUnitImageRepository;
     }
 
     /**
@@ -93,14 +132,96 @@ public class ProductRecommendationServiceImpl implements ProductRecommendationSe
                 .findFirst()
                 .orElseThrow(() -> new ProductNotFoundException("Không tìm thấy thương hiệu: " + brandName));
 
-        List<Product> products = productRepository.findByIsActiveAndIsDeleted(true, false)
-                .stream()
-                .filter(p -> p.getBrand() != null && p.getBrand().getBrandId().equals(brand.getBrandId()))
-                .collect(Collectors.toList());
-        
+        // Lọc theo thương hiệu trong DB thay vì tải toàn bộ sản phẩm đang hoạt động
+        List<Product> products = productRepository.findActiveByBrandId(brand.getBrandId(), PageRequest.of(0, 10));
+
         return products.stream()
-                .limit(10)
                 .map(product -> productService.getProductById(product.getId()))
                 .collect(Collectors.toList());
     }
+
+    /**
+     * Lấy sản phẩm thường được mua cùng
+     */
+    @Override
+    public List<RecommendedProductResponse> getFrequentlyBoughtTogether(Long productUnitId, int limit) {
+        int size = Math.min(Math.max(limit, 1), MAX_RECOMMENDATIONS);
+        // Lấy dư ứng viên để bù cho sản phẩm đã ngừng bán bị loại khi dựng kết quả
+        List<Long> candidateIds = recommendationIndexService.findFrequentlyBoughtTogether(productUnitId, size * 2);
+        return toRecommendedProducts(candidateIds, size);
+    }
+
+    /**
+     * Lấy sản phẩm gợi ý riêng cho khách hàng
+     */
+    @Override
+    public List<RecommendedProductResponse> getRecommendationsForCustomer(Integer customerId, int limit) {
+        int size = Math.min(Math.max(limit, 1), MAX_RECOMMENDATIONS);
+        List<Long> candidateIds = recommendationIndexService.findRecommendedForCustomer(customerId, size * 2);
+        return toRecommendedProducts(candidateIds, size);
+    }
+
+    /**
+     * Dựng thông tin hiển thị cho danh sách ID gợi ý, giữ nguyên thứ tự xếp hạng
+     * Mỗi loại dữ liệu (đơn vị sản phẩm, giá, tồn kho, hình ảnh) được tải bằng một truy vấn
+     */
+    private List<RecommendedProductResponse> toRecommendedProducts(List<Long> productUnitIds, int limit) {
+        if (productUnitIds.isEmpty()) {
+            return List.of();
+        }
+
+        Map<Long, ProductUnit> productUnits = productUnitRepository.findAllByIdWithProductAndUnit(productUnitIds)
+                .stream()
+                .collect(Collectors.toMap(ProductUnit::getId, Function.identity()));
+
+        // Nếu có nhiều giá ACTIVE, lấy giá từ bảng giá có ngày tạo mới nhất
+        Map<Long, PriceDetail> prices = new HashMap<>();
+        for (PriceDetail priceDetail : priceDetailRepository.findByProductUnitIdsAndPriceStatus(
+                productUnitIds, PriceType.ACTIVE)) {
+            prices.merge(priceDetail.getProductUnit().getId(), priceDetail,
+                    (pd1, pd2) -> pd2.getPrice().getCreatedAt().compareTo(pd1.getPrice().getCreatedAt()) > 0
+                            ? pd2 : pd1);
+        }
+
+        Map<Long, Integer> stocks = warehouseRepository.findByProductUnitIdIn(productUnitIds).stream()
+                .collect(Collectors.toMap(w -> w.getProductUnit().getId(), Warehouse::getQuantityOnHand,
+                        (first, second) -> first));
+
+        Map<Long, String> images = new HashMap<>();
+        for (ProductUnitImage image : productUnitImageRepository.findPrimaryImagesByProductUnitIds(productUnitIds)) {
+            images.putIfAbsent(image.getProductUnit().getId(), image.getProductImage().cardOrOriginalUrl());
+        }
+
+        List<RecommendedProductResponse> result = new ArrayList<>(limit);
+        for (Long productUnitId : productUnitIds) {
+            ProductUnit productUnit = productUnits.get(productUnitId);
+            // Bỏ qua sản phẩm đã ngừng bán hoặc không còn giá đang áp dụng
+            if (productUnit == null || !isAvailable(productUnit) || !prices.containsKey(productUnitId)) {
+                continue;
+            }
+
+            BigDecimal currentPrice = prices.get(productUnitId).getSalePrice();
+            result.add(RecommendedProductResponse.builder()
+                    .productUnitId(productUnitId)
+                    .productId(productUnit.getProduct().getId())
+                    .productName(productUnit.getProduct().getName())
+                    .productCode(productUnit.getProduct().getCode())
+                    .unitName(productUnit.getUnit() != null ? productUnit.getUnit().getName() : null)
+                    .currentPrice(currentPrice)
+                    .imageUrl(images.get(productUnitId))
+                    .quantityOnHand(stocks.getOrDefault(productUnitId, 0))
+                    .build());
+            if (result.size() >= limit) {
+                break;
+            }
+        }
+        return result;
+    }
+
+    private boolean isAvailable(ProductUnit productUnit) {
+        Product product = productUnit.getProduct();
+        return Boolean.TRUE.equals(productUnit.getIsActive()) && !Boolean.TRUE.equals(productUnit.getIsDeleted())
+                && product != null
+                && Boolean.TRUE.equals(product.getIsActive()) && !Boolean.TRUE.equals(product.getIsDeleted());
+    }
 }
@@ -88,7 +88,7 @@ public class ProductSearchServiceImpl implements ProductSearchService {
         String imageUrl = product.getImages().stream()
                 .min(Comparator.comparing(ProductImage::getSortOrder)
                         .thenComparing(ProductImage::getCreatedAt))
-                .map(ProductImage::getImageUrl)
+                .map(ProductImage::cardOrOriginalUrl)
                 .orElse(null);
 
         // Kiểm tra tồn kho qua WarehouseRepository
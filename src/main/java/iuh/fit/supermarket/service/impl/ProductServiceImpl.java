@@ -5,6 +5,7 @@ import iuh.fit.supermarket.dto.unit.UnitDto;
 import iuh.fit.supermarket.entity.Brand;
 import iuh.fit.supermarket.entity.Category;
 import iuh.fit.supermarket.entity.Product;
+import iuh.fit.supermarket.entity.ProductImage;
 import iuh.fit.supermarket.entity.ProductUnit;
 import iuh.fit.supermarket.entity.ProductUnitImage;
 import iuh.fit.supermarket.entity.Unit;
@@ -17,13 +18,18 @@ import iuh.fit.supermarket.repository.ProductRepository;
 import iuh.fit.supermarket.repository.ProductUnitRepository;
 import iuh.fit.supermarket.repository.UnitRepository;
 import iuh.fit.supermarket.service.ProductService;
+import iuh.fit.supermarket.util.BarcodeUtils;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.util.Comparator;
 import java.util.List;
 import java.util.Optional;
 import java.util.Set;
@@ -48,6 +54,7 @@ public class ProductServiceImpl implements ProductService {
     private final iuh.fit.supermarket.repository.ProductUnitImageRepository productUnitImageRepository;
     private final iuh.fit.supermarket.repository.CustomerFavoriteRepository customerFavoriteRepository;
     private final iuh.fit.supermarket.service.BarcodeService barcodeService;
+    private final TransactionTemplate transactionTemplate;
 
     /**
      * Tạo sản phẩm mới
@@ -356,6 +363,7 @@ public class ProductServiceImpl implements ProductService {
 
         // Sử dụng query với đầy đủ các filter
         String searchTermClean = (searchTerm != null && !searchTerm.trim().isEmpty()) ? searchTerm.trim() : "";
+        // Lọc theo cả nhánh danh mục; danh mục không tồn tại không trả về sản phẩm nào
         Page<Product> productPage = productRepository.findProductsAdvanced(
                 searchTermClean,
                 categoryId,
@@ -396,7 +404,8 @@ public class ProductServiceImpl implements ProductService {
             throw new ProductException("Không tìm thấy danh mục với ID: " + categoryId);
         }
 
-        List<Product> products = productRepository.findByCategoryIdAndIsDeleted(categoryId.longValue(), false);
+        // Gồm sản phẩm của các danh mục con cháu
+        List<Product> products = productRepository.findByCategorySubtree(categoryId);
 
         // Tạm thời convert thành Page manually, sau này có thể cải thiện
         return createProductListResponse(products, pageable);
@@ -609,7 +618,12 @@ public class ProductServiceImpl implements ProductService {
         summary.setUnits(unitSummaries);
         summary.setUnitCount(unitSummaries.size());
         summary.setImageCount(product.getImages() != null ? product.getImages().size() : 0);
-        summary.setMainImageUrl(null); // Tạm thời null, sau này có thể query thật
+        // Danh sách chỉ cần ảnh thu nhỏ của ảnh đầu tiên (collection images đã được tải để đếm ở trên)
+        summary.setMainImageUrl(product.getImages() == null ? null : product.getImages().stream()
+                .min(Comparator.comparing(ProductImage::getSortOrder,
+                        Comparator.nullsLast(Comparator.naturalOrder())))
+                .map(ProductImage::thumbnailOrOriginalUrl)
+                .orElse(null));
 
         return summary;
     }
@@ -740,39 +754,41 @@ public class ProductServiceImpl implements ProductService {
             
             // Chỉ tạo và upload barcode image nếu có barcode text
             if (barcodeText != null && !barcodeText.isEmpty()) {
-                try {
-                    String barcodeImageUrl = barcodeService.generateBarcodeUrl(
-                        barcodeText, 
-                        com.google.zxing.BarcodeFormat.EAN_13,
-                        "barcodes/products"
-                    );
-                    productUnit.setBarcodeImageUrl(barcodeImageUrl);
-                    productUnitRepository.save(productUnit);
-                    log.info("Đã tạo và upload barcode image EAN-13 cho product unit ID: {}", productUnit.getId());
-                } catch (Exception e) {
-                    log.warn("Không thể tạo barcode image cho product unit ID: {}. Lỗi: {}", 
-                        productUnit.getId(), e.getMessage());
-                    // Không throw exception, chỉ log warning để không làm fail quá trình tạo sản phẩm
-                }
+                uploadBarcodeImageAfterCommit(productUnit.getId(), barcodeText);
             }
         }
     }
 
+    /**
+     * Tạo và upload barcode image sau khi transaction commit, không giữ request chờ S3
+     * URL ảnh được ghi vào đơn vị sản phẩm khi upload xong; lỗi chỉ được log để không làm fail việc tạo sản phẩm
+     */
+    private void uploadBarcodeImageAfterCommit(Long productUnitId, String barcodeText) {
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                barcodeService.generateBarcodeUrlAsync(barcodeText, com.google.zxing.BarcodeFormat.EAN_13, "barcodes/products")
+                        .thenAccept(barcodeImageUrl -> {
+                            transactionTemplate.executeWithoutResult(status ->
+                                    productUnitRepository.updateBarcodeImageUrl(productUnitId, barcodeImageUrl));
+                            log.info("Đã tạo và upload barcode image EAN-13 cho product unit ID: {}", productUnitId);
+                        })
+                        .exceptionally(e -> {
+                            log.warn("Không thể tạo barcode image cho product unit ID: {}. Lỗi: {}",
+                                    productUnitId, e.getMessage());
+                            return null;
+                        });
+            }
+        });
+    }
+
     /**
      * Tính checksum cho EAN-13
      * @param code12 12 chữ số đầu của mã EAN-13
      * @return checksum digit (1 chữ số)
      */
     private String calculateEAN13Checksum(String code12) {
-        int sum = 0;
-        for (int i = 0; i < 12; i++) {
-            int digit = Character.getNumericValue(code12.charAt(i));
-            // Nhân với 1 nếu vị trí chẵn (index lẻ), nhân với 3 nếu vị trí lẻ (index chẵn)
-            sum += (i % 2 == 0) ? digit : digit * 3;
-        }
-        
-        int checksum = (10 - (sum % 10)) % 10;
-        return String.valueOf(checksum);
+        return BarcodeUtils.calculateEan13Checksum(code12);
     }
 
     /**
@@ -780,25 +796,7 @@ public class ProductServiceImpl implements ProductService {
      * EAN-13 phải có đúng 13 chữ số và checksum hợp lệ
      */
     private boolean isValidEAN13(String barcode) {
-        // Kiểm tra độ dài và chỉ chứa chữ số
-        if (barcode == null || barcode.length() != 13) {
-            return false;
-        }
-        
-        if (!barcode.matches("\\d{13}")) {
-            return false;
-        }
-        
-        // Validate checksum
-        try {
-            String code12 = barcode.substring(0, 12);
-            String expectedChecksum = calculateEAN13Checksum(code12);
-            String providedChecksum = String.valueOf(barcode.charAt(12));
-            
-            return expectedChecksum.equals(providedChecksum);
-        } catch (Exception e) {
-            return false;
-        }
+        return BarcodeUtils.isValidEan13(barcode);
     }
 
     /**
@@ -1221,6 +1219,9 @@ public class ProductServiceImpl implements ProductService {
             ProductImageDto imageDto = new ProductImageDto();
             imageDto.setImageId(productUnitImage.getProductImage().getImageId());
             imageDto.setImageUrl(productUnitImage.getProductImage().getImageUrl());
+            imageDto.setThumbnailUrl(productUnitImage.getProductImage().getThumbnailUrl());
+            imageDto.setCardUrl(productUnitImage.getProductImage().getCardUrl());
+            imageDto.setFullUrl(productUnitImage.getProductImage().getFullUrl());
             imageDto.setImageAlt(productUnitImage.getProductImage().getImageAlt());
             imageDto.setSortOrder(productUnitImage.getProductImage().getSortOrder());
             imageDto.setCreatedAt(productUnitImage.getProductImage().getCreatedAt());
@@ -1433,7 +1434,7 @@ public class ProductServiceImpl implements ProductService {
                     Optional<ProductUnitImage> primaryImage =
                         productUnitImageRepository.findPrimaryImageByProductUnitId(unit.getId());
                     if (primaryImage.isPresent()) {
-                        imageUrl = primaryImage.get().getProductImage().getImageUrl();
+                        imageUrl = primaryImage.get().getProductImage().cardOrOriginalUrl();
                     }
                 } catch (Exception e) {
                     log.debug("Không lấy được image cho ProductUnit ID: {}", unit.getId());
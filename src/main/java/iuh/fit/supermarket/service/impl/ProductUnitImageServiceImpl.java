@@ -8,8 +8,9 @@ import iuh.fit.supermarket.entity.ProductUnitImage;
 import iuh.fit.supermarket.repository.ProductImageRepository;
 import iuh.fit.supermarket.repository.ProductUnitImageRepository;
 import iuh.fit.supermarket.repository.ProductUnitRepository;
+import iuh.fit.supermarket.service.ProductImageVariantService;
+import iuh.fit.supermarket.service.ProductImageVariantService.StagedImage;
 import iuh.fit.supermarket.service.ProductUnitImageService;
-import iuh.fit.supermarket.service.S3FileUploadService;
 import iuh.fit.supermarket.util.ProductUnitImageValidator;
 import iuh.fit.supermarket.exception.ProductUnitImageException;
 import lombok.RequiredArgsConstructor;
@@ -36,7 +37,7 @@ public class ProductUnitImageServiceImpl implements ProductUnitImageService {
     private final ProductUnitImageRepository productUnitImageRepository;
     private final ProductUnitRepository productUnitRepository;
     private final ProductImageRepository productImageRepository;
-    private final S3FileUploadService s3FileUploadService;
+    private final ProductImageVariantService productImageVariantService;
     private final ProductUnitImageValidator validator;
 
     @Override
@@ -303,6 +304,9 @@ public class ProductUnitImageServiceImpl implements ProductUnitImageService {
         ProductImageDto dto = new ProductImageDto();
         dto.setImageId(productImage.getImageId());
         dto.setImageUrl(productImage.getImageUrl());
+        dto.setThumbnailUrl(productImage.getThumbnailUrl());
+        dto.setCardUrl(productImage.getCardUrl());
+        dto.setFullUrl(productImage.getFullUrl());
         dto.setImageAlt(productImage.getImageAlt());
         dto.setSortOrder(productImage.getSortOrder());
         dto.setCreatedAt(productImage.getCreatedAt());
@@ -350,16 +354,23 @@ public class ProductUnitImageServiceImpl implements ProductUnitImageService {
         // Get ProductUnit
         ProductUnit productUnit = validator.validateProductUnitExists(request.getProductUnitId());
 
-        // Upload file to S3
-        String imageUrl = s3FileUploadService.uploadFile(request.getImageFile(), "product-unit-images");
+        // Upload file gốc lên S3, biến thể được tạo trên luồng nền sau khi commit
+        StagedImage stagedImage = productImageVariantService.stageAndUpload(
+                request.getImageFile(), "product-unit-images");
 
         // Create new ProductImage for the product
         ProductImage productImage = new ProductImage();
-        productImage.setImageUrl(imageUrl);
+        productImage.setImageUrl(stagedImage.originalUrl());
         productImage.setImageAlt(request.getImageAlt());
         productImage.setSortOrder(0);
         productImage.setProduct(productUnit.getProduct());
-        productImage = productImageRepository.save(productImage);
+        try {
+            productImage = productImageRepository.save(productImage);
+        } catch (RuntimeException e) {
+            productImageVariantService.discard(stagedImage);
+            throw e;
+        }
+        productImageVariantService.scheduleVariants(productImage.getImageId(), stagedImage);
 
         // Handle primary image logic
         if (Boolean.TRUE.equals(request.getIsPrimary())) {
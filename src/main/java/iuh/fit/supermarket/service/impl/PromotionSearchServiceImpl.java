@@ -8,6 +8,7 @@ import iuh.fit.supermarket.entity.*;
 import iuh.fit.supermarket.enums.PromotionStatus;
 import iuh.fit.supermarket.repository.PromotionLineRepository;
 import iuh.fit.supermarket.service.PromotionSearchService;
+import iuh.fit.supermarket.service.PromotionUsageService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
@@ -28,6 +29,7 @@ import java.util.stream.Collectors;
 public class PromotionSearchServiceImpl implements PromotionSearchService {
 
     private final PromotionLineRepository promotionLineRepository;
+    private final PromotionUsageService promotionUsageService;
 
     /**
      * Lấy danh sách khuyến mãi đang hoạt động (ACTIVE và còn hạn)
@@ -102,7 +104,7 @@ public class PromotionSearchServiceImpl implements PromotionSearchService {
                     line.getEndDate(),
                     line.getStatus().name(),
                     detail.getUsageLimit(),
-                    detail.getUsageCount(),
+                    promotionUsageService.getUsageCount(detail),
                     buyXGetYInfo,
                     orderDiscountInfo,
                     productDiscountInfo
@@ -0,0 +1,148 @@
+package iuh.fit.supermarket.service.impl;
+
+import iuh.fit.supermarket.entity.PromotionDetail;
+import iuh.fit.supermarket.repository.PromotionDetailRepository;
+import iuh.fit.supermarket.service.PromotionUsageService;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Implementation của PromotionUsageService
+ * Khuyến mãi có giới hạn luôn được tăng trực tiếp trong DB bằng UPDATE có điều kiện,
+ * khuyến mãi không giới hạn được cộng dồn bằng LongAdder (striped) và ghi xuống DB định kỳ
+ * để dòng khuyến mãi "nóng" không trở thành điểm tuần tự hóa của mọi giao dịch bán hàng
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class PromotionUsageServiceImpl implements PromotionUsageService {
+
+    private final PromotionDetailRepository promotionDetailRepository;
+    private final TransactionTemplate transactionTemplate;
+
+    /**
+     * Lượt sử dụng đã commit nhưng chưa ghi xuống DB của khuyến mãi không giới hạn
+     */
+    private final Map<Long, LongAdder> pendingUsage = new ConcurrentHashMap<>();
+
+    @Override
+    @Transactional
+    public List<Long> consume(Collection<Long> promotionDetailIds) {
+        Map<Long, Integer> usageByDetailId = new HashMap<>();
+        promotionDetailIds.forEach(detailId -> usageByDetailId.put(detailId, 1));
+        return consume(usageByDetailId);
+    }
+
+    @Override
+    @Transactional
+    public List<Long> consume(Map<Long, Integer> usageByDetailId) {
+        if (usageByDetailId == null || usageByDetailId.isEmpty()) {
+            return List.of();
+        }
+
+        Map<Long, PromotionDetail> details = promotionDetailRepository.findAllById(usageByDetailId.keySet()).stream()
+                .collect(Collectors.toMap(PromotionDetail::getDetailId, Function.identity()));
+
+        List<Long> rejected = new ArrayList<>();
+
+        // Cập nhật theo thứ tự ID tăng dần để các transaction khóa dòng theo cùng một thứ tự
+        for (Map.Entry<Long, Integer> entry : new TreeMap<>(usageByDetailId).entrySet()) {
+            Long detailId = entry.getKey();
+            int delta = entry.getValue();
+            PromotionDetail detail = details.get(detailId);
+
+            if (detail == null) {
+                rejected.add(detailId);
+            } else if (detail.getUsageLimit() == null) {
+                addPendingAfterCommit(detailId, delta);
+            } else if (promotionDetailRepository.incrementUsageCountWithinLimit(detailId, delta) == 0) {
+                log.warn("Khuyến mãi {} đã hết lượt sử dụng (giới hạn: {})",
+                        detail.getPromotionCode(), detail.getUsageLimit());
+                rejected.add(detailId);
+            }
+        }
+
+        log.debug("Đã ghi nhận lượt sử dụng cho {} khuyến mãi, từ chối {}",
+                usageByDetailId.size() - rejected.size(), rejected.size());
+
+        return rejected;
+    }
+
+    @Override
+    public boolean canUse(PromotionDetail detail) {
+        // Nếu không có giới hạn (usageLimit = null), luôn có thể sử dụng
+        if (detail.getUsageLimit() == null) {
+            return true;
+        }
+
+        // Khuyến mãi có giới hạn luôn được tăng trực tiếp trong DB nên giá trị đã tải là bộ đếm hiện tại
+        return getUsageCount(detail) < detail.getUsageLimit();
+    }
+
+    @Override
+    public int getUsageCount(PromotionDetail detail) {
+        int usageCount = detail.getUsageCount() != null ? detail.getUsageCount() : 0;
+        LongAdder pending = pendingUsage.get(detail.getDetailId());
+        return pending != null ? usageCount + pending.intValue() : usageCount;
+    }
+
+    @Override
+    @Scheduled(fixedDelayString = "${promotion.usage.flush-interval-ms:5000}")
+    public void flushPendingUsage() {
+        for (Map.Entry<Long, LongAdder> entry : pendingUsage.entrySet()) {
+            Long detailId = entry.getKey();
+            long delta = entry.getValue().sumThenReset();
+            if (delta == 0) {
+                continue;
+            }
+
+            try {
+                transactionTemplate.executeWithoutResult(
+                        status -> promotionDetailRepository.incrementUsageCount(detailId, delta));
+            } catch (RuntimeException e) {
+                // Trả lại lượt chưa ghi được để lần sau ghi tiếp
+                entry.getValue().add(delta);
+                log.error("Lỗi khi ghi lượt sử dụng cho khuyến mãi ID {}: {}", detailId, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Ghi nốt các lượt sử dụng còn trong bộ nhớ khi tắt ứng dụng
+     */
+    @PreDestroy
+    public void flushOnShutdown() {
+        flushPendingUsage();
+    }
+
+    /**
+     * Cộng dồn lượt sử dụng vào bộ nhớ sau khi transaction hiện tại commit
+     * (transaction rollback thì không tính lượt)
+     */
+    private void addPendingAfterCommit(Long detailId, int delta) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            pendingUsage.computeIfAbsent(detailId, id -> new LongAdder()).add(delta);
+            return;
+        }
+
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                pendingUsage.computeIfAbsent(detailId, id -> new LongAdder()).add(delta);
+            }
+        });
+    }
+}
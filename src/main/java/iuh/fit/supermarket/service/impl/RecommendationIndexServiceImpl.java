@@ -0,0 +1,341 @@
+package iuh.fit.supermarket.service.impl;
+
+import iuh.fit.supermarket.repository.CustomerFavoriteRepository;
+import iuh.fit.supermarket.repository.SaleInvoiceDetailRepository;
+import iuh.fit.supermarket.repository.SaleInvoiceHeaderRepository;
+import iuh.fit.supermarket.service.RecommendationIndexService;
+import iuh.fit.supermarket.util.LongFloatHashMap;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Implementation của RecommendationIndexService
+ * Mọi thao tác ghi (hóa đơn mới, yêu thích, dựng lại) chạy tuần tự trên recommendationExecutor
+ * một luồng, nên hóa đơn thanh toán trong lúc dựng lại chỉ được áp dụng sau khi chỉ mục mới thay thế;
+ * chỉ mục ghi nhận ID hóa đơn đã tính (BitSet) để không đếm trùng.
+ * Đọc gợi ý chỉ dùng dữ liệu trong bộ nhớ: danh sách hàng xóm của mỗi sản phẩm được tính khi cần
+ * và giữ lại đến khi hàng của sản phẩm đó thay đổi
+ */
+@Service
+@Slf4j
+public class RecommendationIndexServiceImpl implements RecommendationIndexService {
+
+    private static final int INVOICE_PAGE_SIZE = 500;
+    private static final int NEIGHBOUR_CACHE_SIZE = 50;
+    private static final int POPULAR_CACHE_SIZE = 100;
+
+    private final SaleInvoiceHeaderRepository saleInvoiceHeaderRepository;
+    private final SaleInvoiceDetailRepository saleInvoiceDetailRepository;
+    private final CustomerFavoriteRepository customerFavoriteRepository;
+    private final int maxItemsPerInvoice;
+    private final float favoriteWeight;
+    private final int minCoOccurrence;
+    private final int customerSeedItems;
+
+    private volatile RecommendationIndex index = new RecommendationIndex();
+
+    public RecommendationIndexServiceImpl(SaleInvoiceHeaderRepository saleInvoiceHeaderRepository,
+                                          SaleInvoiceDetailRepository saleInvoiceDetailRepository,
+                                          CustomerFavoriteRepository customerFavoriteRepository,
+                                          @Value("${recommendation.max-items-per-invoice:50}") int maxItemsPerInvoice,
+                                          @Value("${recommendation.favorite-weight:3}") float favoriteWeight,
+                                          @Value("${recommendation.min-co-occurrence:2}") int minCoOccurrence,
+                                          @Value("${recommendation.customer-seed-items:20}") int customerSeedItems) {
+        this.saleInvoiceHeaderRepository = saleInvoiceHeaderRepository;
+        this.saleInvoiceDetailRepository = saleInvoiceDetailRepository;
+        this.customerFavoriteRepository = customerFavoriteRepository;
+        this.maxItemsPerInvoice = maxItemsPerInvoice;
+        this.favoriteWeight = favoriteWeight;
+        this.minCoOccurrence = minCoOccurrence;
+        this.customerSeedItems = customerSeedItems;
+    }
+
+    @Override
+    @Async("recommendationExecutor")
+    public void indexPaidInvoice(Integer invoiceId) {
+        try {
+            indexRows(index, saleInvoiceDetailRepository.findPurchasedProductUnitsByInvoiceIds(List.of(invoiceId)));
+        } catch (RuntimeException e) {
+            log.warn("Không thể cập nhật chỉ mục gợi ý cho hóa đơn ID {}: {}", invoiceId, e.getMessage());
+        }
+    }
+
+    @Override
+    @Async("recommendationExecutor")
+    public void recordFavoriteChange(Integer customerId, Long productUnitId, boolean added) {
+        addAffinity(index, customerId, productUnitId, added ? favoriteWeight : -favoriteWeight);
+    }
+
+    @Override
+    @Async("recommendationExecutor")
+    @Scheduled(initialDelayString = "${recommendation.initial-delay-ms:30000}",
+            fixedDelayString = "${recommendation.rebuild-interval-ms:21600000}")
+    public void rebuildIndex() {
+        long startTime = System.currentTimeMillis();
+        try {
+            RecommendationIndex next = new RecommendationIndex();
+
+            for (Object[] row : customerFavoriteRepository.findAllCustomerProductUnitIds()) {
+                addAffinity(next, (Integer) row[0], (Long) row[1], favoriteWeight);
+            }
+
+            int lastInvoiceId = 0;
+            int invoiceCount = 0;
+            while (true) {
+                List<Integer> invoiceIds = saleInvoiceHeaderRepository.findPaidInvoiceIdsAfter(
+                        lastInvoiceId, PageRequest.of(0, INVOICE_PAGE_SIZE));
+                if (invoiceIds.isEmpty()) {
+                    break;
+                }
+                indexRows(next, saleInvoiceDetailRepository.findPurchasedProductUnitsByInvoiceIds(invoiceIds));
+                lastInvoiceId = invoiceIds.get(invoiceIds.size() - 1);
+                invoiceCount += invoiceIds.size();
+            }
+
+            next.popular = popularItems(next);
+            index = next;
+            log.info("Đã dựng lại chỉ mục gợi ý: {} hóa đơn, {} sản phẩm, {} khách hàng trong {} ms",
+                    invoiceCount, next.items.size(), next.affinities.size(), System.currentTimeMillis() - startTime);
+        } catch (RuntimeException e) {
+            log.error("Lỗi khi dựng lại chỉ mục gợi ý, tiếp tục dùng chỉ mục cũ: {}", e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public List<Long> findFrequentlyBoughtTogether(Long productUnitId, int limit) {
+        RecommendationIndex current = index;
+        ItemStats stats = current.items.get(productUnitId);
+        if (stats == null || limit <= 0) {
+            return List.of();
+        }
+
+        Neighbours neighbours = neighboursOf(current, stats);
+        List<Long> result = new ArrayList<>(Math.min(limit, neighbours.ids().length));
+        for (int i = 0; i < neighbours.ids().length && result.size() < limit; i++) {
+            result.add(neighbours.ids()[i]);
+        }
+        return result;
+    }
+
+    @Override
+    public List<Long> findRecommendedForCustomer(Integer customerId, int limit) {
+        if (limit <= 0) {
+            return List.of();
+        }
+        RecommendationIndex current = index;
+
+        // Sản phẩm khách đã mua/yêu thích: dùng làm hạt giống và loại khỏi kết quả
+        LongFloatHashMap excluded = new LongFloatHashMap();
+        TopN seeds = new TopN(customerSeedItems);
+        LongFloatHashMap affinity = customerId != null ? current.affinities.get(customerId) : null;
+        if (affinity != null) {
+            synchronized (affinity) {
+                affinity.forEach((productUnitId, weight) -> {
+                    seeds.offer(productUnitId, weight);
+                    excluded.addTo(productUnitId, 1f);
+                });
+            }
+        }
+
+        // Điểm của ứng viên = tổng (trọng số sở thích của hạt giống × độ tương đồng với hạt giống)
+        LongFloatHashMap scores = new LongFloatHashMap();
+        for (int i = 0; i < seeds.size; i++) {
+            ItemStats stats = current.items.get(seeds.ids[i]);
+            if (stats == null) {
+                continue;
+            }
+            Neighbours neighbours = neighboursOf(current, stats);
+            float seedWeight = seeds.scores[i];
+            for (int j = 0; j < neighbours.ids().length; j++) {
+                if (!excluded.containsKey(neighbours.ids()[j])) {
+                    scores.addTo(neighbours.ids()[j], seedWeight * neighbours.scores()[j]);
+                }
+            }
+        }
+
+        TopN ranked = new TopN(limit);
+        scores.forEach(ranked::offer);
+        List<Long> result = new ArrayList<>(limit);
+        for (int i = 0; i < ranked.size; i++) {
+            result.add(ranked.ids[i]);
+        }
+
+        // Chưa đủ dữ liệu cá nhân thì bổ sung bằng sản phẩm bán chạy
+        for (long productUnitId : current.popular) {
+            if (result.size() >= limit) {
+                break;
+            }
+            if (!excluded.containsKey(productUnitId) && !scores.containsKey(productUnitId)) {
+                result.add(productUnitId);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Gom các dòng [invoiceId, customerId, productUnitId] theo hóa đơn rồi cộng vào chỉ mục
+     */
+    private void indexRows(RecommendationIndex target, List<Object[]> rows) {
+        Map<Integer, InvoiceLines> invoices = new LinkedHashMap<>();
+        for (Object[] row : rows) {
+            invoices.computeIfAbsent((Integer) row[0], id -> new InvoiceLines((Integer) row[1], new TreeSet<>()))
+                    .productUnitIds().add((Long) row[2]);
+        }
+        invoices.forEach((invoiceId, lines) -> addInvoice(target, invoiceId, lines));
+    }
+
+    private void addInvoice(RecommendationIndex target, Integer invoiceId, InvoiceLines lines) {
+        if (!target.markIndexed(invoiceId)) {
+            return;
+        }
+
+        // Hóa đơn quá nhiều sản phẩm (mua sỉ) không được ghép cặp vì số cặp tăng theo bình phương;
+        // bỏ cả hóa đơn thay vì cắt bớt để không nghiêng về các sản phẩm có id nhỏ
+        long[] productUnitIds = lines.productUnitIds().size() > maxItemsPerInvoice
+                ? new long[0]
+                : lines.productUnitIds().stream().mapToLong(Long::longValue).toArray();
+        for (long productUnitId : productUnitIds) {
+            ItemStats stats = target.items.computeIfAbsent(productUnitId, id -> new ItemStats());
+            synchronized (stats) {
+                stats.invoiceCount++;
+                for (long other : productUnitIds) {
+                    if (other != productUnitId) {
+                        stats.coOccurrences.addTo(other, 1f);
+                    }
+                }
+                stats.neighbours = null;
+            }
+        }
+
+        if (lines.customerId() != null) {
+            for (Long productUnitId : lines.productUnitIds()) {
+                addAffinity(target, lines.customerId(), productUnitId, 1f);
+            }
+        }
+    }
+
+    private void addAffinity(RecommendationIndex target, Integer customerId, Long productUnitId, float delta) {
+        LongFloatHashMap affinity = target.affinities.computeIfAbsent(customerId, id -> new LongFloatHashMap());
+        synchronized (affinity) {
+            affinity.addTo(productUnitId, delta);
+        }
+    }
+
+    /**
+     * Hàng xóm gần nhất của một sản phẩm theo cosine: đồng xuất hiện / sqrt(số hóa đơn của mỗi bên)
+     * Kết quả được giữ lại đến khi hàng của sản phẩm thay đổi
+     */
+    private Neighbours neighboursOf(RecommendationIndex target, ItemStats stats) {
+        synchronized (stats) {
+            if (stats.neighbours == null) {
+                TopN top = new TopN(NEIGHBOUR_CACHE_SIZE);
+                int ownCount = stats.invoiceCount;
+                stats.coOccurrences.forEach((other, coOccurrence) -> {
+                    if (coOccurrence < minCoOccurrence) {
+                        return;
+                    }
+                    ItemStats otherStats = target.items.get(other);
+                    int otherCount = otherStats != null ? otherStats.invoiceCount : 0;
+                    if (otherCount > 0) {
+                        top.offer(other, (float) (coOccurrence / Math.sqrt((double) ownCount * otherCount)));
+                    }
+                });
+                stats.neighbours = top.toNeighbours();
+            }
+            return stats.neighbours;
+        }
+    }
+
+    private long[] popularItems(RecommendationIndex target) {
+        TopN top = new TopN(POPULAR_CACHE_SIZE);
+        target.items.forEach((productUnitId, stats) -> top.offer(productUnitId, stats.invoiceCount));
+        return top.toNeighbours().ids();
+    }
+
+    /**
+     * Một phiên bản chỉ mục; được dựng đầy đủ rồi mới thay thế phiên bản đang dùng
+     */
+    private static final class RecommendationIndex {
+
+        private final Map<Long, ItemStats> items = new ConcurrentHashMap<>();
+        private final Map<Integer, LongFloatHashMap> affinities = new ConcurrentHashMap<>();
+        private final BitSet indexedInvoiceIds = new BitSet();
+        private volatile long[] popular = new long[0];
+
+        /**
+         * @return false nếu hóa đơn đã được tính vào chỉ mục
+         */
+        private boolean markIndexed(int invoiceId) {
+            synchronized (indexedInvoiceIds) {
+                if (indexedInvoiceIds.get(invoiceId)) {
+                    return false;
+                }
+                indexedInvoiceIds.set(invoiceId);
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Hàng của một sản phẩm trong ma trận đồng xuất hiện, các trường được bảo vệ bởi khóa trên chính đối tượng
+     */
+    private static final class ItemStats {
+
+        private volatile int invoiceCount;
+        private final LongFloatHashMap coOccurrences = new LongFloatHashMap();
+        private Neighbours neighbours;
+    }
+
+    private record Neighbours(long[] ids, float[] scores) {
+    }
+
+    private record InvoiceLines(Integer customerId, Set<Long> productUnitIds) {
+    }
+
+    /**
+     * Giữ N phần tử điểm cao nhất, sắp xếp giảm dần, không boxing
+     */
+    private static final class TopN {
+
+        private final long[] ids;
+        private final float[] scores;
+        private int size;
+
+        private TopN(int capacity) {
+            this.ids = new long[Math.max(capacity, 0)];
+            this.scores = new float[Math.max(capacity, 0)];
+        }
+
+        private void offer(long id, float score) {
+            if (ids.length == 0 || (size == ids.length && score <= scores[size - 1])) {
+                return;
+            }
+            int position = size == ids.length ? size - 1 : size++;
+            while (position > 0 && scores[position - 1] < score) {
+                ids[position] = ids[position - 1];
+                scores[position] = scores[position - 1];
+                position--;
+            }
+            ids[position] = id;
+            scores[position] = score;
+        }
+
+        private Neighbours toNeighbours() {
+            return new Neighbours(Arrays.copyOf(ids, size), Arrays.copyOf(scores, size));
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package iuh.fit.supermarket.service.impl;
+
+import iuh.fit.supermarket.entity.RefreshToken;
+import iuh.fit.supermarket.entity.User;
+import iuh.fit.supermarket.repository.RefreshTokenRepository;
+import iuh.fit.supermarket.service.RefreshTokenService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Base64;
+import java.util.HexFormat;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Implementation của RefreshTokenService
+ * Refresh token là chuỗi ngẫu nhiên 256 bit; DB chỉ lưu SHA-256 nên lộ dữ liệu bảng không dùng được token
+ */
+@Service
+@Slf4j
+public class RefreshTokenServiceImpl implements RefreshTokenService {
+
+    private static final int TOKEN_BYTES = 32;
+
+    private final RefreshTokenRepository refreshTokenRepository;
+    private final Long refreshExpiration;
+    private final SecureRandom secureRandom = new SecureRandom();
+
+    public RefreshTokenServiceImpl(RefreshTokenRepository refreshTokenRepository,
+                                   @Value("${jwt.refresh-expiration:1209600000}") Long refreshExpiration) { // 14 ngày
+        this.refreshTokenRepository = refreshTokenRepository;
+        this.refreshExpiration = refreshExpiration;
+    }
+
+    @Override
+    @Transactional
+    public String issue(User user) {
+        return createToken(user, UUID.randomUUID().toString());
+    }
+
+    @Override
+    @Transactional(noRollbackFor = BadCredentialsException.class)
+    public Rotation rotate(String refreshToken) {
+        RefreshToken current = refreshTokenRepository.findWithUserByTokenHash(hash(refreshToken))
+                .orElseThrow(() -> new BadCredentialsException("Refresh token không hợp lệ"));
+        LocalDateTime now = LocalDateTime.now();
+
+        // Chỉ một request được đổi token; token đã dùng rồi mà còn bị gửi lại thì coi như bị lộ
+        if (current.getRevokedAt() != null || refreshTokenRepository.revokeIfActive(current.getId(), now) == 0) {
+            int revoked = refreshTokenRepository.revokeFamily(current.getFamilyId(), now);
+            log.warn("Refresh token đã bị dùng lại cho user ID {}, thu hồi {} token của phiên",
+                    current.getUser().getUserId(), revoked);
+            throw new BadCredentialsException("Refresh token đã bị thu hồi");
+        }
+
+        if (current.getExpiresAt().isBefore(now)) {
+            throw new BadCredentialsException("Refresh token đã hết hạn");
+        }
+
+        User user = current.getUser();
+        if (Boolean.TRUE.equals(user.getIsDeleted())) {
+            refreshTokenRepository.revokeFamily(current.getFamilyId(), now);
+            throw new BadCredentialsException("Tài khoản đã bị khóa");
+        }
+
+        return new Rotation(user, createToken(user, current.getFamilyId()));
+    }
+
+    @Override
+    @Transactional
+    public void revokeSession(String refreshToken) {
+        Optional<RefreshToken> token = refreshTokenRepository.findWithUserByTokenHash(hash(refreshToken));
+        if (token.isEmpty()) {
+            return;
+        }
+        int revoked = refreshTokenRepository.revokeFamily(token.get().getFamilyId(), LocalDateTime.now());
+        log.debug("Đã thu hồi {} refresh token của phiên {}", revoked, token.get().getFamilyId());
+    }
+
+    @Override
+    @Transactional
+    public void revokeAllForUser(Long userId) {
+        int revoked = refreshTokenRepository.revokeAllByUserId(userId, LocalDateTime.now());
+        if (revoked > 0) {
+            log.info("Đã thu hồi {} refresh token của user ID {}", revoked, userId);
+        }
+    }
+
+    @Override
+    public Long getRefreshExpirationTime() {
+        return refreshExpiration;
+    }
+
+    /**
+     * Dọn các refresh token đã hết hạn
+     */
+    @Scheduled(fixedDelayString = "${jwt.refresh-cleanup-interval-ms:3600000}")
+    @Transactional
+    public void deleteExpiredTokens() {
+        int deleted = refreshTokenRepository.deleteExpired(LocalDateTime.now());
+        if (deleted > 0) {
+            log.debug("Đã xóa {} refresh token hết hạn", deleted);
+        }
+    }
+
+    private String createToken(User user, String familyId) {
+        byte[] bytes = new byte[TOKEN_BYTES];
+        secureRandom.nextBytes(bytes);
+        String token = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+
+        RefreshToken refreshToken = new RefreshToken();
+        refreshToken.setTokenHash(hash(token));
+        refreshToken.setFamilyId(familyId);
+        refreshToken.setExpiresAt(LocalDateTime.now().plus(Duration.ofMillis(refreshExpiration)));
+        refreshToken.setUser(user);
+        refreshTokenRepository.save(refreshToken);
+        return token;
+    }
+
+    private static String hash(String token) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(token.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("Không hỗ trợ SHA-256", e);
+        }
+    }
+}
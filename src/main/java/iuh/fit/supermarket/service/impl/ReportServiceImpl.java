@@ -5,6 +5,7 @@ import iuh.fit.supermarket.entity.*;
 import iuh.fit.supermarket.repository.PromotionDetailRepository;
 import iuh.fit.supermarket.repository.ReturnInvoiceHeaderRepository;
 import iuh.fit.supermarket.repository.SaleInvoiceHeaderRepository;
+import iuh.fit.supermarket.service.PromotionUsageService;
 import iuh.fit.supermarket.service.ReportService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -29,6 +30,7 @@ public class ReportServiceImpl implements ReportService {
     private final SaleInvoiceHeaderRepository saleInvoiceHeaderRepository;
     private final ReturnInvoiceHeaderRepository returnInvoiceHeaderRepository;
     private final PromotionDetailRepository promotionDetailRepository;
+    private final PromotionUsageService promotionUsageService;
 
     @Override
     @Transactional(readOnly = true)
@@ -366,7 +368,7 @@ public class ReportServiceImpl implements ReportService {
 
             // Tính ngân sách và đã sử dụng
             Integer usageLimit = detail.getUsageLimit();
-            Integer usageCount = detail.getUsageCount() != null ? detail.getUsageCount() : 0;
+            Integer usageCount = promotionUsageService.getUsageCount(detail);
             Integer remainingCount = usageLimit != null ? usageLimit - usageCount : null;
 
             if (usageLimit != null) {
@@ -5,6 +5,7 @@ import iuh.fit.supermarket.entity.*;
 import iuh.fit.supermarket.enums.InvoiceStatus;
 import iuh.fit.supermarket.exception.InvalidSaleDataException;
 import iuh.fit.supermarket.repository.*;
+import iuh.fit.supermarket.service.LoyaltyService;
 import iuh.fit.supermarket.service.ReturnInvoiceService;
 import iuh.fit.supermarket.service.WarehouseService;
 import lombok.RequiredArgsConstructor;
@@ -34,6 +35,7 @@ public class ReturnInvoiceServiceImpl implements ReturnInvoiceService {
     private final ReturnInvoiceHeaderRepository returnInvoiceHeaderRepository;
     private final ReturnInvoiceDetailRepository returnInvoiceDetailRepository;
     private final WarehouseService warehouseService;
+    private final LoyaltyService loyaltyService;
 
     @Override
     @Transactional(readOnly = true)
@@ -137,6 +139,9 @@ public class ReturnInvoiceServiceImpl implements ReturnInvoiceService {
         invoiceHeaderRepository.save(invoice);
         log.info("Đã cập nhật trạng thái hóa đơn {} sang RETURNED", invoice.getInvoiceNumber());
 
+        // Thu hồi điểm đã tích từ hóa đơn
+        loyaltyService.reverseForReturn(returnHeader);
+
         log.info("Hoàn tất tạo phiếu trả. Số tiền hoàn: {}", refundAmount);
 
         return new CreateRefundResponse(
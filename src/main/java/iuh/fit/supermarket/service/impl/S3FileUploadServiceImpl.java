@@ -1,11 +1,11 @@
 package iuh.fit.supermarket.service.impl;
 
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import iuh.fit.supermarket.service.ObjectStorageService;
 import iuh.fit.supermarket.service.S3FileUploadService;
 import lombok.extern.slf4j.Slf4j;
-import software.amazon.awssdk.core.sync.RequestBody;
-import software.amazon.awssdk.services.s3.S3Client;
-import software.amazon.awssdk.services.s3.model.DeleteObjectRequest;
-import software.amazon.awssdk.services.s3.model.PutObjectRequest;
 
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.annotation.Value;
@@ -13,28 +13,28 @@ import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
-import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.Arrays;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Supplier;
 
 /**
  * Implementation cho S3FileUploadService
+ * Ghi file qua ObjectStorageService (bất đồng bộ), các phương thức đồng bộ chỉ chờ kết quả của bản async
  */
 @Service
 @Slf4j
 public class S3FileUploadServiceImpl implements S3FileUploadService {
 
-    private final S3Client s3Client;
-
-    @Value("${aws.bucketName}")
-    private String bucketName;
-
-    // Public URL để tạo link truy cập file (VD: https://pub-xxx.r2.dev)
-    @Value("${aws.publicUrl}")
-    private String publicUrl;
+    private final ObjectStorageService objectStorageService;
+    private final MeterRegistry meterRegistry;
+    private final DistributionSummary uploadSize;
 
     @Value("${product.image.max-size:5MB}")
     private String maxFileSize;
@@ -45,12 +45,18 @@ public class S3FileUploadServiceImpl implements S3FileUploadService {
     /**
      * Constructor với dependency injection
      */
-    public S3FileUploadServiceImpl(S3Client s3Client) {
-        this.s3Client = s3Client;
+    public S3FileUploadServiceImpl(ObjectStorageService objectStorageService, MeterRegistry meterRegistry) {
+        this.objectStorageService = objectStorageService;
+        this.meterRegistry = meterRegistry;
+        this.uploadSize = DistributionSummary.builder("storage.upload.size")
+                .description("Kích thước file upload lên kho lưu trữ")
+                .baseUnit("bytes")
+                .register(meterRegistry);
     }
 
     /**
      * Upload file lên S3 bucket và trả về URL
+     * File multipart được chuyển sang file tạm trước để SDK đọc theo luồng (và chia part nếu lớn)
      */
     @Override
     public String uploadFile(MultipartFile file, String folder) {
@@ -60,32 +66,22 @@ public class S3FileUploadServiceImpl implements S3FileUploadService {
             throw new IllegalArgumentException("File không hợp lệ");
         }
 
+        Path tempFile = null;
         try {
             String fileName = generateUniqueFileName(file.getOriginalFilename());
+            tempFile = Files.createTempFile("upload_", ".tmp");
+            file.transferTo(tempFile);
 
-            PutObjectRequest putObjectRequest = PutObjectRequest
-                    .builder()
-                    .bucket(bucketName)
-                    .key(fileName)
-                    .contentType(file.getContentType())
-                    .build();
-
-            // Upload file
-            s3Client.putObject(putObjectRequest, RequestBody.fromBytes(file.getBytes()));
-
-            // Tạo URL công khai cho Cloudflare R2
-            // Format: https://<endpoint>/<bucket>/<key>
-            String fileUrl = generateR2PublicUrl(fileName);
-
+            // Giữ key ở gốc bucket như trước để URL của ảnh đã upload không đổi
+            String fileUrl = await(uploadFileAsync(tempFile, fileName, file.getContentType(), null));
             log.info("Upload file thành công: {}", fileUrl);
             return fileUrl;
 
         } catch (IOException e) {
             log.error("Lỗi khi upload file: {}", e.getMessage(), e);
             throw new RuntimeException("Không thể upload file: " + e.getMessage());
-        } catch (Exception e) {
-            log.error("Lỗi S3 khi upload file: {}", e.getMessage(), e);
-            throw new RuntimeException("Lỗi S3: " + e.getMessage());
+        } finally {
+            deleteQuietly(tempFile);
         }
     }
 
@@ -96,28 +92,18 @@ public class S3FileUploadServiceImpl implements S3FileUploadService {
     public boolean deleteFile(String fileUrl) {
         log.info("Bắt đầu xóa file: {}", fileUrl);
 
-        try {
-            // Trích xuất key từ URL
-            String key = extractKeyFromUrl(fileUrl);
-            if (StringUtils.isEmpty(key)) {
-                log.warn("Không thể trích xuất key từ URL: {}", fileUrl);
-                return false;
-            }
-
-            // Tạo request xóa
-            DeleteObjectRequest deleteObjectRequest = DeleteObjectRequest.builder()
-                    .bucket(bucketName)
-                    .key(key)
-                    .build();
-
-            // Xóa file
-            s3Client.deleteObject(deleteObjectRequest);
+        String key = objectStorageService.keyFromUrl(fileUrl);
+        if (StringUtils.isEmpty(key)) {
+            log.warn("Không thể trích xuất key từ URL: {}", fileUrl);
+            return false;
+        }
 
+        try {
+            objectStorageService.delete(key).join();
             log.info("Xóa file thành công: {}", fileUrl);
             return true;
-
-        } catch (Exception e) {
-            log.error("Lỗi khi xóa file: {}", e.getMessage(), e);
+        } catch (CompletionException e) {
+            log.error("Lỗi khi xóa file: {}", unwrap(e).getMessage(), unwrap(e));
             return false;
         }
     }
@@ -179,40 +165,119 @@ public class S3FileUploadServiceImpl implements S3FileUploadService {
     }
 
     /**
-     * Trích xuất key từ S3 URL
+     * Upload byte array lên S3 bucket
+     */
+    @Override
+    public String uploadFile(byte[] fileBytes, String fileName, String contentType, String folder) {
+        return await(uploadFileAsync(fileBytes, fileName, contentType, folder));
+    }
+
+    /**
+     * Upload file trên đĩa lên S3 bucket
      */
-    private String extractKeyFromUrl(String fileUrl) {
+    @Override
+    public String uploadFile(Path file, String fileName, String contentType, String folder) {
+        return await(uploadFileAsync(file, fileName, contentType, folder));
+    }
+
+    @Override
+    public CompletableFuture<String> uploadFileAsync(byte[] fileBytes, String fileName, String contentType, String folder) {
+        if (fileBytes == null || fileBytes.length == 0) {
+            throw new IllegalArgumentException("File bytes không được rỗng");
+        }
+
+        String key = buildKey(folder, fileName);
+        return timedUpload(key, fileBytes.length,
+                () -> objectStorageService.put(key, fileBytes, contentType));
+    }
+
+    @Override
+    public CompletableFuture<String> uploadFileAsync(Path file, String fileName, String contentType, String folder) {
+        long size;
         try {
-            if (StringUtils.isEmpty(fileUrl)) {
-                return null;
-            }
+            size = Files.size(file);
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(new RuntimeException("Không thể đọc file: " + e.getMessage()));
+        }
 
-            // Format: https://bucket-name.s3.amazonaws.com/key
-            // hoặc: https://s3.amazonaws.com/bucket-name/key
-            URL url = new URL(fileUrl);
-            String path = url.getPath();
+        String key = buildKey(folder, fileName);
+        return timedUpload(key, size, () -> objectStorageService.put(key, file, contentType));
+    }
 
-            if (path.startsWith("/")) {
-                path = path.substring(1);
-            }
+    /**
+     * Tải file từ S3 bucket xuống đĩa
+     */
+    @Override
+    public void downloadFile(String fileUrl, Path target) {
+        String key = objectStorageService.keyFromUrl(fileUrl);
+        if (StringUtils.isEmpty(key)) {
+            throw new IllegalArgumentException("Không thể trích xuất key từ URL: " + fileUrl);
+        }
 
-            return path;
-        } catch (Exception e) {
-            log.error("Lỗi khi trích xuất key từ URL: {}", e.getMessage());
-            return null;
+        try {
+            objectStorageService.download(key, target).join();
+        } catch (CompletionException e) {
+            log.error("Lỗi S3 khi tải file {}: {}", fileUrl, unwrap(e).getMessage(), unwrap(e));
+            throw new RuntimeException("Lỗi S3: " + unwrap(e).getMessage());
         }
     }
 
+    private String buildKey(String folder, String fileName) {
+        return StringUtils.isEmpty(folder) ? fileName : folder + "/" + fileName;
+    }
+
     /**
-     * Tạo public URL cho Cloudflare R2
-     * 
-     * @param key Object key trong bucket
-     * @return Public URL để truy cập file
+     * Ghi nhận thời gian upload (từ lúc gọi đến khi object đã được ghi) theo kết quả, và kích thước file
      */
-    private String generateR2PublicUrl(String key) {
-        // Format: https://<r2-public-endpoint>/<key>
-        // Ví dụ: https://pub-xxx.r2.dev/product_image.png
-        return String.format("%s/%s", publicUrl, key);
+    private CompletableFuture<String> timedUpload(String key, long size, Supplier<CompletableFuture<Void>> upload) {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        CompletableFuture<Void> future;
+        try {
+            future = upload.get();
+        } catch (RuntimeException e) {
+            future = CompletableFuture.failedFuture(e);
+        }
+
+        return future.handle((result, error) -> {
+            sample.stop(Timer.builder("storage.upload")
+                    .description("Thời gian upload file lên kho lưu trữ")
+                    .tag("result", error == null ? "success" : "failure")
+                    .register(meterRegistry));
+            if (error != null) {
+                Throwable cause = unwrap(error);
+                log.error("Lỗi S3 khi upload {}: {}", key, cause.getMessage(), cause);
+                throw new CompletionException(new RuntimeException("Lỗi S3: " + cause.getMessage(), cause));
+            }
+
+            uploadSize.record(size);
+            String fileUrl = objectStorageService.publicUrl(key);
+            log.debug("Upload thành công: {} ({} bytes)", fileUrl, size);
+            return fileUrl;
+        });
+    }
+
+    private String await(CompletableFuture<String> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = unwrap(e);
+            throw cause instanceof RuntimeException runtime ? runtime : new RuntimeException("Lỗi S3: " + cause.getMessage(), cause);
+        }
+    }
+
+    private static Throwable unwrap(Throwable error) {
+        return error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+    }
+
+    private void deleteQuietly(Path file) {
+        if (file == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.warn("Không thể xóa file tạm {}: {}", file, e.getMessage());
+        }
     }
 
     /**
@@ -236,41 +301,4 @@ public class S3FileUploadServiceImpl implements S3FileUploadService {
             return Long.parseLong(maxSizeStr);
         }
     }
-
-    /**
-     * Upload byte array lên S3 bucket
-     */
-    @Override
-    public String uploadFile(byte[] fileBytes, String fileName, String contentType, String folder) {
-        log.info("Bắt đầu upload byte array với tên file: {} vào thư mục: {}", fileName, folder);
-
-        if (fileBytes == null || fileBytes.length == 0) {
-            throw new IllegalArgumentException("File bytes không được rỗng");
-        }
-
-        try {
-            // Tạo full path với folder nếu có
-            String fullKey = StringUtils.isEmpty(folder) ? fileName : folder + "/" + fileName;
-
-            PutObjectRequest putObjectRequest = PutObjectRequest
-                    .builder()
-                    .bucket(bucketName)
-                    .key(fullKey)
-                    .contentType(contentType)
-                    .build();
-
-            // Upload file
-            s3Client.putObject(putObjectRequest, RequestBody.fromBytes(fileBytes));
-
-            // Tạo URL công khai cho Cloudflare R2
-            String fileUrl = generateR2PublicUrl(fullKey);
-
-            log.info("Upload byte array thành công: {}", fileUrl);
-            return fileUrl;
-
-        } catch (Exception e) {
-            log.error("Lỗi S3 khi upload byte array: {}", e.getMessage(), e);
-            throw new RuntimeException("Lỗi S3: " + e.getMessage());
-        }
-    }
 }
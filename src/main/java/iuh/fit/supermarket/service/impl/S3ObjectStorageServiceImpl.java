@@ -0,0 +1,146 @@
+package iuh.fit.supermarket.service.impl;
+
+import iuh.fit.supermarket.service.ObjectStorageService;
+import lombok.extern.slf4j.Slf4j;
+import software.amazon.awssdk.core.async.AsyncRequestBody;
+import software.amazon.awssdk.core.async.AsyncResponseTransformer;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.model.DeleteObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Lưu trữ object trên Cloudflare R2 qua S3AsyncClient
+ * Số upload đang chạy bị giới hạn bởi semaphore: khi đầy, luồng gọi chờ tối đa acquire-timeout rồi nhận lỗi
+ * thay vì xếp hàng vô hạn request (và bộ đệm) trong client
+ */
+@Service
+@ConditionalOnProperty(name = "storage.type", havingValue = "s3", matchIfMissing = true)
+@Slf4j
+public class S3ObjectStorageServiceImpl implements ObjectStorageService {
+
+    private final S3AsyncClient s3AsyncClient;
+    private final String bucketName;
+    private final String publicUrl;
+    private final Semaphore uploadPermits;
+    private final Duration acquireTimeout;
+
+    public S3ObjectStorageServiceImpl(
+            S3AsyncClient s3AsyncClient,
+            @Value("${aws.bucketName}") String bucketName,
+            @Value("${aws.publicUrl}") String publicUrl,
+            @Value("${storage.max-in-flight-uploads:32}") int maxInFlightUploads,
+            @Value("${storage.upload-acquire-timeout:30s}") Duration acquireTimeout) {
+        this.s3AsyncClient = s3AsyncClient;
+        this.bucketName = bucketName;
+        this.publicUrl = StringUtils.removeEnd(publicUrl, "/");
+        this.uploadPermits = new Semaphore(maxInFlightUploads);
+        this.acquireTimeout = acquireTimeout;
+    }
+
+    @Override
+    public CompletableFuture<Void> put(String key, Path file, String contentType) {
+        // Đọc file theo từng phần khi gửi, file lớn được SDK chia part và upload song song
+        return withUploadPermit(() -> s3AsyncClient.putObject(putRequest(key, contentType), AsyncRequestBody.fromFile(file)));
+    }
+
+    @Override
+    public CompletableFuture<Void> put(String key, byte[] content, String contentType) {
+        return withUploadPermit(() -> s3AsyncClient.putObject(putRequest(key, contentType), AsyncRequestBody.fromBytes(content)));
+    }
+
+    @Override
+    public CompletableFuture<Void> download(String key, Path target) {
+        try {
+            // AsyncResponseTransformer.toFile yêu cầu file đích chưa tồn tại
+            Files.deleteIfExists(target);
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(new UncheckedIOException(e));
+        }
+
+        GetObjectRequest request = GetObjectRequest.builder()
+                .bucket(bucketName)
+                .key(key)
+                .build();
+        return s3AsyncClient.getObject(request, AsyncResponseTransformer.toFile(target))
+                .thenApply(response -> null);
+    }
+
+    @Override
+    public CompletableFuture<Void> delete(String key) {
+        DeleteObjectRequest request = DeleteObjectRequest.builder()
+                .bucket(bucketName)
+                .key(key)
+                .build();
+        return s3AsyncClient.deleteObject(request).thenApply(response -> null);
+    }
+
+    @Override
+    public String publicUrl(String key) {
+        // Format: https://<r2-public-endpoint>/<key>
+        return publicUrl + "/" + key;
+    }
+
+    @Override
+    public String keyFromUrl(String url) {
+        if (StringUtils.isEmpty(url)) {
+            return null;
+        }
+        try {
+            String path = URI.create(url).getPath();
+            return StringUtils.isEmpty(path) ? null : StringUtils.removeStart(path, "/");
+        } catch (IllegalArgumentException e) {
+            log.error("Lỗi khi trích xuất key từ URL: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    private PutObjectRequest putRequest(String key, String contentType) {
+        return PutObjectRequest.builder()
+                .bucket(bucketName)
+                .key(key)
+                .contentType(contentType)
+                .build();
+    }
+
+    /**
+     * Giữ một permit trong suốt thời gian upload, trả permit khi future hoàn thành
+     */
+    private CompletableFuture<Void> withUploadPermit(Supplier<CompletableFuture<?>> upload) {
+        try {
+            if (!uploadPermits.tryAcquire(acquireTimeout.toMillis(), TimeUnit.MILLISECONDS)) {
+                return CompletableFuture.failedFuture(
+                        new IllegalStateException("Quá nhiều upload đang chạy, vui lòng thử lại sau"));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return CompletableFuture.failedFuture(e);
+        }
+
+        CompletableFuture<?> future;
+        try {
+            future = upload.get();
+        } catch (RuntimeException e) {
+            uploadPermits.release();
+            return CompletableFuture.failedFuture(e);
+        }
+        return future.whenComplete((result, error) -> uploadPermits.release())
+                .thenApply(result -> null);
+    }
+}
@@ -0,0 +1,367 @@
+package iuh.fit.supermarket.service.impl;
+
+import iuh.fit.supermarket.dto.checkout.PromotionAppliedDTO;
+import iuh.fit.supermarket.dto.sale.*;
+import iuh.fit.supermarket.entity.*;
+import iuh.fit.supermarket.enums.BatchSaleResultStatus;
+import iuh.fit.supermarket.enums.InvoiceStatus;
+import iuh.fit.supermarket.enums.PaymentMethod;
+import iuh.fit.supermarket.event.InvoicePaidEvent;
+import iuh.fit.supermarket.exception.InvalidSaleDataException;
+import iuh.fit.supermarket.repository.*;
+import iuh.fit.supermarket.service.InvoiceService;
+import iuh.fit.supermarket.service.PromotionUsageService;
+import iuh.fit.supermarket.service.SaleBatchService;
+import iuh.fit.supermarket.service.WarehouseService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Implementation của SaleBatchService
+ * Đồng bộ bán hàng theo lô: tải trước dữ liệu tham chiếu cho cả lô,
+ * ghi hóa đơn theo nhóm trong một transaction và trả kết quả cho từng hóa đơn
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class SaleBatchServiceImpl implements SaleBatchService {
+
+    /**
+     * Số hóa đơn được ghi trong cùng một transaction
+     */
+    private static final int CHUNK_SIZE = 50;
+
+    private final EmployeeRepository employeeRepository;
+    private final CustomerRepository customerRepository;
+    private final ProductUnitRepository productUnitRepository;
+    private final SaleInvoiceHeaderRepository saleInvoiceHeaderRepository;
+    private final WarehouseService warehouseService;
+    private final InvoiceService invoiceService;
+    private final PromotionUsageService promotionUsageService;
+    private final TransactionTemplate transactionTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+
+    @Override
+    public BatchSaleResponseDTO createSalesBatch(BatchSaleRequestDTO request) {
+        List<BatchSaleEntryDTO> entries = request.sales();
+        log.info("Nhận lô {} hóa đơn từ máy POS: {}", entries.size(), request.terminalId());
+
+        BatchSaleResultDTO[] results = new BatchSaleResultDTO[entries.size()];
+
+        // 1. Loại các hóa đơn đã đồng bộ trước đó (một truy vấn cho cả lô)
+        Set<String> clientSaleIds = entries.stream()
+                .map(BatchSaleEntryDTO::clientSaleId)
+                .collect(Collectors.toSet());
+        Map<String, SaleInvoiceHeader> existingInvoices = saleInvoiceHeaderRepository
+                .findByClientSaleIdIn(clientSaleIds).stream()
+                .collect(Collectors.toMap(SaleInvoiceHeader::getClientSaleId, Function.identity()));
+
+        Map<String, Integer> firstIndexByKey = new HashMap<>();
+        List<Integer> repeatedIndexes = new ArrayList<>();
+        List<Integer> pendingIndexes = new ArrayList<>();
+
+        for (int i = 0; i < entries.size(); i++) {
+            String clientSaleId = entries.get(i).clientSaleId();
+            SaleInvoiceHeader existing = existingInvoices.get(clientSaleId);
+
+            if (existing != null) {
+                results[i] = duplicateResult(clientSaleId, existing);
+            } else if (firstIndexByKey.putIfAbsent(clientSaleId, i) != null) {
+                repeatedIndexes.add(i);
+            } else {
+                pendingIndexes.add(i);
+            }
+        }
+
+        // 2. Tải trước nhân viên, khách hàng, đơn vị sản phẩm cho cả lô
+        BatchContext context = loadContext(entries, pendingIndexes);
+
+        // 3. Ghi theo nhóm, nhóm lỗi thì xử lý lại từng hóa đơn để cô lập lỗi
+        for (int from = 0; from < pendingIndexes.size(); from += CHUNK_SIZE) {
+            List<Integer> chunk = pendingIndexes.subList(from, Math.min(from + CHUNK_SIZE, pendingIndexes.size()));
+
+            try {
+                List<BatchSaleResultDTO> chunkResults = transactionTemplate.execute(
+                        status -> applyChunk(entries, chunk, context));
+                for (int i = 0; i < chunk.size(); i++) {
+                    results[chunk.get(i)] = chunkResults.get(i);
+                }
+            } catch (RuntimeException e) {
+                log.warn("Nhóm {} hóa đơn bị lỗi ({}), xử lý lại từng hóa đơn", chunk.size(), e.getMessage());
+                for (Integer index : chunk) {
+                    results[index] = applySingle(entries.get(index), context);
+                }
+            }
+        }
+
+        // 4. Hóa đơn gửi trùng trong cùng lô dùng kết quả của lần xuất hiện đầu tiên
+        for (Integer index : repeatedIndexes) {
+            String clientSaleId = entries.get(index).clientSaleId();
+            BatchSaleResultDTO first = results[firstIndexByKey.get(clientSaleId)];
+            results[index] = first.status() == BatchSaleResultStatus.CREATED
+                    ? new BatchSaleResultDTO(clientSaleId, BatchSaleResultStatus.DUPLICATE, first.invoiceId(),
+                            first.invoiceNumber(), first.totalAmount(), "Hóa đơn bị gửi trùng trong cùng lô")
+                    : first;
+        }
+
+        List<BatchSaleResultDTO> resultList = Arrays.asList(results);
+        int created = countByStatus(resultList, BatchSaleResultStatus.CREATED);
+        int duplicated = countByStatus(resultList, BatchSaleResultStatus.DUPLICATE);
+        int failed = countByStatus(resultList, BatchSaleResultStatus.FAILED);
+
+        log.info("Hoàn thành lô từ máy POS {}: tạo mới {}, trùng {}, lỗi {}",
+                request.terminalId(), created, duplicated, failed);
+
+        return new BatchSaleResponseDTO(entries.size(), created, duplicated, failed, resultList);
+    }
+
+    /**
+     * Xử lý lại một hóa đơn trong transaction riêng sau khi nhóm chứa nó bị lỗi
+     */
+    private BatchSaleResultDTO applySingle(BatchSaleEntryDTO entry, BatchContext context) {
+        try {
+            return transactionTemplate.execute(status -> applyChunk(List.of(entry), List.of(0), context)).get(0);
+        } catch (RuntimeException e) {
+            // Máy POS khác (hoặc lần gửi lại song song) có thể đã ghi cùng khóa idempotency
+            Optional<SaleInvoiceHeader> existing = saleInvoiceHeaderRepository.findByClientSaleId(entry.clientSaleId());
+            if (existing.isPresent()) {
+                return duplicateResult(entry.clientSaleId(), existing.get());
+            }
+
+            log.warn("Không thể ghi nhận hóa đơn {}: {}", entry.clientSaleId(), e.getMessage());
+            return new BatchSaleResultDTO(entry.clientSaleId(), BatchSaleResultStatus.FAILED,
+                    null, null, null, e.getMessage());
+        }
+    }
+
+    /**
+     * Ghi một nhóm hóa đơn trong transaction hiện tại
+     * Lượt sử dụng khuyến mãi được cộng dồn cho cả nhóm và cập nhật một lần ở cuối
+     */
+    private List<BatchSaleResultDTO> applyChunk(List<BatchSaleEntryDTO> entries, List<Integer> indexes,
+            BatchContext context) {
+        Map<Long, Integer> promotionUsage = new HashMap<>();
+        List<BatchSaleResultDTO> chunkResults = new ArrayList<>(indexes.size());
+
+        for (Integer index : indexes) {
+            chunkResults.add(applySale(entries.get(index), context, promotionUsage));
+        }
+
+        applyPromotionUsage(promotionUsage);
+        return chunkResults;
+    }
+
+    /**
+     * Tạo hóa đơn PAID, chi tiết, khuyến mãi đã áp dụng và trừ kho cho một hóa đơn trong lô
+     */
+    private BatchSaleResultDTO applySale(BatchSaleEntryDTO entry, BatchContext context,
+            Map<Long, Integer> promotionUsage) {
+        CreateSaleRequestDTO sale = entry.sale();
+
+        if (sale.paymentMethod() != PaymentMethod.CASH) {
+            throw new InvalidSaleDataException("Đồng bộ theo lô chỉ hỗ trợ hóa đơn thanh toán tiền mặt");
+        }
+
+        Employee employee = context.employees().get(sale.employeeId());
+        if (employee == null) {
+            throw new InvalidSaleDataException("Không tìm thấy nhân viên với ID: " + sale.employeeId());
+        }
+
+        Customer customer = null;
+        if (sale.customerId() != null) {
+            customer = context.customers().get(sale.customerId());
+            if (customer == null) {
+                throw new InvalidSaleDataException("Không tìm thấy khách hàng với ID: " + sale.customerId());
+            }
+        }
+
+        // Tính toán tổng tiền
+        BigDecimal subtotal = BigDecimal.ZERO;
+        BigDecimal lineItemDiscount = BigDecimal.ZERO;
+
+        for (SaleItemRequestDTO item : sale.items()) {
+            BigDecimal itemSubtotal = item.unitPrice().multiply(BigDecimal.valueOf(item.quantity()));
+            subtotal = subtotal.add(itemSubtotal);
+            lineItemDiscount = lineItemDiscount.add(itemSubtotal.subtract(item.lineTotal()));
+        }
+
+        BigDecimal orderDiscount = BigDecimal.ZERO;
+        if (sale.appliedOrderPromotions() != null) {
+            for (var orderPromotion : sale.appliedOrderPromotions()) {
+                orderDiscount = orderDiscount.add(orderPromotion.discountValue());
+            }
+        }
+
+        BigDecimal totalDiscount = lineItemDiscount.add(orderDiscount);
+        BigDecimal totalAmount = subtotal.subtract(totalDiscount);
+
+        // Ngày bán lấy theo máy POS nếu hợp lệ (hóa đơn bán lúc mất kết nối)
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime invoiceDate = entry.soldAt() != null && !entry.soldAt().isAfter(now) ? entry.soldAt() : now;
+        String invoiceNumber = generateInvoiceNumber(context.usedInvoiceNumbers());
+
+        SaleInvoiceHeader invoice = new SaleInvoiceHeader();
+        invoice.setInvoiceNumber(invoiceNumber);
+        invoice.setClientSaleId(entry.clientSaleId());
+        invoice.setInvoiceDate(invoiceDate);
+        invoice.setSubtotal(subtotal);
+        invoice.setTotalDiscount(totalDiscount);
+        invoice.setTotalTax(BigDecimal.ZERO);
+        invoice.setTotalAmount(totalAmount);
+        invoice.setStatus(InvoiceStatus.PAID);
+        invoice.setPaymentMethod(PaymentMethod.CASH);
+        invoice.setPaidAmount(totalAmount);
+        invoice.setCustomer(customer);
+        invoice.setEmployee(employee);
+
+        // Chi tiết hóa đơn được lưu cùng header qua cascade
+        List<SaleInvoiceDetail> invoiceDetails = new ArrayList<>(sale.items().size());
+        Map<Integer, PromotionAppliedDTO> itemPromotionsByIndex = new HashMap<>();
+        Set<Long> usedPromotionDetailIds = new HashSet<>();
+
+        for (int i = 0; i < sale.items().size(); i++) {
+            SaleItemRequestDTO item = sale.items().get(i);
+
+            ProductUnit productUnit = context.productUnits().get(item.productUnitId());
+            if (productUnit == null || !Boolean.TRUE.equals(productUnit.getIsActive())
+                    || Boolean.TRUE.equals(productUnit.getIsDeleted())) {
+                throw new InvalidSaleDataException(
+                        "Không tìm thấy đơn vị sản phẩm với ID: " + item.productUnitId());
+            }
+
+            BigDecimal itemSubtotal = item.unitPrice().multiply(BigDecimal.valueOf(item.quantity()));
+
+            SaleInvoiceDetail invoiceDetail = new SaleInvoiceDetail();
+            invoiceDetail.setInvoice(invoice);
+            invoiceDetail.setProductUnit(productUnit);
+            invoiceDetail.setQuantity(item.quantity());
+            invoiceDetail.setUnitPrice(item.unitPrice());
+            invoiceDetail.setDiscountAmount(itemSubtotal.subtract(item.lineTotal()));
+            invoiceDetail.setLineTotal(item.lineTotal());
+            invoiceDetail.setTaxAmount(BigDecimal.ZERO);
+            invoiceDetail.setLineTotalWithTax(item.lineTotal());
+            invoiceDetails.add(invoiceDetail);
+
+            if (item.promotionApplied() != null) {
+                itemPromotionsByIndex.put(i, item.promotionApplied());
+                if (item.promotionApplied().promotionDetailId() != null) {
+                    usedPromotionDetailIds.add(item.promotionApplied().promotionDetailId());
+                }
+            }
+        }
+        invoice.setInvoiceDetails(invoiceDetails);
+
+        if (sale.appliedOrderPromotions() != null) {
+            for (var orderPromotion : sale.appliedOrderPromotions()) {
+                if (orderPromotion.promotionDetailId() != null) {
+                    usedPromotionDetailIds.add(orderPromotion.promotionDetailId());
+                }
+            }
+        }
+
+        invoice = saleInvoiceHeaderRepository.save(invoice);
+
+        invoiceService.saveAppliedPromotions(invoice, invoiceDetails, sale.appliedOrderPromotions(),
+                itemPromotionsByIndex);
+
+        for (SaleInvoiceDetail detail : invoiceDetails) {
+            warehouseService.stockOut(
+                    detail.getProductUnit().getId(),
+                    detail.getQuantity(),
+                    invoiceNumber,
+                    "Bán hàng thanh toán tiền mặt (đồng bộ POS) - Invoice: " + invoiceNumber);
+        }
+
+        // Mỗi hóa đơn chỉ tính một lượt cho mỗi khuyến mãi
+        usedPromotionDetailIds.forEach(detailId -> promotionUsage.merge(detailId, 1, Integer::sum));
+
+        // Chỉ được xử lý nếu transaction của nhóm commit
+        eventPublisher.publishEvent(new InvoicePaidEvent(invoice.getInvoiceId()));
+
+        return new BatchSaleResultDTO(entry.clientSaleId(), BatchSaleResultStatus.CREATED,
+                invoice.getInvoiceId(), invoiceNumber, totalAmount, null);
+    }
+
+    /**
+     * Cập nhật lượt sử dụng khuyến mãi đã cộng dồn cho một nhóm hóa đơn
+     * (tăng nguyên tử, kiểm tra usageLimit trong cùng câu lệnh)
+     *
+     * @throws InvalidSaleDataException nếu khuyến mãi không đủ lượt sử dụng cho cả nhóm
+     */
+    private void applyPromotionUsage(Map<Long, Integer> promotionUsage) {
+        List<Long> rejectedDetailIds = promotionUsageService.consume(promotionUsage);
+        if (!rejectedDetailIds.isEmpty()) {
+            throw new InvalidSaleDataException(
+                    "Khuyến mãi đã hết lượt sử dụng (ID: " + rejectedDetailIds + ")");
+        }
+    }
+
+    /**
+     * Tải trước nhân viên, khách hàng, đơn vị sản phẩm được tham chiếu trong lô
+     */
+    private BatchContext loadContext(List<BatchSaleEntryDTO> entries, List<Integer> pendingIndexes) {
+        Set<Integer> employeeIds = new HashSet<>();
+        Set<Integer> customerIds = new HashSet<>();
+        Set<Long> productUnitIds = new HashSet<>();
+
+        for (Integer index : pendingIndexes) {
+            CreateSaleRequestDTO sale = entries.get(index).sale();
+            employeeIds.add(sale.employeeId());
+            if (sale.customerId() != null) {
+                customerIds.add(sale.customerId());
+            }
+            sale.items().forEach(item -> productUnitIds.add(item.productUnitId()));
+        }
+
+        Map<Integer, Employee> employees = employeeRepository.findAllById(employeeIds).stream()
+                .collect(Collectors.toMap(Employee::getEmployeeId, Function.identity()));
+        Map<Integer, Customer> customers = customerRepository.findAllById(customerIds).stream()
+                .collect(Collectors.toMap(Customer::getCustomerId, Function.identity()));
+        Map<Long, ProductUnit> productUnits = productUnitRepository.findAllById(productUnitIds).stream()
+                .collect(Collectors.toMap(ProductUnit::getId, Function.identity()));
+
+        return new BatchContext(employees, customers, productUnits, new HashSet<>());
+    }
+
+    private BatchSaleResultDTO duplicateResult(String clientSaleId, SaleInvoiceHeader invoice) {
+        return new BatchSaleResultDTO(clientSaleId, BatchSaleResultStatus.DUPLICATE, invoice.getInvoiceId(),
+                invoice.getInvoiceNumber(), invoice.getTotalAmount(), "Hóa đơn đã được đồng bộ trước đó");
+    }
+
+    private int countByStatus(List<BatchSaleResultDTO> results, BatchSaleResultStatus status) {
+        return (int) results.stream().filter(result -> result.status() == status).count();
+    }
+
+    /**
+     * Tạo mã hóa đơn tự động, không trùng với các mã đã sinh trong cùng lô
+     */
+    private String generateInvoiceNumber(Set<String> usedInvoiceNumbers) {
+        String timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMddHHmmss"));
+        String invoiceNumber;
+        do {
+            invoiceNumber = "INV" + timestamp + String.format("%04d", new Random().nextInt(10000));
+        } while (!usedInvoiceNumbers.add(invoiceNumber));
+        return invoiceNumber;
+    }
+
+    /**
+     * Dữ liệu tham chiếu đã tải trước cho một lô
+     */
+    private record BatchContext(
+            Map<Integer, Employee> employees,
+            Map<Integer, Customer> customers,
+            Map<Long, ProductUnit> productUnits,
+            Set<String> usedInvoiceNumbers
+    ) {
+    }
+}
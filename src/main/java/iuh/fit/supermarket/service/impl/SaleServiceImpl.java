@@ -1,21 +1,28 @@
 package iuh.fit.supermarket.service.impl;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import iuh.fit.supermarket.dto.checkout.PromotionAppliedDTO;
 import iuh.fit.supermarket.dto.sale.*;
 import iuh.fit.supermarket.entity.*;
 import iuh.fit.supermarket.enums.InvoiceStatus;
 import iuh.fit.supermarket.enums.PaymentMethod;
+import iuh.fit.supermarket.event.InvoicePaidEvent;
 import iuh.fit.supermarket.exception.InsufficientStockException;
 import iuh.fit.supermarket.exception.InvalidSaleDataException;
 import iuh.fit.supermarket.exception.NotFoundException;
 import iuh.fit.supermarket.repository.*;
+import iuh.fit.supermarket.service.InvoiceHtmlService;
 import iuh.fit.supermarket.service.InvoiceService;
-import iuh.fit.supermarket.service.InvoicePdfService;
+import iuh.fit.supermarket.service.InvoicePdfCacheService;
 import iuh.fit.supermarket.service.PaymentService;
+import iuh.fit.supermarket.service.PromotionUsageService;
 import iuh.fit.supermarket.service.SaleService;
 import iuh.fit.supermarket.service.WarehouseService;
+import iuh.fit.supermarket.util.TimedOperation;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
@@ -23,16 +30,14 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import vn.payos.model.v2.paymentRequests.CreatePaymentLinkResponse;
 
-import java.io.InputStream;
+import java.io.IOException;
+import java.io.Writer;
 import java.math.BigDecimal;
-import java.nio.charset.StandardCharsets;
-import java.text.NumberFormat;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
-import java.util.Locale;
 import java.util.Map;
 import java.util.stream.Collectors;
 
@@ -52,12 +57,28 @@ public class SaleServiceImpl implements SaleService {
     private final WarehouseService warehouseService;
     private final PaymentService paymentService;
     private final InvoiceService invoiceService;
-    private final InvoicePdfService invoicePdfService;
+    private final InvoicePdfCacheService invoicePdfCacheService;
+    private final InvoiceHtmlService invoiceHtmlService;
+    private final ApplicationEventPublisher eventPublisher;
     private final PromotionDetailRepository promotionDetailRepository;
+    private final PromotionUsageService promotionUsageService;
+    private final MeterRegistry meterRegistry;
 
+    /**
+     * Tạo bán hàng tại quầy, thời gian được ghi vào timer sale.create theo phương thức thanh toán và kết quả
+     * Kết quả thành công chỉ được ghi khi transaction commit, để lỗi lúc flush/commit không bị tính là success
+     */
     @Override
     @Transactional
     public CreateSaleResponseDTO createSale(CreateSaleRequestDTO request) {
+        return TimedOperation.recordThroughCommit(meterRegistry,
+                Timer.builder("sale.create")
+                        .description("Thời gian tạo bán hàng tại quầy")
+                        .tag("paymentMethod", String.valueOf(request.paymentMethod())),
+                () -> processSale(request));
+    }
+
+    private CreateSaleResponseDTO processSale(CreateSaleRequestDTO request) {
         log.info("Bắt đầu tạo bán hàng cho nhân viên ID: {}", request.employeeId());
 
         // Validate nhân viên và khách hàng
@@ -125,6 +146,9 @@ public class SaleServiceImpl implements SaleService {
 
         invoice = saleInvoiceHeaderRepository.save(invoice);
         log.info("Đã tạo invoice {} với trạng thái: {}", invoiceNumber, invoice.getStatus());
+        if (isCashPayment) {
+            eventPublisher.publishEvent(new InvoicePaidEvent(invoice.getInvoiceId()));
+        }
 
         // Tạo Invoice Details
         List<SaleInvoiceDetail> invoiceDetails = new ArrayList<>();
@@ -439,9 +463,12 @@ public class SaleServiceImpl implements SaleService {
     public byte[] generateInvoicePdf(Integer invoiceId) {
         log.info("Tạo PDF cho hóa đơn ID: {}", invoiceId);
 
-        SaleInvoiceFullDTO invoice = getInvoiceDetail(invoiceId);
+        // Chỉ tải đầy đủ hóa đơn khi cache chưa có PDF cho phiên bản hiện tại
+        String version = saleInvoiceHeaderRepository.findUpdatedAtByInvoiceId(invoiceId)
+                .map(LocalDateTime::toString)
+                .orElse("");
 
-        return invoicePdfService.generateInvoicePdf(invoice);
+        return invoicePdfCacheService.getOrRender(invoiceId, version, () -> getInvoiceDetail(invoiceId));
     }
 
     @Override
@@ -449,95 +476,17 @@ public class SaleServiceImpl implements SaleService {
     public String generateInvoiceHtml(Integer invoiceId) {
         log.info("Tạo HTML để in cho hóa đơn ID: {}", invoiceId);
 
-        SaleInvoiceFullDTO invoice = getInvoiceDetail(invoiceId);
-
-        try {
-            // Load template
-            InputStream templateStream = getClass().getResourceAsStream("/templates/invoice-print-template.html");
-            if (templateStream == null) {
-                throw new RuntimeException("Không tìm thấy template hóa đơn");
-            }
-
-            String template = new String(templateStream.readAllBytes(), StandardCharsets.UTF_8);
-
-            // Format currency
-            NumberFormat currencyFormatter = NumberFormat.getCurrencyInstance(new Locale("vi", "VN"));
-            DateTimeFormatter dateFormatter = DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm:ss");
-
-            // Build items rows HTML
-            StringBuilder itemsRows = new StringBuilder();
-            int index = 1;
-            for (var item : invoice.items()) {
-                itemsRows.append("<tr>")
-                        .append("<td class=\"center\">").append(index++).append("</td>")
-                        .append("<td>").append(item.productName()).append("</td>")
-                        .append("<td class=\"center\">").append(item.unit()).append("</td>")
-                        .append("<td class=\"center\">").append(item.quantity()).append("</td>")
-                        .append("<td class=\"right\">").append(currencyFormatter.format(item.unitPrice()))
-                        .append("</td>")
-                        .append("<td class=\"right\">").append(currencyFormatter.format(item.lineTotal()))
-                        .append("</td>")
-                        .append("</tr>");
-
-                // Add promotions if any
-                if (item.appliedPromotions() != null && !item.appliedPromotions().isEmpty()) {
-                    itemsRows.append("<tr class=\"promotion-row\">")
-                            .append("<td colspan=\"6\" style=\"padding-left: 30px;\">");
-
-                    for (var promo : item.appliedPromotions()) {
-                        itemsRows.append("→ ").append(promo.promotionSummary())
-                                .append(" (-").append(currencyFormatter.format(promo.discountValue())).append(") ");
-                    }
-
-                    itemsRows.append("</td></tr>");
-                }
-            }
-
-            // Build order promotions HTML
-            String orderPromotionsHtml = "";
-            if (invoice.appliedOrderPromotions() != null && !invoice.appliedOrderPromotions().isEmpty()) {
-                StringBuilder promotions = new StringBuilder();
-                promotions.append("<div class=\"order-promotions\">")
-                        .append("<h4>KHUYẾN MÃI ĐƠN HÀNG</h4>")
-                        .append("<ul>");
-
-                for (var promo : invoice.appliedOrderPromotions()) {
-                    promotions.append("<li>• ").append(promo.promotionSummary())
-                            .append(": -").append(currencyFormatter.format(promo.discountValue()))
-                            .append("</li>");
-                }
+        return invoiceHtmlService.generateInvoiceHtml(getInvoiceDetail(invoiceId));
+    }
 
-                promotions.append("</ul></div>");
-                orderPromotionsHtml = promotions.toString();
-            }
+    @Override
+    @Transactional(readOnly = true)
+    public void writeInvoiceHtml(Integer invoiceId, Writer writer) throws IOException {
+        log.info("Tạo HTML để in cho hóa đơn ID: {}", invoiceId);
 
-            // Calculate remaining
-            BigDecimal remaining = invoice.totalAmount().subtract(invoice.paidAmount());
-
-            // Replace placeholders
-            String html = template
-                    .replace("{{invoiceNumber}}", invoice.invoiceNumber())
-                    .replace("{{invoiceDate}}", invoice.invoiceDate().format(dateFormatter))
-                    .replace("{{status}}", getStatusText(invoice.status()))
-                    .replace("{{paymentMethod}}", getPaymentMethodText(invoice.paymentMethod()))
-                    .replace("{{customerName}}", invoice.customerName() != null ? invoice.customerName() : "Khách lẻ")
-                    .replace("{{employeeName}}", invoice.employeeName())
-                    .replace("{{itemsRows}}", itemsRows.toString())
-                    .replace("{{orderPromotions}}", orderPromotionsHtml)
-                    .replace("{{subtotal}}", currencyFormatter.format(invoice.subtotal()))
-                    .replace("{{totalDiscount}}", currencyFormatter.format(invoice.totalDiscount()))
-                    .replace("{{totalTax}}", currencyFormatter.format(invoice.totalTax()))
-                    .replace("{{totalAmount}}", currencyFormatter.format(invoice.totalAmount()))
-                    .replace("{{paidAmount}}", currencyFormatter.format(invoice.paidAmount()))
-                    .replace("{{remaining}}", currencyFormatter.format(remaining))
-                    .replace("{{printTime}}", LocalDateTime.now().format(dateFormatter));
-
-            return html;
-
-        } catch (Exception e) {
-            log.error("Lỗi khi tạo HTML hóa đơn: {}", e.getMessage(), e);
-            throw new RuntimeException("Không thể tạo HTML hóa đơn", e);
-        }
+        // Tải dữ liệu trước khi ghi để lỗi (không tìm thấy hóa đơn...) vẫn trả về response lỗi bình thường
+        SaleInvoiceFullDTO invoice = getInvoiceDetail(invoiceId);
+        invoiceHtmlService.writeInvoiceHtml(invoice, writer);
     }
 
     @Override
@@ -619,14 +568,6 @@ public class SaleServiceImpl implements SaleService {
         return convertToSaleInvoiceFullDTO(invoice);
     }
 
-    private String getStatusText(InvoiceStatus status) {
-        return switch (status) {
-            case UNPAID -> "Chưa thanh toán";
-            case PAID -> "Đã thanh toán";
-            default -> status.name();
-        };
-    }
-
     /**
      * Validate các khuyến mãi trong request còn sử dụng được không
      * Kiểm tra usageLimit trước khi áp dụng
@@ -662,7 +603,7 @@ public class SaleServiceImpl implements SaleService {
                         String.format("Khuyến mãi '%s' đã hết lượt sử dụng (giới hạn: %d, đã dùng: %d)",
                             promotionName,
                             detail.getUsageLimit(),
-                            detail.getUsageCount()));
+                            promotionUsageService.getUsageCount(detail)));
                 }
 
                 checkedPromotionIds.add(promotionDetailId);
@@ -691,7 +632,7 @@ public class SaleServiceImpl implements SaleService {
                             String.format("Khuyến mãi '%s' đã hết lượt sử dụng (giới hạn: %d, đã dùng: %d)",
                                 promotionName,
                                 detail.getUsageLimit(),
-                                detail.getUsageCount()));
+                                promotionUsageService.getUsageCount(detail)));
                     }
 
                     checkedPromotionIds.add(promotionDetailId);
@@ -709,14 +650,7 @@ public class SaleServiceImpl implements SaleService {
      * @return true nếu còn có thể sử dụng, false nếu đã hết lượt
      */
     private boolean canUsePromotion(PromotionDetail detail) {
-        // Nếu không có giới hạn (usageLimit = null), luôn có thể sử dụng
-        if (detail.getUsageLimit() == null) {
-            return true;
-        }
-
-        // Nếu có giới hạn, kiểm tra usageCount < usageLimit
-        Integer usageCount = detail.getUsageCount() != null ? detail.getUsageCount() : 0;
-        return usageCount < detail.getUsageLimit();
+        return promotionUsageService.canUse(detail);
     }
 
     /**
@@ -728,47 +662,31 @@ public class SaleServiceImpl implements SaleService {
     private void updatePromotionUsageCount(CreateSaleRequestDTO request, String invoiceNumber) {
         log.info("Cập nhật usage count cho các khuyến mãi của invoice {}", invoiceNumber);
 
-        java.util.Set<Long> processedDetailIds = new java.util.HashSet<>();
+        java.util.Set<Long> processedDetailIds = new java.util.LinkedHashSet<>();
 
-        // Cập nhật usageCount cho khuyến mãi từ items
+        // Khuyến mãi từ items
         for (SaleItemRequestDTO item : request.items()) {
-            if (item.promotionApplied() != null &&
-                item.promotionApplied().promotionDetailId() != null &&
-                !processedDetailIds.contains(item.promotionApplied().promotionDetailId())) {
-
-                promotionDetailRepository.findById(item.promotionApplied().promotionDetailId())
-                    .ifPresent(detail -> {
-                        Integer currentCount = detail.getUsageCount() != null ? detail.getUsageCount() : 0;
-                        detail.setUsageCount(currentCount + 1);
-                        promotionDetailRepository.save(detail);
-                        log.debug("Đã cập nhật usageCount cho promotion detail ID: {} ({}->{})",
-                            detail.getDetailId(), currentCount, currentCount + 1);
-                    });
-
+            if (item.promotionApplied() != null && item.promotionApplied().promotionDetailId() != null) {
                 processedDetailIds.add(item.promotionApplied().promotionDetailId());
             }
         }
 
-        // Cập nhật usageCount cho khuyến mãi đơn hàng
+        // Khuyến mãi đơn hàng
         if (request.appliedOrderPromotions() != null) {
             for (var orderPromotion : request.appliedOrderPromotions()) {
-                if (orderPromotion.promotionDetailId() != null &&
-                    !processedDetailIds.contains(orderPromotion.promotionDetailId())) {
-
-                    promotionDetailRepository.findById(orderPromotion.promotionDetailId())
-                        .ifPresent(detail -> {
-                            Integer currentCount = detail.getUsageCount() != null ? detail.getUsageCount() : 0;
-                            detail.setUsageCount(currentCount + 1);
-                            promotionDetailRepository.save(detail);
-                            log.debug("Đã cập nhật usageCount cho order promotion detail ID: {} ({}->{})",
-                                detail.getDetailId(), currentCount, currentCount + 1);
-                        });
-
+                if (orderPromotion.promotionDetailId() != null) {
                     processedDetailIds.add(orderPromotion.promotionDetailId());
                 }
             }
         }
 
+        // Tăng nguyên tử và kiểm tra usageLimit trong cùng câu lệnh, hết lượt thì rollback hóa đơn
+        List<Long> rejectedDetailIds = promotionUsageService.consume(processedDetailIds);
+        if (!rejectedDetailIds.isEmpty()) {
+            throw new InvalidSaleDataException(
+                    "Khuyến mãi đã hết lượt sử dụng, vui lòng kiểm tra lại (ID: " + rejectedDetailIds + ")");
+        }
+
         log.info("Hoàn thành cập nhật usage count cho {} promotion details", processedDetailIds.size());
     }
 
@@ -796,6 +714,7 @@ public class SaleServiceImpl implements SaleService {
         invoice.setStatus(InvoiceStatus.PAID);
         invoice.setPaidAmount(invoice.getTotalAmount());
         saleInvoiceHeaderRepository.save(invoice);
+        eventPublisher.publishEvent(new InvoicePaidEvent(invoice.getInvoiceId()));
         log.info("Đã cập nhật invoice {} sang PAID", invoice.getInvoiceNumber());
 
         // Trừ kho cho các sản phẩm trong invoice
@@ -825,58 +744,39 @@ public class SaleServiceImpl implements SaleService {
      */
     private void updatePromotionUsageCountForInvoice(SaleInvoiceHeader invoice) {
         log.info("Cập nhật usage count cho các khuyến mãi của invoice {}", invoice.getInvoiceNumber());
-        java.util.Set<Long> processedDetailIds = new java.util.HashSet<>();
+        java.util.Set<Long> processedDetailIds = new java.util.LinkedHashSet<>();
 
-        // 1. Cập nhật usageCount cho khuyến mãi từ items
+        // 1. Khuyến mãi từ items
         if (invoice.getInvoiceDetails() != null) {
             for (SaleInvoiceDetail detail : invoice.getInvoiceDetails()) {
                 List<AppliedPromotion> appliedPromotions = appliedPromotionRepository
                         .findByInvoiceDetail_InvoiceDetailId(detail.getInvoiceDetailId());
                 
                 for (AppliedPromotion ap : appliedPromotions) {
-                    if (ap.getPromotionDetailId() != null && !processedDetailIds.contains(ap.getPromotionDetailId())) {
-                        promotionDetailRepository.findById(ap.getPromotionDetailId()).ifPresent(pDetail -> {
-                            Integer currentCount = pDetail.getUsageCount() != null ? pDetail.getUsageCount() : 0;
-                            pDetail.setUsageCount(currentCount + 1);
-                            promotionDetailRepository.save(pDetail);
-                            log.debug("Đã cập nhật usageCount cho promotion detail ID: {} ({}->{})",
-                                    pDetail.getDetailId(), currentCount, currentCount + 1);
-                        });
+                    if (ap.getPromotionDetailId() != null) {
                         processedDetailIds.add(ap.getPromotionDetailId());
                     }
                 }
             }
         }
 
-        // 2. Cập nhật usageCount cho khuyến mãi đơn hàng
+        // 2. Khuyến mãi đơn hàng
         List<AppliedOrderPromotion> orderPromotions = appliedOrderPromotionRepository
                 .findByInvoice_InvoiceId(invoice.getInvoiceId());
         
         for (AppliedOrderPromotion aop : orderPromotions) {
-            if (aop.getPromotionDetailId() != null && !processedDetailIds.contains(aop.getPromotionDetailId())) {
-                promotionDetailRepository.findById(aop.getPromotionDetailId()).ifPresent(pDetail -> {
-                    Integer currentCount = pDetail.getUsageCount() != null ? pDetail.getUsageCount() : 0;
-                    pDetail.setUsageCount(currentCount + 1);
-                    promotionDetailRepository.save(pDetail);
-                    log.debug("Đã cập nhật usageCount cho order promotion detail ID: {} ({}->{})",
-                            pDetail.getDetailId(), currentCount, currentCount + 1);
-                });
+            if (aop.getPromotionDetailId() != null) {
                 processedDetailIds.add(aop.getPromotionDetailId());
             }
         }
+
+        // Khách đã thanh toán nên không hủy hóa đơn, chỉ ghi nhận khuyến mãi vượt giới hạn
+        List<Long> rejectedDetailIds = promotionUsageService.consume(processedDetailIds);
+        if (!rejectedDetailIds.isEmpty()) {
+            log.warn("Invoice {} dùng khuyến mãi đã hết lượt: {}", invoice.getInvoiceNumber(), rejectedDetailIds);
+        }
         
         log.info("Hoàn thành cập nhật usage count cho {} promotion details (từ webhook)", processedDetailIds.size());
     }
 
-    private String getPaymentMethodText(PaymentMethod method) {
-        if (method == null) {
-            return "Không xác định";
-        }
-        return switch (method) {
-            case CASH -> "Tiền mặt";
-            case CARD -> "Thẻ";
-            case ONLINE -> "Chuyển khoản";
-            default -> method.name();
-        };
-    }
 }
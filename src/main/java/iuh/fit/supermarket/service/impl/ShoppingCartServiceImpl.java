@@ -12,78 +12,127 @@ import iuh.fit.supermarket.dto.price.PriceDetailDto;
 import iuh.fit.supermarket.entity.CartItem;
 import iuh.fit.supermarket.entity.Customer;
 import iuh.fit.supermarket.entity.ProductUnit;
+import iuh.fit.supermarket.entity.ProductUnitImage;
 import iuh.fit.supermarket.entity.ShoppingCart;
+import iuh.fit.supermarket.entity.Warehouse;
 import iuh.fit.supermarket.repository.CartItemRepository;
 import iuh.fit.supermarket.repository.CustomerRepository;
+import iuh.fit.supermarket.repository.ProductUnitImageRepository;
 import iuh.fit.supermarket.repository.ProductUnitRepository;
 import iuh.fit.supermarket.repository.ShoppingCartRepository;
 import iuh.fit.supermarket.repository.WarehouseRepository;
 import iuh.fit.supermarket.service.PriceService;
 import iuh.fit.supermarket.service.PromotionCheckService;
 import iuh.fit.supermarket.service.ShoppingCartService;
-import lombok.RequiredArgsConstructor;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 /**
  * Implementation của ShoppingCartService
+ * Giỏ hàng của mỗi khách hàng được giữ trong bộ nhớ dưới dạng aggregate có số phiên bản:
+ * thao tác thêm/sửa/xóa chỉ đổi aggregate và tăng phiên bản, các dòng thay đổi được ghi xuống
+ * cart_items theo lịch (write-behind). Kết quả tính khuyến mãi được cache theo phiên bản và chỉ
+ * một luồng tính lại cho mỗi giỏ, nên nhiều thao tác dồn dập chỉ dẫn đến một lần tính
  */
 @Service
 @Slf4j
-@RequiredArgsConstructor
-@Transactional
 public class ShoppingCartServiceImpl implements ShoppingCartService {
 
         private final ShoppingCartRepository shoppingCartRepository;
         private final CartItemRepository cartItemRepository;
         private final ProductUnitRepository productUnitRepository;
+        private final ProductUnitImageRepository productUnitImageRepository;
         private final CustomerRepository customerRepository;
         private final PriceService priceService;
         private final WarehouseRepository warehouseRepository;
         private final PromotionCheckService promotionCheckService;
+        private final TransactionTemplate transactionTemplate;
+        private final long pricedTtlMillis;
+        private final long idleTtlMillis;
+        private final int maxCachedCarts;
+
+        /**
+         * Giỏ hàng đang được giữ trong bộ nhớ, theo ID khách hàng
+         */
+        private final Map<Integer, CartAggregate> carts = new ConcurrentHashMap<>();
+
+        public ShoppingCartServiceImpl(ShoppingCartRepository shoppingCartRepository,
+                        CartItemRepository cartItemRepository,
+                        ProductUnitRepository productUnitRepository,
+                        ProductUnitImageRepository productUnitImageRepository,
+                        CustomerRepository customerRepository,
+                        PriceService priceService,
+                        WarehouseRepository warehouseRepository,
+                        PromotionCheckService promotionCheckService,
+                        TransactionTemplate transactionTemplate,
+                        @Value("${cart.cache.priced-ttl-ms:5000}") long pricedTtlMillis,
+                        @Value("${cart.cache.idle-ttl-ms:1800000}") long idleTtlMillis,
+                        @Value("${cart.cache.max-size:10000}") int maxCachedCarts) {
+                this.shoppingCartRepository = shoppingCartRepository;
+                this.cartItemRepository = cartItemRepository;
+                this.productUnitRepository = productUnitRepository;
+                this.productUnitImageRepository = productUnitImageRepository;
+                this.customerRepository = customerRepository;
+                this.priceService = priceService;
+                this.warehouseRepository = warehouseRepository;
+                this.promotionCheckService = promotionCheckService;
+                this.transactionTemplate = transactionTemplate;
+                this.pricedTtlMillis = pricedTtlMillis;
+                this.idleTtlMillis = idleTtlMillis;
+                this.maxCachedCarts = maxCachedCarts;
+        }
 
         /**
          * Lấy giỏ hàng của khách hàng
          */
         @Override
-        @Transactional
         public CartResponse getCart(Integer customerId) {
                 log.info("Lấy giỏ hàng cho khách hàng ID: {}", customerId);
 
                 // Tìm hoặc tạo giỏ hàng cho khách hàng
-                ShoppingCart cart = shoppingCartRepository.findByCustomerId(customerId)
-                                .orElseGet(() -> createCartForCustomer(customerId));
-
-                return buildCartResponse(cart);
+                return priceCart(aggregateFor(customerId, true));
         }
 
         /**
          * Thêm sản phẩm vào giỏ hàng
          */
         @Override
-        @Transactional
         public CartResponse addItemToCart(Integer customerId, AddCartItemRequest request) {
                 log.info("Thêm sản phẩm vào giỏ hàng - Customer ID: {}, Product Unit ID: {}, Quantity: {}",
                                 customerId, request.productUnitId(), request.quantity());
 
-                // Kiểm tra product unit có tồn tại không
-                ProductUnit productUnit = productUnitRepository.findById(request.productUnitId())
-                                .orElseThrow(() -> new RuntimeException(
-                                                "Không tìm thấy product unit với ID: " + request.productUnitId()));
+                // Kiểm tra product unit và lấy hình ảnh chính trong cùng một transaction đọc
+                String imageUrl = transactionTemplate.execute(status -> {
+                        ProductUnit productUnit = productUnitRepository.findById(request.productUnitId())
+                                        .orElseThrow(() -> new RuntimeException(
+                                                        "Không tìm thấy product unit với ID: " + request.productUnitId()));
 
-                // Kiểm tra product unit có active không
-                if (!productUnit.getIsActive() || productUnit.getIsDeleted()) {
-                        throw new RuntimeException("Sản phẩm này không còn khả dụng");
-                }
+                        // Kiểm tra product unit có active không
+                        if (!productUnit.getIsActive() || productUnit.getIsDeleted()) {
+                                throw new RuntimeException("Sản phẩm này không còn khả dụng");
+                        }
+                        return primaryImageUrl(productUnit);
+                });
 
                 // Lấy giá hiện tại (chỉ lấy từ bảng giá ACTIVE có startDate <= now và endDate > now)
                 PriceDetailDto currentPrice = priceService.getCurrentPriceByProductUnitId(request.productUnitId());
@@ -102,132 +151,228 @@ public class ShoppingCartServiceImpl implements ShoppingCartService {
                         throw new RuntimeException("Sản phẩm này hiện đã hết hàng");
                 }
 
-                // Tìm hoặc tạo giỏ hàng
-                ShoppingCart cart = shoppingCartRepository.findByCustomerId(customerId)
-                                .orElseGet(() -> createCartForCustomer(customerId));
-
-                // Kiểm tra xem item đã có trong giỏ chưa
-                cartItemRepository.findByCartIdAndProductUnitId(cart.getCartId(), request.productUnitId())
-                                .ifPresentOrElse(
-                                                // Nếu đã có thì cập nhật số lượng
-                                                existingItem -> {
-                                                        int newTotalQuantity = existingItem.getQuantity()
-                                                                        + request.quantity();
-
-                                                        // Kiểm tra số lượng tồn kho
-                                                        if (newTotalQuantity > stockQuantity) {
-                                                                throw new RuntimeException(
-                                                                                "Không thể thêm vào giỏ hàng. Số lượng yêu cầu ("
-                                                                                                + newTotalQuantity
-                                                                                                + ") vượt quá số lượng tồn kho ("
-                                                                                                + stockQuantity + ")");
-                                                        }
-
-                                                        existingItem.setQuantity(newTotalQuantity);
-                                                        cartItemRepository.save(existingItem);
-                                                        log.info("Cập nhật số lượng item trong giỏ hàng");
-                                                },
-                                                // Nếu chưa có thì thêm mới
-                                                () -> {
-                                                        // Kiểm tra số lượng tồn kho
-                                                        if (request.quantity() > stockQuantity) {
-                                                                throw new RuntimeException(
-                                                                                "Không thể thêm vào giỏ hàng. Số lượng yêu cầu ("
-                                                                                                + request.quantity()
-                                                                                                + ") vượt quá số lượng tồn kho ("
-                                                                                                + stockQuantity + ")");
-                                                        }
-
-                                                        CartItem newItem = new CartItem();
-                                                        newItem.setCart(cart);
-                                                        newItem.setProductUnit(productUnit);
-                                                        newItem.setQuantity(request.quantity());
-                                                        newItem.setUnitPrice(currentPrice.getSalePrice().doubleValue());
-                                                        cartItemRepository.save(newItem);
-                                                        log.info("Thêm item mới vào giỏ hàng");
-                                                });
-
-                return buildCartResponse(cart);
+                LocalDateTime now = LocalDateTime.now();
+                CartAggregate cart = mutate(customerId, true, aggregate -> {
+                        CartLine existingLine = aggregate.lines.get(request.productUnitId());
+                        int newTotalQuantity = existingLine != null
+                                        ? existingLine.quantity + request.quantity()
+                                        : request.quantity();
+
+                        // Kiểm tra số lượng tồn kho
+                        if (newTotalQuantity > stockQuantity) {
+                                throw new RuntimeException(
+                                                "Không thể thêm vào giỏ hàng. Số lượng yêu cầu ("
+                                                                + newTotalQuantity
+                                                                + ") vượt quá số lượng tồn kho ("
+                                                                + stockQuantity + ")");
+                        }
+
+                        if (existingLine != null) {
+                                // Nếu đã có thì cập nhật số lượng
+                                existingLine.quantity = newTotalQuantity;
+                                existingLine.updatedAt = now;
+                                log.info("Cập nhật số lượng item trong giỏ hàng");
+                        } else {
+                                // Nếu chưa có thì thêm mới
+                                aggregate.lines.put(request.productUnitId(), new CartLine(
+                                                request.productUnitId(),
+                                                newTotalQuantity,
+                                                currentPrice.getSalePrice().doubleValue(),
+                                                imageUrl,
+                                                now));
+                                log.info("Thêm item mới vào giỏ hàng");
+                        }
+                        aggregate.markChanged(request.productUnitId(), now);
+                });
+
+                return priceCart(cart);
         }
 
         /**
          * Cập nhật số lượng sản phẩm trong giỏ hàng
          */
         @Override
-        @Transactional
         public CartResponse updateCartItem(Integer customerId, Long productUnitId, UpdateCartItemRequest request) {
                 log.info("Cập nhật item trong giỏ hàng - Customer ID: {}, Product Unit ID: {}, New Quantity: {}",
                                 customerId, productUnitId, request.quantity());
 
-                // Tìm giỏ hàng
-                ShoppingCart cart = shoppingCartRepository.findByCustomerId(customerId)
-                                .orElseThrow(() -> new RuntimeException("Không tìm thấy giỏ hàng"));
-
-                // Tìm cart item
-                CartItem cartItem = cartItemRepository.findByCartIdAndProductUnitId(cart.getCartId(), productUnitId)
-                                .orElseThrow(() -> new RuntimeException("Không tìm thấy sản phẩm trong giỏ hàng"));
-
                 // Lấy số lượng tồn kho
                 Integer stockQuantity = warehouseRepository.findByProductUnitId(productUnitId)
                                 .map(warehouse -> warehouse.getQuantityOnHand())
                                 .orElse(0);
 
-                // Kiểm tra sản phẩm còn hàng không
-                if (stockQuantity <= 0) {
-                        throw new RuntimeException("Sản phẩm này hiện đã hết hàng");
-                }
+                LocalDateTime now = LocalDateTime.now();
+                CartAggregate cart = mutate(customerId, false, aggregate -> {
+                        // Tìm cart item
+                        CartLine line = aggregate.lines.get(productUnitId);
+                        if (line == null) {
+                                throw new RuntimeException("Không tìm thấy sản phẩm trong giỏ hàng");
+                        }
 
-                // Kiểm tra số lượng tồn kho
-                if (request.quantity() > stockQuantity) {
-                        throw new RuntimeException(
-                                        "Không thể cập nhật số lượng. Số lượng yêu cầu ("
-                                                        + request.quantity()
-                                                        + ") vượt quá số lượng tồn kho ("
-                                                        + stockQuantity + ")");
-                }
+                        // Kiểm tra sản phẩm còn hàng không
+                        if (stockQuantity <= 0) {
+                                throw new RuntimeException("Sản phẩm này hiện đã hết hàng");
+                        }
 
-                // Cập nhật số lượng
-                cartItem.setQuantity(request.quantity());
-                cartItemRepository.save(cartItem);
+                        // Kiểm tra số lượng tồn kho
+                        if (request.quantity() > stockQuantity) {
+                                throw new RuntimeException(
+                                                "Không thể cập nhật số lượng. Số lượng yêu cầu ("
+                                                                + request.quantity()
+                                                                + ") vượt quá số lượng tồn kho ("
+                                                                + stockQuantity + ")");
+                        }
+
+                        // Cập nhật số lượng
+                        line.quantity = request.quantity();
+                        line.updatedAt = now;
+                        aggregate.markChanged(productUnitId, now);
+                });
 
                 log.info("Cập nhật số lượng thành công");
-                return buildCartResponse(cart);
+                return priceCart(cart);
         }
 
         /**
          * Xóa sản phẩm khỏi giỏ hàng
          */
         @Override
-        @Transactional
         public CartResponse removeItemFromCart(Integer customerId, Long productUnitId) {
                 log.info("Xóa item khỏi giỏ hàng - Customer ID: {}, Product Unit ID: {}", customerId, productUnitId);
 
-                // Tìm giỏ hàng
-                ShoppingCart cart = shoppingCartRepository.findByCustomerId(customerId)
-                                .orElseThrow(() -> new RuntimeException("Không tìm thấy giỏ hàng"));
-
-                // Xóa item
-                cartItemRepository.deleteByCartIdAndProductUnitId(cart.getCartId(), productUnitId);
+                LocalDateTime now = LocalDateTime.now();
+                CartAggregate cart = mutate(customerId, false, aggregate -> {
+                        if (aggregate.lines.remove(productUnitId) != null) {
+                                aggregate.markChanged(productUnitId, now);
+                        }
+                });
 
                 log.info("Xóa item thành công");
-                return buildCartResponse(cart);
+                return priceCart(cart);
         }
 
         /**
          * Xóa toàn bộ giỏ hàng
          */
         @Override
-        @Transactional
         public void clearCart(Integer customerId) {
                 log.info("Xóa toàn bộ giỏ hàng - Customer ID: {}", customerId);
 
-                ShoppingCart cart = shoppingCartRepository.findByCustomerId(customerId)
-                                .orElseThrow(() -> new RuntimeException("Không tìm thấy giỏ hàng"));
-
-                cartItemRepository.deleteByCartId(cart.getCartId());
+                LocalDateTime now = LocalDateTime.now();
+                mutate(customerId, false, aggregate -> {
+                        for (Long productUnitId : new ArrayList<>(aggregate.lines.keySet())) {
+                                aggregate.lines.remove(productUnitId);
+                                aggregate.markChanged(productUnitId, now);
+                        }
+                });
                 log.info("Xóa toàn bộ giỏ hàng thành công");
         }
 
+        @Override
+        public void flushCart(Integer customerId) {
+                CartAggregate aggregate = carts.get(customerId);
+                if (aggregate != null) {
+                        flush(aggregate);
+                }
+        }
+
+        @Override
+        public void evictCart(Integer customerId) {
+                if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+                        discard(customerId);
+                        return;
+                }
+
+                TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                        @Override
+                        public void afterCommit() {
+                                discard(customerId);
+                        }
+                });
+        }
+
+        /**
+         * Ghi các dòng giỏ hàng đã thay đổi xuống DB và bỏ các giỏ không dùng khỏi bộ nhớ
+         */
+        @Scheduled(fixedDelayString = "${cart.write-behind.flush-interval-ms:1000}")
+        public void flushPendingChanges() {
+                for (CartAggregate aggregate : carts.values()) {
+                        try {
+                                flush(aggregate);
+                        } catch (RuntimeException e) {
+                                log.error("Lỗi khi ghi giỏ hàng ID {} xuống DB: {}", aggregate.cartId, e.getMessage());
+                        }
+                }
+                evictIdleCarts();
+        }
+
+        /**
+         * Ghi nốt các thay đổi giỏ hàng còn trong bộ nhớ khi tắt ứng dụng
+         */
+        @PreDestroy
+        public void flushOnShutdown() {
+                flushPendingChanges();
+        }
+
+        /**
+         * Áp dụng một thay đổi lên aggregate của khách hàng
+         * Nếu aggregate vừa bị bỏ khỏi bộ nhớ thì tải lại từ DB và áp dụng lên bản mới
+         */
+        private CartAggregate mutate(Integer customerId, boolean createIfMissing, Consumer<CartAggregate> change) {
+                while (true) {
+                        CartAggregate aggregate = aggregateFor(customerId, createIfMissing);
+                        synchronized (aggregate) {
+                                if (!aggregate.evicted) {
+                                        change.accept(aggregate);
+                                        return aggregate;
+                                }
+                        }
+                }
+        }
+
+        /**
+         * Lấy aggregate giỏ hàng trong bộ nhớ, tải từ DB nếu chưa có
+         */
+        private CartAggregate aggregateFor(Integer customerId, boolean createIfMissing) {
+                CartAggregate aggregate = carts.get(customerId);
+                if (aggregate == null) {
+                        CartAggregate loaded = transactionTemplate
+                                        .execute(status -> loadAggregate(customerId, createIfMissing));
+                        aggregate = carts.putIfAbsent(customerId, loaded);
+                        if (aggregate == null) {
+                                aggregate = loaded;
+                        }
+                }
+                aggregate.lastAccessMillis = System.currentTimeMillis();
+                return aggregate;
+        }
+
+        private CartAggregate loadAggregate(Integer customerId, boolean createIfMissing) {
+                ShoppingCart cart = createIfMissing
+                                ? shoppingCartRepository.findByCustomerId(customerId)
+                                                .orElseGet(() -> createCartForCustomer(customerId))
+                                : shoppingCartRepository.findByCustomerId(customerId)
+                                                .orElseThrow(() -> new RuntimeException("Không tìm thấy giỏ hàng"));
+
+                CartAggregate aggregate = new CartAggregate(cart.getCartId(), customerId, cart.getCreatedAt(),
+                                cart.getUpdatedAt());
+                List<CartItem> items = cartItemRepository.findByCartId(cart.getCartId());
+                Map<Long, String> imageMap = primaryImageUrls(items.stream()
+                                .map(item -> item.getProductUnit().getId())
+                                .collect(Collectors.toSet()));
+                for (CartItem item : items) {
+                        CartLine line = new CartLine(
+                                        item.getProductUnit().getId(),
+                                        item.getQuantity(),
+                                        item.getUnitPrice(),
+                                        imageMap.get(item.getProductUnit().getId()),
+                                        item.getCreatedAt());
+                        line.updatedAt = item.getUpdatedAt();
+                        aggregate.lines.put(line.productUnitId, line);
+                }
+                return aggregate;
+        }
+
         /**
          * Tạo giỏ hàng mới cho khách hàng
          */
@@ -244,16 +389,37 @@ public class ShoppingCartServiceImpl implements ShoppingCartService {
         }
 
         /**
-         * Build CartResponse từ ShoppingCart entity với khuyến mãi
+         * Trả về kết quả tính khuyến mãi của giỏ hàng, chỉ tính lại khi giỏ đã đổi phiên bản
+         * hoặc kết quả cũ quá hạn (giá, khuyến mãi và tồn kho có thể đổi bên ngoài giỏ)
+         * Các luồng cùng chờ một giỏ dùng lại kết quả của lần tính đang chạy thay vì tính lại
          */
-        private CartResponse buildCartResponse(ShoppingCart cart) {
-                List<CartItem> cartItems = cartItemRepository.findByCartId(cart.getCartId());
+        private CartResponse priceCart(CartAggregate aggregate) {
+                synchronized (aggregate.pricingLock) {
+                        CartSnapshot snapshot = aggregate.snapshot();
+                        PricedCart priced = aggregate.priced;
+                        if (priced != null && priced.version() == snapshot.version()
+                                        && System.currentTimeMillis() - priced.pricedAtMillis() < pricedTtlMillis) {
+                                return priced.response();
+                        }
 
+                        CartResponse response = transactionTemplate.execute(status -> buildCartResponse(snapshot));
+                        aggregate.priced = new PricedCart(snapshot.version(), System.currentTimeMillis(), response);
+                        return response;
+                }
+        }
+
+        /**
+         * Build CartResponse từ bản chụp giỏ hàng với khuyến mãi
+         * Số truy vấn không phụ thuộc số dòng: product unit, giá (kể cả quà tặng), từng loại khuyến mãi
+         * (giảm giá sản phẩm, mua X tặng Y, giảm giá đơn hàng), tồn kho của mọi dòng
+         * và hình ảnh quà tặng mỗi loại một truy vấn
+         */
+        private CartResponse buildCartResponse(CartSnapshot cart) {
                 // Nếu giỏ hàng trống, trả về response rỗng
-                if (cartItems.isEmpty()) {
+                if (cart.lines().isEmpty()) {
                         return new CartResponse(
-                                        cart.getCartId(),
-                                        cart.getCustomer() != null ? cart.getCustomer().getCustomerId() : null,
+                                        cart.cartId(),
+                                        cart.customerId(),
                                         new ArrayList<>(),
                                         0,
                                         0.0,
@@ -261,15 +427,13 @@ public class ShoppingCartServiceImpl implements ShoppingCartService {
                                         0.0,
                                         0.0,
                                         new ArrayList<>(),
-                                        cart.getCreatedAt(),
-                                        cart.getUpdatedAt());
+                                        cart.createdAt(),
+                                        cart.updatedAt());
                 }
 
                 // Tạo request để kiểm tra khuyến mãi
-                List<CartItemRequestDTO> requestItems = cartItems.stream()
-                                .map(item -> new CartItemRequestDTO(
-                                                item.getProductUnit().getId(),
-                                                item.getQuantity()))
+                List<CartItemRequestDTO> requestItems = cart.lines().stream()
+                                .map(line -> new CartItemRequestDTO(line.productUnitId(), line.quantity()))
                                 .collect(Collectors.toList());
 
                 CheckPromotionRequestDTO promotionRequest = new CheckPromotionRequestDTO(requestItems);
@@ -278,15 +442,26 @@ public class ShoppingCartServiceImpl implements ShoppingCartService {
                 CheckPromotionResponseDTO promotionResponse = promotionCheckService
                                 .checkAndApplyPromotions(promotionRequest);
 
-                // Tạo map để lookup thông tin bổ sung (hình ảnh, tồn kho, thời gian)
-                Map<Long, CartItem> cartItemMap = cartItems.stream()
-                                .collect(Collectors.toMap(
-                                                item -> item.getProductUnit().getId(),
-                                                item -> item));
+                // Tạo map để lookup thông tin bổ sung (hình ảnh, thời gian)
+                Map<Long, LineSnapshot> lineMap = cart.lines().stream()
+                                .collect(Collectors.toMap(LineSnapshot::productUnitId, line -> line));
+
+                // Tồn kho của tất cả dòng (kể cả quà tặng) trong một truy vấn
+                Set<Long> productUnitIds = promotionResponse.items().stream()
+                                .map(CartItemResponseDTO::productUnitId)
+                                .collect(Collectors.toSet());
+                Map<Long, Integer> stockMap = warehouseRepository.findByProductUnitIdIn(productUnitIds).stream()
+                                .collect(Collectors.toMap(w -> w.getProductUnit().getId(), Warehouse::getQuantityOnHand,
+                                                (first, second) -> first));
+
+                // Quà tặng không có trong giỏ, lấy hình ảnh chính của tất cả quà tặng trong một truy vấn
+                Set<Long> giftIds = new HashSet<>(productUnitIds);
+                giftIds.removeAll(lineMap.keySet());
+                Map<Long, String> giftImageMap = primaryImageUrls(giftIds);
 
                 // Convert CartItemResponseDTO sang CartItemResponse với thông tin bổ sung
                 List<CartItemResponse> itemResponses = promotionResponse.items().stream()
-                                .map(promoItem -> convertToCartItemResponse(promoItem, cartItemMap))
+                                .map(promoItem -> convertToCartItemResponse(promoItem, lineMap, stockMap, giftImageMap))
                                 .collect(Collectors.toList());
 
                 // Tính tổng số lượng (chỉ tính sản phẩm mua, không tính quà tặng)
@@ -297,8 +472,8 @@ public class ShoppingCartServiceImpl implements ShoppingCartService {
                                 .sum();
 
                 return new CartResponse(
-                                cart.getCartId(),
-                                cart.getCustomer() != null ? cart.getCustomer().getCustomerId() : null,
+                                cart.cartId(),
+                                cart.customerId(),
                                 itemResponses,
                                 totalItems,
                                 promotionResponse.summary().subTotal().doubleValue(),
@@ -306,8 +481,8 @@ public class ShoppingCartServiceImpl implements ShoppingCartService {
                                 promotionResponse.summary().orderDiscount().doubleValue(),
                                 promotionResponse.summary().totalPayable().doubleValue(),
                                 promotionResponse.appliedOrderPromotions(),
-                                cart.getCreatedAt(),
-                                cart.getUpdatedAt());
+                                cart.createdAt(),
+                                cart.updatedAt());
         }
 
         /**
@@ -315,57 +490,23 @@ public class ShoppingCartServiceImpl implements ShoppingCartService {
          */
         private CartItemResponse convertToCartItemResponse(
                         CartItemResponseDTO promoItem,
-                        Map<Long, CartItem> cartItemMap) {
+                        Map<Long, LineSnapshot> lineMap,
+                        Map<Long, Integer> stockMap,
+                        Map<Long, String> giftImageMap) {
 
-                CartItem cartItem = cartItemMap.get(promoItem.productUnitId());
+                LineSnapshot line = lineMap.get(promoItem.productUnitId());
 
-                String imageUrl = null;
-                Integer stockQuantity = 0;
+                String imageUrl;
                 LocalDateTime createdAt = null;
                 LocalDateTime updatedAt = null;
 
-                if (cartItem != null) {
-                        ProductUnit productUnit = cartItem.getProductUnit();
-
-                        // Lấy hình ảnh chính
-                        imageUrl = productUnit.getProductUnitImages() != null
-                                        && !productUnit.getProductUnitImages().isEmpty()
-                                                        ? productUnit.getProductUnitImages().stream()
-                                                                        .filter(img -> Boolean.TRUE
-                                                                                        .equals(img.getIsPrimary()))
-                                                                        .findFirst()
-                                                                        .map(img -> img.getProductImage().getImageUrl())
-                                                                        .orElse(null)
-                                                        : null;
-
-                        // Lấy số lượng tồn kho
-                        stockQuantity = warehouseRepository.findByProductUnitId(productUnit.getId())
-                                        .map(warehouse -> warehouse.getQuantityOnHand())
-                                        .orElse(0);
-
-                        createdAt = cartItem.getCreatedAt();
-                        updatedAt = cartItem.getUpdatedAt();
+                if (line != null) {
+                        imageUrl = line.imageUrl();
+                        createdAt = line.createdAt();
+                        updatedAt = line.updatedAt();
                 } else {
-                        // Đây là quà tặng, lấy thông tin từ product unit
-                        ProductUnit giftProductUnit = productUnitRepository.findById(promoItem.productUnitId())
-                                        .orElse(null);
-
-                        if (giftProductUnit != null) {
-                                imageUrl = giftProductUnit.getProductUnitImages() != null
-                                                && !giftProductUnit.getProductUnitImages().isEmpty()
-                                                                ? giftProductUnit.getProductUnitImages().stream()
-                                                                                .filter(img -> Boolean.TRUE
-                                                                                                .equals(img.getIsPrimary()))
-                                                                                .findFirst()
-                                                                                .map(img -> img.getProductImage()
-                                                                                                .getImageUrl())
-                                                                                .orElse(null)
-                                                                : null;
-
-                                stockQuantity = warehouseRepository.findByProductUnitId(giftProductUnit.getId())
-                                                .map(warehouse -> warehouse.getQuantityOnHand())
-                                                .orElse(0);
-                        }
+                        // Đây là quà tặng
+                        imageUrl = giftImageMap.get(promoItem.productUnitId());
                 }
 
                 return new CartItemResponse(
@@ -378,11 +519,275 @@ public class ShoppingCartServiceImpl implements ShoppingCartService {
                                 promoItem.unitPrice().multiply(BigDecimal.valueOf(promoItem.quantity())).doubleValue(),
                                 promoItem.lineTotal().doubleValue(),
                                 imageUrl,
-                                stockQuantity,
+                                stockMap.getOrDefault(promoItem.productUnitId(), 0),
                                 promoItem.hasPromotion() != null ? promoItem.hasPromotion() : false,
                                 promoItem.promotionApplied(),
                                 createdAt,
                                 updatedAt);
         }
 
+        /**
+         * Lấy URL hình ảnh chính của product unit
+         */
+        private String primaryImageUrl(ProductUnit productUnit) {
+                if (productUnit.getProductUnitImages() == null || productUnit.getProductUnitImages().isEmpty()) {
+                        return null;
+                }
+                return productUnit.getProductUnitImages().stream()
+                                .filter(img -> Boolean.TRUE.equals(img.getIsPrimary()))
+                                .findFirst()
+                                .map(img -> img.getProductImage().thumbnailOrOriginalUrl())
+                                .orElse(null);
+        }
+
+        /**
+         * Lấy URL hình ảnh chính của nhiều product unit trong một truy vấn
+         */
+        private Map<Long, String> primaryImageUrls(Set<Long> productUnitIds) {
+                Map<Long, String> imageMap = new HashMap<>();
+                if (productUnitIds.isEmpty()) {
+                        return imageMap;
+                }
+                for (ProductUnitImage image : productUnitImageRepository
+                                .findPrimaryImagesByProductUnitIds(productUnitIds)) {
+                        imageMap.putIfAbsent(image.getProductUnit().getId(), image.getProductImage().thumbnailOrOriginalUrl());
+                }
+                return imageMap;
+        }
+
+        /**
+         * Ghi các dòng đã thay đổi của một giỏ xuống DB
+         * Nếu đang trong transaction (ví dụ checkout) thì ghi trong transaction đó và chỉ coi là đã ghi
+         * khi transaction commit; ghi lỗi hoặc rollback thì các dòng được đánh dấu lại để lần sau ghi tiếp
+         */
+        private void flush(CartAggregate aggregate) {
+                // Không cho hai lần ghi cùng giỏ chạy song song (lịch định kỳ và checkout)
+                synchronized (aggregate.flushLock) {
+                        PendingChanges changes = aggregate.drainChanges();
+                        if (changes == null) {
+                                return;
+                        }
+
+                        try {
+                                transactionTemplate.executeWithoutResult(status -> applyChanges(changes));
+                        } catch (RuntimeException e) {
+                                aggregate.completeFlush(changes, false);
+                                throw e;
+                        }
+
+                        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+                                aggregate.completeFlush(changes, true);
+                                return;
+                        }
+
+                        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                                @Override
+                                public void afterCompletion(int status) {
+                                        aggregate.completeFlush(changes, status == STATUS_COMMITTED);
+                                }
+                        });
+                }
+        }
+
+        private void applyChanges(PendingChanges changes) {
+                Integer cartId = changes.cartId();
+                for (Long productUnitId : changes.removedIds()) {
+                        cartItemRepository.deleteByCartIdAndProductUnitId(cartId, productUnitId);
+                }
+
+                if (!changes.upserts().isEmpty()) {
+                        Map<Long, CartItem> existingItems = cartItemRepository.findByCartId(cartId).stream()
+                                        .collect(Collectors.toMap(item -> item.getProductUnit().getId(), item -> item));
+                        ShoppingCart cart = shoppingCartRepository.getReferenceById(cartId);
+
+                        List<CartItem> items = new ArrayList<>(changes.upserts().size());
+                        for (LineSnapshot line : changes.upserts()) {
+                                CartItem item = existingItems.get(line.productUnitId());
+                                if (item == null) {
+                                        item = new CartItem();
+                                        item.setCart(cart);
+                                        item.setProductUnit(productUnitRepository.getReferenceById(line.productUnitId()));
+                                }
+                                item.setQuantity(line.quantity());
+                                item.setUnitPrice(line.unitPrice());
+                                items.add(item);
+                        }
+                        cartItemRepository.saveAll(items);
+                }
+
+                log.debug("Đã ghi giỏ hàng ID {}: {} dòng cập nhật, {} dòng xóa",
+                                cartId, changes.upserts().size(), changes.removedIds().size());
+        }
+
+        /**
+         * Bỏ các giỏ không được dùng quá idle-ttl, và các giỏ dùng lâu nhất nếu vượt quá số giỏ tối đa
+         * Giỏ còn thay đổi chưa ghi xuống DB không bị bỏ
+         */
+        private void evictIdleCarts() {
+                long now = System.currentTimeMillis();
+                carts.forEach((customerId, aggregate) -> {
+                        if (now - aggregate.lastAccessMillis >= idleTtlMillis) {
+                                evict(customerId, aggregate);
+                        }
+                });
+
+                int excess = carts.size() - maxCachedCarts;
+                if (excess > 0) {
+                        carts.entrySet().stream()
+                                        .sorted(Comparator.comparingLong(entry -> entry.getValue().lastAccessMillis))
+                                        .limit(excess)
+                                        .collect(Collectors.toList())
+                                        .forEach(entry -> evict(entry.getKey(), entry.getValue()));
+                }
+        }
+
+        private void evict(Integer customerId, CartAggregate aggregate) {
+                synchronized (aggregate) {
+                        if (aggregate.hasPendingChanges()) {
+                                return;
+                        }
+                        aggregate.evicted = true;
+                }
+                carts.remove(customerId, aggregate);
+        }
+
+        /**
+         * Bỏ giỏ hàng khỏi bộ nhớ cùng các thay đổi chưa ghi (giỏ đã được checkout)
+         */
+        private void discard(Integer customerId) {
+                CartAggregate aggregate = carts.remove(customerId);
+                if (aggregate != null) {
+                        synchronized (aggregate) {
+                                aggregate.evicted = true;
+                                aggregate.changedLineIds.clear();
+                        }
+                }
+        }
+
+        /**
+         * Giỏ hàng trong bộ nhớ của một khách hàng
+         * Các thay đổi dòng và phiên bản được bảo vệ bởi khóa trên chính aggregate;
+         * pricingLock cho phép chỉ một luồng tính khuyến mãi mỗi giỏ, flushLock cho việc ghi xuống DB
+         */
+        private static final class CartAggregate {
+
+                private final Integer cartId;
+                private final Integer customerId;
+                private final LocalDateTime createdAt;
+                private LocalDateTime updatedAt;
+                private final Map<Long, CartLine> lines = new LinkedHashMap<>();
+                private final Set<Long> changedLineIds = new HashSet<>();
+                private long version;
+                private int inFlightFlushes;
+                private boolean evicted;
+                private volatile long lastAccessMillis = System.currentTimeMillis();
+                private final Object pricingLock = new Object();
+                private final Object flushLock = new Object();
+                private PricedCart priced;
+
+                private CartAggregate(Integer cartId, Integer customerId, LocalDateTime createdAt,
+                                LocalDateTime updatedAt) {
+                        this.cartId = cartId;
+                        this.customerId = customerId;
+                        this.createdAt = createdAt;
+                        this.updatedAt = updatedAt;
+                }
+
+                private void markChanged(Long productUnitId, LocalDateTime now) {
+                        changedLineIds.add(productUnitId);
+                        updatedAt = now;
+                        version++;
+                }
+
+                private boolean hasPendingChanges() {
+                        return !changedLineIds.isEmpty() || inFlightFlushes > 0;
+                }
+
+                private synchronized CartSnapshot snapshot() {
+                        List<LineSnapshot> lineSnapshots = lines.values().stream()
+                                        .map(CartLine::snapshot)
+                                        .collect(Collectors.toList());
+                        return new CartSnapshot(version, cartId, customerId, createdAt, updatedAt, lineSnapshots);
+                }
+
+                /**
+                 * Lấy các dòng đã thay đổi để ghi xuống DB
+                 *
+                 * @return null nếu không có thay đổi
+                 */
+                private synchronized PendingChanges drainChanges() {
+                        if (changedLineIds.isEmpty()) {
+                                return null;
+                        }
+
+                        List<LineSnapshot> upserts = new ArrayList<>();
+                        List<Long> removedIds = new ArrayList<>();
+                        for (Long productUnitId : changedLineIds) {
+                                CartLine line = lines.get(productUnitId);
+                                if (line != null) {
+                                        upserts.add(line.snapshot());
+                                } else {
+                                        removedIds.add(productUnitId);
+                                }
+                        }
+                        PendingChanges changes = new PendingChanges(cartId, new HashSet<>(changedLineIds), upserts,
+                                        removedIds);
+                        changedLineIds.clear();
+                        inFlightFlushes++;
+                        return changes;
+                }
+
+                /**
+                 * Kết thúc một lần ghi; nếu ghi không thành công thì đánh dấu lại các dòng
+                 * (lần ghi sau đọc trạng thái hiện tại của dòng nên không ghi lại giá trị cũ)
+                 */
+                private synchronized void completeFlush(PendingChanges changes, boolean persisted) {
+                        inFlightFlushes--;
+                        if (!persisted && !evicted) {
+                                changedLineIds.addAll(changes.lineIds());
+                        }
+                }
+        }
+
+        /**
+         * Một dòng giỏ hàng trong bộ nhớ, cùng thông tin hiển thị ít thay đổi
+         */
+        private static final class CartLine {
+
+                private final Long productUnitId;
+                private int quantity;
+                private final Double unitPrice;
+                private final String imageUrl;
+                private final LocalDateTime createdAt;
+                private LocalDateTime updatedAt;
+
+                private CartLine(Long productUnitId, int quantity, Double unitPrice, String imageUrl,
+                                LocalDateTime createdAt) {
+                        this.productUnitId = productUnitId;
+                        this.quantity = quantity;
+                        this.unitPrice = unitPrice;
+                        this.imageUrl = imageUrl;
+                        this.createdAt = createdAt;
+                        this.updatedAt = createdAt;
+                }
+
+                private LineSnapshot snapshot() {
+                        return new LineSnapshot(productUnitId, quantity, unitPrice, imageUrl, createdAt, updatedAt);
+                }
+        }
+
+        private record LineSnapshot(Long productUnitId, int quantity, Double unitPrice, String imageUrl,
+                        LocalDateTime createdAt, LocalDateTime updatedAt) {
+        }
+
+        private record CartSnapshot(long version, Integer cartId, Integer customerId, LocalDateTime createdAt,
+                        LocalDateTime updatedAt, List<LineSnapshot> lines) {
+        }
+
+        private record PricedCart(long version, long pricedAtMillis, CartResponse response) {
+        }
+
+        private record PendingChanges(Integer cartId, Set<Long> lineIds, List<LineSnapshot> upserts,
+                        List<Long> removedIds) {
+        }
 }
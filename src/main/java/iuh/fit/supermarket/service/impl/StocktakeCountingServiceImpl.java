@@ -0,0 +1,284 @@
+package iuh.fit.supermarket.service.impl;
+
+import iuh.fit.supermarket.dto.stocktake.StocktakeScanRequest;
+import iuh.fit.supermarket.dto.stocktake.StocktakeScanResponse;
+import iuh.fit.supermarket.entity.Stocktake;
+import iuh.fit.supermarket.entity.StocktakeDetail;
+import iuh.fit.supermarket.entity.Warehouse;
+import iuh.fit.supermarket.enums.StocktakeStatus;
+import iuh.fit.supermarket.exception.StocktakeException;
+import iuh.fit.supermarket.exception.StocktakeNotFoundException;
+import iuh.fit.supermarket.repository.ProductUnitRepository;
+import iuh.fit.supermarket.repository.StocktakeDetailRepository;
+import iuh.fit.supermarket.repository.StocktakeRepository;
+import iuh.fit.supermarket.repository.WarehouseRepository;
+import iuh.fit.supermarket.service.StocktakeCountingService;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Collectors;
+
+/**
+ * Implementation của StocktakeCountingService
+ * Mỗi phiếu kiểm kê có một bảng LongAdder (striped) theo đơn vị sản phẩm: các máy quét cộng vào song song
+ * không tranh chấp và không ghi DB; bộ lập lịch lấy phần cộng dồn (sumThenReset) và ghi xuống theo lô.
+ * Vì chỉ cộng số lượng nên thứ tự các lượt quét không ảnh hưởng kết quả và không có lượt nào bị ghi đè.
+ * Chi tiết tạo từ tồn kho hiện tại giữ số lượng mặc định bằng tồn kho; lần ghi đầu tiên thay giá trị đó bằng số đã quét
+ * Bảng của một phiếu được gỡ ngay sau lần ghi commit mà không còn số lượng chờ, nên bộ nhớ chỉ giữ phiếu đang quét
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class StocktakeCountingServiceImpl implements StocktakeCountingService {
+
+    private final StocktakeRepository stocktakeRepository;
+    private final StocktakeDetailRepository stocktakeDetailRepository;
+    private final ProductUnitRepository productUnitRepository;
+    private final WarehouseRepository warehouseRepository;
+    private final TransactionTemplate transactionTemplate;
+
+    /**
+     * Số lượng đã quét nhưng chưa ghi xuống DB, theo phiếu kiểm kê
+     */
+    private final Map<Integer, PendingCounts> pendingCounts = new ConcurrentHashMap<>();
+
+    /**
+     * Các phiếu đang được hoàn thành, không nhận thêm lượt quét
+     */
+    private final Set<Integer> closedStocktakeIds = ConcurrentHashMap.newKeySet();
+
+    @Override
+    public StocktakeScanResponse submitScans(Integer stocktakeId, List<StocktakeScanRequest.ScanEvent> scans) {
+        Stocktake stocktake = stocktakeRepository.findById(stocktakeId)
+                .orElseThrow(() -> new StocktakeNotFoundException(stocktakeId));
+        if (stocktake.getStatus() == StocktakeStatus.COMPLETED) {
+            throw new StocktakeException("Không thể quét kiểm kê cho phiếu đã hoàn thành");
+        }
+
+        // Gộp các lượt quét trong lô theo đơn vị sản phẩm
+        Map<Long, Long> deltas = new HashMap<>();
+        for (StocktakeScanRequest.ScanEvent scan : scans) {
+            deltas.merge(scan.getProductUnitId(), (long) scan.getCountedDelta(), Long::sum);
+        }
+
+        Set<Long> existingIds = new HashSet<>(productUnitRepository.findExistingIds(deltas.keySet()));
+        List<Long> rejectedIds = deltas.keySet().stream()
+                .filter(id -> !existingIds.contains(id))
+                .sorted()
+                .collect(Collectors.toList());
+
+        PendingCounts counts = acquirePendingCounts(stocktakeId);
+        try {
+            // Kiểm tra dưới khóa để không lượt quét nào lọt vào sau khi phiếu đã đóng và ghi lần cuối
+            if (closedStocktakeIds.contains(stocktakeId)) {
+                throw new StocktakeException("Phiếu kiểm kê đang được hoàn thành, không nhận thêm lượt quét");
+            }
+            deltas.forEach((productUnitId, delta) -> {
+                if (existingIds.contains(productUnitId)) {
+                    counts.deltas.computeIfAbsent(productUnitId, id -> new LongAdder()).add(delta);
+                }
+            });
+        } finally {
+            counts.lock.readLock().unlock();
+        }
+
+        int acceptedScans = (int) scans.stream()
+                .filter(scan -> existingIds.contains(scan.getProductUnitId()))
+                .count();
+        log.debug("Ghi nhận {} lượt quét cho phiếu kiểm kê ID: {}", acceptedScans, stocktakeId);
+        return new StocktakeScanResponse(acceptedScans, rejectedIds);
+    }
+
+    @Override
+    @Scheduled(fixedDelayString = "${stocktake.counting.flush-interval-ms:2000}")
+    public void flushPendingCounts() {
+        for (Integer stocktakeId : pendingCounts.keySet()) {
+            try {
+                flush(stocktakeId);
+            } catch (RuntimeException e) {
+                log.error("Lỗi khi ghi số lượng quét cho phiếu kiểm kê ID {}: {}", stocktakeId, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Ghi nốt các số lượng còn trong bộ nhớ khi tắt ứng dụng
+     */
+    @PreDestroy
+    public void flushOnShutdown() {
+        flushPendingCounts();
+    }
+
+    @Override
+    public void closeCounting(Integer stocktakeId) {
+        closedStocktakeIds.add(stocktakeId);
+
+        PendingCounts counts = pendingCounts.get(stocktakeId);
+        if (counts == null) {
+            return;
+        }
+
+        // Chờ các lô đang cộng dở (giữ read lock) kết thúc
+        counts.lock.writeLock().lock();
+        counts.lock.writeLock().unlock();
+
+        try {
+            flush(stocktakeId);
+        } catch (RuntimeException e) {
+            // Lần ghi cuối lỗi thì phiếu không được hoàn thành, mở lại để không chặn lượt quét mãi mãi
+            closedStocktakeIds.remove(stocktakeId);
+            throw e;
+        }
+    }
+
+    @Override
+    public void reopenCounting(Integer stocktakeId) {
+        closedStocktakeIds.remove(stocktakeId);
+    }
+
+    @Override
+    public void discardCounting(Integer stocktakeId) {
+        pendingCounts.remove(stocktakeId);
+        closedStocktakeIds.remove(stocktakeId);
+    }
+
+    /**
+     * Ghi phần cộng dồn của một phiếu xuống DB trong một transaction
+     * Nếu ghi lỗi, phần đã lấy ra được cộng trả lại để lần sau ghi tiếp
+     */
+    private void flush(Integer stocktakeId) {
+        PendingCounts counts = pendingCounts.get(stocktakeId);
+        if (counts == null) {
+            return;
+        }
+
+        // Không cho hai lần ghi cùng phiếu chạy song song (lịch định kỳ và đóng phiếu)
+        synchronized (counts) {
+            Map<Long, Integer> deltas = new TreeMap<>();
+            counts.deltas.forEach((productUnitId, adder) -> {
+                long delta = adder.sumThenReset();
+                if (delta != 0) {
+                    deltas.put(productUnitId, Math.toIntExact(delta));
+                }
+            });
+            if (!deltas.isEmpty()) {
+                try {
+                    Boolean applied = transactionTemplate.execute(status -> applyDeltas(stocktakeId, deltas));
+                    if (!Boolean.TRUE.equals(applied)) {
+                        pendingCounts.remove(stocktakeId, counts);
+                        closedStocktakeIds.remove(stocktakeId);
+                        return;
+                    }
+                } catch (RuntimeException e) {
+                    deltas.forEach((productUnitId, delta) ->
+                            counts.deltas.computeIfAbsent(productUnitId, id -> new LongAdder()).add(delta));
+                    throw e;
+                }
+            }
+
+            // Đã ghi hết (transaction đã commit): gỡ bảng để phiếu không còn quét không giữ bộ nhớ
+            removeIfDrained(stocktakeId, counts);
+        }
+    }
+
+    /**
+     * Lấy bảng cộng dồn của phiếu và giữ read lock của bảng đó
+     * Bảng có thể bị gỡ (removeIfDrained) trong lúc chờ khóa; khi đó lấy lại bảng đang gắn với phiếu
+     * để lượt quét không bị cộng vào bảng đã bị bỏ
+     */
+    private PendingCounts acquirePendingCounts(Integer stocktakeId) {
+        while (true) {
+            PendingCounts counts = pendingCounts.computeIfAbsent(stocktakeId, id -> new PendingCounts());
+            counts.lock.readLock().lock();
+            if (pendingCounts.get(stocktakeId) == counts) {
+                return counts;
+            }
+            counts.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Gỡ bảng cộng dồn của phiếu nếu không còn số lượng chưa ghi
+     * Chỉ gỡ khi lấy được write lock (không có lô quét đang cộng dở); nếu không, lần ghi sau sẽ thử lại
+     */
+    private void removeIfDrained(Integer stocktakeId, PendingCounts counts) {
+        if (!counts.lock.writeLock().tryLock()) {
+            return;
+        }
+        try {
+            if (counts.deltas.values().stream().allMatch(adder -> adder.sum() == 0)) {
+                pendingCounts.remove(stocktakeId, counts);
+            }
+        } finally {
+            counts.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Cộng số lượng đếm vào chi tiết đã có (ghi đè nếu chi tiết còn giữ số lượng mặc định từ tồn kho)
+     * và tạo chi tiết mới cho đơn vị sản phẩm chưa có trong phiếu
+     *
+     * @return false nếu phiếu không còn nhận số lượng (đã xóa hoặc đã hoàn thành)
+     */
+    private boolean applyDeltas(Integer stocktakeId, Map<Long, Integer> deltas) {
+        Optional<Stocktake> stocktake = stocktakeRepository.findById(stocktakeId);
+        if (stocktake.isEmpty() || stocktake.get().getStatus() == StocktakeStatus.COMPLETED) {
+            log.warn("Bỏ {} số lượng quét của phiếu kiểm kê ID {} (phiếu không tồn tại hoặc đã hoàn thành)",
+                    deltas.size(), stocktakeId);
+            return false;
+        }
+
+        Set<Long> existing = new HashSet<>(stocktakeDetailRepository
+                .findProductUnitIdsByStocktakeIdAndProductUnitIdIn(stocktakeId, deltas.keySet()));
+
+        // Cập nhật theo thứ tự ID đơn vị sản phẩm tăng dần để các transaction khóa dòng theo cùng một thứ tự
+        List<Long> missing = new ArrayList<>();
+        deltas.forEach((productUnitId, delta) -> {
+            if (existing.contains(productUnitId)) {
+                stocktakeDetailRepository.addCountedDelta(stocktakeId, productUnitId, delta);
+            } else {
+                missing.add(productUnitId);
+            }
+        });
+
+        if (!missing.isEmpty()) {
+            Map<Long, Integer> stockByProductUnitId = warehouseRepository.findByProductUnitIdIn(missing).stream()
+                    .collect(Collectors.toMap(w -> w.getProductUnit().getId(), Warehouse::getQuantityOnHand));
+
+            List<StocktakeDetail> details = new ArrayList<>(missing.size());
+            for (Long productUnitId : missing) {
+                StocktakeDetail detail = new StocktakeDetail();
+                detail.setStocktake(stocktake.get());
+                detail.setProductUnit(productUnitRepository.getReferenceById(productUnitId));
+                detail.setQuantityExpected(stockByProductUnitId.getOrDefault(productUnitId, 0));
+                detail.setQuantityCounted(deltas.get(productUnitId));
+                detail.setReason("");
+                details.add(detail);
+            }
+            stocktakeDetailRepository.saveAll(details);
+        }
+
+        log.debug("Đã ghi số lượng quét cho phiếu kiểm kê ID {}: {} chi tiết cập nhật, {} chi tiết mới",
+                stocktakeId, existing.size(), missing.size());
+        return true;
+    }
+
+    /**
+     * Số lượng quét đang cộng dồn của một phiếu kiểm kê
+     * Read lock: các lô quét cộng song song; write lock: đóng phiếu chờ các lô đang cộng dở
+     */
+    private static final class PendingCounts {
+
+        private final Map<Long, LongAdder> deltas = new ConcurrentHashMap<>();
+        private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    }
+}
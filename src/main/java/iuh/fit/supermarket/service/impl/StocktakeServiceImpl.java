@@ -1,5 +1,6 @@
 package iuh.fit.supermarket.service.impl;
 
+import iuh.fit.supermarket.dto.job.JobStatusResponse;
 import iuh.fit.supermarket.dto.stocktake.*;
 import iuh.fit.supermarket.entity.*;
 import iuh.fit.supermarket.enums.StocktakeStatus;
@@ -7,38 +8,86 @@ import iuh.fit.supermarket.exception.DuplicateStocktakeCodeException;
 import iuh.fit.supermarket.exception.StocktakeException;
 import iuh.fit.supermarket.exception.StocktakeNotFoundException;
 import iuh.fit.supermarket.repository.*;
+import iuh.fit.supermarket.service.JobProgressService;
+import iuh.fit.supermarket.service.StocktakeCountingService;
 import iuh.fit.supermarket.service.StocktakeService;
-import iuh.fit.supermarket.service.WarehouseService;
 import iuh.fit.supermarket.util.SecurityUtil;
-import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.List;
-import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntConsumer;
 import java.util.stream.Collectors;
 
 /**
  * Implementation của StocktakeService
+ * Chi tiết kiểm kê được tạo và áp dụng vào tồn kho bằng các câu lệnh theo tập hợp;
+ * khi hoàn thành, tồn kho được điều chỉnh theo từng lô chi tiết, mỗi lô một transaction ngắn
+ * để không khóa tồn kho (và chặn bán hàng) trong suốt quá trình
  */
 @Service
-@RequiredArgsConstructor
 @Slf4j
 public class StocktakeServiceImpl implements StocktakeService {
 
+    private static final String JOB_TYPE = "STOCKTAKE_COMPLETION";
+    private static final String ADJUSTMENT_NOTES_PREFIX = "Điều chỉnh tồn kho từ kiểm kê: ";
+
     private final StocktakeRepository stocktakeRepository;
     private final StocktakeDetailRepository stocktakeDetailRepository;
     private final WarehouseRepository warehouseRepository;
     private final WarehouseTransactionRepository warehouseTransactionRepository;
     private final EmployeeRepository employeeRepository;
     private final ProductUnitRepository productUnitRepository;
-    private final WarehouseService warehouseService;
     private final SecurityUtil securityUtil;
+    private final JobProgressService jobProgressService;
+    private final StocktakeCountingService stocktakeCountingService;
+    private final TaskExecutor backgroundJobExecutor;
+    private final TransactionTemplate transactionTemplate;
+    private final int completionChunkSize;
+
+    /**
+     * ID các phiếu kiểm kê đang được hoàn thành, chặn hoàn thành trùng và sửa chi tiết trong lúc áp dụng
+     */
+    private final Set<Integer> completingStocktakeIds = ConcurrentHashMap.newKeySet();
+
+    public StocktakeServiceImpl(StocktakeRepository stocktakeRepository,
+            StocktakeDetailRepository stocktakeDetailRepository,
+            WarehouseRepository warehouseRepository,
+            WarehouseTransactionRepository warehouseTransactionRepository,
+            EmployeeRepository employeeRepository,
+            ProductUnitRepository productUnitRepository,
+            SecurityUtil securityUtil,
+            JobProgressService jobProgressService,
+            StocktakeCountingService stocktakeCountingService,
+            @Qualifier("backgroundJobExecutor") TaskExecutor backgroundJobExecutor,
+            PlatformTransactionManager transactionManager,
+            @Value("${stocktake.completion.chunk-size:500}") int completionChunkSize) {
+        this.stocktakeRepository = stocktakeRepository;
+        this.stocktakeDetailRepository = stocktakeDetailRepository;
+        this.warehouseRepository = warehouseRepository;
+        this.warehouseTransactionRepository = warehouseTransactionRepository;
+        this.employeeRepository = employeeRepository;
+        this.productUnitRepository = productUnitRepository;
+        this.securityUtil = securityUtil;
+        this.jobProgressService = jobProgressService;
+        this.stocktakeCountingService = stocktakeCountingService;
+        this.backgroundJobExecutor = backgroundJobExecutor;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.completionChunkSize = completionChunkSize;
+    }
 
     /**
      * Tạo phiếu kiểm kê mới
@@ -83,7 +132,8 @@ public class StocktakeServiceImpl implements StocktakeService {
         // Nếu tạo trực tiếp với trạng thái COMPLETED, cập nhật tồn kho
         if (status == StocktakeStatus.COMPLETED) {
             log.info("Xử lý hoàn thành phiếu kiểm kê được tạo trực tiếp với trạng thái COMPLETED");
-            processStocktakeCompletion(stocktake);
+            processStocktakeCompletion(stocktake, count -> {
+            });
             // Lưu lại sau khi xử lý hoàn thành
             stocktake = stocktakeRepository.save(stocktake);
         }
@@ -134,6 +184,7 @@ public class StocktakeServiceImpl implements StocktakeService {
         if (stocktake.getStatus() == StocktakeStatus.COMPLETED) {
             throw new StocktakeException("Không thể cập nhật phiếu kiểm kê đã hoàn thành");
         }
+        ensureNotCompleting(stocktakeId);
 
         // Cập nhật thông tin cơ bản
         if (request.getNotes() != null) {
@@ -162,38 +213,97 @@ public class StocktakeServiceImpl implements StocktakeService {
 
     /**
      * Hoàn thành phiếu kiểm kê
+     * Không chạy trong một transaction bao trùm: mỗi lô chi tiết được áp dụng và commit riêng
      */
     @Override
-    @Transactional
     public StocktakeDto completeStocktake(Integer stocktakeId) {
         log.info("Hoàn thành phiếu kiểm kê với ID: {}", stocktakeId);
 
-        Stocktake stocktake = stocktakeRepository.findByIdWithDetails(stocktakeId)
-                .orElseThrow(() -> new StocktakeNotFoundException(stocktakeId));
+        // Lấy thông tin nhân viên hiện tại từ SecurityContext
+        Integer completedById = securityUtil.getCurrentEmployeeId();
 
-        // Kiểm tra trạng thái hiện tại
-        if (stocktake.getStatus() == StocktakeStatus.COMPLETED) {
-            throw new StocktakeException("Phiếu kiểm kê đã được hoàn thành trước đó");
-        }
+        return completeStocktake(stocktakeId, completedById, count -> {
+        });
+    }
 
-        // Lấy thông tin nhân viên hiện tại từ SecurityContext
-        Employee completedByEmployee = securityUtil.getCurrentEmployee();
+    /**
+     * Hoàn thành phiếu kiểm kê dưới dạng tác vụ nền, theo dõi tiến độ qua JobProgressService
+     */
+    @Override
+    public JobStatusResponse startCompleteStocktakeJob(Integer stocktakeId) {
+        log.info("Tạo tác vụ hoàn thành phiếu kiểm kê với ID: {}", stocktakeId);
 
-        // Cập nhật số lượng tồn kho mới nhất trước khi hoàn thành
-        updateExpectedQuantitiesWithCurrentStock(stocktakeId);
+        // SecurityContext không có trên luồng nền nên lấy nhân viên trước khi chuyển luồng
+        Integer completedById = securityUtil.getCurrentEmployeeId();
+        String jobId = jobProgressService.create(JOB_TYPE);
 
-        // Cập nhật tồn kho và tạo WarehouseTransaction cho từng chi tiết có chênh lệch
-        processStocktakeCompletion(stocktake);
+        try {
+            backgroundJobExecutor.execute(() -> runCompleteStocktakeJob(jobId, stocktakeId, completedById));
+        } catch (TaskRejectedException e) {
+            jobProgressService.fail(jobId, "Hệ thống đang xử lý quá nhiều tác vụ, vui lòng thử lại sau");
+        }
 
-        // Cập nhật trạng thái phiếu kiểm kê
-        stocktake.setStatus(StocktakeStatus.COMPLETED);
-        stocktake.setCompletedBy(completedByEmployee);
-        stocktake.setCompletedAt(LocalDateTime.now());
+        return jobProgressService.getStatus(jobId);
+    }
 
-        stocktake = stocktakeRepository.save(stocktake);
-        log.info("Đã hoàn thành phiếu kiểm kê với ID: {}", stocktakeId);
+    private void runCompleteStocktakeJob(String jobId, Integer stocktakeId, Integer completedById) {
+        try {
+            jobProgressService.start(jobId, stocktakeDetailRepository.countByStocktakeId(stocktakeId));
+            StocktakeDto stocktake = completeStocktake(stocktakeId, completedById,
+                    count -> jobProgressService.addProcessed(jobId, count));
+            jobProgressService.complete(jobId, null,
+                    "Đã hoàn thành phiếu kiểm kê " + stocktake.getStocktakeCode());
+        } catch (Exception e) {
+            log.error("Lỗi khi hoàn thành phiếu kiểm kê ID {} (tác vụ {}): ", stocktakeId, jobId, e);
+            jobProgressService.fail(jobId, "Lỗi khi hoàn thành phiếu kiểm kê: " + e.getMessage());
+        }
+    }
 
-        return mapToStocktakeDto(stocktake);
+    private StocktakeDto completeStocktake(Integer stocktakeId, Integer completedById, IntConsumer onProgress) {
+        if (!completingStocktakeIds.add(stocktakeId)) {
+            throw new StocktakeException("Phiếu kiểm kê đang được hoàn thành");
+        }
+
+        try {
+            Stocktake stocktake = transactionTemplate.execute(status -> {
+                Stocktake current = stocktakeRepository.findById(stocktakeId)
+                        .orElseThrow(() -> new StocktakeNotFoundException(stocktakeId));
+
+                // Kiểm tra trạng thái hiện tại
+                if (current.getStatus() == StocktakeStatus.COMPLETED) {
+                    throw new StocktakeException("Phiếu kiểm kê đã được hoàn thành trước đó");
+                }
+                return current;
+            });
+
+            // Ngừng nhận lượt quét và ghi hết số lượng quét còn trong bộ nhớ trước khi áp dụng
+            stocktakeCountingService.closeCounting(stocktakeId);
+
+            StocktakeDto result;
+            try {
+                // Cập nhật số lượng tồn kho mới nhất, điều chỉnh tồn kho và tạo WarehouseTransaction theo từng lô
+                processStocktakeCompletion(stocktake, onProgress);
+
+                // Cập nhật trạng thái phiếu kiểm kê
+                result = transactionTemplate.execute(status -> {
+                    Stocktake completed = stocktakeRepository.findById(stocktakeId)
+                            .orElseThrow(() -> new StocktakeNotFoundException(stocktakeId));
+                    completed.setStatus(StocktakeStatus.COMPLETED);
+                    completed.setCompletedBy(employeeRepository.getReferenceById(completedById));
+                    completed.setCompletedAt(LocalDateTime.now());
+                    return mapToStocktakeDto(stocktakeRepository.save(completed));
+                });
+            } catch (RuntimeException e) {
+                stocktakeCountingService.reopenCounting(stocktakeId);
+                throw e;
+            }
+            stocktakeCountingService.discardCounting(stocktakeId);
+            log.info("Đã hoàn thành phiếu kiểm kê với ID: {}", stocktakeId);
+
+            return result;
+        } finally {
+            completingStocktakeIds.remove(stocktakeId);
+        }
     }
 
     /**
@@ -218,6 +328,9 @@ public class StocktakeServiceImpl implements StocktakeService {
         // Xóa phiếu kiểm kê
         stocktakeRepository.delete(stocktake);
 
+        // Bỏ các lượt quét chưa ghi của phiếu
+        stocktakeCountingService.discardCounting(stocktakeId);
+
         log.info("Đã xóa phiếu kiểm kê với ID: {}", stocktakeId);
     }
 
@@ -300,6 +413,7 @@ public class StocktakeServiceImpl implements StocktakeService {
         if (stocktake.getStatus() == StocktakeStatus.COMPLETED) {
             throw new StocktakeException("Không thể thêm chi tiết vào phiếu kiểm kê đã hoàn thành");
         }
+        ensureNotCompleting(stocktake.getStocktakeId());
 
         // Kiểm tra đơn vị sản phẩm
         ProductUnit productUnit = productUnitRepository.findById(request.getProductUnitId())
@@ -348,10 +462,12 @@ public class StocktakeServiceImpl implements StocktakeService {
         if (detail.getStocktake().getStatus() == StocktakeStatus.COMPLETED) {
             throw new StocktakeException("Không thể cập nhật chi tiết của phiếu kiểm kê đã hoàn thành");
         }
+        ensureNotCompleting(detail.getStocktake().getStocktakeId());
 
         // Cập nhật thông tin
         if (quantityCounted != null) {
             detail.setQuantityCounted(quantityCounted);
+            detail.setIsSeededCount(false);
         }
         if (reason != null) {
             detail.setReason(reason);
@@ -378,6 +494,7 @@ public class StocktakeServiceImpl implements StocktakeService {
         if (detail.getStocktake().getStatus() == StocktakeStatus.COMPLETED) {
             throw new StocktakeException("Không thể xóa chi tiết của phiếu kiểm kê đã hoàn thành");
         }
+        ensureNotCompleting(detail.getStocktake().getStocktakeId());
 
         stocktakeDetailRepository.delete(detail);
         log.info("Đã xóa chi tiết kiểm kê với ID: {}", detailId);
@@ -432,39 +549,26 @@ public class StocktakeServiceImpl implements StocktakeService {
         // Lưu phiếu kiểm kê
         stocktake = stocktakeRepository.save(stocktake);
 
-        // Lấy danh sách tồn kho
-        List<Warehouse> warehouses;
+        // Tạo chi tiết kiểm kê từ tồn kho hiện tại bằng một câu lệnh INSERT ... SELECT
+        // Số lượng đếm mặc định = số lượng hiện tại
+        int detailCount;
         if (productUnitIds != null && !productUnitIds.isEmpty()) {
-            warehouses = productUnitIds.stream()
-                    .map(warehouseRepository::findByProductUnitId)
-                    .filter(Optional::isPresent)
-                    .map(Optional::get)
-                    .collect(Collectors.toList());
+            detailCount = stocktakeDetailRepository.insertFromWarehousesByProductUnitIds(
+                    stocktake.getStocktakeId(), productUnitIds);
         } else {
-            warehouses = warehouseRepository.findAll();
-        }
-
-        // Tạo chi tiết kiểm kê từ tồn kho hiện tại
-        for (Warehouse warehouse : warehouses) {
-            StocktakeDetail detail = new StocktakeDetail();
-            detail.setStocktake(stocktake);
-            detail.setProductUnit(warehouse.getProductUnit());
-            detail.setQuantityExpected(warehouse.getQuantityOnHand());
-            detail.setQuantityCounted(warehouse.getQuantityOnHand()); // Mặc định = số lượng hiện tại
-            detail.setReason("");
-
-            stocktakeDetailRepository.save(detail);
+            detailCount = stocktakeDetailRepository.insertFromAllWarehouses(stocktake.getStocktakeId());
         }
 
         // Nếu tạo trực tiếp với trạng thái COMPLETED, cập nhật tồn kho
         if (finalStatus == StocktakeStatus.COMPLETED) {
             log.info("Xử lý hoàn thành phiếu kiểm kê từ tồn kho với trạng thái COMPLETED");
-            processStocktakeCompletion(stocktake);
+            processStocktakeCompletion(stocktake, count -> {
+            });
             // Lưu lại sau khi xử lý hoàn thành
             stocktake = stocktakeRepository.save(stocktake);
         }
 
-        log.info("Đã tạo phiếu kiểm kê từ tồn kho với {} chi tiết", warehouses.size());
+        log.info("Đã tạo phiếu kiểm kê từ tồn kho với {} chi tiết", detailCount);
         return mapToStocktakeDto(stocktake);
     }
 
@@ -521,8 +625,12 @@ public class StocktakeServiceImpl implements StocktakeService {
             throw new StocktakeException("Không thể cập nhật số lượng tồn kho cho phiếu kiểm kê đã hoàn thành");
         }
 
+        ensureNotCompleting(stocktakeId);
+
         // Cập nhật số lượng tồn kho mới nhất
-        updateExpectedQuantitiesWithCurrentStock(stocktakeId);
+        int updated = stocktakeDetailRepository.refreshExpectedQuantities(stocktakeId, stocktake.getStocktakeCode(),
+                WarehouseTransaction.TransactionType.ADJUSTMENT, 0, Integer.MAX_VALUE);
+        log.info("Đã cập nhật {} chi tiết kiểm kê với số lượng tồn kho mới nhất", updated);
 
         // Lấy lại thông tin phiếu kiểm kê sau khi cập nhật
         stocktake = stocktakeRepository.findByIdWithDetails(stocktakeId)
@@ -624,6 +732,7 @@ public class StocktakeServiceImpl implements StocktakeService {
             // Cập nhật thông tin
             if (detailRequest.getQuantityCounted() != null) {
                 detail.setQuantityCounted(detailRequest.getQuantityCounted());
+                detail.setIsSeededCount(false);
             }
             if (detailRequest.getReason() != null) {
                 detail.setReason(detailRequest.getReason());
@@ -634,98 +743,58 @@ public class StocktakeServiceImpl implements StocktakeService {
     }
 
     /**
-     * Cập nhật số lượng tồn kho mới nhất cho tất cả chi tiết kiểm kê
-     * Đảm bảo quantityExpected phản ánh đúng số lượng tồn kho hiện tại
+     * Chặn thay đổi phiếu kiểm kê trong lúc đang áp dụng vào tồn kho
      */
-    private void updateExpectedQuantitiesWithCurrentStock(Integer stocktakeId) {
-        log.info("Cập nhật số lượng tồn kho mới nhất cho phiếu kiểm kê ID: {}", stocktakeId);
-
-        List<StocktakeDetail> details = stocktakeDetailRepository
-                .findByStocktakeIdWithProductUnitDetails(stocktakeId);
-
-        for (StocktakeDetail detail : details) {
-            // Lấy số lượng tồn kho hiện tại từ bảng Warehouse
-            Integer currentStock = warehouseService.getCurrentStock(detail.getProductUnit().getId());
-
-            // Cập nhật quantityExpected với số lượng tồn kho mới nhất
-            Integer oldExpected = detail.getQuantityExpected();
-            detail.setQuantityExpected(currentStock);
-
-            // Tính toán lại chênh lệch (sẽ được tự động tính trong @PreUpdate)
-            detail.calculateDifference();
-
-            log.debug(
-                    "Cập nhật chi tiết kiểm kê ID: {} - ProductUnit ID: {} - Expected: {} -> {} - Counted: {} - Difference: {}",
-                    detail.getStocktakeDetailId(),
-                    detail.getProductUnit().getId(),
-                    oldExpected,
-                    currentStock,
-                    detail.getQuantityCounted(),
-                    detail.getQuantityDifference());
+    private void ensureNotCompleting(Integer stocktakeId) {
+        if (completingStocktakeIds.contains(stocktakeId)) {
+            throw new StocktakeException("Phiếu kiểm kê đang được hoàn thành, không thể thay đổi");
         }
-
-        // Lưu tất cả thay đổi
-        stocktakeDetailRepository.saveAll(details);
-        log.info("Đã cập nhật {} chi tiết kiểm kê với số lượng tồn kho mới nhất", details.size());
     }
 
     /**
      * Xử lý hoàn thành kiểm kê - cập nhật tồn kho và tạo WarehouseTransaction
+     * Chi tiết được xử lý theo lô ID tăng dần, mỗi lô trong một transaction:
+     * khóa tồn kho của lô → cập nhật số lượng hệ thống mới nhất → ghi số lượng đếm vào tồn kho
+     * → tạo giao dịch điều chỉnh cho các chi tiết có chênh lệch
+     * Đơn vị sản phẩm đã có giao dịch điều chỉnh của phiếu này được bỏ qua nên có thể chạy lại an toàn
+     * nếu lần trước bị lỗi giữa chừng. Nếu được gọi trong một transaction sẵn có, các lô dùng chung transaction đó
+     *
+     * @param onProgress nhận số chi tiết vừa xử lý sau mỗi lô
      */
-    private void processStocktakeCompletion(Stocktake stocktake) {
+    private void processStocktakeCompletion(Stocktake stocktake, IntConsumer onProgress) {
         log.info("Xử lý hoàn thành kiểm kê cho phiếu ID: {}", stocktake.getStocktakeId());
-
-        List<StocktakeDetail> details = stocktakeDetailRepository
-                .findByStocktakeIdWithProductUnitDetails(stocktake.getStocktakeId());
-
-        for (StocktakeDetail detail : details) {
-            if (detail.getQuantityDifference() != 0) {
-                // Cập nhật tồn kho
-                updateWarehouseStock(detail);
-
-                // Tạo WarehouseTransaction
-                createWarehouseTransaction(detail, stocktake.getStocktakeCode());
+        Integer stocktakeId = stocktake.getStocktakeId();
+        String stocktakeCode = stocktake.getStocktakeCode();
+
+        List<Integer> detailIds = transactionTemplate.execute(status -> {
+            List<Long> missingWarehouses = stocktakeDetailRepository.findProductUnitIdsWithoutWarehouse(stocktakeId);
+            if (!missingWarehouses.isEmpty()) {
+                throw new StocktakeException(
+                        "Không tìm thấy tồn kho cho đơn vị sản phẩm ID: " + missingWarehouses.get(0));
             }
+            return stocktakeDetailRepository.findIdsByStocktakeId(stocktakeId);
+        });
+
+        int adjusted = 0;
+        for (int from = 0; from < detailIds.size(); from += completionChunkSize) {
+            List<Integer> chunk = detailIds.subList(from, Math.min(from + completionChunkSize, detailIds.size()));
+            Integer fromId = chunk.get(0);
+            Integer toId = chunk.get(chunk.size() - 1);
+
+            adjusted += transactionTemplate.execute(status -> {
+                warehouseRepository.lockByStocktakeDetailRange(stocktakeId, fromId, toId);
+                stocktakeDetailRepository.refreshExpectedQuantities(stocktakeId, stocktakeCode,
+                        WarehouseTransaction.TransactionType.ADJUSTMENT, fromId, toId);
+                warehouseRepository.applyStocktakeCounts(stocktakeId, stocktakeCode,
+                        WarehouseTransaction.TransactionType.ADJUSTMENT, fromId, toId);
+                return warehouseTransactionRepository.insertStocktakeAdjustments(stocktakeId, stocktakeCode,
+                        WarehouseTransaction.TransactionType.ADJUSTMENT, ADJUSTMENT_NOTES_PREFIX, fromId, toId);
+            });
+            onProgress.accept(chunk.size());
         }
-    }
-
-    /**
-     * Cập nhật tồn kho
-     */
-    private void updateWarehouseStock(StocktakeDetail detail) {
-        Warehouse warehouse = warehouseRepository.findByProductUnitId(detail.getProductUnit().getId())
-                .orElseThrow(() -> new StocktakeException(
-                        "Không tìm thấy tồn kho cho đơn vị sản phẩm ID: " + detail.getProductUnit().getId()));
 
-        // Cập nhật số lượng tồn kho
-        warehouse.setQuantityOnHand(detail.getQuantityCounted());
-        warehouseRepository.save(warehouse);
-
-        log.info("Đã cập nhật tồn kho cho đơn vị sản phẩm ID: {} từ {} thành {}",
-                detail.getProductUnit().getId(),
-                detail.getQuantityExpected(),
-                detail.getQuantityCounted());
-    }
-
-    /**
-     * Tạo WarehouseTransaction cho kiểm kê
-     */
-    private void createWarehouseTransaction(StocktakeDetail detail, String stocktakeCode) {
-        WarehouseTransaction transaction = new WarehouseTransaction();
-        transaction.setProductUnit(detail.getProductUnit());
-        transaction.setBeforeQuantity(detail.getQuantityExpected());
-        transaction.setQuantityChange(detail.getQuantityDifference());
-        transaction.setNewQuantity(detail.getQuantityCounted());
-        transaction.setTransactionType(WarehouseTransaction.TransactionType.ADJUSTMENT);
-        transaction.setReferenceId(stocktakeCode);
-        transaction
-                .setNotes("Điều chỉnh tồn kho từ kiểm kê: " + (detail.getReason() != null ? detail.getReason() : ""));
-
-        warehouseTransactionRepository.save(transaction);
-
-        log.info("Đã tạo WarehouseTransaction cho đơn vị sản phẩm ID: {} với chênh lệch: {}",
-                detail.getProductUnit().getId(),
-                detail.getQuantityDifference());
+        log.info("Đã điều chỉnh tồn kho cho {} / {} chi tiết của phiếu kiểm kê ID: {}",
+                adjusted, detailIds.size(), stocktakeId);
     }
 
     /**
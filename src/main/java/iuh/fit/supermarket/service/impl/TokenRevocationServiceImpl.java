@@ -0,0 +1,146 @@
+package iuh.fit.supermarket.service.impl;
+
+import iuh.fit.supermarket.entity.RevokedToken;
+import iuh.fit.supermarket.repository.RevokedTokenRepository;
+import iuh.fit.supermarket.service.TokenRevocationService;
+import iuh.fit.supermarket.util.BloomFilter;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Implementation của TokenRevocationService
+ * Danh sách thu hồi nằm trong DB (bảng revoked_tokens, chỉ giữ đến khi token hết hạn);
+ * Bloom filter trong bộ nhớ trả lời O(1) cho token chưa bị thu hồi, chỉ khi filter báo "có thể"
+ * (token bị thu hồi thật hoặc dương tính giả) mới truy vấn DB để xác nhận
+ */
+@Service
+@Slf4j
+public class TokenRevocationServiceImpl implements TokenRevocationService {
+
+    private final RevokedTokenRepository revokedTokenRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final int expectedEntries;
+    private final double falsePositiveRate;
+
+    /**
+     * Filter đang dùng để kiểm tra
+     */
+    private volatile BloomFilter filter;
+
+    /**
+     * Filter đang được dựng lại; token thu hồi trong lúc dựng được thêm vào cả hai filter
+     */
+    private BloomFilter rebuildingFilter;
+
+    /**
+     * Khóa chung cho việc thêm token vào filter và việc công bố/thay filter khi dựng lại,
+     * để một token không thể được thêm vào filter cũ ngay sau khi filter mới đã thay thế nó
+     */
+    private final Object filterLock = new Object();
+
+    public TokenRevocationServiceImpl(RevokedTokenRepository revokedTokenRepository,
+                                      TransactionTemplate transactionTemplate,
+                                      @Value("${security.revocation.expected-entries:100000}") int expectedEntries,
+                                      @Value("${security.revocation.false-positive-rate:0.01}") double falsePositiveRate) {
+        this.revokedTokenRepository = revokedTokenRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.expectedEntries = expectedEntries;
+        this.falsePositiveRate = falsePositiveRate;
+        this.filter = new BloomFilter(expectedEntries, falsePositiveRate);
+    }
+
+    /**
+     * Nạp danh sách thu hồi khi khởi động để token đã đăng xuất không dùng lại được sau khi restart
+     */
+    @PostConstruct
+    public void init() {
+        try {
+            rebuildFilter();
+        } catch (RuntimeException e) {
+            log.error("Không thể nạp danh sách token bị thu hồi: {}", e.getMessage());
+        }
+    }
+
+    @Override
+    public void revoke(String tokenId, Long userId, Date expiresAt) {
+        LocalDateTime expiry = LocalDateTime.ofInstant(expiresAt.toInstant(), ZoneId.systemDefault());
+        revokedTokenRepository.save(new RevokedToken(tokenId, userId, expiry, null));
+        addToFilters(tokenId);
+
+        // Khi chạy trong transaction (đăng xuất), lần dựng lại bắt đầu trước khi commit không đọc được
+        // bản ghi mới từ DB; thêm lại sau commit để token có mặt trong filter được thay vào sau đó
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    addToFilters(tokenId);
+                }
+            });
+        }
+        log.info("Đã thu hồi access token {} của user ID {}", tokenId, userId);
+    }
+
+    /**
+     * Thêm token vào filter đang dùng và filter đang dựng lại (nếu có)
+     * Mọi lần thêm sau khi bản ghi đã commit đều nằm trong filter mới: hoặc lần dựng lại đọc được
+     * bản ghi từ DB, hoặc filter mới đã được công bố trước đó nên nhận token trực tiếp
+     */
+    private void addToFilters(String tokenId) {
+        synchronized (filterLock) {
+            filter.put(tokenId);
+            if (rebuildingFilter != null) {
+                rebuildingFilter.put(tokenId);
+            }
+        }
+    }
+
+    @Override
+    public boolean isRevoked(String tokenId) {
+        if (!filter.mightContain(tokenId)) {
+            return false;
+        }
+        return revokedTokenRepository.existsById(tokenId);
+    }
+
+    @Override
+    @Scheduled(fixedDelayString = "${security.revocation.rebuild-interval-ms:600000}",
+            initialDelayString = "${security.revocation.rebuild-interval-ms:600000}")
+    public synchronized void rebuildFilter() {
+        LocalDateTime now = LocalDateTime.now();
+        Integer deleted = transactionTemplate.execute(status -> revokedTokenRepository.deleteExpired(now));
+
+        long activeCount = revokedTokenRepository.count();
+        BloomFilter rebuilt = new BloomFilter((int) Math.max(expectedEntries, activeCount * 2), falsePositiveRate);
+
+        // Công bố filter mới trước khi đọc DB để token thu hồi trong lúc đọc không bị sót
+        synchronized (filterLock) {
+            rebuildingFilter = rebuilt;
+        }
+        List<String> activeIds;
+        try {
+            activeIds = revokedTokenRepository.findActiveTokenIds(now);
+            activeIds.forEach(rebuilt::put);
+            synchronized (filterLock) {
+                filter = rebuilt;
+            }
+        } finally {
+            synchronized (filterLock) {
+                rebuildingFilter = null;
+            }
+        }
+
+        log.debug("Đã dựng lại Bloom filter token thu hồi: {} token còn hiệu lực, xóa {} bản ghi hết hạn",
+                activeIds.size(), deleted);
+    }
+}
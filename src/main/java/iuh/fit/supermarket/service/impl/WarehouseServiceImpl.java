@@ -1,5 +1,7 @@
 package iuh.fit.supermarket.service.impl;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import iuh.fit.supermarket.dto.warehouse.WarehouseDto;
 import iuh.fit.supermarket.dto.warehouse.WarehouseTransactionDto;
 import iuh.fit.supermarket.entity.*;
@@ -7,8 +9,10 @@ import iuh.fit.supermarket.exception.InsufficientStockException;
 import iuh.fit.supermarket.exception.WarehouseException;
 import iuh.fit.supermarket.repository.*;
 import iuh.fit.supermarket.service.WarehouseService;
+import iuh.fit.supermarket.util.TimedOperation;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.ConcurrencyFailureException;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
@@ -32,61 +36,96 @@ public class WarehouseServiceImpl implements WarehouseService {
     private final WarehouseRepository warehouseRepository;
     private final WarehouseTransactionRepository warehouseTransactionRepository;
     private final ProductUnitRepository productUnitRepository;
+    private final MeterRegistry meterRegistry;
 
     /**
      * Cập nhật tồn kho cho một đơn vị sản phẩm
      * Đây là method core xử lý tất cả các thay đổi tồn kho
+     * Dòng tồn kho được khóa (SELECT ... FOR UPDATE) trước khi đọc - sửa - ghi và số lượng mới được ghi bằng
+     * UPDATE trực tiếp để hai giao dịch đồng thời không ghi đè lên nhau
+     * Thời gian được ghi vào timer inventory.stock.update theo loại giao dịch và kết quả
+     * (success, insufficient_stock, contention khi hết thời gian chờ khóa hoặc deadlock, failure)
      */
     @Override
     @Transactional
     public WarehouseDto updateStock(Long productUnitId, Integer quantityChange,
             WarehouseTransaction.TransactionType transactionType,
             String referenceId, String notes) {
-        log.info("Cập nhật tồn kho cho đơn vị sản phẩm ID: {}, thay đổi: {}, loại: {}",
+        log.debug("Cập nhật tồn kho cho đơn vị sản phẩm ID: {}, thay đổi: {}, loại: {}",
                 productUnitId, quantityChange, transactionType);
 
         try {
-            // 1. Validate đầu vào
-            validateStockUpdateRequest(productUnitId, quantityChange, transactionType);
+            return TimedOperation.record(meterRegistry,
+                    Timer.builder("inventory.stock.update")
+                            .description("Thời gian cập nhật tồn kho một đơn vị sản phẩm")
+                            .tag("type", String.valueOf(transactionType)),
+                    () -> applyStockChange(productUnitId, quantityChange, transactionType, referenceId, notes),
+                    warehouse -> "success",
+                    WarehouseServiceImpl::stockUpdateFailureResult);
+        } catch (RuntimeException e) {
+            log.error("Lỗi khi cập nhật tồn kho: ", e);
+            throw new RuntimeException("Không thể cập nhật tồn kho: " + e.getMessage(), e);
+        }
+    }
 
-            // 2. Kiểm tra đơn vị sản phẩm có tồn tại và active
-            ProductUnit productUnit = productUnitRepository.findById(productUnitId)
-                    .orElseThrow(() -> new IllegalArgumentException(
-                            "Không tìm thấy đơn vị sản phẩm với ID: " + productUnitId));
+    private WarehouseDto applyStockChange(Long productUnitId, Integer quantityChange,
+            WarehouseTransaction.TransactionType transactionType,
+            String referenceId, String notes) {
+        // 1. Validate đầu vào
+        validateStockUpdateRequest(productUnitId, quantityChange, transactionType);
 
-            if (!productUnit.getIsActive() || productUnit.getIsDeleted()) {
-                throw new IllegalArgumentException(
-                        "Đơn vị sản phẩm không hoạt động hoặc đã bị xóa với ID: " + productUnitId);
-            }
+        // 2. Kiểm tra đơn vị sản phẩm có tồn tại và active
+        ProductUnit productUnit = productUnitRepository.findById(productUnitId)
+                .orElseThrow(() -> new IllegalArgumentException(
+                        "Không tìm thấy đơn vị sản phẩm với ID: " + productUnitId));
 
-            // 3. Lấy hoặc tạo mới bản ghi tồn kho
-            Warehouse warehouse = getOrCreateWarehouse(productUnit);
-            Integer currentQuantity = warehouse.getQuantityOnHand();
+        if (!productUnit.getIsActive() || productUnit.getIsDeleted()) {
+            throw new IllegalArgumentException(
+                    "Đơn vị sản phẩm không hoạt động hoặc đã bị xóa với ID: " + productUnitId);
+        }
 
-            // 4. Kiểm tra số lượng xuất không vượt quá tồn kho
-            if (quantityChange < 0 && Math.abs(quantityChange) > currentQuantity) {
-                throw new InsufficientStockException(productUnitId, Math.abs(quantityChange), currentQuantity);
-            }
+        // 3. Lấy hoặc tạo mới bản ghi tồn kho, khóa dòng và đọc số lượng mới nhất từ DB
+        Warehouse warehouse = getOrCreateWarehouse(productUnit);
+        Integer currentQuantity = warehouseRepository.lockQuantityOnHand(productUnitId)
+                .orElse(warehouse.getQuantityOnHand());
 
-            // 5. Cập nhật số lượng tồn kho
-            Integer newQuantity = currentQuantity + quantityChange;
-            warehouse.setQuantityOnHand(newQuantity);
-            warehouse = warehouseRepository.save(warehouse);
+        // 4. Kiểm tra số lượng xuất không vượt quá tồn kho
+        if (quantityChange < 0 && Math.abs(quantityChange) > currentQuantity) {
+            throw new InsufficientStockException(productUnitId, Math.abs(quantityChange), currentQuantity);
+        }
 
-            // 6. Ghi nhận giao dịch
-            WarehouseTransaction transaction = createWarehouseTransaction(
-                    productUnit, currentQuantity, quantityChange, newQuantity, transactionType, referenceId, notes);
-            warehouseTransactionRepository.save(transaction);
+        // 5. Ghi số lượng mới bằng UPDATE trực tiếp trên dòng đã khóa (entity có thể mang ảnh chụp cũ),
+        // rồi đồng bộ entity với giá trị vừa ghi
+        Integer newQuantity = currentQuantity + quantityChange;
+        warehouseRepository.updateQuantityOnHand(productUnitId, newQuantity);
+        warehouse.setQuantityOnHand(newQuantity);
 
-            log.info("Đã cập nhật tồn kho cho đơn vị sản phẩm {}: {} -> {}",
-                    productUnit.getId(), currentQuantity, newQuantity);
+        // 6. Ghi nhận giao dịch
+        WarehouseTransaction transaction = createWarehouseTransaction(
+                productUnit, currentQuantity, quantityChange, newQuantity, transactionType, referenceId, notes);
+        warehouseTransactionRepository.save(transaction);
 
-            return convertWarehouseToDto(warehouse);
+        log.debug("Đã cập nhật tồn kho cho đơn vị sản phẩm {}: {} -> {}",
+                productUnit.getId(), currentQuantity, newQuantity);
 
-        } catch (Exception e) {
-            log.error("Lỗi khi cập nhật tồn kho: ", e);
-            throw new RuntimeException("Không thể cập nhật tồn kho: " + e.getMessage(), e);
+        return convertWarehouseToDto(warehouse);
+    }
+
+    /**
+     * Phân loại lỗi cập nhật tồn kho cho tag result (giá trị cố định để giữ số series thấp)
+     * Lỗi chờ khóa/deadlock của câu lệnh khóa dòng được Spring dịch thành ConcurrencyFailureException
+     * (CannotAcquireLockException, PessimisticLockingFailureException)
+     */
+    private static String stockUpdateFailureResult(Throwable e) {
+        if (e instanceof InsufficientStockException) {
+            return "insufficient_stock";
+        }
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof ConcurrencyFailureException) {
+                return "contention";
+            }
         }
+        return "failure";
     }
 
     /**
@@ -154,7 +193,7 @@ public class WarehouseServiceImpl implements WarehouseService {
     @Override
     @Transactional
     public WarehouseDto stockIn(Long productUnitId, Integer quantity, String referenceId, String notes) {
-        log.info("Nhập hàng cho đơn vị sản phẩm ID: {}, số lượng: {}", productUnitId, quantity);
+        log.debug("Nhập hàng cho đơn vị sản phẩm ID: {}, số lượng: {}", productUnitId, quantity);
 
         if (quantity <= 0) {
             throw new IllegalArgumentException("Số lượng nhập phải lớn hơn 0");
@@ -169,7 +208,7 @@ public class WarehouseServiceImpl implements WarehouseService {
     @Override
     @Transactional
     public WarehouseDto stockOut(Long productUnitId, Integer quantity, String referenceId, String notes) {
-        log.info("Xuất hàng cho đơn vị sản phẩm ID: {}, số lượng: {}", productUnitId, quantity);
+        log.debug("Xuất hàng cho đơn vị sản phẩm ID: {}, số lượng: {}", productUnitId, quantity);
 
         if (quantity <= 0) {
             throw new IllegalArgumentException("Số lượng xuất phải lớn hơn 0");
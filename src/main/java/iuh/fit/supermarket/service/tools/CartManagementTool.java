@@ -22,6 +22,7 @@ public class CartManagementTool implements Function<CartManagementTool.AddToCart
 
     private final CartService cartService;
     private final ObjectMapper objectMapper;
+    private final ToolMetrics toolMetrics;
 
     /**
      * Request model cho việc thêm sản phẩm vào giỏ hàng
@@ -40,6 +41,10 @@ public class CartManagementTool implements Function<CartManagementTool.AddToCart
      */
     @Override
     public String apply(AddToCartRequest request) {
+        return toolMetrics.record("addToCart", () -> execute(request));
+    }
+
+    private String execute(AddToCartRequest request) {
         try {
             log.info("Adding to cart - Customer: {}, ProductUnit: {}, Quantity: {}",
                     request.customerId(), request.productUnitId(), request.quantity());
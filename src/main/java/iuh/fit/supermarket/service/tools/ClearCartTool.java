@@ -22,6 +22,7 @@ public class ClearCartTool implements Function<ClearCartTool.Request, String> {
 
     private final CartService cartService;
     private final ObjectMapper objectMapper;
+    private final ToolMetrics toolMetrics;
 
     /**
      * Request model cho việc xóa toàn bộ giỏ hàng
@@ -38,6 +39,10 @@ public class ClearCartTool implements Function<ClearCartTool.Request, String> {
      */
     @Override
     public String apply(Request request) {
+        return toolMetrics.record("clearCart", () -> execute(request));
+    }
+
+    private String execute(Request request) {
         try {
             log.info("Clearing cart for customer: {}", request.customerId());
             CartInfo cartInfo = cartService.clearCart(request.customerId());
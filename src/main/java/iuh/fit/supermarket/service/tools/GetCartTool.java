@@ -22,6 +22,7 @@ public class GetCartTool implements Function<GetCartTool.Request, String> {
 
     private final CartService cartService;
     private final ObjectMapper objectMapper;
+    private final ToolMetrics toolMetrics;
 
     /**
      * Request model cho việc lấy thông tin giỏ hàng
@@ -38,6 +39,10 @@ public class GetCartTool implements Function<GetCartTool.Request, String> {
      */
     @Override
     public String apply(Request request) {
+        return toolMetrics.record("getCart", () -> execute(request));
+    }
+
+    private String execute(Request request) {
         try {
             log.info("Getting cart for customer: {}", request.customerId());
             CartInfo cartInfo = cartService.getCart(request.customerId());
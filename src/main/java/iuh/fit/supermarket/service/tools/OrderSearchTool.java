@@ -24,6 +24,7 @@ public class OrderSearchTool implements Function<OrderSearchTool.Request, String
 
     private final OrderSearchService orderSearchService;
     private final ObjectMapper objectMapper;
+    private final ToolMetrics toolMetrics;
 
     /**
      * Request model cho tìm kiếm đơn hàng
@@ -47,6 +48,10 @@ public class OrderSearchTool implements Function<OrderSearchTool.Request, String
      */
     @Override
     public String apply(Request request) {
+        return toolMetrics.record("orderSearch", () -> execute(request));
+    }
+
+    private String execute(Request request) {
         try {
             log.info("Fetching orders for customer: {}, limit: {}", request.customerId(), request.limit());
             List<OrderInfo> orders = orderSearchService.getCustomerOrders(
@@ -0,0 +1,96 @@
+package iuh.fit.supermarket.service.tools;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import iuh.fit.supermarket.dto.chat.structured.ProductInfo;
+import iuh.fit.supermarket.dto.product.RecommendedProductResponse;
+import iuh.fit.supermarket.service.ProductRecommendationService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Description;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Tool để AI gợi ý sản phẩm
+ * Có productUnitId thì gợi ý sản phẩm thường mua cùng, không có thì gợi ý theo sở thích của khách hàng
+ */
+@Component("productRecommendationTool")
+@Slf4j
+@RequiredArgsConstructor
+@Description("Gợi ý sản phẩm cho khách hàng. Truyền productUnitId để lấy sản phẩm thường được mua cùng sản phẩm đó, "
+        + "bỏ trống productUnitId để lấy gợi ý dựa trên lịch sử mua và sản phẩm yêu thích của khách.")
+public class ProductRecommendationTool implements Function<ProductRecommendationTool.Request, String> {
+
+    private final ProductRecommendationService productRecommendationService;
+    private final ObjectMapper objectMapper;
+    private final ToolMetrics toolMetrics;
+
+    /**
+     * Request model cho gợi ý sản phẩm
+     */
+    public record Request(
+            @Description("ID của khách hàng") Integer customerId,
+            @Description("ID của đơn vị sản phẩm (product_unit_id) để tìm sản phẩm mua cùng, có thể bỏ trống") Long productUnitId,
+            @Description("Số lượng kết quả tối đa (mặc định 5)") Integer limit
+    ) {
+        public Request {
+            if (limit == null || limit <= 0) {
+                limit = 5;
+            }
+        }
+    }
+
+    /**
+     * Thực hiện gợi ý sản phẩm
+     *
+     * @param request chứa customerId, productUnitId và limit
+     * @return JSON string chứa danh sách sản phẩm hoặc error
+     */
+    @Override
+    public String apply(Request request) {
+        return toolMetrics.record("productRecommendation", () -> execute(request));
+    }
+
+    private String execute(Request request) {
+        try {
+            log.info("Recommending products for customer: {}, productUnitId: {}, limit: {}",
+                    request.customerId(), request.productUnitId(), request.limit());
+
+            List<RecommendedProductResponse> recommendations = request.productUnitId() != null
+                    ? productRecommendationService.getFrequentlyBoughtTogether(request.productUnitId(), request.limit())
+                    : productRecommendationService.getRecommendationsForCustomer(request.customerId(), request.limit());
+
+            List<ProductInfo> products = recommendations.stream()
+                    .map(this::toProductInfo)
+                    .toList();
+            String result = objectMapper.writeValueAsString(products);
+            log.info("Recommended {} products", products.size());
+            return result;
+        } catch (JsonProcessingException e) {
+            log.error("Error serializing recommendations: {}", e.getMessage());
+            return "{\"error\": \"Không thể xử lý kết quả gợi ý: " + e.getMessage() + "\"}";
+        } catch (Exception e) {
+            log.error("Error recommending products: {}", e.getMessage(), e);
+            return "{\"error\": \"Không thể gợi ý sản phẩm: " + e.getMessage() + "\"}";
+        }
+    }
+
+    private ProductInfo toProductInfo(RecommendedProductResponse product) {
+        int quantity = product.getQuantityOnHand() != null ? product.getQuantityOnHand() : 0;
+        return new ProductInfo(
+                product.getProductId(),
+                product.getProductUnitId(),
+                product.getProductName(),
+                product.getProductCode(),
+                product.getCurrentPrice(),
+                product.getUnitName(),
+                null,
+                quantity > 0 ? "Còn hàng" : "Hết hàng",
+                product.getImageUrl(),
+                false,
+                null);
+    }
+}
@@ -24,6 +24,7 @@ public class ProductSearchTool implements Function<ProductSearchTool.Request, St
 
     private final ProductSearchService productSearchService;
     private final ObjectMapper objectMapper;
+    private final ToolMetrics toolMetrics;
 
     /**
      * Request model cho tìm kiếm sản phẩm
@@ -47,6 +48,10 @@ public class ProductSearchTool implements Function<ProductSearchTool.Request, St
      */
     @Override
     public String apply(Request request) {
+        return toolMetrics.record("productSearch", () -> execute(request));
+    }
+
+    private String execute(Request request) {
         try {
             log.info("Searching products with term: {}, limit: {}", request.searchTerm(), request.limit());
             List<ProductInfo> products = productSearchService.searchProducts(
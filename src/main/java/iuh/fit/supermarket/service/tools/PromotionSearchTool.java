@@ -24,6 +24,7 @@ public class PromotionSearchTool implements Function<PromotionSearchTool.Request
 
     private final PromotionSearchService promotionSearchService;
     private final ObjectMapper objectMapper;
+    private final ToolMetrics toolMetrics;
 
     /**
      * Request model cho tìm kiếm khuyến mãi
@@ -45,6 +46,10 @@ public class PromotionSearchTool implements Function<PromotionSearchTool.Request
      */
     @Override
     public String apply(Request request) {
+        return toolMetrics.record("promotionSearch", () -> execute(request));
+    }
+
+    private String execute(Request request) {
         try {
             log.info("Fetching active promotions, limit: {}", request.limit());
             List<PromotionInfo> promotions = promotionSearchService.getActivePromotions(request.limit());
@@ -22,6 +22,7 @@ public class RemoveFromCartTool implements Function<RemoveFromCartTool.Request,
 
     private final CartService cartService;
     private final ObjectMapper objectMapper;
+    private final ToolMetrics toolMetrics;
 
     /**
      * Request model cho việc xóa sản phẩm khỏi giỏ hàng
@@ -39,6 +40,10 @@ public class RemoveFromCartTool implements Function<RemoveFromCartTool.Request,
      */
     @Override
     public String apply(Request request) {
+        return toolMetrics.record("removeFromCart", () -> execute(request));
+    }
+
+    private String execute(Request request) {
         try {
             log.info("Removing from cart - Customer: {}, ProductUnit: {}",
                     request.customerId(), request.productUnitId());
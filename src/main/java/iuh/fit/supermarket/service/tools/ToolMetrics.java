@@ -0,0 +1,39 @@
+package iuh.fit.supermarket.service.tools;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import iuh.fit.supermarket.util.TimedOperation;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.util.function.Supplier;
+
+/**
+ * Ghi thời gian thực thi của các tool chat vào timer chat.tool theo tên tool và kết quả
+ * Tool tự bắt exception và trả JSON lỗi dạng {"error": ...} nên kết quả lỗi được nhận biết từ nội dung trả về
+ */
+@Component
+@RequiredArgsConstructor
+public class ToolMetrics {
+
+    private static final String ERROR_PREFIX = "{\"error\"";
+
+    private final MeterRegistry meterRegistry;
+
+    /**
+     * Chạy tool và ghi nhận thời gian
+     *
+     * @param tool      tên tool (giá trị cố định, không chứa dữ liệu người dùng)
+     * @param execution phần xử lý của tool
+     * @return JSON trả về của tool
+     */
+    public String record(String tool, Supplier<String> execution) {
+        return TimedOperation.record(meterRegistry,
+                Timer.builder("chat.tool")
+                        .description("Thời gian thực thi tool chat")
+                        .tag("tool", tool),
+                execution,
+                output -> output != null && !output.startsWith(ERROR_PREFIX) ? "success" : "failure",
+                error -> "failure");
+    }
+}
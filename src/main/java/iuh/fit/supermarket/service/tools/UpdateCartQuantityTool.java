@@ -22,6 +22,7 @@ public class UpdateCartQuantityTool implements Function<UpdateCartQuantityTool.R
 
     private final CartService cartService;
     private final ObjectMapper objectMapper;
+    private final ToolMetrics toolMetrics;
 
     /**
      * Request model cho việc cập nhật số lượng
@@ -40,6 +41,10 @@ public class UpdateCartQuantityTool implements Function<UpdateCartQuantityTool.R
      */
     @Override
     public String apply(Request request) {
+        return toolMetrics.record("updateCartQuantity", () -> execute(request));
+    }
+
+    private String execute(Request request) {
         try {
             log.info("Updating cart quantity - Customer: {}, ProductUnit: {}, Quantity: {}",
                     request.customerId(), request.productUnitId(), request.quantity());
@@ -0,0 +1,70 @@
+package iuh.fit.supermarket.util;
+
+import iuh.fit.supermarket.exception.ProductException;
+
+/**
+ * Các hàm tiện ích xử lý mã vạch EAN-13 của đơn vị sản phẩm
+ */
+public final class BarcodeUtils {
+
+    private BarcodeUtils() {
+    }
+
+    /**
+     * Chuẩn hóa mã vạch nhập vào thành EAN-13 đầy đủ
+     * 12 chữ số được tự động thêm checksum, 13 chữ số phải có checksum hợp lệ
+     *
+     * @param barcode mã vạch nhập vào (có thể null)
+     * @return mã vạch 13 chữ số, hoặc null nếu không nhập
+     * @throws ProductException nếu mã vạch sai định dạng
+     */
+    public static String normalizeEan13(String barcode) {
+        if (barcode == null || barcode.trim().isEmpty()) {
+            return null;
+        }
+        barcode = barcode.trim();
+
+        if (barcode.length() == 12) {
+            if (!barcode.matches("\\d{12}")) {
+                throw new ProductException("Mã vạch 12 chữ số phải chỉ chứa số: " + barcode);
+            }
+            return barcode + calculateEan13Checksum(barcode);
+        }
+        if (barcode.length() == 13) {
+            if (!isValidEan13(barcode)) {
+                throw new ProductException("Mã vạch EAN-13 không hợp lệ (checksum sai): " + barcode);
+            }
+            return barcode;
+        }
+        throw new ProductException("Mã vạch phải có 12 hoặc 13 chữ số. Nhập: " + barcode);
+    }
+
+    /**
+     * Tính checksum cho EAN-13
+     *
+     * @param code12 12 chữ số đầu của mã EAN-13
+     * @return checksum digit (1 chữ số)
+     */
+    public static String calculateEan13Checksum(String code12) {
+        int sum = 0;
+        for (int i = 0; i < 12; i++) {
+            int digit = Character.getNumericValue(code12.charAt(i));
+            // Nhân với 1 nếu vị trí chẵn (index lẻ), nhân với 3 nếu vị trí lẻ (index chẵn)
+            sum += (i % 2 == 0) ? digit : digit * 3;
+        }
+
+        int checksum = (10 - (sum % 10)) % 10;
+        return String.valueOf(checksum);
+    }
+
+    /**
+     * Validate EAN-13 barcode format
+     * EAN-13 phải có đúng 13 chữ số và checksum hợp lệ
+     */
+    public static boolean isValidEan13(String barcode) {
+        if (barcode == null || !barcode.matches("\\d{13}")) {
+            return false;
+        }
+        return calculateEan13Checksum(barcode.substring(0, 12)).equals(String.valueOf(barcode.charAt(12)));
+    }
+}
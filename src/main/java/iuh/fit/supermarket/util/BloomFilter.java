@@ -0,0 +1,78 @@
+package iuh.fit.supermarket.util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bloom filter cho chuỗi, an toàn khi nhiều thread cùng thêm và kiểm tra
+ * mightContain() trả về false thì chắc chắn chưa thêm; true thì có thể là dương tính giả với xác suất cấu hình
+ */
+public final class BloomFilter {
+
+    private final AtomicLongArray bits;
+    private final int bitCount;
+    private final int hashCount;
+
+    /**
+     * @param expectedEntries   số phần tử dự kiến
+     * @param falsePositiveRate tỉ lệ dương tính giả mong muốn khi đạt số phần tử dự kiến (0 < rate < 1)
+     */
+    public BloomFilter(int expectedEntries, double falsePositiveRate) {
+        int entries = Math.max(1, expectedEntries);
+        long optimalBits = (long) Math.ceil(-entries * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        this.bitCount = (int) Math.max(64, Math.min(optimalBits, Integer.MAX_VALUE - 64));
+        this.hashCount = Math.max(1, (int) Math.round((double) bitCount / entries * Math.log(2)));
+        this.bits = new AtomicLongArray((bitCount + 63) / 64);
+    }
+
+    /**
+     * Thêm phần tử
+     */
+    public void put(String value) {
+        long hash = hash64(value);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 1; i <= hashCount; i++) {
+            int index = bitIndex(h1 + i * h2);
+            long mask = 1L << index;
+            bits.getAndUpdate(index >>> 6, word -> word | mask);
+        }
+    }
+
+    /**
+     * Kiểm tra phần tử có thể đã được thêm hay chưa
+     */
+    public boolean mightContain(String value) {
+        long hash = hash64(value);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 1; i <= hashCount; i++) {
+            int index = bitIndex(h1 + i * h2);
+            if ((bits.get(index >>> 6) & (1L << index)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int bitIndex(int combinedHash) {
+        return (combinedHash & Integer.MAX_VALUE) % bitCount;
+    }
+
+    /**
+     * FNV-1a 64 bit trên UTF-8, trộn thêm bằng bước fmix64 của MurmurHash3 để hai nửa 32 bit độc lập hơn
+     */
+    private static long hash64(String value) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b;
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb93fe53e87a7L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
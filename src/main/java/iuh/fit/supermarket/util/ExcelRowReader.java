@@ -0,0 +1,191 @@
+package iuh.fit.supermarket.util;
+
+import org.apache.poi.openxml4j.exceptions.InvalidFormatException;
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.poifs.filesystem.FileMagic;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellType;
+import org.apache.poi.ss.usermodel.DataFormatter;
+import org.apache.poi.ss.usermodel.DateUtil;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.ss.usermodel.WorkbookFactory;
+import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.util.XMLHelper;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.eventusermodel.XSSFSheetXMLHandler;
+import org.apache.poi.xssf.usermodel.XSSFComment;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.format.DateTimeFormatter;
+import java.util.Iterator;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * Đọc sheet đầu tiên của file Excel import theo từng dòng
+ * File .xlsx được đọc bằng SAX event API nên không dựng toàn bộ workbook trong bộ nhớ;
+ * file .xls (định dạng cũ, tối đa 65536 dòng) được đọc bằng WorkbookFactory
+ * Giá trị ô được trả về dạng chuỗi: số nguyên giữ nguyên chữ số, ngày theo dd/MM/yyyy, boolean là TRUE/FALSE
+ */
+public final class ExcelRowReader {
+
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("dd/MM/yyyy");
+
+    private ExcelRowReader() {
+    }
+
+    /**
+     * Đọc lần lượt các dòng của sheet đầu tiên
+     *
+     * @param file        file Excel trên đĩa
+     * @param columnCount số cột đầu tiên cần đọc, các cột sau bị bỏ qua
+     * @param rowHandler  nhận mảng giá trị ô (null nếu ô trống) và số dòng bắt đầu từ 1
+     */
+    public static void read(Path file, int columnCount, ObjIntConsumer<String[]> rowHandler) throws IOException {
+        FileMagic fileMagic;
+        try (InputStream inputStream = FileMagic.prepareToCheckMagic(Files.newInputStream(file))) {
+            fileMagic = FileMagic.valueOf(inputStream);
+        }
+
+        if (fileMagic == FileMagic.OOXML) {
+            readXlsx(file, columnCount, rowHandler);
+        } else {
+            readWorkbook(file, columnCount, rowHandler);
+        }
+    }
+
+    private static void readXlsx(Path file, int columnCount, ObjIntConsumer<String[]> rowHandler) throws IOException {
+        OPCPackage pkg;
+        try {
+            pkg = OPCPackage.open(file.toFile(), PackageAccess.READ);
+        } catch (InvalidFormatException e) {
+            throw new IOException("File Excel không hợp lệ: " + e.getMessage(), e);
+        }
+
+        try {
+            XSSFReader reader = new XSSFReader(pkg);
+            ReadOnlySharedStringsTable sharedStrings = new ReadOnlySharedStringsTable(pkg);
+            Iterator<InputStream> sheets = reader.getSheetsData();
+            if (!sheets.hasNext()) {
+                return;
+            }
+
+            try (InputStream sheet = sheets.next()) {
+                XMLReader parser = XMLHelper.newXMLReader();
+                parser.setContentHandler(new XSSFSheetXMLHandler(reader.getStylesTable(), null, sharedStrings,
+                        new RowCollector(columnCount, rowHandler), new ImportDataFormatter(), false));
+                parser.parse(new InputSource(sheet));
+            }
+        } catch (OpenXML4JException | SAXException | ParserConfigurationException e) {
+            throw new IOException("File Excel không hợp lệ: " + e.getMessage(), e);
+        } finally {
+            // Package mở chỉ đọc: revert() đóng file mà không ghi lại
+            pkg.revert();
+        }
+    }
+
+    private static void readWorkbook(Path file, int columnCount, ObjIntConsumer<String[]> rowHandler)
+            throws IOException {
+        try (Workbook workbook = WorkbookFactory.create(file.toFile(), null, true)) {
+            for (Row row : workbook.getSheetAt(0)) {
+                String[] cells = new String[columnCount];
+                for (int i = 0; i < columnCount; i++) {
+                    cells[i] = cellValue(row.getCell(i));
+                }
+                rowHandler.accept(cells, row.getRowNum() + 1);
+            }
+        }
+    }
+
+    private static String cellValue(Cell cell) {
+        if (cell == null) {
+            return null;
+        }
+
+        CellType type = cell.getCellType() == CellType.FORMULA ? cell.getCachedFormulaResultType() : cell.getCellType();
+        switch (type) {
+            case STRING:
+                return cell.getStringCellValue();
+            case NUMERIC:
+                if (DateUtil.isCellDateFormatted(cell)) {
+                    return cell.getLocalDateTimeCellValue().format(DATE_FORMATTER);
+                }
+                return formatNumber(cell.getNumericCellValue());
+            case BOOLEAN:
+                return cell.getBooleanCellValue() ? "TRUE" : "FALSE";
+            default:
+                return null;
+        }
+    }
+
+    private static String formatNumber(double value) {
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            return Long.toString((long) value);
+        }
+        return Double.toString(value);
+    }
+
+    /**
+     * Nhận các ô của từng dòng từ XSSFSheetXMLHandler, chỉ giữ columnCount cột đầu
+     */
+    private static final class RowCollector implements XSSFSheetXMLHandler.SheetContentsHandler {
+
+        private final int columnCount;
+        private final ObjIntConsumer<String[]> rowHandler;
+        private String[] cells;
+        private int nextColumn;
+
+        private RowCollector(int columnCount, ObjIntConsumer<String[]> rowHandler) {
+            this.columnCount = columnCount;
+            this.rowHandler = rowHandler;
+        }
+
+        @Override
+        public void startRow(int rowNum) {
+            cells = new String[columnCount];
+            nextColumn = 0;
+        }
+
+        @Override
+        public void endRow(int rowNum) {
+            rowHandler.accept(cells, rowNum + 1);
+        }
+
+        @Override
+        public void cell(String cellReference, String formattedValue, XSSFComment comment) {
+            int column = cellReference != null ? new CellReference(cellReference).getCol() : nextColumn;
+            nextColumn = column + 1;
+            if (column < columnCount) {
+                cells[column] = formattedValue;
+            }
+        }
+    }
+
+    /**
+     * Số ở định dạng General được giữ nguyên chữ số (mặc định mã vạch 13 số sẽ thành dạng 8.93457E+12),
+     * ô ngày được đưa về dd/MM/yyyy bất kể định dạng hiển thị trong file
+     */
+    private static final class ImportDataFormatter extends DataFormatter {
+
+        @Override
+        public String formatRawCellContents(double value, int formatIndex, String formatString) {
+            if (DateUtil.isADateFormat(formatIndex, formatString) && DateUtil.isValidExcelDate(value)) {
+                return DateUtil.getLocalDateTime(value).format(DATE_FORMATTER);
+            }
+            if (formatIndex == 0) {
+                return formatNumber(value);
+            }
+            return super.formatRawCellContents(value, formatIndex, formatString);
+        }
+    }
+}
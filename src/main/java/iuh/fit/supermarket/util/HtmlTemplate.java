@@ -0,0 +1,152 @@
+package iuh.fit.supermarket.util;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Template HTML đã biên dịch sẵn
+ * Cú pháp: {{name}} là placeholder (giá trị được escape HTML),
+ * {{#name}}...{{/name}} là section lặp lại theo danh sách hoặc hiển thị khi giá trị là true.
+ * Template chỉ được phân tích một lần, sau đó ghi thẳng từng phần vào Appendable khi render
+ */
+public final class HtmlTemplate {
+
+    private final Node[] nodes;
+
+    private HtmlTemplate(Node[] nodes) {
+        this.nodes = nodes;
+    }
+
+    /**
+     * Nguồn giá trị cho placeholder và section khi render
+     */
+    @FunctionalInterface
+    public interface Scope {
+
+        /**
+         * Lấy giá trị theo tên
+         *
+         * @param name tên placeholder hoặc section
+         * @return giá trị (null được render thành chuỗi rỗng / bỏ qua section);
+         *         với section: Iterable của Scope để lặp, Boolean để ẩn/hiện
+         */
+        Object get(String name);
+    }
+
+    /**
+     * Phân tích template thành dạng biên dịch
+     *
+     * @param source nội dung template
+     * @return template đã biên dịch
+     * @throws IllegalArgumentException nếu section không được đóng đúng
+     */
+    public static HtmlTemplate compile(String source) {
+        Deque<List<Node>> stack = new ArrayDeque<>();
+        Deque<String> openSections = new ArrayDeque<>();
+        stack.push(new ArrayList<>());
+
+        int pos = 0;
+        while (pos < source.length()) {
+            int start = source.indexOf("{{", pos);
+            if (start < 0) {
+                stack.peek().add(new Text(source.substring(pos)));
+                break;
+            }
+            int end = source.indexOf("}}", start + 2);
+            if (end < 0) {
+                throw new IllegalArgumentException("Placeholder chưa được đóng tại vị trí " + start);
+            }
+            if (start > pos) {
+                stack.peek().add(new Text(source.substring(pos, start)));
+            }
+
+            String tag = source.substring(start + 2, end).trim();
+            if (tag.startsWith("#")) {
+                openSections.push(tag.substring(1));
+                stack.push(new ArrayList<>());
+            } else if (tag.startsWith("/")) {
+                String name = tag.substring(1);
+                if (openSections.isEmpty() || !openSections.peek().equals(name)) {
+                    throw new IllegalArgumentException("Section đóng không khớp: " + name);
+                }
+                openSections.pop();
+                Node[] children = stack.pop().toArray(Node[]::new);
+                stack.peek().add(new Section(name, children));
+            } else {
+                stack.peek().add(new Var(tag));
+            }
+            pos = end + 2;
+        }
+
+        if (!openSections.isEmpty()) {
+            throw new IllegalArgumentException("Section chưa được đóng: " + openSections.peek());
+        }
+        return new HtmlTemplate(stack.pop().toArray(Node[]::new));
+    }
+
+    /**
+     * Render template vào Appendable (StringBuilder, Writer của response, ...)
+     *
+     * @param scope nguồn giá trị gốc
+     * @param out   nơi ghi kết quả
+     */
+    public void render(Scope scope, Appendable out) throws IOException {
+        render(nodes, scope, out);
+    }
+
+    private static void render(Node[] nodes, Scope scope, Appendable out) throws IOException {
+        for (Node node : nodes) {
+            if (node instanceof Text text) {
+                out.append(text.value());
+            } else if (node instanceof Var var) {
+                Object value = scope.get(var.name());
+                if (value != null) {
+                    escape(value.toString(), out);
+                }
+            } else if (node instanceof Section section) {
+                Object value = scope.get(section.name());
+                if (value instanceof Iterable<?> iterable) {
+                    for (Object element : iterable) {
+                        render(section.children(), (Scope) element, out);
+                    }
+                } else if (Boolean.TRUE.equals(value)) {
+                    render(section.children(), scope, out);
+                }
+            }
+        }
+    }
+
+    private static void escape(String value, Appendable out) throws IOException {
+        int last = 0;
+        for (int i = 0; i < value.length(); i++) {
+            String replacement = switch (value.charAt(i)) {
+                case '&' -> "&amp;";
+                case '<' -> "&lt;";
+                case '>' -> "&gt;";
+                case '"' -> "&quot;";
+                case '\'' -> "&#39;";
+                default -> null;
+            };
+            if (replacement != null) {
+                out.append(value, last, i).append(replacement);
+                last = i + 1;
+            }
+        }
+        out.append(value, last, value.length());
+    }
+
+    private sealed interface Node permits Text, Var, Section {
+    }
+
+    private record Text(String value) implements Node {
+    }
+
+    private record Var(String name) implements Node {
+    }
+
+    private record Section(String name, Node[] children) implements Node {
+    }
+}
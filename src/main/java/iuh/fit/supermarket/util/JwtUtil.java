@@ -2,41 +2,62 @@ package iuh.fit.supermarket.util;
 
 import io.jsonwebtoken.*;
 import io.jsonwebtoken.security.Keys;
+import iuh.fit.supermarket.enums.UserRole;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.stereotype.Component;
 
 import javax.crypto.SecretKey;
+import java.nio.charset.StandardCharsets;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
 import java.util.function.Function;
 
 /**
  * Utility class để xử lý JWT token
+ * Secret key và JwtParser được tạo một lần khi khởi động và dùng chung cho mọi thread
+ * (JwtParser của jjwt là immutable, thread-safe)
  */
 @Component
 @Slf4j
 public class JwtUtil {
 
     /**
-     * Secret key để ký JWT token
+     * Tên claim chứa ID user
      */
-    @Value("${jwt.secret:supermarket-secret-key-for-jwt-token-generation-2024}")
-    private String jwtSecret;
+    public static final String CLAIM_USER_ID = "uid";
 
     /**
-     * Thời gian hết hạn token (milliseconds)
+     * Tên claim chứa role của user
      */
-    @Value("${jwt.expiration:86400000}") // 24 hours
-    private Long jwtExpiration;
+    public static final String CLAIM_ROLE = "role";
 
     /**
-     * Tạo secret key từ string
+     * Secret key để ký và xác thực JWT token
      */
-    private SecretKey getSigningKey() {
-        return Keys.hmacShaKeyFor(jwtSecret.getBytes());
+    private final SecretKey signingKey;
+
+    /**
+     * Parser dùng chung, đã gắn sẵn key xác thực chữ ký
+     */
+    private final JwtParser jwtParser;
+
+    /**
+     * Thời gian hết hạn token (milliseconds)
+     */
+    private final Long jwtExpiration;
+
+    public JwtUtil(@Value("${jwt.secret:supermarket-secret-key-for-jwt-token-generation-2024}") String jwtSecret,
+                   @Value("${jwt.expiration:900000}") Long jwtExpiration) { // 15 phút
+        this.signingKey = Keys.hmacShaKeyFor(jwtSecret.getBytes(StandardCharsets.UTF_8));
+        this.jwtParser = Jwts.parser()
+                .verifyWith(signingKey)
+                .build();
+        this.jwtExpiration = jwtExpiration;
     }
 
     /**
@@ -47,6 +68,17 @@ public class JwtUtil {
         return createToken(claims, username);
     }
 
+    /**
+     * Tạo JWT token từ username kèm userId và role
+     * Filter xác thực dùng các claim này để lấy user từ cache theo ID mà không tra DB theo email/phone
+     */
+    public String generateToken(String username, Long userId, UserRole role) {
+        Map<String, Object> claims = new HashMap<>();
+        claims.put(CLAIM_USER_ID, userId);
+        claims.put(CLAIM_ROLE, role.name());
+        return createToken(claims, username);
+    }
+
     /**
      * Tạo JWT token với claims và subject
      */
@@ -56,13 +88,27 @@ public class JwtUtil {
 
         return Jwts.builder()
                 .claims(claims)
+                .id(UUID.randomUUID().toString())
                 .subject(subject)
                 .issuedAt(now)
                 .expiration(expiryDate)
-                .signWith(getSigningKey())
+                .signWith(signingKey)
                 .compact();
     }
 
+    /**
+     * Parse và xác thực token một lần, trả về mọi thông tin cần dùng
+     * Chữ ký và thời hạn được parser kiểm tra; token sai chữ ký, sai định dạng hoặc đã hết hạn trả về empty
+     */
+    public Optional<TokenClaims> parseToken(String token) {
+        try {
+            return Optional.of(TokenClaims.from(jwtParser.parseSignedClaims(token).getPayload()));
+        } catch (JwtException | IllegalArgumentException e) {
+            log.debug("Token không hợp lệ: {}", e.getMessage());
+            return Optional.empty();
+        }
+    }
+
     /**
      * Lấy username từ token
      */
@@ -90,49 +136,27 @@ public class JwtUtil {
      */
     private Claims getAllClaimsFromToken(String token) {
         try {
-            return Jwts.parser()
-                    .verifyWith(getSigningKey())
-                    .build()
-                    .parseSignedClaims(token)
-                    .getPayload();
+            return jwtParser.parseSignedClaims(token).getPayload();
         } catch (JwtException e) {
             log.error("Lỗi khi parse JWT token: {}", e.getMessage());
             throw e;
         }
     }
 
-    /**
-     * Kiểm tra token đã hết hạn chưa
-     */
-    private Boolean isTokenExpired(String token) {
-        final Date expiration = getExpirationDateFromToken(token);
-        return expiration.before(new Date());
-    }
-
     /**
      * Validate token với UserDetails
      */
     public Boolean validateToken(String token, UserDetails userDetails) {
-        try {
-            final String username = getUsernameFromToken(token);
-            return (username.equals(userDetails.getUsername()) && !isTokenExpired(token));
-        } catch (JwtException e) {
-            log.error("Token validation failed: {}", e.getMessage());
-            return false;
-        }
+        return parseToken(token)
+                .map(claims -> claims.username().equals(userDetails.getUsername()))
+                .orElse(false);
     }
 
     /**
      * Validate token
      */
     public Boolean validateToken(String token) {
-        try {
-            getAllClaimsFromToken(token);
-            return !isTokenExpired(token);
-        } catch (JwtException e) {
-            log.error("Token validation failed: {}", e.getMessage());
-            return false;
-        }
+        return parseToken(token).isPresent();
     }
 
     /**
@@ -141,4 +165,29 @@ public class JwtUtil {
     public Long getExpirationTime() {
         return jwtExpiration;
     }
+
+    /**
+     * Thông tin lấy ra từ một lần parse token
+     *
+     * @param tokenId    ID token (claim jti) dùng để thu hồi, null với token cũ
+     * @param username   subject của token (email nhân viên hoặc "CUSTOMER:email/phone")
+     * @param userId     ID user, null với token cũ chưa có claim uid
+     * @param role       role của user khi phát hành token, null với token cũ
+     * @param issuedAt   thời điểm phát hành
+     * @param expiration thời điểm hết hạn
+     */
+    public record TokenClaims(String tokenId, String username, Long userId, UserRole role, Date issuedAt, Date expiration) {
+
+        private static TokenClaims from(Claims claims) {
+            Number userId = claims.get(CLAIM_USER_ID, Number.class);
+            String role = claims.get(CLAIM_ROLE, String.class);
+            return new TokenClaims(
+                    claims.getId(),
+                    claims.getSubject(),
+                    userId != null ? userId.longValue() : null,
+                    role != null ? UserRole.valueOf(role) : null,
+                    claims.getIssuedAt(),
+                    claims.getExpiration());
+        }
+    }
 }
@@ -0,0 +1,168 @@
+package iuh.fit.supermarket.util;
+
+/**
+ * Map khóa long, giá trị float dùng open addressing (linear probing), không boxing khóa và giá trị
+ * Dùng cho vector thưa (hàng ma trận đồng xuất hiện, vector sở thích) nên chỉ hỗ trợ cộng dồn và xóa
+ * Không an toàn khi nhiều thread cùng ghi, nơi dùng tự đồng bộ
+ */
+public final class LongFloatHashMap {
+
+    private static final float LOAD_FACTOR = 0.6f;
+
+    private long[] keys;
+    private float[] values;
+    private boolean[] used;
+    private int size;
+    private int resizeThreshold;
+
+    public LongFloatHashMap() {
+        this(8);
+    }
+
+    /**
+     * @param expectedSize số phần tử dự kiến
+     */
+    public LongFloatHashMap(int expectedSize) {
+        allocate(tableSizeFor((int) Math.ceil(Math.max(expectedSize, 1) / LOAD_FACTOR)));
+    }
+
+    /**
+     * Lấy giá trị của khóa, 0 nếu chưa có
+     */
+    public float get(long key) {
+        int slot = findSlot(key);
+        return used[slot] ? values[slot] : 0f;
+    }
+
+    public boolean containsKey(long key) {
+        return used[findSlot(key)];
+    }
+
+    /**
+     * Cộng delta vào giá trị của khóa (khóa chưa có coi như 0)
+     * Giá trị sau khi cộng không dương thì khóa bị xóa khỏi map
+     *
+     * @return giá trị mới
+     */
+    public float addTo(long key, float delta) {
+        int slot = findSlot(key);
+        if (used[slot]) {
+            float value = values[slot] + delta;
+            if (value <= 0f) {
+                removeSlot(slot);
+                return 0f;
+            }
+            values[slot] = value;
+            return value;
+        }
+
+        if (delta <= 0f) {
+            return 0f;
+        }
+        keys[slot] = key;
+        values[slot] = delta;
+        used[slot] = true;
+        if (++size > resizeThreshold) {
+            rehash(keys.length << 1);
+        }
+        return delta;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Duyệt các cặp khóa - giá trị (thứ tự không xác định)
+     */
+    public void forEach(Entry consumer) {
+        for (int i = 0; i < keys.length; i++) {
+            if (used[i]) {
+                consumer.accept(keys[i], values[i]);
+            }
+        }
+    }
+
+    /**
+     * Nhận một cặp khóa - giá trị khi duyệt map
+     */
+    @FunctionalInterface
+    public interface Entry {
+
+        void accept(long key, float value);
+    }
+
+    private int findSlot(long key) {
+        int mask = keys.length - 1;
+        int slot = mix(key) & mask;
+        while (used[slot] && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /**
+     * Xóa theo kiểu backward shift để chuỗi probing không bị đứt, không cần tombstone
+     */
+    private void removeSlot(int slot) {
+        int mask = keys.length - 1;
+        int gap = slot;
+        int next = (gap + 1) & mask;
+        while (used[next]) {
+            int home = mix(keys[next]) & mask;
+            // Phần tử ở next có thể dời về gap nếu gap nằm giữa vị trí gốc của nó và next (theo vòng)
+            if (((next - home) & mask) >= ((next - gap) & mask)) {
+                keys[gap] = keys[next];
+                values[gap] = values[next];
+                gap = next;
+            }
+            next = (next + 1) & mask;
+        }
+        used[gap] = false;
+        size--;
+    }
+
+    private void rehash(int newCapacity) {
+        long[] oldKeys = keys;
+        float[] oldValues = values;
+        boolean[] oldUsed = used;
+        allocate(newCapacity);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldUsed[i]) {
+                int slot = findSlot(oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+                used[slot] = true;
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new float[capacity];
+        used = new boolean[capacity];
+        resizeThreshold = (int) (capacity * LOAD_FACTOR);
+    }
+
+    private static int tableSizeFor(int minCapacity) {
+        int capacity = Integer.highestOneBit(Math.max(minCapacity, 4) - 1) << 1;
+        return Math.max(capacity, 4);
+    }
+
+    /**
+     * Trộn bit của khóa (fmix64 của MurmurHash3) vì ID tuần tự dễ dồn cụm khi probing tuyến tính
+     */
+    private static int mix(long key) {
+        long h = key;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return (int) h;
+    }
+}
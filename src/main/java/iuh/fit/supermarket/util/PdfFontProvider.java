@@ -0,0 +1,90 @@
+package iuh.fit.supermarket.util;
+
+import com.itextpdf.io.font.FontProgram;
+import com.itextpdf.io.font.FontProgramFactory;
+import com.itextpdf.io.font.PdfEncodings;
+import com.itextpdf.io.font.constants.StandardFonts;
+import com.itextpdf.kernel.font.PdfFont;
+import com.itextpdf.kernel.font.PdfFontFactory;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Cung cấp font hỗ trợ tiếng Việt cho các tài liệu PDF (hóa đơn, tem mã vạch)
+ */
+@Component
+@Slf4j
+public class PdfFontProvider {
+
+    /**
+     * Các font hỗ trợ tiếng Việt được thử lần lượt (Windows, Linux)
+     */
+    private static final List<String> SYSTEM_FONTS = List.of(
+            "C:/Windows/Fonts/arial.ttf",
+            "/usr/share/fonts/truetype/dejavu/DejaVuSans.ttf",
+            "/usr/share/fonts/truetype/liberation/LiberationSans-Regular.ttf");
+
+    @Value("${invoice.pdf.font-path:}")
+    private String configuredFontPath;
+
+    /**
+     * Font program được đọc một lần khi khởi động và dùng chung cho mọi tài liệu
+     * (PdfFont gắn với từng PdfDocument nên vẫn tạo mới cho mỗi tài liệu từ font program này)
+     */
+    private FontProgram fontProgram;
+
+    /**
+     * Tìm và đọc font hỗ trợ tiếng Việt một lần khi khởi động
+     * Fallback về Helvetica nếu không tìm thấy font hệ thống
+     */
+    @PostConstruct
+    void loadFont() {
+        List<String> candidates = new ArrayList<>();
+        if (!configuredFontPath.isBlank()) {
+            candidates.add(configuredFontPath);
+        }
+        candidates.addAll(SYSTEM_FONTS);
+
+        for (String fontPath : candidates) {
+            if (!Files.isReadable(Path.of(fontPath))) {
+                continue;
+            }
+            try {
+                fontProgram = FontProgramFactory.createFont(fontPath);
+                log.info("Sử dụng font {} cho PDF", fontPath);
+                return;
+            } catch (IOException e) {
+                log.debug("Không đọc được font {}: {}", fontPath, e.getMessage());
+            }
+        }
+
+        log.warn("Không tìm thấy font hệ thống, sử dụng Helvetica (có thể không hiển thị đúng tiếng Việt)");
+    }
+
+    /**
+     * Tạo font hỗ trợ tiếng Việt cho một tài liệu từ font program đã nạp sẵn,
+     * fallback về Helvetica với Unicode nếu không có font hệ thống
+     */
+    public PdfFont createFont() {
+        try {
+            if (fontProgram != null) {
+                return PdfFontFactory.createFont(fontProgram, PdfEncodings.IDENTITY_H,
+                        PdfFontFactory.EmbeddingStrategy.PREFER_EMBEDDED);
+            }
+            return PdfFontFactory.createFont(StandardFonts.HELVETICA,
+                    PdfEncodings.IDENTITY_H, PdfFontFactory.EmbeddingStrategy.PREFER_EMBEDDED);
+
+        } catch (Exception e) {
+            log.error("Lỗi khi tạo font: {}", e.getMessage());
+            throw new RuntimeException("Không thể tạo font cho PDF", e);
+        }
+    }
+}
@@ -6,6 +6,7 @@ import iuh.fit.supermarket.entity.User;
 import iuh.fit.supermarket.repository.CustomerRepository;
 import iuh.fit.supermarket.repository.EmployeeRepository;
 import iuh.fit.supermarket.repository.UserRepository;
+import iuh.fit.supermarket.security.AuthenticatedUser;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.security.core.Authentication;
@@ -44,6 +45,13 @@ public class SecurityUtil {
             throw new IllegalStateException("Principal không phải là UserDetails");
         }
 
+        // Principal từ JWT đã mang sẵn userId, không cần tra lại user theo email
+        if (principal instanceof AuthenticatedUser authenticatedUser) {
+            return employeeRepository.findByUser_UserIdAndUser_IsDeletedFalse(authenticatedUser.getUserId())
+                    .orElseThrow(() -> new IllegalStateException(
+                            "Không tìm thấy nhân viên với email: " + authenticatedUser.getUsername()));
+        }
+
         UserDetails userDetails = (UserDetails) principal;
         String email = userDetails.getUsername(); // Email được sử dụng làm username
 
@@ -126,6 +134,13 @@ public class SecurityUtil {
             throw new IllegalStateException("Principal không phải là UserDetails");
         }
 
+        // Principal từ JWT đã mang sẵn userId, không cần tra lại user theo email/phone
+        if (principal instanceof AuthenticatedUser authenticatedUser) {
+            return customerRepository.findByUser_UserIdAndUser_IsDeletedFalse(authenticatedUser.getUserId())
+                    .orElseThrow(() -> new IllegalStateException(
+                            "Không tìm thấy khách hàng với username: " + authenticatedUser.getUsername()));
+        }
+
         UserDetails userDetails = (UserDetails) principal;
         String username = userDetails.getUsername(); // Username có thể có prefix "CUSTOMER:"
 
@@ -0,0 +1,117 @@
+package iuh.fit.supermarket.util;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Đo thời gian một thao tác nghiệp vụ và gắn tag kết quả
+ * Tag "result" là success/failure (hoặc giá trị do thao tác phân loại), tag "exception" là tên lớp exception
+ * (hoặc "none") nên số tổ hợp tag bị giới hạn bởi các lớp exception trong code, không phụ thuộc dữ liệu
+ */
+public final class TimedOperation {
+
+    /**
+     * Giá trị tag exception khi thao tác chạy xong nhưng transaction rollback lúc commit
+     * (lỗi khi flush, vi phạm ràng buộc, listener BEFORE_COMMIT ném lỗi)
+     */
+    private static final String ROLLED_BACK = "TransactionRolledBack";
+
+    private static final String SUCCESS = "success";
+    private static final String FAILURE = "failure";
+
+    private TimedOperation() {
+    }
+
+    /**
+     * Chạy thao tác và ghi thời gian vào timer được dựng từ builder (đã gắn sẵn các tag riêng của thao tác)
+     *
+     * @param meterRegistry registry
+     * @param timer         builder của timer, chưa gắn tag result/exception
+     * @param operation     thao tác cần đo
+     * @return kết quả của thao tác
+     */
+    public static <T> T record(MeterRegistry meterRegistry, Timer.Builder timer, Supplier<T> operation) {
+        return record(meterRegistry, timer, operation, value -> SUCCESS, error -> FAILURE);
+    }
+
+    /**
+     * Như {@link #record(MeterRegistry, Timer.Builder, Supplier)}, với giá trị tag result do thao tác tự phân loại
+     * Bộ phân loại phải trả về một tập giá trị cố định để số series không phụ thuộc dữ liệu
+     *
+     * @param meterRegistry registry
+     * @param timer         builder của timer, chưa gắn tag result/exception
+     * @param operation     thao tác cần đo
+     * @param successResult tag result khi thao tác trả về (ví dụ phân biệt kết quả báo lỗi trong nội dung)
+     * @param failureResult tag result khi thao tác ném exception (ví dụ phân biệt lỗi nghiệp vụ với tranh chấp khóa)
+     * @return kết quả của thao tác
+     */
+    public static <T> T record(MeterRegistry meterRegistry, Timer.Builder timer, Supplier<T> operation,
+                               Function<? super T, String> successResult,
+                               Function<? super Throwable, String> failureResult) {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        String result = FAILURE;
+        String exception = "none";
+        try {
+            T value = operation.get();
+            result = successResult.apply(value);
+            return value;
+        } catch (RuntimeException | Error e) {
+            result = failureResult.apply(e);
+            exception = e.getClass().getSimpleName();
+            throw e;
+        } finally {
+            stop(meterRegistry, sample, timer, result, exception);
+        }
+    }
+
+    /**
+     * Như {@link #record(MeterRegistry, Timer.Builder, Supplier)}, nhưng khi đang trong transaction thì kết quả
+     * thành công chỉ được ghi sau khi transaction kết thúc: commit thành công là success, rollback là failure với exception TransactionRolledBack.
+     * Dùng cho thao tác chạy trong @Transactional mà lỗi có thể chỉ xuất hiện lúc flush/commit;
+     * thời gian khi đó tính đến lúc transaction (kể cả transaction bao ngoài) kết thúc
+     *
+     * @param meterRegistry registry
+     * @param timer         builder của timer, chưa gắn tag result/exception
+     * @param operation     thao tác cần đo
+     * @return kết quả của thao tác
+     */
+    public static <T> T recordThroughCommit(MeterRegistry meterRegistry, Timer.Builder timer, Supplier<T> operation) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return record(meterRegistry, timer, operation);
+        }
+
+        Timer.Sample sample = Timer.start(meterRegistry);
+        T value;
+        try {
+            value = operation.get();
+        } catch (RuntimeException | Error e) {
+            stop(meterRegistry, sample, timer, FAILURE, e.getClass().getSimpleName());
+            throw e;
+        }
+
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status == STATUS_COMMITTED) {
+                    stop(meterRegistry, sample, timer, SUCCESS, "none");
+                } else {
+                    stop(meterRegistry, sample, timer, FAILURE, ROLLED_BACK);
+                }
+            }
+        });
+        return value;
+    }
+
+    private static void stop(MeterRegistry meterRegistry, Timer.Sample sample, Timer.Builder timer,
+                             String result, String exception) {
+        sample.stop(timer
+                .tag("result", result)
+                .tag("exception", exception)
+                .register(meterRegistry));
+    }
+}
@@ -0,0 +1,263 @@
+package iuh.fit.supermarket.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import iuh.fit.supermarket.dto.cart.AddCartItemRequest;
+import iuh.fit.supermarket.entity.Customer;
+import iuh.fit.supermarket.entity.Store;
+import iuh.fit.supermarket.entity.User;
+import iuh.fit.supermarket.entity.Warehouse;
+import iuh.fit.supermarket.enums.UserRole;
+import iuh.fit.supermarket.repository.CustomerRepository;
+import iuh.fit.supermarket.repository.StoreRepository;
+import iuh.fit.supermarket.repository.UserRepository;
+import iuh.fit.supermarket.repository.WarehouseRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.user;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+
+/**
+ * Đo thông lượng API checkout (POST /api/checkout) với cấu hình log mặc định và profile prod
+ * Mỗi nhóm test chạy trong Spring context riêng (profile prod tắt show-sql, log SQL, log DEBUG),
+ * kết quả được so sánh khi kết thúc; mỗi đơn hàng tạo ra được hủy ngay để hoàn tồn kho
+ * Checkout được gọi đồng thời từ nhiều luồng (mỗi luồng một khách hàng, một giỏ hàng riêng)
+ * vì lợi ích của ghi log bất đồng bộ chỉ thể hiện khi có tải song song
+ * Khách hàng dùng để đo là tài khoản riêng của benchmark (tạo nếu chưa có), không đụng tới khách hàng thật.
+ * Chỉ chạy khi bật nhóm benchmark: mvn test -Pbenchmark
+ */
+@SpringBootTest
+@Tag("benchmark")
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+@Slf4j
+class CheckoutLoggingBenchmarkTest {
+
+    private static final int THREADS = 8;
+    private static final int WARMUP_ITERATIONS_PER_THREAD = 5;
+    private static final int MEASURED_ITERATIONS_PER_THREAD = 50;
+
+    /**
+     * Profile prod không được chậm hơn log mặc định quá mức dao động đo (10%)
+     */
+    private static final double MIN_PROD_TO_DEFAULT_RATIO = 0.9;
+
+    private static final String BENCHMARK_EMAIL_FORMAT = "checkout-benchmark-%d@benchmark.local";
+
+    private static final Map<String, Double> THROUGHPUT = new ConcurrentHashMap<>();
+
+    @Nested
+    class DefaultLogging extends CheckoutBenchmark {
+
+        @Test
+        void measureCheckoutThroughput() throws Exception {
+            THROUGHPUT.put("default", run());
+        }
+    }
+
+    @Nested
+    @ActiveProfiles("prod")
+    class ProdLogging extends CheckoutBenchmark {
+
+        @Test
+        void measureCheckoutThroughput() throws Exception {
+            THROUGHPUT.put("prod", run());
+        }
+    }
+
+    @AfterAll
+    static void report() {
+        Double defaultThroughput = THROUGHPUT.get("default");
+        Double prodThroughput = THROUGHPUT.get("prod");
+        if (defaultThroughput != null && prodThroughput != null) {
+            log.warn("Checkout: log mặc định {} đơn/s, profile prod {} đơn/s (x{})",
+                    String.format("%.1f", defaultThroughput),
+                    String.format("%.1f", prodThroughput),
+                    String.format("%.2f", prodThroughput / defaultThroughput));
+            assertTrue(prodThroughput >= defaultThroughput * MIN_PROD_TO_DEFAULT_RATIO,
+                    "Profile prod chậm hơn log mặc định: " + prodThroughput + " so với " + defaultThroughput + " đơn/s");
+        }
+    }
+
+    /**
+     * Vòng đo dùng chung: mỗi luồng lặp thêm một sản phẩm vào giỏ, checkout nhận tại cửa hàng, rồi hủy đơn
+     * Thông lượng = tổng số đơn / thời gian thực từ lúc các luồng bắt đầu đến khi luồng cuối cùng xong
+     */
+    abstract static class CheckoutBenchmark {
+
+        @Autowired
+        private MockMvc mockMvc;
+
+        @Autowired
+        private ObjectMapper objectMapper;
+
+        @Autowired
+        private CustomerRepository customerRepository;
+
+        @Autowired
+        private UserRepository userRepository;
+
+        @Autowired
+        private StoreRepository storeRepository;
+
+        @Autowired
+        private WarehouseRepository warehouseRepository;
+
+        @Autowired
+        private ShoppingCartService shoppingCartService;
+
+        @Autowired
+        private CheckoutService checkoutService;
+
+        @Autowired
+        private TransactionTemplate transactionTemplate;
+
+        /**
+         * Dữ liệu mẫu cho vòng đo
+         */
+        private record Fixture(List<Buyer> buyers, Long storeId, Long productUnitId) {
+        }
+
+        private record Buyer(Integer customerId, String username) {
+        }
+
+        double run() throws Exception {
+            // Đọc dữ liệu mẫu trong transaction vì các quan hệ được nạp lazy
+            Fixture fixture = transactionTemplate.execute(status -> findFixture());
+            assumeTrue(fixture != null, "Cần cửa hàng đang hoạt động và sản phẩm còn ít nhất "
+                    + THREADS + " đơn vị tồn kho trong DB test");
+
+            String body = objectMapper.writeValueAsString(Map.of(
+                    "deliveryType", "PICKUP_AT_STORE",
+                    "paymentMethod", "CASH",
+                    "storeId", fixture.storeId()));
+
+            for (Buyer buyer : fixture.buyers()) {
+                shoppingCartService.clearCart(buyer.customerId());
+            }
+
+            ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+            try {
+                runConcurrently(executor, fixture, body, WARMUP_ITERATIONS_PER_THREAD);
+
+                long start = System.nanoTime();
+                runConcurrently(executor, fixture, body, MEASURED_ITERATIONS_PER_THREAD);
+                long elapsedNanos = System.nanoTime() - start;
+                double throughput = THREADS * MEASURED_ITERATIONS_PER_THREAD / (elapsedNanos / 1_000_000_000.0);
+                assertTrue(throughput > 0, "Không đo được thông lượng checkout");
+                return throughput;
+            } finally {
+                executor.shutdownNow();
+            }
+        }
+
+        /**
+         * Mỗi khách hàng chạy trên một luồng, chờ tất cả xong; lỗi trong luồng (kể cả assertion) được ném lại
+         */
+        private void runConcurrently(ExecutorService executor, Fixture fixture, String body, int iterations)
+                throws Exception {
+            List<Callable<Void>> tasks = new ArrayList<>();
+            for (Buyer buyer : fixture.buyers()) {
+                tasks.add(() -> {
+                    for (int i = 0; i < iterations; i++) {
+                        checkoutOnce(buyer, fixture.productUnitId(), body);
+                    }
+                    return null;
+                });
+            }
+            for (Future<Void> future : executor.invokeAll(tasks)) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof Error error) {
+                        throw error;
+                    }
+                    throw (Exception) e.getCause();
+                }
+            }
+        }
+
+        private Fixture findFixture() {
+            List<Store> stores = storeRepository.findByIsActiveTrue();
+            Long productUnitId = warehouseRepository.findAll().stream()
+                    .filter(warehouse -> warehouse.getQuantityOnHand() != null && warehouse.getQuantityOnHand() >= THREADS)
+                    .map(Warehouse::getProductUnit)
+                    .filter(unit -> Boolean.TRUE.equals(unit.getIsActive()) && !Boolean.TRUE.equals(unit.getIsDeleted()))
+                    .map(unit -> unit.getId())
+                    .findFirst()
+                    .orElse(null);
+            if (stores.isEmpty() || productUnitId == null) {
+                return null;
+            }
+            List<Buyer> buyers = new ArrayList<>();
+            for (int i = 0; i < THREADS; i++) {
+                Customer customer = findOrCreateBenchmarkCustomer(i);
+                buyers.add(new Buyer(customer.getCustomerId(), customer.getUser().getEmail()));
+            }
+            return new Fixture(buyers, stores.get(0).getStoreId(), productUnitId);
+        }
+
+        /**
+         * Khách hàng riêng của benchmark, được tạo ở lần chạy đầu tiên và dùng lại ở các lần sau
+         */
+        private Customer findOrCreateBenchmarkCustomer(int index) {
+            String email = String.format(BENCHMARK_EMAIL_FORMAT, index);
+            User user = userRepository.findByEmail(email).orElse(null);
+            if (user != null) {
+                assertNotNull(user.getCustomer(), "Tài khoản benchmark " + email + " không phải khách hàng");
+                return user.getCustomer();
+            }
+
+            user = new User();
+            user.setName("Checkout Benchmark " + index);
+            user.setEmail(email);
+            user.setUserRole(UserRole.CUSTOMER);
+            user = userRepository.save(user);
+
+            Customer customer = new Customer();
+            customer.setUser(user);
+            customer.setCustomerCode("BENCH" + index);
+            return customerRepository.save(customer);
+        }
+
+        private void checkoutOnce(Buyer buyer, Long productUnitId, String body) throws Exception {
+            shoppingCartService.addItemToCart(buyer.customerId(), new AddCartItemRequest(productUnitId, 1));
+
+            MvcResult result = mockMvc.perform(post("/api/checkout")
+                            .with(user(buyer.username()).roles("CUSTOMER"))
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .content(body))
+                    .andReturn();
+
+            assertTrue(result.getResponse().getStatus() < 300,
+                    "Checkout thất bại: " + result.getResponse().getContentAsString());
+            JsonNode response = objectMapper.readTree(result.getResponse().getContentAsString());
+            checkoutService.cancelOrder(response.path("data").path("orderId").asLong(), "Benchmark");
+        }
+    }
+}
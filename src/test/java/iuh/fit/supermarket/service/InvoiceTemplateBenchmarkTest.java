@@ -0,0 +1,114 @@
+package iuh.fit.supermarket.service;
+
+import iuh.fit.supermarket.dto.sale.AppliedOrderPromotionDetailDTO;
+import iuh.fit.supermarket.dto.sale.AppliedPromotionDetailDTO;
+import iuh.fit.supermarket.dto.sale.SaleInvoiceFullDTO;
+import iuh.fit.supermarket.dto.sale.SaleInvoiceItemDetailDTO;
+import iuh.fit.supermarket.enums.InvoiceStatus;
+import iuh.fit.supermarket.enums.PaymentMethod;
+import iuh.fit.supermarket.service.impl.InvoiceHtmlServiceImpl;
+import iuh.fit.supermarket.util.HtmlTemplate;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * So sánh thời gian tạo HTML in hóa đơn khi template được biên dịch một lần lúc khởi động
+ * với khi mỗi lần in đều đọc và biên dịch lại template; phần render giống nhau ở cả hai cách
+ * Chỉ chạy khi bật nhóm benchmark: mvn test -Pbenchmark
+ */
+@Tag("benchmark")
+@Slf4j
+class InvoiceTemplateBenchmarkTest {
+
+    private static final String TEMPLATE_PATH = "/templates/invoice-print-template.html";
+    private static final int ITEM_COUNT = 30;
+    private static final int WARMUP_ITERATIONS = 2_000;
+    private static final int MEASURED_ITERATIONS = 10_000;
+
+    @Test
+    void compiledOnceTemplateIsFasterThanPerRenderCompilation() {
+        InvoiceHtmlServiceImpl invoiceHtmlService = new InvoiceHtmlServiceImpl();
+        ReflectionTestUtils.invokeMethod(invoiceHtmlService, "compileTemplate");
+        SaleInvoiceFullDTO invoice = sampleInvoice();
+
+        String html = invoiceHtmlService.generateInvoiceHtml(invoice);
+        assertTrue(html.contains(invoice.invoiceNumber()) && html.contains("Sản phẩm " + ITEM_COUNT),
+                "HTML hóa đơn thiếu nội dung");
+
+        HtmlTemplate compiledOnce = (HtmlTemplate) ReflectionTestUtils.getField(invoiceHtmlService, "template");
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            renderCompiledOnce(invoiceHtmlService, compiledOnce, invoice);
+            renderPerRenderCompilation(invoiceHtmlService, invoice);
+        }
+
+        long compiledOnceNanos = measure(() -> renderCompiledOnce(invoiceHtmlService, compiledOnce, invoice));
+        long perRenderNanos = measure(() -> renderPerRenderCompilation(invoiceHtmlService, invoice));
+
+        log.warn("In hóa đơn {} dòng: template biên dịch một lần {} us/lần, biên dịch mỗi lần {} us/lần (x{})",
+                ITEM_COUNT,
+                compiledOnceNanos / MEASURED_ITERATIONS / 1_000,
+                perRenderNanos / MEASURED_ITERATIONS / 1_000,
+                String.format("%.2f", (double) perRenderNanos / compiledOnceNanos));
+        assertTrue(compiledOnceNanos < perRenderNanos,
+                "Template biên dịch một lần không nhanh hơn: " + compiledOnceNanos + " ns so với " + perRenderNanos + " ns");
+    }
+
+    private static void renderCompiledOnce(InvoiceHtmlService invoiceHtmlService, HtmlTemplate template,
+                                           SaleInvoiceFullDTO invoice) {
+        ReflectionTestUtils.setField(invoiceHtmlService, "template", template);
+        invoiceHtmlService.generateInvoiceHtml(invoice);
+    }
+
+    /**
+     * Đọc file template và biên dịch lại trước mỗi lần render, như trước khi template được biên dịch sẵn
+     */
+    private static void renderPerRenderCompilation(InvoiceHtmlService invoiceHtmlService, SaleInvoiceFullDTO invoice) {
+        try (InputStream templateStream = InvoiceTemplateBenchmarkTest.class.getResourceAsStream(TEMPLATE_PATH)) {
+            String source = new String(templateStream.readAllBytes(), StandardCharsets.UTF_8);
+            ReflectionTestUtils.setField(invoiceHtmlService, "template", HtmlTemplate.compile(source));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        invoiceHtmlService.generateInvoiceHtml(invoice);
+    }
+
+    private static long measure(Runnable render) {
+        long start = System.nanoTime();
+        for (int i = 0; i < MEASURED_ITERATIONS; i++) {
+            render.run();
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static SaleInvoiceFullDTO sampleInvoice() {
+        List<SaleInvoiceItemDetailDTO> items = new ArrayList<>();
+        for (int i = 1; i <= ITEM_COUNT; i++) {
+            List<AppliedPromotionDetailDTO> promotions = i % 3 == 0
+                    ? List.of(new AppliedPromotionDetailDTO("Giảm giá", 1L, 1L, "Giảm 10%", "percentage",
+                            BigDecimal.valueOf(2_000), null))
+                    : List.of();
+            items.add(new SaleInvoiceItemDetailDTO(i, (long) i, "Sản phẩm " + i, "Hộp", 2,
+                    BigDecimal.valueOf(20_000), BigDecimal.ZERO, BigDecimal.valueOf(40_000), promotions));
+        }
+        List<AppliedOrderPromotionDetailDTO> orderPromotions = List.of(
+                new AppliedOrderPromotionDetailDTO("KM01", "Giảm giá đơn hàng", 1L, "Giảm 5% đơn từ 500.000đ",
+                        "percentage", BigDecimal.valueOf(60_000)));
+        BigDecimal total = BigDecimal.valueOf(1_140_000);
+        return new SaleInvoiceFullDTO(1, "HD000001", LocalDateTime.now(), 1L, "Nguyễn Văn A", "Trần Thị B",
+                PaymentMethod.CASH, InvoiceStatus.PAID, BigDecimal.valueOf(1_200_000), BigDecimal.valueOf(60_000),
+                BigDecimal.ZERO, total, total, items, orderPromotions, LocalDateTime.now());
+    }
+}
@@ -0,0 +1,88 @@
+package iuh.fit.supermarket.service;
+
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.security.Keys;
+import iuh.fit.supermarket.enums.UserRole;
+import iuh.fit.supermarket.util.JwtUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import javax.crypto.SecretKey;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * So sánh thời gian xác thực token của JwtUtil (key và parser tạo một lần, parse một lần mỗi token)
+ * với cách cũ: tạo key và parser mới cho mỗi lần đọc claim, kiểm tra username và hạn token bằng hai lần parse
+ * Chỉ chạy khi bật nhóm benchmark: mvn test -Pbenchmark
+ */
+@Tag("benchmark")
+@Slf4j
+class JwtParseBenchmarkTest {
+
+    private static final String SECRET = "supermarket-secret-key-for-jwt-token-generation-2024";
+    private static final String USERNAME = "benchmark@supermarket.local";
+    private static final int WARMUP_ITERATIONS = 20_000;
+    private static final int MEASURED_ITERATIONS = 100_000;
+
+    private final JwtUtil jwtUtil = new JwtUtil(SECRET, 900_000L);
+
+    @Test
+    void prebuiltParserIsFasterThanPerCallParser() {
+        String token = jwtUtil.generateToken(USERNAME, 1L, UserRole.ADMIN);
+        assertEquals(USERNAME, jwtUtil.parseToken(token).orElseThrow().username());
+        assertTrue(validatePerCall(token));
+
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            validatePrebuilt(token);
+            validatePerCall(token);
+        }
+
+        long prebuiltNanos = measure(() -> validatePrebuilt(token));
+        long perCallNanos = measure(() -> validatePerCall(token));
+
+        log.warn("Xác thực JWT: parser dùng chung {} ns/token, parser tạo mỗi lần {} ns/token (x{})",
+                prebuiltNanos / MEASURED_ITERATIONS,
+                perCallNanos / MEASURED_ITERATIONS,
+                String.format("%.2f", (double) perCallNanos / prebuiltNanos));
+        assertTrue(prebuiltNanos < perCallNanos,
+                "Parser dùng chung không nhanh hơn parser tạo mỗi lần: " + prebuiltNanos + " ns so với " + perCallNanos + " ns");
+    }
+
+    private boolean validatePrebuilt(String token) {
+        return jwtUtil.parseToken(token)
+                .map(claims -> claims.username().equals(USERNAME))
+                .orElse(false);
+    }
+
+    /**
+     * Cách xác thực trước đây: đọc username và hạn token bằng hai lần parse, mỗi lần tạo key và parser mới
+     */
+    private static boolean validatePerCall(String token) {
+        String username = parsePerCall(token).getSubject();
+        Date expiration = parsePerCall(token).getExpiration();
+        return username.equals(USERNAME) && expiration.after(new Date());
+    }
+
+    private static Claims parsePerCall(String token) {
+        SecretKey key = Keys.hmacShaKeyFor(SECRET.getBytes(StandardCharsets.UTF_8));
+        return Jwts.parser()
+                .verifyWith(key)
+                .build()
+                .parseSignedClaims(token)
+                .getPayload();
+    }
+
+    private static long measure(Runnable validation) {
+        long start = System.nanoTime();
+        for (int i = 0; i < MEASURED_ITERATIONS; i++) {
+            validation.run();
+        }
+        return System.nanoTime() - start;
+    }
+}
@@ -0,0 +1,112 @@
+package iuh.fit.supermarket.service;
+
+import com.jayway.jsonpath.JsonPath;
+import iuh.fit.supermarket.entity.Order;
+import iuh.fit.supermarket.enums.OrderStatus;
+import iuh.fit.supermarket.repository.OrderRepository;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.user;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Kiểm tra danh sách đơn hàng (trang quản trị và lịch sử của khách hàng) dùng số truy vấn cố định mỗi trang
+ * Một trang gồm: trang ID, đếm tổng (nếu cần), đơn hàng kèm khách hàng, chi tiết (projection) và ảnh sản phẩm
+ */
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+@TestPropertySource(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+class OrderListingQueryCountTest {
+
+    private static final long MAX_QUERIES_PER_PAGE = 5;
+    private static final long MIN_ORDERS = 20;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private Statistics statistics;
+
+    @BeforeEach
+    void setup() {
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+    }
+
+    @Test
+    @WithMockUser(roles = "ADMIN")
+    void adminOrderListingUsesFixedQueryCount() throws Exception {
+        long totalOrders = orderRepository.count();
+        assumeTrue(totalOrders >= MIN_ORDERS, "Cần ít nhất " + MIN_ORDERS + " đơn hàng trong DB test");
+
+        // Trang lớn nhất phải có đơn nhiều dòng và dòng có ảnh, nếu không thì không có gì để đếm truy vấn
+        String largestPage = mockMvc.perform(get("/api/admin/orders").param("size", "100"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        List<List<Object>> linesPerOrder = JsonPath.read(largestPage, "$.data.content[*].orderItems");
+        List<Object> imageUrls = JsonPath.read(largestPage, "$.data.content[*].orderItems[*].imageUrl");
+        assumeTrue(linesPerOrder.stream().anyMatch(lines -> lines.size() >= 2),
+                "Cần đơn hàng có nhiều dòng sản phẩm trong DB test");
+        assumeTrue(imageUrls.stream().anyMatch(url -> url != null),
+                "Cần dòng sản phẩm có ảnh trong DB test");
+
+        for (int size : new int[] { 1, 20, 100 }) {
+            statistics.clear();
+
+            String page = mockMvc.perform(get("/api/admin/orders").param("size", String.valueOf(size)))
+                    .andExpect(status().isOk())
+                    .andReturn().getResponse().getContentAsString();
+
+            long queries = statistics.getPrepareStatementCount();
+            List<Object> orders = JsonPath.read(page, "$.data.content");
+            assertEquals(Math.min(size, totalOrders), orders.size(), "Trang " + size + " phải đủ đơn hàng");
+            assertTrue(queries <= MAX_QUERIES_PER_PAGE,
+                    "Trang " + size + " đơn hàng dùng " + queries + " truy vấn, tối đa " + MAX_QUERIES_PER_PAGE);
+        }
+    }
+
+    @Test
+    void customerOrderHistoryUsesFixedQueryCount() throws Exception {
+        List<Long> orderIds = orderRepository.findOrderIdsForAdmin(null, OrderStatus.UNPAID, null, PageRequest.of(0, 1))
+                .getContent();
+        assumeTrue(!orderIds.isEmpty(), "Cần ít nhất một đơn hàng trong DB test");
+        Order order = orderRepository.findAllForListingByOrderIdIn(orderIds).get(0);
+        assumeTrue(order.getCustomer() != null, "Đơn hàng mẫu phải thuộc về khách hàng");
+        String username = order.getCustomer().getUser().getEmail();
+
+        for (int size : new int[] { 1, 10, 50 }) {
+            statistics.clear();
+
+            mockMvc.perform(get("/api/checkout").param("size", String.valueOf(size))
+                            .with(user(username).roles("CUSTOMER")))
+                    .andExpect(status().isOk());
+
+            long queries = statistics.getPrepareStatementCount();
+            assertTrue(queries <= MAX_QUERIES_PER_PAGE,
+                    "Trang " + size + " đơn hàng của khách dùng " + queries + " truy vấn, tối đa " + MAX_QUERIES_PER_PAGE);
+        }
+    }
+}
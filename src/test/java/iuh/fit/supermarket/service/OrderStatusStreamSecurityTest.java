@@ -0,0 +1,70 @@
+package iuh.fit.supermarket.service;
+
+import iuh.fit.supermarket.entity.User;
+import iuh.fit.supermarket.enums.UserRole;
+import iuh.fit.supermarket.repository.UserRepository;
+import iuh.fit.supermarket.util.JwtUtil;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Kiểm tra kết nối SSE xác thực bằng JWT đóng được mà không bị từ chối ở lượt ASYNC dispatch
+ * (JwtAuthenticationFilter không chạy lại ở lượt này nên SecurityContext rỗng)
+ */
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+class OrderStatusStreamSecurityTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private JwtUtil jwtUtil;
+
+    @MockitoBean
+    private OrderStatusStreamService orderStatusStreamService;
+
+    @Test
+    void completedEmitterIsDispatchedWithoutAuthentication() throws Exception {
+        List<User> admins = userRepository.findAllByUserRoleAndIsDeletedFalse(UserRole.ADMIN);
+        assumeTrue(!admins.isEmpty(), "Cần ít nhất một tài khoản ADMIN trong DB test");
+        User admin = admins.get(0);
+        String token = jwtUtil.generateToken(admin.getEmail(), admin.getUserId(), UserRole.ADMIN);
+
+        SseEmitter emitter = new SseEmitter();
+        when(orderStatusStreamService.subscribeStaff(any())).thenReturn(emitter);
+
+        MvcResult result = mockMvc.perform(get("/api/admin/orders/stream")
+                        .header(HttpHeaders.AUTHORIZATION, "Bearer " + token))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        // Đóng kết nối như khi hết thời gian chờ hoặc client ngắt: lượt ASYNC dispatch không mang token
+        emitter.complete();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk());
+    }
+}
@@ -0,0 +1,88 @@
+package iuh.fit.supermarket.service;
+
+import iuh.fit.supermarket.dto.checkout.CartItemRequestDTO;
+import iuh.fit.supermarket.dto.checkout.CheckPromotionRequestDTO;
+import iuh.fit.supermarket.entity.ProductUnit;
+import iuh.fit.supermarket.repository.ProductUnitRepository;
+import jakarta.persistence.EntityManagerFactory;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Kiểm tra tính khuyến mãi cho giỏ hàng 5, 50 và 200 dòng dùng cùng một số truy vấn
+ * (product unit, giá, mỗi loại khuyến mãi một truy vấn) và ghi lại thời gian trung bình mỗi lần tính
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+@TestPropertySource(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+@Slf4j
+class PromotionCheckQueryCountTest {
+
+    private static final long MAX_QUERIES_PER_EVALUATION = 5;
+    private static final int[] CART_SIZES = { 5, 50, 200 };
+    private static final int WARMUP_ITERATIONS = 5;
+    private static final int MEASURED_ITERATIONS = 20;
+
+    @Autowired
+    private PromotionCheckService promotionCheckService;
+
+    @Autowired
+    private ProductUnitRepository productUnitRepository;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Test
+    void promotionCheckUsesFixedQueryCountRegardlessOfCartSize() {
+        int largestCart = CART_SIZES[CART_SIZES.length - 1];
+        List<Long> productUnitIds = productUnitRepository.findAll(PageRequest.of(0, largestCart)).stream()
+                .map(ProductUnit::getId)
+                .toList();
+        assumeTrue(productUnitIds.size() >= largestCart, "Cần ít nhất " + largestCart + " đơn vị sản phẩm trong DB test");
+
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        Set<Long> queryCounts = new HashSet<>();
+
+        for (int size : CART_SIZES) {
+            CheckPromotionRequestDTO request = new CheckPromotionRequestDTO(productUnitIds.subList(0, size).stream()
+                    .map(productUnitId -> new CartItemRequestDTO(productUnitId, 6))
+                    .toList());
+
+            for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+                promotionCheckService.checkAndApplyPromotions(request);
+            }
+
+            statistics.clear();
+            promotionCheckService.checkAndApplyPromotions(request);
+            long queries = statistics.getPrepareStatementCount();
+            queryCounts.add(queries);
+            assertTrue(queries <= MAX_QUERIES_PER_EVALUATION,
+                    "Giỏ " + size + " dòng dùng " + queries + " truy vấn, tối đa " + MAX_QUERIES_PER_EVALUATION);
+
+            long start = System.nanoTime();
+            for (int i = 0; i < MEASURED_ITERATIONS; i++) {
+                promotionCheckService.checkAndApplyPromotions(request);
+            }
+            double millisPerEvaluation = (System.nanoTime() - start) / 1_000_000.0 / MEASURED_ITERATIONS;
+            log.warn("Tính khuyến mãi giỏ {} dòng: {} truy vấn, {} ms/lần",
+                    size, queries, String.format("%.2f", millisPerEvaluation));
+        }
+
+        assertEquals(1, queryCounts.size(), "Số truy vấn thay đổi theo số dòng giỏ hàng: " + queryCounts);
+    }
+}
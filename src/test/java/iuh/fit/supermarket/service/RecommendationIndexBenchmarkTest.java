@@ -0,0 +1,168 @@
+package iuh.fit.supermarket.service;
+
+import iuh.fit.supermarket.repository.CustomerFavoriteRepository;
+import iuh.fit.supermarket.repository.SaleInvoiceDetailRepository;
+import iuh.fit.supermarket.repository.SaleInvoiceHeaderRepository;
+import iuh.fit.supermarket.service.impl.RecommendationIndexServiceImpl;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Pageable;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.function.LongFunction;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Đo thời gian dựng chỉ mục gợi ý từ dữ liệu hóa đơn giả lập và thời gian trả lời gợi ý
+ * "thường mua cùng" từ chỉ mục, so với cách đếm đồng xuất hiện bằng cách quét toàn bộ dòng hóa đơn mỗi lần hỏi
+ * Chỉ chạy khi bật nhóm benchmark: mvn test -Pbenchmark
+ */
+@Tag("benchmark")
+@Slf4j
+class RecommendationIndexBenchmarkTest {
+
+    private static final int PRODUCT_UNIT_COUNT = 2_000;
+    private static final int CUSTOMER_COUNT = 1_000;
+    private static final int INVOICE_COUNT = 50_000;
+    private static final int BASKET_SIZE = 20;
+    private static final int QUERY_COUNT = 200;
+    private static final int RESULT_LIMIT = 10;
+    private static final int PAGE_SIZE = 500;
+
+    @Test
+    void indexedLookupIsFasterThanScanningInvoiceLines() {
+        Random random = new Random(42);
+        List<Object[]> rows = sampleInvoiceRows(random);
+        RecommendationIndexService recommendationIndexService = indexServiceOver(rows);
+
+        long rebuildStart = System.nanoTime();
+        recommendationIndexService.rebuildIndex();
+        long rebuildNanos = System.nanoTime() - rebuildStart;
+
+        long[] queries = random.longs(QUERY_COUNT, 1, PRODUCT_UNIT_COUNT + 1).toArray();
+        assertFalse(recommendationIndexService.findFrequentlyBoughtTogether(queries[0], RESULT_LIMIT).isEmpty(),
+                "Chỉ mục không có gợi ý cho dữ liệu mẫu");
+
+        // Làm nóng cả hai cách một lượt trước khi đo
+        for (long productUnitId : queries) {
+            recommendationIndexService.findFrequentlyBoughtTogether(productUnitId, RESULT_LIMIT);
+            scanFrequentlyBoughtTogether(rows, productUnitId);
+        }
+
+        long indexedNanos = measure(queries, id -> recommendationIndexService.findFrequentlyBoughtTogether(id, RESULT_LIMIT));
+        long scanNanos = measure(queries, id -> scanFrequentlyBoughtTogether(rows, id));
+
+        log.warn("Chỉ mục gợi ý {} hóa đơn, {} dòng: dựng lại {} ms; tra chỉ mục {} us/lần, quét dòng hóa đơn {} us/lần (x{})",
+                INVOICE_COUNT, rows.size(), rebuildNanos / 1_000_000,
+                indexedNanos / QUERY_COUNT / 1_000, scanNanos / QUERY_COUNT / 1_000,
+                String.format("%.0f", (double) scanNanos / indexedNanos));
+        assertTrue(indexedNanos < scanNanos,
+                "Tra chỉ mục không nhanh hơn quét dòng hóa đơn: " + indexedNanos + " ns so với " + scanNanos + " ns");
+    }
+
+    /**
+     * Repository giả trả về các dòng [invoiceId, customerId, productUnitId] theo trang ID hóa đơn như truy vấn thật
+     */
+    @SuppressWarnings("unchecked")
+    private static RecommendationIndexService indexServiceOver(List<Object[]> rows) {
+        Map<Integer, List<Object[]>> rowsByInvoice = new HashMap<>();
+        for (Object[] row : rows) {
+            rowsByInvoice.computeIfAbsent((Integer) row[0], id -> new ArrayList<>()).add(row);
+        }
+
+        SaleInvoiceHeaderRepository headerRepository = mock(SaleInvoiceHeaderRepository.class);
+        when(headerRepository.findPaidInvoiceIdsAfter(anyInt(), any(Pageable.class))).thenAnswer(invocation -> {
+            int lastId = invocation.getArgument(0);
+            List<Integer> ids = new ArrayList<>(PAGE_SIZE);
+            for (int id = lastId + 1; id <= INVOICE_COUNT && ids.size() < PAGE_SIZE; id++) {
+                ids.add(id);
+            }
+            return ids;
+        });
+
+        SaleInvoiceDetailRepository detailRepository = mock(SaleInvoiceDetailRepository.class);
+        when(detailRepository.findPurchasedProductUnitsByInvoiceIds(any())).thenAnswer(invocation -> {
+            List<Object[]> page = new ArrayList<>();
+            for (Integer invoiceId : (Collection<Integer>) invocation.getArgument(0)) {
+                page.addAll(rowsByInvoice.getOrDefault(invoiceId, List.of()));
+            }
+            return page;
+        });
+
+        CustomerFavoriteRepository favoriteRepository = mock(CustomerFavoriteRepository.class);
+        when(favoriteRepository.findAllCustomerProductUnitIds()).thenReturn(List.of());
+
+        return new RecommendationIndexServiceImpl(headerRepository, detailRepository, favoriteRepository,
+                50, 3f, 2, 20);
+    }
+
+    /**
+     * Hóa đơn 3-12 sản phẩm, phần lớn lấy từ một "giỏ" sản phẩm liền nhau để có các cặp mua cùng lặp lại
+     */
+    private static List<Object[]> sampleInvoiceRows(Random random) {
+        List<Object[]> rows = new ArrayList<>();
+        for (int invoiceId = 1; invoiceId <= INVOICE_COUNT; invoiceId++) {
+            Integer customerId = random.nextInt(CUSTOMER_COUNT) + 1;
+            int basketStart = random.nextInt(PRODUCT_UNIT_COUNT - BASKET_SIZE) + 1;
+            int itemCount = 3 + random.nextInt(10);
+            Set<Long> productUnitIds = new LinkedHashSet<>();
+            while (productUnitIds.size() < itemCount) {
+                long productUnitId = random.nextInt(4) == 0
+                        ? random.nextInt(PRODUCT_UNIT_COUNT) + 1
+                        : basketStart + random.nextInt(BASKET_SIZE);
+                productUnitIds.add(productUnitId);
+            }
+            for (Long productUnitId : productUnitIds) {
+                rows.add(new Object[] { invoiceId, customerId, productUnitId });
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Cách không dùng chỉ mục: quét mọi dòng hóa đơn để đếm sản phẩm xuất hiện cùng hóa đơn với sản phẩm cần gợi ý
+     */
+    private static List<Long> scanFrequentlyBoughtTogether(List<Object[]> rows, long productUnitId) {
+        Set<Integer> invoiceIds = new HashSet<>();
+        for (Object[] row : rows) {
+            if ((Long) row[2] == productUnitId) {
+                invoiceIds.add((Integer) row[0]);
+            }
+        }
+        Map<Long, Integer> coOccurrences = new HashMap<>();
+        for (Object[] row : rows) {
+            Long other = (Long) row[2];
+            if (other != productUnitId && invoiceIds.contains((Integer) row[0])) {
+                coOccurrences.merge(other, 1, Integer::sum);
+            }
+        }
+        return coOccurrences.entrySet().stream()
+                .sorted(Map.Entry.<Long, Integer>comparingByValue().reversed())
+                .limit(RESULT_LIMIT)
+                .map(Map.Entry::getKey)
+                .toList();
+    }
+
+    private static long measure(long[] queries, LongFunction<List<Long>> lookup) {
+        long start = System.nanoTime();
+        for (long productUnitId : queries) {
+            lookup.apply(productUnitId);
+        }
+        return System.nanoTime() - start;
+    }
+}
@@ -0,0 +1,148 @@
+package iuh.fit.supermarket.service;
+
+import iuh.fit.supermarket.dto.stocktake.StocktakeScanRequest;
+import iuh.fit.supermarket.entity.Employee;
+import iuh.fit.supermarket.entity.Stocktake;
+import iuh.fit.supermarket.entity.StocktakeDetail;
+import iuh.fit.supermarket.entity.Warehouse;
+import iuh.fit.supermarket.enums.StocktakeStatus;
+import iuh.fit.supermarket.repository.EmployeeRepository;
+import iuh.fit.supermarket.repository.StocktakeDetailRepository;
+import iuh.fit.supermarket.repository.StocktakeRepository;
+import iuh.fit.supermarket.repository.WarehouseRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.util.AopTestUtils;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Kiểm tra quét kiểm kê trên phiếu tạo từ tồn kho hiện tại (số lượng đếm mặc định bằng tồn kho)
+ * Lượt quét đầu tiên phải thay số lượng mặc định, các lượt sau cộng dồn;
+ * trạng thái trong bộ nhớ của phiếu được gỡ sau lần ghi cuối
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+class StocktakeScanCountingTest {
+
+    @Autowired
+    private StocktakeCountingService stocktakeCountingService;
+
+    @Autowired
+    private StocktakeService stocktakeService;
+
+    @Autowired
+    private StocktakeRepository stocktakeRepository;
+
+    @Autowired
+    private StocktakeDetailRepository stocktakeDetailRepository;
+
+    @Autowired
+    private WarehouseRepository warehouseRepository;
+
+    @Autowired
+    private EmployeeRepository employeeRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    private Integer stocktakeId;
+    private Long productUnitId;
+    private int quantityOnHand;
+
+    @BeforeEach
+    void createSeededStocktake() {
+        List<Warehouse> warehouses = warehouseRepository.findAll(PageRequest.of(0, 1)).getContent();
+        List<Employee> employees = employeeRepository.findAll(PageRequest.of(0, 1)).getContent();
+        assumeTrue(!warehouses.isEmpty() && !employees.isEmpty(), "Cần ít nhất một bản ghi tồn kho và một nhân viên trong DB test");
+
+        Warehouse warehouse = warehouses.get(0);
+        productUnitId = warehouse.getProductUnit().getId();
+        quantityOnHand = warehouse.getQuantityOnHand();
+
+        stocktakeId = transactionTemplate.execute(status -> {
+            Stocktake stocktake = new Stocktake();
+            stocktake.setStocktakeCode("KKTEST" + System.nanoTime());
+            stocktake.setStatus(StocktakeStatus.PENDING);
+            stocktake.setCreatedBy(employees.get(0));
+            stocktake = stocktakeRepository.save(stocktake);
+            stocktakeDetailRepository.insertFromWarehousesByProductUnitIds(stocktake.getStocktakeId(),
+                    List.of(productUnitId));
+            return stocktake.getStocktakeId();
+        });
+    }
+
+    @AfterEach
+    void deleteStocktake() {
+        if (stocktakeId != null) {
+            stocktakeService.deleteStocktake(stocktakeId);
+        }
+    }
+
+    @Test
+    void firstScanReplacesSeededCountAndLaterScansAccumulate() {
+        StocktakeDetail seeded = findDetail();
+        assertEquals(quantityOnHand, seeded.getQuantityCounted());
+
+        stocktakeCountingService.submitScans(stocktakeId, List.of(
+                new StocktakeScanRequest.ScanEvent(productUnitId, 3),
+                new StocktakeScanRequest.ScanEvent(productUnitId, 2)));
+        stocktakeCountingService.flushPendingCounts();
+
+        StocktakeDetail afterFirstFlush = findDetail();
+        assertEquals(5, afterFirstFlush.getQuantityCounted());
+        assertEquals(5 - afterFirstFlush.getQuantityExpected(), afterFirstFlush.getQuantityDifference());
+        assertFalse(afterFirstFlush.getIsSeededCount());
+
+        stocktakeCountingService.submitScans(stocktakeId, List.of(
+                new StocktakeScanRequest.ScanEvent(productUnitId, 4)));
+        stocktakeCountingService.flushPendingCounts();
+
+        StocktakeDetail afterSecondFlush = findDetail();
+        assertEquals(9, afterSecondFlush.getQuantityCounted());
+        assertEquals(9 - afterSecondFlush.getQuantityExpected(), afterSecondFlush.getQuantityDifference());
+    }
+
+    @Test
+    void pendingStateIsRemovedOnceFinalFlushCommits() {
+        stocktakeCountingService.submitScans(stocktakeId, List.of(
+                new StocktakeScanRequest.ScanEvent(productUnitId, 1)));
+        assertTrue(pendingCounts().containsKey(stocktakeId));
+
+        stocktakeCountingService.closeCounting(stocktakeId);
+        assertEquals(1, findDetail().getQuantityCounted());
+        assertFalse(pendingCounts().containsKey(stocktakeId), "Bảng cộng dồn còn giữ sau lần ghi cuối");
+
+        stocktakeCountingService.discardCounting(stocktakeId);
+        assertFalse(closedStocktakeIds().contains(stocktakeId));
+    }
+
+    private Map<?, ?> pendingCounts() {
+        return (Map<?, ?>) ReflectionTestUtils.getField(
+                AopTestUtils.getTargetObject(stocktakeCountingService), "pendingCounts");
+    }
+
+    private Set<?> closedStocktakeIds() {
+        return (Set<?>) ReflectionTestUtils.getField(
+                AopTestUtils.getTargetObject(stocktakeCountingService), "closedStocktakeIds");
+    }
+
+    private StocktakeDetail findDetail() {
+        return stocktakeDetailRepository.findByStocktakeIdAndProductUnitId(stocktakeId, productUnitId)
+                .orElseThrow();
+    }
+}